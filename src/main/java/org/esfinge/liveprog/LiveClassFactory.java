@@ -3,19 +3,41 @@ package org.esfinge.liveprog;
 import java.io.File;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import org.esfinge.liveprog.db.ILiveClassPersistence;
 import org.esfinge.liveprog.db.ILiveClassVersionInfo;
 import org.esfinge.liveprog.db.ILiveClassVersionObserver;
+import org.esfinge.liveprog.db.LiveClassBundle;
+import org.esfinge.liveprog.db.WriteBehindLiveClassPersistence;
 import org.esfinge.liveprog.exception.IncompatibleLiveClassException;
 import org.esfinge.liveprog.exception.LiveClassFactoryException;
 import org.esfinge.liveprog.exception.LiveClassProxyException;
 import org.esfinge.liveprog.instrumentation.InstrumentationHelper;
+import org.esfinge.liveprog.monitor.ILiveClassFileMonitor;
 import org.esfinge.liveprog.monitor.ILiveClassFileMonitorObserver;
+import org.esfinge.liveprog.monitor.LiveClassFileCache;
 import org.esfinge.liveprog.reflect.AccessModifier;
 import org.esfinge.liveprog.reflect.ClassInfo;
 import org.esfinge.liveprog.reflect.MethodInfo;
@@ -59,6 +81,12 @@ public class LiveClassFactory implements ILiveClassFileMonitorObserver, ILiveCla
 	// gerenciador do banco de dados
 	private ILiveClassPersistence dbManager;
 	
+	// gerenciador de persistencia em segundo plano (se utilizado)
+	private WriteBehindLiveClassPersistence writeBehindManager;
+	
+	// monitor de arquivos das classes dinamicas (se utilizado)
+	private ILiveClassFileMonitor fileMonitor;
+	
 	// indica se a factory esta rodando em modo seguro
 	private boolean factorySafeMode;
 	
@@ -123,11 +151,12 @@ public class LiveClassFactory implements ILiveClassFileMonitorObserver, ILiveCla
 	{
 		try
 		{
-			this.mapProxiesSafeMode = new HashMap<String, List<LiveClassProxy>>();
-			this.mapProxiesStdMode = new HashMap<String, List<LiveClassProxy>>();
-			this.mapObservers = new HashMap<String, List<ILiveClassObserver>>();
-			this.cacheLiveClassesSafeMode = new HashMap<String, Class<?>>();
-			this.cacheLiveClassesStdMode = new HashMap<String, Class<?>>();
+			// mapas concorrentes, pois as recargas de classes distintas sao executadas em paralelo
+			this.mapProxiesSafeMode = new ConcurrentHashMap<String, List<LiveClassProxy>>();
+			this.mapProxiesStdMode = new ConcurrentHashMap<String, List<LiveClassProxy>>();
+			this.mapObservers = new ConcurrentHashMap<String, List<ILiveClassObserver>>();
+			this.cacheLiveClassesSafeMode = new ConcurrentHashMap<String, Class<?>>();
+			this.cacheLiveClassesStdMode = new ConcurrentHashMap<String, Class<?>>();
 			this.updateManager = new LiveClassUpdateManager();
 			this.dbManager = dbManager;
 
@@ -204,6 +233,16 @@ public class LiveClassFactory implements ILiveClassFileMonitorObserver, ILiveCla
 		this.updateManager.liveClassFileUpdated(liveClassFile);
 	}
 	
+	@Override
+	public void liveClassFilesUpdated(List<File> liveClassFiles)
+	{
+		// log: arquivos de classes dinamicas recebidos
+		LiveClassUtils.logInfo("Arquivos de classes dinamicas recebidos: " + liveClassFiles.size());
+		
+		// redireciona para o gerenciador de atualizacoes, que recarrega as classes em lote
+		this.updateManager.liveClassFilesUpdated(liveClassFiles);
+	}
+	
 	@Override
 	public void liveClassCommitted(String liveClassName)
 	{
@@ -238,6 +277,9 @@ public class LiveClassFactory implements ILiveClassFileMonitorObserver, ILiveCla
 	@Override
 	public void liveClassRolledBack(String liveClassName)
 	{
+		// a versao atual mudou, descarta a impressao digital da versao revertida
+		this.updateManager.fingerprints.remove(liveClassName);
+		
 		try
 		{
 			// log: rollback de classe dinamica
@@ -297,6 +339,237 @@ public class LiveClassFactory implements ILiveClassFileMonitorObserver, ILiveCla
 		LiveClassUtils.logDebug("Safe mode: " + this.factorySafeMode);
 	}
 
+	/**
+	 * <p>
+	 * Atribui se as alteraes somente nas informaes de depurao (nmeros de linha, nomes de variveis locais 
+	 * e arquivo fonte) so desconsideradas ao comparar uma nova verso de classe dinmica com a verso atual.
+	 * Novas verses idnticas  verso atual no so recarregadas.
+	 * <p><i>
+	 * Sets whether changes only in the debug information (line numbers, local variable names and source file)
+	 * are disregarded when comparing a new LiveClass version to the current version.
+	 * New versions identical to the current version are not reloaded.
+	 * </i>
+	 * 
+	 * @param ignoreDebugInfo <i>true</i> para desconsiderar as informaes de depurao, <i>false</i> para comparar o bytecode completo
+	 * <br><i>true to disregard the debug information, false to compare the whole bytecode</i>
+	 * @see org.esfinge.liveprog.instrumentation.InstrumentationHelper#fingerprint(ClassInfo, boolean)
+	 */
+	public void setIgnoreDebugInfoChanges(boolean ignoreDebugInfo)
+	{
+		this.updateManager.ignoreDebugInfo = ignoreDebugInfo;
+		
+		// as impressoes digitais anteriores nao sao comparaveis
+		this.updateManager.fingerprints.clear();
+		
+		// log: modo de comparacao
+		LiveClassUtils.logDebug("Ignore debug info changes: " + ignoreDebugInfo);
+	}
+	
+	/**
+	 * <p>
+	 * Atribui o executor das recargas de classes dinmicas. 
+	 * As recargas de uma mesma classe so executadas em ordem, uma de cada vez, 
+	 * enquanto as recargas de classes distintas so executadas em paralelo pelo executor.
+	 * <p><i>
+	 * Sets the executor of the LiveClass reloads.
+	 * The reloads of the same class are executed in order, one at a time,
+	 * while the reloads of different classes are executed in parallel by the executor.
+	 * </i>
+	 * 
+	 * @param reloadExecutor executor das recargas, ou <i>null</i> para utilizar o executor padro 
+	 * (uma thread por processador disponvel)
+	 * <br><i>the reloads executor, or null to use the default executor (one thread per available processor)</i>
+	 */
+	public void setReloadExecutor(Executor reloadExecutor)
+	{
+		this.updateManager.reloadExecutor = (reloadExecutor != null ? reloadExecutor : this.updateManager.createDefaultExecutor());
+	}
+	
+	/**
+	 * <p>
+	 * Aguarda o processamento de todos os arquivos de classes dinmicas recebidos at o momento.
+	 * <p><i>
+	 * Waits until all the LiveClass files received so far are processed.
+	 * </i>
+	 * 
+	 * @param timeout tempo mximo de espera (em milissegundos)
+	 * <br><i>the maximum time to wait (in milliseconds)</i>
+	 * @return <i>true</i> se todos os arquivos foram processados, <i>false</i> se o tempo de espera esgotou
+	 * <br><i>true if all the files were processed, false if the waiting time elapsed</i>
+	 * @throws InterruptedException caso a thread seja interrompida durante a espera
+	 * <br><i>if the thread is interrupted while waiting</i>
+	 */
+	public boolean awaitReloads(long timeout) throws InterruptedException
+	{
+		return ( this.updateManager.awaitIdle(timeout) );
+	}
+	
+	/**
+	 * <p>
+	 * Aguarda a persistncia de todas as novas verses de classes dinmicas recebidas at o momento.
+	 * Retorna imediatamente caso a fbrica no utilize a persistncia em segundo plano.
+	 * <p><i>
+	 * Waits until all the new LiveClass versions received so far are persisted.
+	 * Returns immediately if this factory does not use write-behind persistence.
+	 * </i>
+	 * 
+	 * @throws LiveClassFactoryException caso a persistncia de alguma verso tenha falhado
+	 * <br><i>if the persistence of any version failed</i>
+	 * @see org.esfinge.liveprog.db.WriteBehindLiveClassPersistence#awaitDurability()
+	 */
+	public void awaitDurability() throws LiveClassFactoryException
+	{
+		if ( this.writeBehindManager == null )
+			return;
+		
+		try
+		{
+			this.writeBehindManager.awaitDurability();
+		}
+		catch ( Exception e )
+		{
+			throw new LiveClassFactoryException("Unable to persist the LiveClass versions!", e);
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Exporta as verses aceitas de todas as classes dinmicas persistidas para um arquivo de <i>bundle</i>,
+	 * a ser importado por outros ns.
+	 * <p><i>
+	 * Exports the committed versions of all the persisted LiveClasses to a bundle file,
+	 * to be imported by other nodes.
+	 * </i>
+	 * 
+	 * @param bundleFile nome e caminho do arquivo de <i>bundle</i>
+	 * <br><i>filename and path of the bundle file</i>
+	 * @return o nmero de classes exportadas
+	 * <br><i>the number of exported classes</i>
+	 * @throws LiveClassFactoryException caso ocorra algum erro na exportao
+	 * <br><i>if an error occurs when exporting</i>
+	 * @see org.esfinge.liveprog.db.LiveClassBundle#exportBundle(ILiveClassPersistence, String)
+	 */
+	public int exportBundle(String bundleFile) throws LiveClassFactoryException
+	{
+		try
+		{
+			// inclui as versoes ainda pendentes de persistencia
+			this.awaitDurability();
+			
+			return ( LiveClassBundle.exportBundle(this.dbManager, bundleFile) );
+		}
+		catch ( Exception e )
+		{
+			// log: erro
+			LiveClassUtils.logError("Erro ao exportar bundle de classes dinamicas: '" + bundleFile + "'");
+			LiveClassUtils.logException(e);
+			
+			throw new LiveClassFactoryException("Unable to export the LiveClasses bundle!", e);
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Importa as classes dinmicas de um arquivo de <i>bundle</i>, em uma nica operao em lote,
+	 * tornando-as as verses atual e do modo seguro de cada classe.
+	 * <br>
+	 * Opcionalmente, as classes importadas so carregadas imediatamente, de forma que os novos objetos dinmicos
+	 * sejam criados sem acessar o gerenciador de persistncia, e os objetos j existentes so atualizados.
+	 * <p><i>
+	 * Imports the LiveClasses from a bundle file, in a single batch operation, 
+	 * making them the current and safe mode versions of each class.
+	 * <br>
+	 * Optionally, the imported classes are loaded at once, so that new 'live' objects are created
+	 * without accessing the persistence manager, and the existing ones are updated.
+	 * </i>
+	 * 
+	 * @param bundleFile nome e caminho do arquivo de <i>bundle</i>
+	 * <br><i>filename and path of the bundle file</i>
+	 * @param predefine <i>true</i> para carregar as classes importadas, <i>false</i> para carreg-las somente quando utilizadas
+	 * <br><i>true to load the imported classes, false to load them only when used</i>
+	 * @return o nmero de classes importadas
+	 * <br><i>the number of imported classes</i>
+	 * @throws LiveClassFactoryException caso ocorra algum erro na importao
+	 * <br><i>if an error occurs when importing</i>
+	 * @see org.esfinge.liveprog.db.LiveClassBundle#importBundle(ILiveClassPersistence, String)
+	 */
+	public int importBundle(String bundleFile, boolean predefine) throws LiveClassFactoryException
+	{
+		try
+		{
+			Map<String,ClassInfo> classInfoMap = LiveClassBundle.importBundle(this.dbManager, bundleFile);
+			
+			for ( Map.Entry<String,ClassInfo> entry : classInfoMap.entrySet() )
+			{
+				String liveClassName = entry.getKey();
+				
+				// a versao atual foi substituida pela versao importada
+				this.updateManager.fingerprints.remove(liveClassName);
+				
+				if ( predefine )
+				{
+					// carrega a versao importada, que eh a versao atual e do modo seguro
+					Class<?> newLiveClass = this.classLoader.loadLiveClass(entry.getValue());
+					
+					this.cacheLiveClassesStdMode.put(liveClassName, newLiveClass);
+					this.cacheLiveClassesSafeMode.put(liveClassName, newLiveClass);
+					
+					// atualiza os objetos ja existentes
+					this.notifyCommit(liveClassName, newLiveClass, false);
+					this.notifyCommit(liveClassName, newLiveClass, true);
+					this.notifyExternalObservers(liveClassName, newLiveClass);
+				}
+				else
+				{
+					// a versao importada sera carregada no proximo uso
+					this.cacheLiveClassesStdMode.remove(liveClassName);
+					this.cacheLiveClassesSafeMode.remove(liveClassName);
+				}
+			}
+			
+			return ( classInfoMap.size() );
+		}
+		catch ( Exception e )
+		{
+			// log: erro
+			LiveClassUtils.logError("Erro ao importar bundle de classes dinamicas: '" + bundleFile + "'");
+			LiveClassUtils.logException(e);
+			
+			throw new LiveClassFactoryException("Unable to import the LiveClasses bundle!", e);
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Atribui o gerenciador de persistncia em segundo plano utilizado pela fbrica.
+	 * <p><i>
+	 * Sets the write-behind persistence manager used by this factory.
+	 * </i>
+	 * 
+	 * @param writeBehindManager gerenciador de persistncia em segundo plano
+	 * <br><i>the write-behind persistence manager</i>
+	 */
+	void setWriteBehindManager(WriteBehindLiveClassPersistence writeBehindManager)
+	{
+		this.writeBehindManager = writeBehindManager;
+	}
+
+	/**
+	 * <p>
+	 * Atribui o monitor de arquivos, informado sobre as classes dinmicas utilizadas pela fbrica.
+	 * <p><i>
+	 * Sets the file monitor, informed about the LiveClasses used by this factory.
+	 * </i>
+	 * 
+	 * @param fileMonitor monitor de arquivos das classes dinmicas
+	 * <br><i>the LiveClass files monitor</i>
+	 * @see org.esfinge.liveprog.monitor.ILiveClassFileMonitor#watchLiveClass(String)
+	 */
+	void setFileMonitor(ILiveClassFileMonitor fileMonitor)
+	{
+		this.fileMonitor = fileMonitor;
+	}
+	
 	/**
 	 * <p>
 	 * Registra o observador para que seja notificado sobre atualizaes da classe dinmica informada.
@@ -326,7 +599,7 @@ public class LiveClassFactory implements ILiveClassFileMonitorObserver, ILiveCla
 				InstrumentationHelper.checkValidLiveClass(liveClass);
 				
 				// cria uma lista de observadores para a classe dinamica informada
-				lstObservers = new ArrayList<ILiveClassObserver>();
+				lstObservers = new CopyOnWriteArrayList<ILiveClassObserver>();
 			}
 			
 			// adiciona o novo observador
@@ -408,6 +681,10 @@ public class LiveClassFactory implements ILiveClassFileMonitorObserver, ILiveCla
 				// verifica se a classe cumpre os requisitos de classes dinamicas
 				InstrumentationHelper.checkValidLiveClass(liveClass);
 				
+				// informa o monitor sobre a classe dinamica utilizada
+				if ( this.fileMonitor != null )
+					this.fileMonitor.watchLiveClass(className);
+				
 				// obtem as informacoes da classe armazenadas no BD, se houver
 				ClassInfo liveClassInfo = this.dbManager.getLiveClassInfo(className, safeMode);
 				
@@ -476,17 +753,9 @@ public class LiveClassFactory implements ILiveClassFileMonitorObserver, ILiveCla
 		// mapa dos proxies
 		Map<String, List<LiveClassProxy>> mapProxies = safeMode ? this.mapProxiesSafeMode : this.mapProxiesStdMode;
 		
-		// recupera a lista de proxies da classe informada
-		List<LiveClassProxy> lstProxies = mapProxies.get(liveClassName);
-		
-		if ( lstProxies == null )
-			lstProxies = new ArrayList<LiveClassProxy>();
-		
-		// adiciona o novo proxy
-		lstProxies.add(proxy);
-
-		// atualiza o mapa
-		mapProxies.put(liveClassName, lstProxies);
+		// recupera (ou cria) a lista de proxies da classe informada e adiciona o novo proxy
+		// (a lista eh percorrida pelas threads de recarga enquanto novos proxies sao registrados)
+		mapProxies.computeIfAbsent(liveClassName, k -> new CopyOnWriteArrayList<LiveClassProxy>()).add(proxy);
 	}
 	
 	/**
@@ -500,8 +769,10 @@ public class LiveClassFactory implements ILiveClassFileMonitorObserver, ILiveCla
 	 * <br><i>name of the LiveClass</i>
 	 * @param newLiveClassInfo informaes da nova verso da classe dinmica
 	 * <br><i>information of its new version</i>
+	 * @return <i>true</i> se a nova verso foi persistida e carregada, <i>false</i> caso contrrio
+	 * <br><i>true if the new version was persisted and loaded, false otherwise</i>
 	 */
-	private void liveClassUpdated(String liveClassName, ClassInfo newLiveClassInfo)
+	private boolean liveClassUpdated(String liveClassName, ClassInfo newLiveClassInfo)
 	{
 		try
 		{
@@ -546,12 +817,162 @@ public class LiveClassFactory implements ILiveClassFileMonitorObserver, ILiveCla
 			
 			// notifica os observadores externos
 			this.notifyExternalObservers(liveClassName, newLiveClass);
+			
+			return ( true );
 		}
 		catch ( Exception e )
 		{
 			// log: erro ao carregar classe dinamica
 			LiveClassUtils.logError("Erro ao carregar nova versao da classe dinamica '" + liveClassName + "'");
 			LiveClassUtils.logException(e);
+			
+			return ( false );
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Recebe a notificao de que um lote de classes dinmicas foi atualizado para novas verses.
+	 * Todas as novas verses so carregadas antes de qualquer alterao no gerenciador de persistncia, 
+	 * e ento persistidas em uma nica operao antes da atualizao dos objetos dinmicos;
+	 * caso alguma falhe, nenhuma nova verso  aplicada. Se a atualizao dos objetos de alguma classe falhar, 
+	 * todas as classes do lote so revertidas para a verso anterior, inclusive os objetos j atualizados.
+	 * <p><i>
+	 * Is notified that a batch of LiveClasses was updated to new versions.
+	 * All the new versions are loaded before any change to the persistence manager, 
+	 * and then persisted in a single operation before updating the 'live' objects;
+	 * if any of them fails, no new version is applied. If updating the objects of any class fails, 
+	 * all the classes of the batch are rolled back to the previous version, including the objects already updated.
+	 * </i>
+	 * 
+	 * @param newLiveClassInfos informaes das novas verses, pelo nome da classe dinmica
+	 * <br><i>information of the new versions, by LiveClass name</i>
+	 * @return <i>true</i> se as novas verses foram persistidas e carregadas, <i>false</i> caso contrrio
+	 * <br><i>true if the new versions were persisted and loaded, false otherwise</i>
+	 */
+	private boolean liveClassesUpdated(Map<String,ClassInfo> newLiveClassInfos)
+	{
+		try
+		{
+			// verifica se as versoes originais (primeiras versoes) das classes ja foram persistidas
+			Map<String,ILiveClassVersionInfo> versionInfos = this.dbManager.getLiveClassVersionInfos(newLiveClassInfos.keySet());
+			Map<String,ClassInfo> origLiveClassInfos = new LinkedHashMap<String,ClassInfo>();
+			
+			for ( String liveClassName : newLiveClassInfos.keySet() )
+			{
+				ILiveClassVersionInfo versionInfo = versionInfos.get(liveClassName);
+				
+				if ( (versionInfo == null) || (versionInfo.getCurrentVersion() < 1) )
+				{
+					// log: classe dinamica ainda nao foi persistida
+					LiveClassUtils.logInfo("Classe dinamica original ainda nao foi persistida: '" + liveClassName + "'");
+					
+					// obtem a classe original
+					Class<?> origLiveClass = Class.forName(liveClassName);
+					
+					// verifica se a classe cumpre os requisitos de classes dinamicas
+					InstrumentationHelper.checkValidLiveClass(origLiveClass);
+					
+					// obtem informacoes da primeira versao
+					origLiveClassInfos.put(liveClassName, InstrumentationHelper.inspect(origLiveClass));
+				}
+			}
+			
+			// carrega todas as novas versoes antes de persisti-las
+			// (uma falha ao carregar nao deixa versoes de teste a serem descartadas)
+			Map<String,Class<?>> newLiveClasses = new LinkedHashMap<String,Class<?>>();
+			
+			for ( Map.Entry<String,ClassInfo> entry : newLiveClassInfos.entrySet() )
+				newLiveClasses.put(entry.getKey(), this.classLoader.loadLiveClass(entry.getValue()));
+			
+			// salva as primeiras versoes no banco de dados
+			if (! origLiveClassInfos.isEmpty() )
+				this.dbManager.saveLiveClassInfos(origLiveClassInfos, false);
+			
+			// persiste as novas versoes das classes em uma unica operacao
+			this.dbManager.saveLiveClassInfos(newLiveClassInfos, false);
+			
+			// log: classes dinamicas atualizadas
+			LiveClassUtils.logInfo("Classes dinamicas atualizadas: " + newLiveClassInfos.keySet());
+			
+			// atualiza o cache de classes do modo normal de operacao
+			this.cacheLiveClassesStdMode.putAll(newLiveClasses);
+			
+			// notifica os proxies em modo normal de operacao
+			for ( Map.Entry<String,Class<?>> entry : newLiveClasses.entrySet() )
+			{
+				try
+				{
+					this.notifyCommit(entry.getKey(), entry.getValue(), false);
+				}
+				catch ( Exception e )
+				{
+					// log: erro ao atualizar os objetos dinamicos
+					LiveClassUtils.logError("Erro ao atualizar os objetos dinamicos da classe '" + entry.getKey() + "', lote revertido: " + newLiveClasses.keySet());
+					LiveClassUtils.logException(e);
+					
+					// reverte todas as classes do lote
+					this.rollbackLiveClasses(newLiveClasses.keySet());
+					
+					return ( false );
+				}
+			}
+			
+			// notifica os observadores externos
+			newLiveClasses.forEach(this::notifyExternalObservers);
+			
+			return ( true );
+		}
+		catch ( Exception e )
+		{
+			// log: erro ao carregar lote de classes dinamicas
+			LiveClassUtils.logError("Erro ao carregar novas versoes das classes dinamicas " + newLiveClassInfos.keySet());
+			LiveClassUtils.logException(e);
+			
+			return ( false );
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Reverte um lote de classes dinmicas cujas novas verses j foram persistidas, 
+	 * descartando as verses de teste e notificando os proxies em modo normal da verso restaurada.
+	 * <p><i>
+	 * Rolls back a batch of LiveClasses whose new versions were already persisted, 
+	 * discarding the test versions and notifying the proxies in standard mode of the restored version.
+	 * </i>
+	 * 
+	 * @param liveClassNames nomes das classes dinmicas do lote
+	 * <br><i>names of the LiveClasses of the batch</i>
+	 */
+	private void rollbackLiveClasses(Collection<String> liveClassNames)
+	{
+		for ( String liveClassName : liveClassNames )
+		{
+			// a versao atual mudou, descarta a impressao digital da versao revertida
+			this.updateManager.fingerprints.remove(liveClassName);
+			
+			try
+			{
+				// descarta a versao de teste persistida pelo lote
+				this.dbManager.rollbackLiveClass(liveClassName);
+				
+				// carrega a versao restaurada da classe dinamica
+				Class<?> prevLiveClass = this.classLoader.loadLiveClass(this.dbManager.getLiveClassInfo(liveClassName, false));
+				
+				// atualiza o cache de classes do modo padrao de operacao
+				this.cacheLiveClassesStdMode.put(liveClassName, prevLiveClass);
+				
+				// notifica os proxies em modo padrao de operacao
+				// (inclusive os que ja migraram para a nova versao)
+				this.notifyRollback(liveClassName, prevLiveClass, false);
+			}
+			catch ( Exception e )
+			{
+				// log: erro rollback
+				LiveClassUtils.logError("Erro ao reverter a classe dinamica '" + liveClassName + "'");
+				LiveClassUtils.logException(e);
+			}
 		}
 	}
 	
@@ -636,6 +1057,41 @@ public class LiveClassFactory implements ILiveClassFileMonitorObserver, ILiveCla
 		// lista de mapas de classes (para classes que possuem classes internas)
 		public List<ClassMap> classMapList;
 		
+		// impressoes digitais das versoes atuais, pelo nome da classe dinamica
+		private Map<String,byte[]> fingerprints;
+		
+		// arquivos recebidos, pelo nome da classe (inclusive das classes internas)
+		private Map<String,File> classFiles;
+		
+		// indica se as informacoes de depuracao sao desconsideradas na comparacao
+		private volatile boolean ignoreDebugInfo;
+		
+		// capacidade da fila de lotes de arquivos recebidos
+		private static final int RECEIVED_FILES_CAPACITY = 1024;
+		
+		// numero maximo de recargas pendentes
+		private static final int MAX_PENDING_RELOADS = 256;
+		
+		// lotes de arquivos recebidos aguardando a montagem das classes (primeiro estagio)
+		private BlockingQueue<List<File>> receivedFiles;
+		
+		// thread de montagem das classes recebidas
+		private Thread assembler;
+		
+		// executor das recargas de classes (segundo estagio)
+		private volatile Executor reloadExecutor;
+		
+		// filas de recargas pendentes, pelo nome da classe dinamica
+		// (uma recarga em lote aguarda em todas as filas das suas classes)
+		private Map<String,Queue<ReloadTask>> reloadQueues;
+		
+		// limita o numero de recargas pendentes
+		private Semaphore reloadPermits;
+		
+		// numero de arquivos e recargas ainda nao processados
+		private int pendingWork;
+		private Object pendingWorkLock;
+		
 
 		/**
 		 * <p>
@@ -647,15 +1103,208 @@ public class LiveClassFactory implements ILiveClassFileMonitorObserver, ILiveCla
 		LiveClassUpdateManager()
 		{
 			this.classMapList = new ArrayList<ClassMap>();
+			this.fingerprints = new ConcurrentHashMap<String,byte[]>();
+			this.classFiles = new ConcurrentHashMap<String,File>();
+			this.receivedFiles = new ArrayBlockingQueue<List<File>>(RECEIVED_FILES_CAPACITY);
+			this.reloadExecutor = this.createDefaultExecutor();
+			this.reloadQueues = new HashMap<String,Queue<ReloadTask>>();
+			this.reloadPermits = new Semaphore(MAX_PENDING_RELOADS);
+			this.pendingWorkLock = new Object();
 		}
 		
 		@Override
-		public synchronized void liveClassFileUpdated(File liveClassFile)
+		public void liveClassFileUpdated(File liveClassFile)
+		{
+			this.liveClassFilesUpdated(Collections.singletonList(liveClassFile));
+		}
+		
+		@Override
+		public void liveClassFilesUpdated(List<File> liveClassFiles)
+		{
+			if ( liveClassFiles.isEmpty() )
+				return;
+			
+			// somente enfileira o lote, liberando a thread do monitor
+			this.startAssembler();
+			this.updatePendingWork(liveClassFiles.size());
+			
+			try
+			{
+				// aguarda caso a fila esteja cheia
+				this.receivedFiles.put(new ArrayList<File>(liveClassFiles));
+			}
+			catch ( InterruptedException e )
+			{
+				this.updatePendingWork(-liveClassFiles.size());
+				Thread.currentThread().interrupt();
+				
+				// log: erro
+				LiveClassUtils.logError("Arquivos de classes dinamicas descartados: " + liveClassFiles.size());
+			}
+		}
+		
+		/**
+		 * <p>
+		 * Inicia a thread de montagem das classes recebidas, caso ainda no tenha sido iniciada.
+		 * <p><i>
+		 * Starts the thread that assembles the received classes, if not started yet.
+		 * </i>
+		 */
+		private synchronized void startAssembler()
+		{
+			if ( this.assembler != null )
+				return;
+			
+			this.assembler = new Thread(() ->
+			{
+				try
+				{
+					while ( true )
+					{
+						List<File> liveClassFiles = this.receivedFiles.take();
+						
+						try
+						{
+							// classes dinamicas completas no lote, pelo nome
+							// (somente a ultima versao de cada classe eh mantida)
+							Map<String,ClassInfo> completeClasses = new LinkedHashMap<String,ClassInfo>();
+							
+							for ( File liveClassFile : liveClassFiles )
+							{
+								ClassInfo classInfo = this.assembleClass(liveClassFile);
+								
+								if ( classInfo != null )
+									completeClasses.put(classInfo.getName(), classInfo);
+							}
+							
+							// agenda a recarga conjunta das classes completas
+							if (! completeClasses.isEmpty() )
+								this.scheduleReload(new ArrayList<ClassInfo>(completeClasses.values()));
+						}
+						finally
+						{
+							this.updatePendingWork(-liveClassFiles.size());
+						}
+					}
+				}
+				catch ( InterruptedException e )
+				{
+					// log: fim da montagem
+					LiveClassUtils.logDebug("Montagem de classes dinamicas finalizada");
+				}
+			}, "LiveClassAssembler");
+			
+			this.assembler.setDaemon(true);
+			this.assembler.start();
+		}
+		
+		/**
+		 * <p>
+		 * Cria o executor padro das recargas de classes dinmicas, 
+		 * com uma thread por processador disponvel (encerradas quando ociosas).
+		 * <p><i>
+		 * Creates the default executor of the LiveClass reloads,
+		 * with one thread per available processor (terminated when idle).
+		 * </i>
+		 * 
+		 * @return o executor padro
+		 * <br><i>the default executor</i>
+		 */
+		private Executor createDefaultExecutor()
+		{
+			int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+			AtomicInteger threadCount = new AtomicInteger();
+			
+			// a fila nao precisa ser limitada, pois o numero de recargas pendentes ja eh limitado
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, 
+				new LinkedBlockingQueue<Runnable>(), r ->
+				{
+					Thread thread = new Thread(r, "LiveClassReloader-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					
+					return ( thread );
+				});
+			executor.allowCoreThreadTimeOut(true);
+			
+			return ( executor );
+		}
+		
+		/**
+		 * <p>
+		 * Atualiza o nmero de arquivos e recargas ainda no processados.
+		 * <p><i>
+		 * Updates the number of files and reloads not processed yet.
+		 * </i>
+		 * 
+		 * @param delta variao do nmero de itens pendentes
+		 * <br><i>the change in the number of pending items</i>
+		 */
+		private void updatePendingWork(int delta)
+		{
+			synchronized ( this.pendingWorkLock )
+			{
+				this.pendingWork += delta;
+				
+				if ( this.pendingWork == 0 )
+					this.pendingWorkLock.notifyAll();
+			}
+		}
+		
+		/**
+		 * <p>
+		 * Aguarda o processamento de todos os arquivos e recargas pendentes.
+		 * <p><i>
+		 * Waits until all the pending files and reloads are processed.
+		 * </i>
+		 * 
+		 * @param timeout tempo mximo de espera (em milissegundos)
+		 * <br><i>the maximum time to wait (in milliseconds)</i>
+		 * @return <i>true</i> se todos foram processados, <i>false</i> se o tempo de espera esgotou
+		 * <br><i>true if all were processed, false if the waiting time elapsed</i>
+		 * @throws InterruptedException caso a thread seja interrompida durante a espera
+		 * <br><i>if the thread is interrupted while waiting</i>
+		 */
+		private boolean awaitIdle(long timeout) throws InterruptedException
+		{
+			long deadline = System.currentTimeMillis() + timeout;
+			
+			synchronized ( this.pendingWorkLock )
+			{
+				while ( this.pendingWork > 0 )
+				{
+					long remaining = deadline - System.currentTimeMillis();
+					
+					if ( remaining <= 0 )
+						return ( false );
+					
+					this.pendingWorkLock.wait(remaining);
+				}
+				
+				return ( true );
+			}
+		}
+		
+		/**
+		 * <p>
+		 * Monta a classe dinmica a partir dos arquivos recebidos (a classe e suas classes internas).
+		 * <p><i>
+		 * Assembles the LiveClass from the received files (the class and its inner classes).
+		 * </i>
+		 * 
+		 * @param liveClassFile arquivo de classe recebido
+		 * <br><i>the received class file</i>
+		 * @return as informaes da classe dinmica, caso todos os seus arquivos tenham sido recebidos, 
+		 * ou <i>null</i> caso contrrio
+		 * <br><i>the LiveClass information, if all its files were received, or null otherwise</i>
+		 */
+		private ClassInfo assembleClass(File liveClassFile)
 		{
 			try
 			{
 				// obtem as informacoes da classe do arquivo recebido
-				ClassInfo classInfo = InstrumentationHelper.inspect(liveClassFile);
+				// (reaproveitando os bytecodes lidos pelos filtros do monitor)
+				ClassInfo classInfo = InstrumentationHelper.inspect(LiveClassFileCache.take(liveClassFile));
+				this.classFiles.put(classInfo.getName(), liveClassFile);
 
 				// log: arquivo de classe recebido
 				LiveClassUtils.logInfo("Classe recebida: '" + classInfo.getName() + "'");
@@ -696,37 +1345,327 @@ public class LiveClassFactory implements ILiveClassFileMonitorObserver, ILiveCla
 					// obtem a classe dinamica (classe raiz)
 					classInfo = classMap.getRootClass();
 					
+					// remove o mapa de classes completo da lista
+					this.classMapList.remove(classMap);
+					
 					// log: nova versao de classe dinamica
 					LiveClassUtils.logInfo("Nova versao da classe dinamica: '" + classInfo.getName() + "'");
 
-					try
-					{
-						// verifica a compatibilidade da nova classe com a versao original
-						this.checkClassCompatibility(classInfo);
-						
-						// cria a nova versao da classe
-						ClassInfo newClassInfo = this.createNewVersion(classInfo);
-						
-						// notifica a fabrica
-						LiveClassFactory.this.liveClassUpdated(classInfo.getName(), newClassInfo);
-					}			
-					catch ( Exception e )
-					{
-						// log: erro ao criar nova versao da classe dinamica
-						LiveClassUtils.logError("Erro ao criar nova versao da classe dinamica '" + classInfo.getName() + "'");
-						LiveClassUtils.logException(e);
-					}			
-					finally
+					return ( classInfo );
+				}
+			}
+			catch ( Exception e )
+			{
+				// log: erro
+				LiveClassUtils.logException(e);
+			}
+			
+			return ( null );
+		}
+		
+		/**
+		 * <p>
+		 * Agenda a recarga das classes dinmicas, aps as recargas pendentes das mesmas classes.
+		 * <p><i>
+		 * Schedules the reload of the LiveClasses, after the pending reloads of the same classes.
+		 * </i>
+		 * 
+		 * @param classInfos as informaes das classes atualizadas
+		 * <br><i>information of the updated classes</i>
+		 * @throws InterruptedException caso a thread seja interrompida aguardando uma recarga pendente ser concluda
+		 * <br><i>if the thread is interrupted while waiting for a pending reload to complete</i>
+		 */
+		private void scheduleReload(List<ClassInfo> classInfos) throws InterruptedException
+		{
+			// aguarda caso o limite de recargas pendentes tenha sido atingido
+			this.reloadPermits.acquire();
+			this.updatePendingWork(1);
+			
+			ReloadTask reloadTask = new ReloadTask(classInfos);
+			
+			synchronized ( this.reloadQueues )
+			{
+				for ( ClassInfo classInfo : classInfos )
+					this.reloadQueues.computeIfAbsent(classInfo.getName(), k -> new ArrayDeque<ReloadTask>()).add(reloadTask);
+			}
+			
+			// inicia a execucao somente se nao houver recarga das classes em andamento
+			this.startReload(reloadTask);
+		}
+		
+		/**
+		 * <p>
+		 * Inicia a recarga, caso seja a prxima recarga de todas as suas classes.
+		 * <p><i>
+		 * Starts the reload, if it is the next reload of all its classes.
+		 * </i>
+		 * 
+		 * @param reloadTask recarga a ser iniciada
+		 * <br><i>the reload to be started</i>
+		 */
+		private void startReload(ReloadTask reloadTask)
+		{
+			synchronized ( this.reloadQueues )
+			{
+				if ( reloadTask.started )
+					return;
+				
+				for ( ClassInfo classInfo : reloadTask.classInfos )
+					if ( this.reloadQueues.get(classInfo.getName()).peek() != reloadTask )
+						return;
+				
+				reloadTask.started = true;
+			}
+			
+			try
+			{
+				this.reloadExecutor.execute(() -> this.runReload(reloadTask));
+			}
+			catch ( RejectedExecutionException e )
+			{
+				// log: executor indisponivel
+				LiveClassUtils.logError("Executor de recargas indisponivel, recarregando na thread atual");
+				
+				this.runReload(reloadTask);
+			}
+		}
+		
+		/**
+		 * <p>
+		 * Executa a recarga e inicia as prximas recargas das mesmas classes.
+		 * <p><i>
+		 * Executes the reload and starts the next reloads of the same classes.
+		 * </i>
+		 * 
+		 * @param reloadTask recarga a ser executada
+		 * <br><i>the reload to be executed</i>
+		 */
+		private void runReload(ReloadTask reloadTask)
+		{
+			try
+			{
+				if ( reloadTask.classInfos.size() == 1 )
+					this.reloadClass(reloadTask.classInfos.get(0));
+				else
+					this.reloadClasses(reloadTask.classInfos);
+			}
+			finally
+			{
+				this.reloadPermits.release();
+				this.updatePendingWork(-1);
+			}
+			
+			// proximas recargas das classes
+			List<ReloadTask> nextTasks = new ArrayList<ReloadTask>();
+			
+			synchronized ( this.reloadQueues )
+			{
+				for ( ClassInfo classInfo : reloadTask.classInfos )
+				{
+					Queue<ReloadTask> reloadQueue = this.reloadQueues.get(classInfo.getName());
+					reloadQueue.poll();
+					
+					if ( reloadQueue.isEmpty() )
+						this.reloadQueues.remove(classInfo.getName());
+					else
+						nextTasks.add(reloadQueue.peek());
+				}
+			}
+			
+			for ( ReloadTask nextTask : nextTasks )
+				this.startReload(nextTask);
+		}
+		
+		/**
+		 * <p>
+		 * Recarrega a classe dinmica: verifica a compatibilidade, cria a nova verso e notifica a fbrica.
+		 * <p><i>
+		 * Reloads the LiveClass: checks the compatibility, creates the new version and notifies the factory.
+		 * </i>
+		 * 
+		 * @param classInfo as informaes da classe atualizada
+		 * <br><i>information of the updated class</i>
+		 */
+		private void reloadClass(ClassInfo classInfo)
+		{
+			try
+			{
+				// verifica se a nova versao eh identica a versao atual
+				byte[] fingerprint = InstrumentationHelper.fingerprint(classInfo, this.ignoreDebugInfo);
+				
+				if ( this.isCurrentVersion(classInfo, fingerprint) )
+				{
+					// log: versao identica
+					LiveClassUtils.logInfo("Versao identica a atual, recarga ignorada: '" + classInfo.getName() + "'");
+					this.notifyApplied(classInfo);
+					return;
+				}
+				
+				// verifica a compatibilidade da nova classe com a versao original
+				this.checkClassCompatibility(classInfo);
+				
+				// cria a nova versao da classe
+				ClassInfo newClassInfo = this.createNewVersion(classInfo);
+				
+				// notifica a fabrica
+				if ( LiveClassFactory.this.liveClassUpdated(classInfo.getName(), newClassInfo) )
+				{
+					this.fingerprints.put(classInfo.getName(), fingerprint);
+					this.notifyApplied(classInfo);
+				}
+			}			
+			catch ( Exception e )
+			{
+				// log: erro ao criar nova versao da classe dinamica
+				LiveClassUtils.logError("Erro ao criar nova versao da classe dinamica '" + classInfo.getName() + "'");
+				LiveClassUtils.logException(e);
+			}
+		}
+		
+		/**
+		 * <p>
+		 * Recarrega as classes dinmicas em lote: todas as classes so verificadas, persistidas em conjunto e carregadas
+		 * antes da atualizao dos objetos dinmicos, de forma que as novas verses so aplicadas todas ou nenhuma
+		 * (uma falha ao atualizar os objetos dinmicos reverte todo o lote).
+		 * <p><i>
+		 * Reloads the LiveClasses in batch: all the classes are checked, persisted together and loaded before
+		 * updating the 'live' objects, so that either all the new versions are applied or none
+		 * (a failure when updating the 'live' objects rolls back the whole batch).
+		 * </i>
+		 * 
+		 * @param classInfos as informaes das classes atualizadas
+		 * <br><i>information of the updated classes</i>
+		 */
+		private void reloadClasses(List<ClassInfo> classInfos)
+		{
+			// impressoes digitais, classes lidas e novas versoes das classes alteradas, pelo nome
+			Map<String,byte[]> newFingerprints = new LinkedHashMap<String,byte[]>();
+			List<ClassInfo> changedClassInfos = new ArrayList<ClassInfo>();
+			Map<String,ClassInfo> newClassInfos = new LinkedHashMap<String,ClassInfo>();
+			
+			try
+			{
+				for ( ClassInfo classInfo : classInfos )
+				{
+					// verifica se a nova versao eh identica a versao atual
+					byte[] fingerprint = InstrumentationHelper.fingerprint(classInfo, this.ignoreDebugInfo);
+					
+					if ( this.isCurrentVersion(classInfo, fingerprint) )
 					{
-						// remove o mapa de classes completo da lista
-						this.classMapList.remove(classMap);
+						// log: versao identica
+						LiveClassUtils.logInfo("Versao identica a atual, recarga ignorada: '" + classInfo.getName() + "'");
+						this.notifyApplied(classInfo);
+						continue;
 					}
+					
+					// verifica a compatibilidade da nova classe com a versao original
+					// (uma classe incompativel rejeita todo o lote)
+					this.checkClassCompatibility(classInfo);
+					
+					// cria a nova versao da classe
+					newFingerprints.put(classInfo.getName(), fingerprint);
+					changedClassInfos.add(classInfo);
+					newClassInfos.put(classInfo.getName(), this.createNewVersion(classInfo));
 				}
+				
+				if ( newClassInfos.isEmpty() )
+					return;
+				
+				// notifica a fabrica
+				if ( LiveClassFactory.this.liveClassesUpdated(newClassInfos) )
+				{
+					this.fingerprints.putAll(newFingerprints);
+					changedClassInfos.forEach(this::notifyApplied);
+				}
+			}			
+			catch ( Exception e )
+			{
+				// log: lote rejeitado
+				LiveClassUtils.logError("Lote de classes dinamicas rejeitado: " + classInfos.stream().map(ClassInfo::getName).collect(Collectors.toList()));
+				LiveClassUtils.logException(e);
+			}
+		}
+		
+		/**
+		 * <p>
+		 * Informa ao monitor de arquivos que o contedo dos arquivos da classe (e das suas classes internas) foi aplicado.
+		 * <p><i>
+		 * Informs the file monitor that the content of the files of the class (and of its inner classes) was applied.
+		 * </i>
+		 * 
+		 * @param classInfo as informaes da classe lida dos arquivos
+		 * <br><i>information of the class read from the files</i>
+		 */
+		private void notifyApplied(ClassInfo classInfo)
+		{
+			ILiveClassFileMonitor monitor = LiveClassFactory.this.fileMonitor;
+			File classFile = this.classFiles.get(classInfo.getName());
+			
+			if ( (monitor != null) && (classFile != null) )
+				monitor.liveClassFileApplied(classFile, classInfo.getBytecode());
+			
+			for ( ClassInfo innerClassInfo : classInfo.getInnerClassesInfo() )
+				this.notifyApplied(innerClassInfo);
+		}
+		
+		/**
+		 * <p>
+		 * Verifica se a classe lida do arquivo  idntica  verso atual da classe dinmica.
+		 * Na primeira verificao de uma classe, a comparao  feita com a verso atual persistida 
+		 * (ou com a classe original, se nenhuma verso foi persistida), permitindo ignorar os arquivos 
+		 * no alterados desde a ltima execuo da aplicao.
+		 * <p><i>
+		 * Checks if the class read from the file is identical to the current version of the LiveClass.
+		 * On the first check of a class, it is compared with the current persisted version
+		 * (or with the original class, if no version was persisted), allowing to ignore the files
+		 * not changed since the last run of the application.
+		 * </i>
+		 * 
+		 * @param classInfo as informaes da classe lida do arquivo
+		 * <br><i>information of the class read from the file</i>
+		 * @param fingerprint a impresso digital da classe lida do arquivo
+		 * <br><i>the fingerprint of the class read from the file</i>
+		 * @return <i>true</i> se a classe  idntica  verso atual, <i>false</i> caso contrrio
+		 * <br><i>true if the class is identical to the current version, false otherwise</i>
+		 * @see org.esfinge.liveprog.instrumentation.InstrumentationHelper#fingerprint(ClassInfo, boolean)
+		 */
+		private boolean isCurrentVersion(ClassInfo classInfo, byte[] fingerprint)
+		{
+			String liveClassName = classInfo.getName();
+			byte[] currentFingerprint = this.fingerprints.get(liveClassName);
+			
+			if ( currentFingerprint != null )
+				return ( Arrays.equals(fingerprint, currentFingerprint) );
+			
+			try
+			{
+				// obtem a versao atual persistida ou, se nenhuma versao foi persistida, a classe original
+				ClassInfo currentClassInfo = LiveClassFactory.this.dbManager.getLiveClassInfo(liveClassName, false);
+				
+				if ( currentClassInfo == null )
+					currentClassInfo = InstrumentationHelper.inspect(Class.forName(liveClassName));
+				
+				// as novas versoes sao persistidas com o nome da versao,
+				// entao a classe lida eh transformada da mesma forma antes da comparacao
+				ClassInfo comparedClassInfo = currentClassInfo.getName().equals(liveClassName) ? classInfo
+						: InstrumentationHelper.transform(classInfo, liveClassName, currentClassInfo.getName());
+				
+				if (! Arrays.equals(InstrumentationHelper.fingerprint(comparedClassInfo, this.ignoreDebugInfo), 
+									 InstrumentationHelper.fingerprint(currentClassInfo, this.ignoreDebugInfo)) )
+					return ( false );
+				
+				// as proximas verificacoes da classe utilizam somente a impressao digital
+				this.fingerprints.put(liveClassName, fingerprint);
+				
+				return ( true );
 			}
 			catch ( Exception e )
 			{
-				// log: erro
+				// log: versao atual indisponivel
+				LiveClassUtils.logDebug("Nao foi possivel comparar com a versao atual da classe dinamica '" + liveClassName + "'");
 				LiveClassUtils.logException(e);
+				
+				return ( false );
 			}
 		}
 		
@@ -902,6 +1841,39 @@ public class LiveClassFactory implements ILiveClassFileMonitorObserver, ILiveCla
 		}
 
 		
+		/**
+		 * <p>
+		 * Recarga pendente de uma ou mais classes dinmicas (recarga em lote).
+		 * <p><i>
+		 * Pending reload of one or more LiveClasses (batch reload).
+		 * </i>
+		 */
+		private class ReloadTask
+		{
+			// versoes das classes a serem recarregadas
+			private List<ClassInfo> classInfos;
+			
+			// indica se a recarga ja foi iniciada
+			private boolean started;
+			
+			
+			/**
+			 * <p>
+			 * Cria uma recarga pendente.
+			 * <p><i>
+			 * Creates a pending reload.
+			 * </i>
+			 * 
+			 * @param classInfos as informaes das classes atualizadas
+			 * <br><i>information of the updated classes</i>
+			 */
+			ReloadTask(List<ClassInfo> classInfos)
+			{
+				this.classInfos = classInfos;
+			}
+		}
+
+		
 		/**
 		 * <p>
 		 * Classe auxiliar para mapeamento de uma classe dinmica e suas classes internas.
@@ -1,11 +1,24 @@
 package org.esfinge.liveprog;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.esfinge.liveprog.db.CachedLiveClassPersistence;
 import org.esfinge.liveprog.db.DefaultLiveClassPersistence;
 import org.esfinge.liveprog.db.ILiveClassPersistence;
+import org.esfinge.liveprog.db.ILiveClassVersionInfo;
 import org.esfinge.liveprog.db.ILiveClassVersionManager;
+import org.esfinge.liveprog.db.InMemoryLiveClassPersistence;
+import org.esfinge.liveprog.db.MappedLogLiveClassPersistence;
+import org.esfinge.liveprog.db.ShardedLiveClassPersistence;
+import org.esfinge.liveprog.db.ShardedLiveClassPersistence.ShardRouting;
+import org.esfinge.liveprog.db.WriteBehindLiveClassPersistence;
 import org.esfinge.liveprog.exception.LiveClassFactoryBuilderException;
 import org.esfinge.liveprog.monitor.FileSystemMonitor;
+import org.esfinge.liveprog.monitor.FileSystemMonitorHub;
 import org.esfinge.liveprog.monitor.ILiveClassFileMonitor;
+import org.esfinge.liveprog.monitor.PollingFileSystemMonitor;
 import org.esfinge.liveprog.util.LiveClassUtils;
 
 /**
@@ -43,12 +56,46 @@ public class LiveClassFactoryBuilder
 	// inclui ou nao o monitoramento de subdiretorios
 	private boolean includeSubdirs;
 	
+	// pacotes das classes dinamicas monitorados (null para monitorar todos os diretorios)
+	private List<String> livePackages;
+	
 	// caminho para o arquivo de banco de dados
 	private String dbFilePath;
 	
+	// diretorio do log de classes dinamicas mapeado em memoria
+	private String logDirectory;
+	
+	// diretorio dos bancos de dados distribuidos em shards
+	private String shardDirectory;
+	
+	// numero de shards e criterio de distribuicao das classes entre eles
+	private int shardCount;
+	private ShardRouting shardRouting;
+	
 	// diretorio a ser monitorado
 	private String monitorDir;
+	
+	// diretorios monitorados pela central de monitoramento compartilhada (null para nao utilizar a central)
+	private List<String> sharedMonitorDirs;
+	
+	// monitor por verificacao periodica e intervalos entre as verificacoes
+	private boolean pollingMonitor;
+	private long pollingMinInterval;
+	private long pollingMaxInterval;
+	
+	// arquivo de journal da persistencia em segundo plano (null para persistir de forma sincrona)
+	private String journalFile;
+	
+	// numero maximo de versoes de classes mantidas no cache do gerenciador de persistencia (0 para nao utilizar o cache)
+	private int classInfoCacheSize;
 
+	// executor das recargas de classes dinamicas (null para utilizar o executor padrao)
+	private Executor reloadExecutor;
+	
+	// reconciliacao dos arquivos de classes no inicio do monitoramento
+	private boolean reconcileOnStart;
+	private String monitorIndexFile;
+	
 	
 	/**
 	 * <p>
@@ -87,6 +134,7 @@ public class LiveClassFactoryBuilder
 		this.defaultPersistenceManager = false;
 		this.defaultFileMonintor = false;
 		this.includeSubdirs = false;
+		this.classInfoCacheSize = 0;
 	}
 	
 	/**
@@ -168,6 +216,71 @@ public class LiveClassFactoryBuilder
 		return ( new LiveClassFactoryBuilderFileSystemMonitor() );
 	}
 
+	/**
+	 * <p>
+	 * Especifica os diretrios a serem monitorados pela central de monitoramento compartilhada, 
+	 * que utiliza uma nica thread e um nico registro de cada diretrio para todas as fbricas da aplicao.
+	 * <p><i>
+	 * Sets the directories to be monitored by the shared monitoring hub,
+	 * which uses a single thread and a single registration of each directory for all the factories of the application.
+	 * </i>
+	 * <p>
+	 * A central no suporta a reconciliao no incio do monitoramento nem o monitoramento somente dos pacotes 
+	 * das classes dinmicas, que so rejeitados ao construir a fbrica.
+	 * <p><i>
+	 * The hub does not support reconciling on startup nor watching only the LiveClass packages, 
+	 * which are rejected when building the factory.
+	 * </i>
+	 * 
+	 * @param dirs diretrios a serem monitorados
+	 * <br><i>the directories to be monitored</i>
+	 * @return o prximo estgio do processo de construo da fbrica
+	 * <br><i>the next stage of the factory building process</i>
+	 * @see org.esfinge.liveprog.monitor.FileSystemMonitorHub
+	 */
+	public LiveClassFactoryBuilderFileSystemMonitor monitoringSharedDirectories(String... dirs)
+	{
+		this.defaultFileMonintor = false;
+		this.sharedMonitorDirs = Arrays.asList(dirs);
+		return ( new LiveClassFactoryBuilderFileSystemMonitor() );
+	}
+	
+	/**
+	 * <p>
+	 * Especifica o diretrio a ser verificado periodicamente em busca dos arquivos das novas verses 
+	 * das classes dinmicas, para sistemas de arquivos em que o monitoramento por eventos no  confivel.
+	 * <p><i>
+	 * Sets the directory to be periodically checked for new versions of LiveClass class files,
+	 * for file systems where the event based monitoring is not reliable.
+	 * </i>
+	 * <p>
+	 * O monitor no suporta a reconciliao no incio do monitoramento nem o monitoramento somente dos pacotes 
+	 * das classes dinmicas, que so rejeitados ao construir a fbrica.
+	 * <p><i>
+	 * The monitor does not support reconciling on startup nor watching only the LiveClass packages, 
+	 * which are rejected when building the factory.
+	 * </i>
+	 * 
+	 * @param dir diretrio a ser monitorado
+	 * <br><i>the directory to be monitored</i>
+	 * @param minInterval intervalo mnimo entre as verificaes, em milissegundos
+	 * <br><i>the minimum interval between checks, in milliseconds</i>
+	 * @param maxInterval intervalo mximo entre as verificaes, em milissegundos
+	 * <br><i>the maximum interval between checks, in milliseconds</i>
+	 * @return o prximo estgio do processo de construo da fbrica
+	 * <br><i>the next stage of the factory building process</i>
+	 * @see org.esfinge.liveprog.monitor.PollingFileSystemMonitor
+	 */
+	public LiveClassFactoryBuilderFileSystemMonitor pollingDirectory(String dir, long minInterval, long maxInterval)
+	{
+		this.defaultFileMonintor = false;
+		this.pollingMonitor = true;
+		this.monitorDir = dir;
+		this.pollingMinInterval = minInterval;
+		this.pollingMaxInterval = maxInterval;
+		return ( new LiveClassFactoryBuilderFileSystemMonitor() );
+	}
+	
 	/**
 	 * <p>
 	 * Especifica o monitor responsvel pela busca dos arquivos das novas verses das classes dinmicas.
@@ -231,6 +344,33 @@ public class LiveClassFactoryBuilder
 			includeSubdirs = false;
 			return ( new LiveClassFactoryBuilderPersistence() );
 		}
+		
+		/**
+		 * <p>
+		 * Monitora somente os diretrios dos pacotes das classes dinmicas conhecidas: os pacotes informados, 
+		 * os das classes dinmicas j persistidas e os das classes dinmicas utilizadas pela fbrica.
+		 * Os diretrios de pacotes criados posteriormente so registrados ao serem criados.
+		 * <br>
+		 * Suportado somente pelo monitor de arquivos padro.
+		 * <p><i>
+		 * Monitors only the package directories of the known LiveClasses: the specified packages,
+		 * the ones of the already persisted LiveClasses and the ones of the LiveClasses used by the factory.
+		 * The package directories created later are registered when created.
+		 * <br>
+		 * Supported only by the default file monitor.
+		 * </i>
+		 * 
+		 * @param packageNames nomes de pacotes a serem monitorados desde o incio
+		 * <br><i>the package names to be monitored from the start</i>
+		 * @return o prximo estgio do processo de construo da fbrica
+		 * <br><i>the next stage of the factory building process</i>
+		 * @see org.esfinge.liveprog.monitor.FileSystemMonitor#FileSystemMonitor(String, java.util.Collection)
+		 */
+		public LiveClassFactoryBuilderPersistence watchingLiveClassPackagesOnly(String... packageNames)
+		{
+			livePackages = Arrays.asList(packageNames);
+			return ( new LiveClassFactoryBuilderPersistence() );
+		}
 	}
 	
 	
@@ -282,6 +422,96 @@ public class LiveClassFactoryBuilder
 			return ( new LiveClassFactoryBuilderCreate() );
 		}
 
+		/**
+		 * <p>
+		 * Utiliza o gerenciador de persistncia baseado em um log mapeado em memria, sem banco de dados,
+		 * armazenando os arquivos de log e ndice no diretrio informado.
+		 * <p><i>
+		 * Uses the persistence manager based on a memory-mapped log, without a database,
+		 * storing the log and index files on the specified directory.
+		 * </i>
+		 * 
+		 * @param directory diretrio dos arquivos de log e ndice
+		 * <br><i>the directory of the log and index files</i>
+		 * @return o prximo estgio do processo de construo da fbrica
+		 * <br><i>the next stage of the factory building process</i>
+		 * @see org.esfinge.liveprog.db.MappedLogLiveClassPersistence
+		 */
+		public LiveClassFactoryBuilderCreate usingMappedLogPersistence(String directory)
+		{
+			defaultPersistenceManager = false;
+			logDirectory = directory;
+			return ( new LiveClassFactoryBuilderCreate() );
+		}
+		
+		/**
+		 * <p>
+		 * Utiliza um gerenciador de persistncia exclusivo da fbrica, que distribui as classes dinmicas
+		 * entre vrios arquivos de banco de dados no diretrio informado, permitindo atualizaes concorrentes
+		 * de classes de <i>shards</i> diferentes.
+		 * <p><i>
+		 * Uses a persistence manager exclusive to the factory, which distributes the LiveClasses
+		 * among several database files on the specified directory, allowing concurrent updates 
+		 * of classes of different shards.
+		 * </i>
+		 * 
+		 * @param directory diretrio dos arquivos de banco de dados
+		 * <br><i>the directory of the database files</i>
+		 * @param shardCount nmero de arquivos de banco de dados
+		 * <br><i>the number of database files</i>
+		 * @param routing critrio de distribuio das classes entre os arquivos
+		 * <br><i>criteria for distributing the classes among the files</i>
+		 * @return o prximo estgio do processo de construo da fbrica
+		 * <br><i>the next stage of the factory building process</i>
+		 * @see org.esfinge.liveprog.db.ShardedLiveClassPersistence
+		 */
+		public LiveClassFactoryBuilderCreate usingShardedPersistence(String directory, int shardCount, ShardRouting routing)
+		{
+			defaultPersistenceManager = false;
+			shardDirectory = directory;
+			LiveClassFactoryBuilder.this.shardCount = shardCount;
+			shardRouting = routing;
+			return ( new LiveClassFactoryBuilderCreate() );
+		}
+		
+		/**
+		 * <p>
+		 * Utiliza um gerenciador de persistncia mantido somente em memria, sem durabilidade entre execues,
+		 * mantendo no mximo o nmero de verses informado por classe dinmica.
+		 * <p><i>
+		 * Uses a persistence manager kept only in memory, without durability between executions,
+		 * keeping at most the specified number of versions per LiveClass.
+		 * </i>
+		 * 
+		 * @param maxHistory nmero mximo de verses mantidas por classe
+		 * <br><i>the maximum number of versions kept per class</i>
+		 * @return o prximo estgio do processo de construo da fbrica
+		 * <br><i>the next stage of the factory building process</i>
+		 * @see org.esfinge.liveprog.db.InMemoryLiveClassPersistence
+		 */
+		public LiveClassFactoryBuilderCreate usingInMemoryPersistence(int maxHistory)
+		{
+			return ( this.usingPersistenceManager(new InMemoryLiveClassPersistence(maxHistory)) );
+		}
+		
+		/**
+		 * <p>
+		 * Utiliza um gerenciador de persistncia mantido somente em memria, sem durabilidade entre execues,
+		 * com o tamanho padro de histrico de verses.
+		 * <p><i>
+		 * Uses a persistence manager kept only in memory, without durability between executions,
+		 * with the default version history size.
+		 * </i>
+		 * 
+		 * @return o prximo estgio do processo de construo da fbrica
+		 * <br><i>the next stage of the factory building process</i>
+		 * @see org.esfinge.liveprog.db.InMemoryLiveClassPersistence
+		 */
+		public LiveClassFactoryBuilderCreate usingInMemoryPersistence()
+		{
+			return ( this.usingPersistenceManager(new InMemoryLiveClassPersistence()) );
+		}
+		
 		/**
 		 * <p>
 		 * Especifica o gerenciador de persistncia de classes dinmicas.
@@ -316,8 +546,14 @@ public class LiveClassFactoryBuilder
 		/**
 		 * <p>
 		 * Especifica o gerenciador de verses de classes dinmicas.
+		 * <br>
+		 * Ao criar a fbrica, o gerenciador passa a utilizar o gerenciador de persistncia da fbrica, 
+		 * incluindo o cache e a persistncia em segundo plano, caso configurados.
 		 * <p><i>
 		 * Sets the LiveClasses version manager.
+		 * <br>
+		 * When the factory is built, the manager is set to use the persistence manager of the factory, 
+		 * including the cache and the write-behind persistence, if configured.
 		 * </i>  
 		 * 
 		 * @param versionManager gerenciador de verses de classes dinamicas
@@ -332,6 +568,104 @@ public class LiveClassFactoryBuilder
 			return ( this );
 		}
 		
+		/**
+		 * <p>
+		 * Persiste as novas verses das classes dinmicas em segundo plano, de forma que a atualizao das classes
+		 * no aguarde a gravao em disco. As verses ainda no persistidas so registradas no arquivo de <i>journal</i>
+		 * informado, sendo recuperadas na prxima inicializao em caso de falhas.
+		 * <p><i>
+		 * Persists the new LiveClass versions in background, so that class updates do not wait for disk writes.
+		 * The versions not yet persisted are recorded on the specified journal file, 
+		 * being recovered on the next startup in case of failures.
+		 * </i>  
+		 * 
+		 * @param journalFile nome e caminho do arquivo de <i>journal</i>
+		 * <br><i>filename and path of the journal file</i>
+		 * @return o prximo estgio do processo de construo da fbrica
+		 * <br><i>the next stage of the factory building process</i>
+		 * @see org.esfinge.liveprog.db.WriteBehindLiveClassPersistence
+		 * @see org.esfinge.liveprog.LiveClassFactory#awaitDurability()
+		 */
+		public LiveClassFactoryBuilderCreate usingWriteBehind(String journalFile)
+		{
+			LiveClassFactoryBuilder.this.journalFile = journalFile;
+			return ( this );
+		}
+		
+		/**
+		 * <p>
+		 * Mantm em memria as informaes das classes dinmicas recuperadas do gerenciador de persistncia.
+		 * <p><i>
+		 * Keeps in memory the LiveClasses information retrieved from the persistence manager.
+		 * </i>  
+		 * 
+		 * @param maxEntries nmero mximo de verses de classes dinmicas mantidas em memria
+		 * <br><i>the maximum number of LiveClass versions kept in memory</i>
+		 * @return o prximo estgio do processo de construo da fbrica
+		 * <br><i>the next stage of the factory building process</i>
+		 * @see org.esfinge.liveprog.db.CachedLiveClassPersistence
+		 */
+		public LiveClassFactoryBuilderCreate usingClassInfoCache(int maxEntries)
+		{
+			LiveClassFactoryBuilder.this.classInfoCacheSize = maxEntries;
+			return ( this );
+		}
+		
+		/**
+		 * <p>
+		 * Executa as recargas de classes dinmicas distintas em paralelo no executor informado.
+		 * As recargas de uma mesma classe continuam sendo executadas em ordem.
+		 * <p><i>
+		 * Executes the reloads of different LiveClasses in parallel on the specified executor.
+		 * The reloads of the same class are still executed in order.
+		 * </i>  
+		 * 
+		 * @param reloadExecutor executor das recargas
+		 * <br><i>the reloads executor</i>
+		 * @return o prximo estgio do processo de construo da fbrica
+		 * <br><i>the next stage of the factory building process</i>
+		 * @see org.esfinge.liveprog.LiveClassFactory#setReloadExecutor(Executor)
+		 */
+		public LiveClassFactoryBuilderCreate usingReloadExecutor(Executor reloadExecutor)
+		{
+			LiveClassFactoryBuilder.this.reloadExecutor = reloadExecutor;
+			return ( this );
+		}
+		
+		/**
+		 * <p>
+		 * Recarrega, no incio do monitoramento, as classes dinmicas cujos arquivos foram alterados enquanto 
+		 * a aplicao no estava em execuo. Somente os arquivos diferentes das verses atuais persistidas 
+		 * geram novas verses.
+		 * <br>
+		 * O ndice dos arquivos monitorados  persistido no arquivo informado, para que somente os arquivos 
+		 * com tamanho ou data de modificao diferentes sejam lidos na prxima execuo.
+		 * <br>
+		 * Suportado somente pelo monitor de arquivos padro.
+		 * <p><i>
+		 * Reloads, when the monitoring starts, the LiveClasses whose files were changed while the application
+		 * was not running. Only the files different from the current persisted versions create new versions.
+		 * <br>
+		 * The index of the monitored files is persisted to the specified file, so that only the files
+		 * with different size or last modified time are read on the next run.
+		 * <br>
+		 * Supported only by the default file monitor.
+		 * </i>  
+		 * 
+		 * @param indexFile nome e caminho do arquivo de ndice, ou <i>null</i> para ler todos os arquivos em cada execuo
+		 * <br><i>filename and path of the index file, or null to read all the files on each run</i>
+		 * @return o prximo estgio do processo de construo da fbrica
+		 * <br><i>the next stage of the factory building process</i>
+		 * @see org.esfinge.liveprog.monitor.FileSystemMonitor#setReconcileOnStart(boolean)
+		 * @see org.esfinge.liveprog.monitor.FileSystemMonitor#setIndexFile(String)
+		 */
+		public LiveClassFactoryBuilderCreate reconcilingOnStartup(String indexFile)
+		{
+			LiveClassFactoryBuilder.this.reconcileOnStart = true;
+			LiveClassFactoryBuilder.this.monitorIndexFile = indexFile;
+			return ( this );
+		}
+		
 		/**
 		 * <p>
 		 * Cria a fbrica de objetos de classes dinmicas, configurando-a conforme os parmetros informados no builder.
@@ -341,18 +675,62 @@ public class LiveClassFactoryBuilder
 		 *  
 		 * @return uma nova fbrica de objetos de classes dinmicas
 		 * <br><i>a new factory of LiveClass objects</i>
-		 * @throws LiveClassFactoryBuilderException em caso de erro na configurao de algum componente interno
-		 * <br><i>if an error occurs when configuring an internal component</i>
+		 * @throws LiveClassFactoryBuilderException em caso de erro na configurao de algum componente interno, 
+		 * ou caso alguma opo informada no seja suportada pelo monitor de arquivos escolhido
+		 * <br><i>if an error occurs when configuring an internal component, 
+		 * or if any specified option is not supported by the chosen file monitor</i>
 		 * @see org.esfinge.liveprog.LiveClassFactory
 		 */
 		public LiveClassFactory build() throws LiveClassFactoryBuilderException
 		{
+			// verifica as opcoes suportadas somente pelo monitor de arquivos padrao
+			String monitorName = null;
+			
+			if ( sharedMonitorDirs != null )
+				monitorName = "the shared monitoring hub";
+			
+			else if ( pollingMonitor )
+				monitorName = "the polling monitor";
+			
+			if ( monitorName != null )
+			{
+				if ( reconcileOnStart )
+					throw new LiveClassFactoryBuilderException("Reconciling on startup is not supported by " + monitorName + "!");
+				
+				if ( livePackages != null )
+					throw new LiveClassFactoryBuilderException("Watching only the LiveClass packages is not supported by " + monitorName + "!");
+			}
+			
 			try
 			{
+				// verifica se esta utilizando a central de monitoramento compartilhada
+				if ( sharedMonitorDirs != null )
+					fileMonitor = FileSystemMonitorHub.getInstance().subscribe(sharedMonitorDirs, includeSubdirs);
+				
+				// verifica se esta utilizando o monitor por verificacao periodica
+				else if ( pollingMonitor )
+					fileMonitor = new PollingFileSystemMonitor(monitorDir, includeSubdirs, pollingMinInterval, pollingMaxInterval);
+				
 				// verifica se esta utilizando o monitor de arquivos padrao
-				if ( defaultFileMonintor || (fileMonitor == null) )
-					fileMonitor = new FileSystemMonitor(monitorDir, includeSubdirs);
+				else if ( defaultFileMonintor || (fileMonitor == null) )
+					fileMonitor = (livePackages == null) ? new FileSystemMonitor(monitorDir, includeSubdirs) 
+														 : new FileSystemMonitor(monitorDir, livePackages);
 
+				// verifica se reconcilia os arquivos de classes no inicio do monitoramento
+				if ( reconcileOnStart && (fileMonitor instanceof FileSystemMonitor) )
+				{
+					((FileSystemMonitor) fileMonitor).setIndexFile(monitorIndexFile);
+					((FileSystemMonitor) fileMonitor).setReconcileOnStart(true);
+				}
+				
+				// verifica se esta utilizando o log mapeado em memoria
+				if (! defaultPersistenceManager && (logDirectory != null) )
+					dbManager = new MappedLogLiveClassPersistence(logDirectory);
+				
+				// verifica se esta utilizando os bancos de dados distribuidos
+				if (! defaultPersistenceManager && (shardDirectory != null) )
+					dbManager = new ShardedLiveClassPersistence(shardDirectory, shardCount, shardRouting);
+				
 				// verifica se esta utilizando o gerenciador de persistencia padrao
 				if ( defaultPersistenceManager || (dbManager == null) )
 				{
@@ -362,13 +740,40 @@ public class LiveClassFactoryBuilder
 					dbManager = DefaultLiveClassPersistence.getInstance();
 				}
 				
+				// verifica se utiliza a persistencia em segundo plano
+				WriteBehindLiveClassPersistence writeBehindManager = null;
+				if ( journalFile != null )
+				{
+					writeBehindManager = new WriteBehindLiveClassPersistence(dbManager, journalFile);
+					dbManager = writeBehindManager;
+				}
+				
+				// verifica se utiliza o cache de informacoes das classes dinamicas
+				if ( classInfoCacheSize > 0 )
+					dbManager = new CachedLiveClassPersistence(dbManager, classInfoCacheSize);
+				
 				// cria a fabrica
 				LiveClassFactory factory = new LiveClassFactory(classLoader, dbManager, factorySafeMode);
+				factory.setWriteBehindManager(writeBehindManager);
 
-				// configura os observadores
+				// verifica se utiliza um executor de recargas customizado
+				if ( reloadExecutor != null )
+					factory.setReloadExecutor(reloadExecutor);
+				
+				// configura o gerenciador de versoes, que passa a utilizar a persistencia decorada da fabrica
+				// (aceites e descartes invalidam o cache e aguardam as versoes pendentes de gravacao)
 				if ( versionManager != null )
+				{
+					versionManager.setPersistenceManager(dbManager);
 					versionManager.addObserver(factory);
+				}
+				
+				// monitora os pacotes das classes dinamicas ja persistidas
+				if ( livePackages != null )
+					for ( ILiveClassVersionInfo versionInfo : dbManager.getAllLiveClassesVersionInfo() )
+						fileMonitor.watchLiveClass(versionInfo.getClassName());
 				
+				factory.setFileMonitor(fileMonitor);
 				fileMonitor.addObserver(factory);
 				fileMonitor.start();
 				
@@ -0,0 +1,217 @@
+package org.esfinge.liveprog.db;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * <p>
+ * Compresso dos bytecodes de classes persistidos, utilizando <i>Deflate</i> com um dicionrio pr-definido
+ * formado pelas entradas mais frequentes dos <i>constant pools</i> de arquivos de classe.
+ * <p><i>
+ * Compression of persisted class bytecode, using Deflate with a preset dictionary
+ * built from the most frequent constant pool entries of class files.
+ * </i>
+ */
+class BytecodeCompression
+{
+	/**
+	 * <p>
+	 * Formato dos bytecodes no compactados (registros anteriores  compresso).
+	 * <p><i>
+	 * Format of uncompressed bytecode (records saved before compression was introduced).
+	 * </i>
+	 */
+	static final int FORMAT_RAW = 0;
+
+	/**
+	 * <p>
+	 * Formato dos bytecodes compactados com <i>Deflate</i> e o dicionrio pr-definido.
+	 * <p><i>
+	 * Format of bytecode compressed with Deflate and the preset dictionary.
+	 * </i>
+	 */
+	static final int FORMAT_DEFLATE_DICT = 1;
+
+	/**
+	 * <p>
+	 * Formato dos deltas em relao a uma verso base (ver {@link BytecodeDelta}), 
+	 * compactados da mesma forma que {@link #FORMAT_DEFLATE_DICT}.
+	 * <p><i>
+	 * Format of deltas against a base version (see {@link BytecodeDelta}), 
+	 * compressed the same way as {@link #FORMAT_DEFLATE_DICT}.
+	 * </i>
+	 */
+	static final int FORMAT_DELTA = 2;
+
+	// entradas frequentes de constant pools, das menos para as mais frequentes
+	// (o Deflate codifica com menos bits as referencias mais proximas do final do dicionario)
+	private static final String[] DICTIONARY_ENTRIES = {
+		"java/lang/invoke/LambdaMetafactory", "metafactory", "BootstrapMethods", "Lookup",
+		"java/lang/invoke/MethodHandles$Lookup", "java/lang/invoke/MethodHandles",
+		"(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;" +
+			"Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodHandle;Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/CallSite;",
+		"EnclosingMethod", "NestMembers", "Deprecated", "Synthetic", "ConstantValue",
+		"java/util/List", "Ljava/util/List;", "java/util/Map", "Ljava/util/Map;", "java/util/ArrayList",
+		"java/util/HashMap", "java/util/Iterator", "hasNext", "next", "()Ljava/lang/Object;", "()Z",
+		"java/lang/Exception", "java/lang/RuntimeException", "java/lang/Throwable", "printStackTrace",
+		"java/lang/System", "out", "Ljava/io/PrintStream;", "java/io/PrintStream", "println", "(Ljava/lang/String;)V",
+		"java/lang/Integer", "intValue", "(I)Ljava/lang/Integer;", "()I", "(I)V", "(Ljava/lang/Object;)Z", "equals", "hashCode",
+		"org/esfinge/liveprog/annotation/LiveClass", "Lorg/esfinge/liveprog/annotation/LiveClass;",
+		"Lorg/esfinge/liveprog/annotation/IgnoreOnReload;", "Lorg/esfinge/liveprog/annotation/InvokeOnReload;",
+		"Lorg/esfinge/liveprog/annotation/InvokeOnRollback;", "RuntimeVisibleAnnotations", "RuntimeInvisibleAnnotations",
+		"Signature", "Exceptions", "InnerClasses", "StackMapTable", "SourceFile", "LocalVariableTypeTable",
+		"java/lang/StringBuilder", "append", "(Ljava/lang/String;)Ljava/lang/StringBuilder;", "toString", "valueOf",
+		"()Ljava/lang/String;", "java/lang/String", "Ljava/lang/String;", "java/lang/Object", "Ljava/lang/Object;",
+		"this", "LocalVariableTable", "LineNumberTable", "Code", "()V", "<clinit>", "<init>"
+	};
+
+	// dicionario pre-definido do Deflate
+	private static final byte[] DICTIONARY = buildDictionary();
+
+
+	/**
+	 * <p>
+	 * Construtor privado, classe utilitria.
+	 * <p><i>
+	 * Private constructor, utilitary class.
+	 * </i>
+	 */
+	private BytecodeCompression()
+	{
+	}
+
+	/**
+	 * <p>
+	 * Compacta o bytecode informado no formato {@link #FORMAT_DEFLATE_DICT}.
+	 * <p><i>
+	 * Compresses the specified bytecode using the {@link #FORMAT_DEFLATE_DICT} format.
+	 * </i>
+	 *
+	 * @param bytecode bytecode a ser compactado
+	 * <br><i>the bytecode to be compressed</i>
+	 * @return o bytecode compactado
+	 * <br><i>the compressed bytecode</i>
+	 */
+	static byte[] compress(byte[] bytecode)
+	{
+		Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+
+		try
+		{
+			deflater.setDictionary(DICTIONARY);
+			deflater.setInput(bytecode);
+			deflater.finish();
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream(bytecode.length / 2 + 64);
+			byte[] buffer = new byte[4096];
+
+			while (! deflater.finished() )
+				out.write(buffer, 0, deflater.deflate(buffer));
+
+			return ( out.toByteArray() );
+		}
+		finally
+		{
+			deflater.end();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Descompacta o bytecode persistido no formato informado.
+	 * Para o formato {@link #FORMAT_DELTA}, retorna o delta descompactado.
+	 * <p><i>
+	 * Decompresses the bytecode persisted on the specified format.
+	 * For the {@link #FORMAT_DELTA} format, returns the uncompressed delta.
+	 * </i>
+	 *
+	 * @param data bytecode persistido
+	 * <br><i>the persisted bytecode</i>
+	 * @param format formato do bytecode persistido
+	 * <br><i>the format of the persisted bytecode</i>
+	 * @return o bytecode original
+	 * <br><i>the original bytecode</i>
+	 * @throws IllegalArgumentException caso o formato seja desconhecido ou os dados estejam corrompidos
+	 * <br><i>if the format is unknown or the data is corrupted</i>
+	 */
+	static byte[] decompress(byte[] data, int format) throws IllegalArgumentException
+	{
+		if ( (data == null) || (format == FORMAT_RAW) )
+			return ( data );
+
+		if ( (format != FORMAT_DEFLATE_DICT) && (format != FORMAT_DELTA) )
+			throw new IllegalArgumentException("Unknown bytecode format: " + format);
+
+		Inflater inflater = new Inflater();
+
+		try
+		{
+			inflater.setInput(data);
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 3);
+			byte[] buffer = new byte[4096];
+
+			while (! inflater.finished() )
+			{
+				int count = inflater.inflate(buffer);
+
+				if ( count == 0 )
+				{
+					if ( inflater.needsDictionary() )
+						inflater.setDictionary(DICTIONARY);
+					else if ( inflater.needsInput() )
+						throw new DataFormatException("Truncated compressed bytecode");
+				}
+
+				out.write(buffer, 0, count);
+			}
+
+			return ( out.toByteArray() );
+		}
+		catch ( DataFormatException e )
+		{
+			throw new IllegalArgumentException("Invalid compressed bytecode!", e);
+		}
+		finally
+		{
+			inflater.end();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Monta o dicionrio pr-definido, codificando cada entrada como um <i>CONSTANT_Utf8</i> do constant pool.
+	 * <p><i>
+	 * Builds the preset dictionary, encoding each entry as a constant pool CONSTANT_Utf8 item.
+	 * </i>
+	 *
+	 * @return o dicionrio pr-definido
+	 * <br><i>the preset dictionary</i>
+	 */
+	private static byte[] buildDictionary()
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		for ( String entry : DICTIONARY_ENTRIES )
+		{
+			byte[] utf8 = entry.getBytes(StandardCharsets.UTF_8);
+
+			// tag CONSTANT_Utf8 + tamanho (u2) + bytes
+			out.write(1);
+			out.write((utf8.length >> 8) & 0xFF);
+			out.write(utf8.length & 0xFF);
+			out.write(utf8, 0, utf8.length);
+		}
+
+		// cabecalho dos arquivos de classe (magic number)
+		out.write(0xCA);
+		out.write(0xFE);
+		out.write(0xBA);
+		out.write(0xBE);
+
+		return ( out.toByteArray() );
+	}
+}
@@ -0,0 +1,242 @@
+package org.esfinge.liveprog.db;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Codificao binria das diferenas (delta) entre duas verses de bytecode.
+ * <br>
+ * O delta  formado pelo tamanho da verso nova seguido por uma sequncia de operaes <i>COPY</i>
+ * (trecho copiado da verso base) e <i>INSERT</i> (bytes literais), com os valores codificados como <i>varints</i>.
+ * <p><i>
+ * Binary delta encoding between two bytecode versions.
+ * <br>
+ * The delta is made of the new version length followed by a sequence of COPY (range copied from the base version)
+ * and INSERT (literal bytes) operations, with all values encoded as varints.
+ * </i>
+ */
+class BytecodeDelta
+{
+	// tamanho minimo de um trecho copiado da versao base
+	private static final int MIN_MATCH = 8;
+
+	// numero maximo de candidatos avaliados para cada posicao
+	private static final int MAX_CANDIDATES = 16;
+
+	// tipos de operacao (bit menos significativo do cabecalho da operacao)
+	private static final int OP_INSERT = 0;
+	private static final int OP_COPY = 1;
+
+
+	/**
+	 * <p>
+	 * Construtor privado, classe utilitria.
+	 * <p><i>
+	 * Private constructor, utilitary class.
+	 * </i>
+	 */
+	private BytecodeDelta()
+	{
+	}
+
+	/**
+	 * <p>
+	 * Calcula o delta que transforma a verso base na verso nova.
+	 * <p><i>
+	 * Computes the delta that transforms the base version into the new version.
+	 * </i>
+	 *
+	 * @param base bytecode da verso base
+	 * <br><i>the base version bytecode</i>
+	 * @param target bytecode da verso nova
+	 * <br><i>the new version bytecode</i>
+	 * @return o delta entre as verses
+	 * <br><i>the delta between both versions</i>
+	 */
+	static byte[] encode(byte[] base, byte[] target)
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream(target.length / 4 + 16);
+		writeVarint(out, target.length);
+
+		// indexa as posicoes da versao base pelo hash dos seus MIN_MATCH bytes seguintes
+		int tableBits = 32 - Integer.numberOfLeadingZeros(Math.max(base.length, 1) * 2);
+		int[] head = new int[1 << tableBits];
+		int[] chain = new int[Math.max(base.length, 1)];
+		Arrays.fill(head, -1);
+
+		for ( int i = 0; i + MIN_MATCH <= base.length; i++ )
+		{
+			int h = hash(base, i, tableBits);
+			chain[i] = head[h];
+			head[h] = i;
+		}
+
+		// inicio dos bytes literais pendentes
+		int literalStart = 0;
+		int pos = 0;
+
+		while ( pos + MIN_MATCH <= target.length )
+		{
+			// procura o maior trecho em comum com a versao base
+			int bestOffset = -1;
+			int bestLength = 0;
+			int candidates = 0;
+
+			for ( int c = head[hash(target, pos, tableBits)]; (c >= 0) && (candidates < MAX_CANDIDATES); c = chain[c], candidates++ )
+			{
+				int len = 0;
+				int max = Math.min(base.length - c, target.length - pos);
+
+				while ( (len < max) && (base[c + len] == target[pos + len]) )
+					len++;
+
+				if ( len > bestLength )
+				{
+					bestLength = len;
+					bestOffset = c;
+				}
+			}
+
+			if ( bestLength >= MIN_MATCH )
+			{
+				writeInsert(out, target, literalStart, pos);
+				writeVarint(out, ((long) bestLength << 1) | OP_COPY);
+				writeVarint(out, bestOffset);
+
+				pos += bestLength;
+				literalStart = pos;
+			}
+			else
+				pos++;
+		}
+
+		// bytes literais restantes
+		writeInsert(out, target, literalStart, target.length);
+
+		return ( out.toByteArray() );
+	}
+
+	/**
+	 * <p>
+	 * Aplica o delta sobre a verso base, reconstruindo a verso nova.
+	 * <p><i>
+	 * Applies the delta over the base version, rebuilding the new version.
+	 * </i>
+	 *
+	 * @param base bytecode da verso base
+	 * <br><i>the base version bytecode</i>
+	 * @param delta delta entre as verses
+	 * <br><i>the delta between both versions</i>
+	 * @return o bytecode da verso nova
+	 * <br><i>the new version bytecode</i>
+	 * @throws IllegalArgumentException caso o delta esteja corrompido ou no corresponda  verso base
+	 * <br><i>if the delta is corrupted or does not match the base version</i>
+	 */
+	static byte[] apply(byte[] base, byte[] delta) throws IllegalArgumentException
+	{
+		try
+		{
+			int[] in = { 0 };
+			byte[] target = new byte[(int) readVarint(delta, in)];
+			int pos = 0;
+
+			while ( pos < target.length )
+			{
+				long header = readVarint(delta, in);
+				int length = (int) (header >>> 1);
+
+				if ( (header & 1) == OP_COPY )
+					System.arraycopy(base, (int) readVarint(delta, in), target, pos, length);
+				else
+				{
+					System.arraycopy(delta, in[0], target, pos, length);
+					in[0] += length;
+				}
+
+				pos += length;
+			}
+
+			return ( target );
+		}
+		catch ( IndexOutOfBoundsException e )
+		{
+			throw new IllegalArgumentException("Invalid bytecode delta!", e);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Escreve uma operao <i>INSERT</i> com os bytes literais do intervalo informado, se houver.
+	 * <p><i>
+	 * Writes an INSERT operation with the literal bytes of the specified range, if any.
+	 * </i>
+	 */
+	private static void writeInsert(ByteArrayOutputStream out, byte[] data, int from, int to)
+	{
+		if ( to > from )
+		{
+			writeVarint(out, ((long) (to - from) << 1) | OP_INSERT);
+			out.write(data, from, to - from);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Escreve o valor informado como um <i>varint</i> (7 bits por byte).
+	 * <p><i>
+	 * Writes the specified value as a varint (7 bits per byte).
+	 * </i>
+	 */
+	private static void writeVarint(ByteArrayOutputStream out, long value)
+	{
+		while ( (value & ~0x7FL) != 0 )
+		{
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+
+		out.write((int) value);
+	}
+
+	/**
+	 * <p>
+	 * L um <i>varint</i> a partir da posio informada, avanando-a.
+	 * <p><i>
+	 * Reads a varint from the specified position, advancing it.
+	 * </i>
+	 */
+	private static long readVarint(byte[] data, int[] pos)
+	{
+		long value = 0;
+		int shift = 0;
+		byte b;
+
+		do
+		{
+			b = data[pos[0]++];
+			value |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		}
+		while ( (b & 0x80) != 0 );
+
+		return ( value );
+	}
+
+	/**
+	 * <p>
+	 * Calcula o hash dos MIN_MATCH bytes a partir da posio informada.
+	 * <p><i>
+	 * Computes the hash of the MIN_MATCH bytes starting at the specified position.
+	 * </i>
+	 */
+	private static int hash(byte[] data, int pos, int bits)
+	{
+		int h = 0;
+
+		for ( int i = 0; i < MIN_MATCH; i++ )
+			h = h * 31 + data[pos + i];
+
+		return ( (h * 0x9E3779B1) >>> (32 - bits) );
+	}
+}
@@ -0,0 +1,500 @@
+package org.esfinge.liveprog.db;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.esfinge.liveprog.reflect.ClassInfo;
+import org.esfinge.liveprog.util.LiveClassUtils;
+
+/**
+ * <p>
+ * Decorador de gerenciadores de persistncia que mantm em memria as informaes das classes dinmicas
+ * j recuperadas, evitando novas leituras dos bytecodes e novas inspees das classes.
+ * <br>
+ * As informaes so armazenadas por classe e verso, com descarte das entradas menos utilizadas (LRU)
+ * ao atingir o tamanho mximo, e so invalidadas a cada nova verso persistida, aceita ou descartada.
+ * <p><i>
+ * Persistence manager decorator that keeps in memory the information of the LiveClasses already retrieved,
+ * avoiding reading their bytecode and inspecting them again.
+ * <br>
+ * The information is stored by class and version, evicting the least recently used entries (LRU)
+ * when reaching the maximum size, and is invalidated when a new version is persisted, committed or rolled back.
+ * </i>
+ * 
+ * @see org.esfinge.liveprog.db.ILiveClassPersistence
+ */
+public class CachedLiveClassPersistence implements ILiveClassPersistence
+{
+	// gerenciador de persistencia decorado
+	private ILiveClassPersistence delegate;
+	
+	// numero maximo de informacoes de classes armazenadas
+	private int maxEntries;
+	
+	// cache LRU das informacoes das classes, por classe e versao
+	private Map<CacheKey,ClassInfo> classInfoCache;
+	
+	// cache das informacoes de versionamento, por classe
+	private Map<String,ILiveClassVersionInfo> versionInfoCache;
+	
+	// estatisticas do cache
+	private long hitCount;
+	private long missCount;
+	private long evictionCount;
+	
+	
+	/**
+	 * <p>
+	 * Constri um novo decorador para o gerenciador de persistncia informado.
+	 * <p><i>
+	 * Constructs a new decorator for the specified persistence manager.
+	 * </i>
+	 * 
+	 * @param delegate gerenciador de persistncia decorado
+	 * <br><i>the decorated persistence manager</i>
+	 * @param maxEntries nmero mximo de verses de classes mantidas em memria
+	 * <br><i>the maximum number of class versions kept in memory</i>
+	 * @throws IllegalArgumentException caso o gerenciador seja nulo ou o nmero mximo seja menor que 1
+	 * <br><i>if the persistence manager is null or the maximum number is lower than 1</i>
+	 */
+	@SuppressWarnings("serial")
+	public CachedLiveClassPersistence(ILiveClassPersistence delegate, int maxEntries) throws IllegalArgumentException
+	{
+		if ( delegate == null )
+			throw new IllegalArgumentException("Persistence manager must not be null!");
+		
+		if ( maxEntries < 1 )
+			throw new IllegalArgumentException("Cache size must be at least 1: " + maxEntries);
+		
+		this.delegate = delegate;
+		this.maxEntries = maxEntries;
+		this.versionInfoCache = new HashMap<String,ILiveClassVersionInfo>();
+		this.classInfoCache = new LinkedHashMap<CacheKey,ClassInfo>(16, 0.75f, true)
+		{
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<CacheKey,ClassInfo> eldest)
+			{
+				if ( this.size() <= CachedLiveClassPersistence.this.maxEntries )
+					return ( false );
+				
+				CachedLiveClassPersistence.this.evictionCount++;
+				return ( true );
+			}
+		};
+	}
+	
+	@Override
+	public synchronized ClassInfo getLiveClassInfo(String liveClassName, boolean safeMode) throws Exception
+	{
+		// obtem a versao solicitada
+		ILiveClassVersionInfo versionInfo = this.getLiveClassVersionInfo(liveClassName);
+		
+		// nao ha versao persistida para essa classe
+		if ( versionInfo.getSafeModeVersion() < 0 )
+			return ( null );
+		
+		CacheKey key = this.toCacheKey(versionInfo, safeMode);
+		ClassInfo classInfo = this.classInfoCache.get(key);
+		
+		if ( classInfo != null )
+		{
+			this.hitCount++;
+			return ( classInfo );
+		}
+		
+		// recupera do gerenciador decorado
+		this.missCount++;
+		classInfo = this.delegate.getLiveClassInfo(liveClassName, safeMode);
+		
+		if ( classInfo != null )
+			this.classInfoCache.put(key, classInfo);
+		
+		return ( classInfo );
+	}
+	
+	@Override
+	public synchronized void saveLiveClassInfo(String liveClassName, ClassInfo liveClassInfo) throws Exception
+	{
+		this.delegate.saveLiveClassInfo(liveClassName, liveClassInfo);
+		
+		// a nova versao substitui a versao atual ainda nao aceita, se houver
+		this.versionInfoCache.remove(liveClassName);
+		this.invalidate(liveClassName, this.getLiveClassVersionInfo(liveClassName).getCurrentVersion());
+	}
+	
+	@Override
+	public synchronized ILiveClassVersionInfo getLiveClassVersionInfo(String liveClassName) throws Exception
+	{
+		ILiveClassVersionInfo versionInfo = this.versionInfoCache.get(liveClassName);
+		
+		if ( versionInfo == null )
+		{
+			versionInfo = this.delegate.getLiveClassVersionInfo(liveClassName);
+			this.versionInfoCache.put(liveClassName, versionInfo);
+		}
+		
+		return ( versionInfo );
+	}
+	
+	@Override
+	public synchronized List<ILiveClassVersionInfo> getAllLiveClassesVersionInfo() throws Exception
+	{
+		List<ILiveClassVersionInfo> versionInfoList = this.delegate.getAllLiveClassesVersionInfo();
+		
+		// atualiza o cache das informacoes de versionamento
+		for ( ILiveClassVersionInfo versionInfo : versionInfoList )
+			this.versionInfoCache.put(versionInfo.getClassName(), versionInfo);
+		
+		return ( versionInfoList );
+	}
+	
+	@Override
+	public synchronized boolean commitLiveClass(String liveClassName) throws Exception
+	{
+		try
+		{
+			// o bytecode das versoes nao eh alterado, somente o versionamento
+			return ( this.delegate.commitLiveClass(liveClassName) );
+		}
+		finally
+		{
+			this.versionInfoCache.remove(liveClassName);
+		}
+	}
+	
+	@Override
+	public synchronized boolean rollbackLiveClass(String liveClassName) throws Exception
+	{
+		try
+		{
+			return ( this.delegate.rollbackLiveClass(liveClassName) );
+		}
+		finally
+		{
+			// a versao descartada eh removida da persistencia
+			this.versionInfoCache.remove(liveClassName);
+			this.invalidate(liveClassName, this.getLiveClassVersionInfo(liveClassName).getCurrentVersion() + 1);
+		}
+	}
+	
+	@Override
+	public synchronized Map<String,ClassInfo> getLiveClassInfos(Collection<String> liveClassNames, boolean safeMode) throws Exception
+	{
+		Map<String,ClassInfo> classInfoMap = new LinkedHashMap<String,ClassInfo>();
+		
+		// obtem as versoes solicitadas (somente as nao armazenadas sao consultadas)
+		Map<String,ILiveClassVersionInfo> versionInfoMap = this.getLiveClassVersionInfos(liveClassNames);
+		List<String> missingNames = new ArrayList<String>();
+		
+		for ( ILiveClassVersionInfo versionInfo : versionInfoMap.values() )
+		{
+			// nao ha versao persistida para essa classe
+			if ( versionInfo.getSafeModeVersion() < 0 )
+				continue;
+			
+			ClassInfo classInfo = this.classInfoCache.get(this.toCacheKey(versionInfo, safeMode));
+			
+			if ( classInfo != null )
+			{
+				this.hitCount++;
+				classInfoMap.put(versionInfo.getClassName(), classInfo);
+			}
+			else
+				missingNames.add(versionInfo.getClassName());
+		}
+		
+		// recupera as demais do gerenciador decorado, em uma unica chamada
+		if (! missingNames.isEmpty() )
+		{
+			this.missCount += missingNames.size();
+			
+			for ( Map.Entry<String,ClassInfo> entry : this.delegate.getLiveClassInfos(missingNames, safeMode).entrySet() )
+			{
+				this.classInfoCache.put(this.toCacheKey(versionInfoMap.get(entry.getKey()), safeMode), entry.getValue());
+				classInfoMap.put(entry.getKey(), entry.getValue());
+			}
+		}
+		
+		return ( classInfoMap );
+	}
+	
+	@Override
+	public synchronized Map<String,ILiveClassVersionInfo> getLiveClassVersionInfos(Collection<String> liveClassNames) throws Exception
+	{
+		Map<String,ILiveClassVersionInfo> versionInfoMap = new LinkedHashMap<String,ILiveClassVersionInfo>();
+		List<String> missingNames = new ArrayList<String>();
+		
+		for ( String liveClassName : liveClassNames )
+		{
+			ILiveClassVersionInfo versionInfo = this.versionInfoCache.get(liveClassName);
+			
+			if ( versionInfo == null )
+				missingNames.add(liveClassName);
+			
+			versionInfoMap.put(liveClassName, versionInfo);
+		}
+		
+		// recupera as demais do gerenciador decorado, em uma unica chamada
+		if (! missingNames.isEmpty() )
+		{
+			for ( Map.Entry<String,ILiveClassVersionInfo> entry : this.delegate.getLiveClassVersionInfos(missingNames).entrySet() )
+			{
+				this.versionInfoCache.put(entry.getKey(), entry.getValue());
+				versionInfoMap.put(entry.getKey(), entry.getValue());
+			}
+		}
+		
+		return ( versionInfoMap );
+	}
+	
+	@Override
+	public synchronized List<ILiveClassVersionInfo> getLiveClassesVersionInfo(String afterClassName, int maxResults) throws Exception
+	{
+		List<ILiveClassVersionInfo> versionInfoList = this.delegate.getLiveClassesVersionInfo(afterClassName, maxResults);
+		
+		// atualiza o cache das informacoes de versionamento
+		for ( ILiveClassVersionInfo versionInfo : versionInfoList )
+			this.versionInfoCache.put(versionInfo.getClassName(), versionInfo);
+		
+		return ( versionInfoList );
+	}
+	
+	@Override
+	public synchronized List<Integer> getLiveClassVersionHistory(String liveClassName) throws Exception
+	{
+		return ( this.delegate.getLiveClassVersionHistory(liveClassName) );
+	}
+	
+	@Override
+	public synchronized void saveLiveClassInfos(Map<String,ClassInfo> liveClassInfos, boolean commit) throws Exception
+	{
+		try
+		{
+			this.delegate.saveLiveClassInfos(liveClassInfos, commit);
+		}
+		finally
+		{
+			// as novas versoes substituem as versoes atuais ainda nao aceitas, se houver
+			this.versionInfoCache.keySet().removeAll(liveClassInfos.keySet());
+			
+			for ( ILiveClassVersionInfo versionInfo : this.delegate.getLiveClassVersionInfos(liveClassInfos.keySet()).values() )
+			{
+				this.versionInfoCache.put(versionInfo.getClassName(), versionInfo);
+				this.invalidate(versionInfo.getClassName(), versionInfo.getCurrentVersion());
+			}
+		}
+	}
+	
+	@Override
+	public synchronized Map<String,Boolean> commitLiveClasses(Collection<String> liveClassNames) throws Exception
+	{
+		try
+		{
+			// o bytecode das versoes nao eh alterado, somente o versionamento
+			return ( this.delegate.commitLiveClasses(liveClassNames) );
+		}
+		finally
+		{
+			this.versionInfoCache.keySet().removeAll(liveClassNames);
+		}
+	}
+	
+	@Override
+	public synchronized Map<String,Boolean> rollbackLiveClasses(Collection<String> liveClassNames) throws Exception
+	{
+		try
+		{
+			return ( this.delegate.rollbackLiveClasses(liveClassNames) );
+		}
+		finally
+		{
+			// as versoes descartadas sao removidas da persistencia
+			this.versionInfoCache.keySet().removeAll(liveClassNames);
+			
+			for ( ILiveClassVersionInfo versionInfo : this.getLiveClassVersionInfos(liveClassNames).values() )
+				this.invalidate(versionInfo.getClassName(), versionInfo.getCurrentVersion() + 1);
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Descarta todas as informaes mantidas em memria.
+	 * <p><i>
+	 * Discards all the information kept in memory.
+	 * </i>
+	 */
+	public synchronized void clear()
+	{
+		this.classInfoCache.clear();
+		this.versionInfoCache.clear();
+	}
+	
+	/**
+	 * <p>
+	 * Obtm o nmero de consultas atendidas pelo cache.
+	 * <p><i>
+	 * Gets the number of lookups served by the cache.
+	 * </i>
+	 * 
+	 * @return o nmero de consultas atendidas pelo cache
+	 * <br><i>the number of lookups served by the cache</i>
+	 */
+	public synchronized long getHitCount()
+	{
+		return ( this.hitCount );
+	}
+	
+	/**
+	 * <p>
+	 * Obtm o nmero de consultas repassadas ao gerenciador de persistncia decorado.
+	 * <p><i>
+	 * Gets the number of lookups forwarded to the decorated persistence manager.
+	 * </i>
+	 * 
+	 * @return o nmero de consultas no atendidas pelo cache
+	 * <br><i>the number of lookups not served by the cache</i>
+	 */
+	public synchronized long getMissCount()
+	{
+		return ( this.missCount );
+	}
+	
+	/**
+	 * <p>
+	 * Obtm o nmero de entradas descartadas por exceder o tamanho mximo do cache.
+	 * <p><i>
+	 * Gets the number of entries evicted for exceeding the maximum cache size.
+	 * </i>
+	 * 
+	 * @return o nmero de entradas descartadas
+	 * <br><i>the number of evicted entries</i>
+	 */
+	public synchronized long getEvictionCount()
+	{
+		return ( this.evictionCount );
+	}
+	
+	/**
+	 * <p>
+	 * Obtm a taxa de acerto do cache, entre <b>0.0</b> e <b>1.0</b>.
+	 * <p><i>
+	 * Gets the cache hit ratio, between 0.0 and 1.0.
+	 * </i>
+	 * 
+	 * @return a taxa de acerto do cache
+	 * <br><i>the cache hit ratio</i>
+	 */
+	public synchronized double getHitRatio()
+	{
+		long total = this.hitCount + this.missCount;
+		
+		return ( total == 0 ? 0.0 : (double) this.hitCount / total );
+	}
+	
+	/**
+	 * <p>
+	 * Obtm o nmero de verses de classes mantidas em memria.
+	 * <p><i>
+	 * Gets the number of class versions kept in memory.
+	 * </i>
+	 * 
+	 * @return o nmero de verses de classes mantidas em memria
+	 * <br><i>the number of class versions kept in memory</i>
+	 */
+	public synchronized int getSize()
+	{
+		return ( this.classInfoCache.size() );
+	}
+	
+	@Override
+	public synchronized String toString()
+	{
+		return ( String.format("CachedLiveClassPersistence [size=%d/%d, hits=%d, misses=%d, evictions=%d, hitRatio=%.2f]",
+				this.classInfoCache.size(), this.maxEntries, this.hitCount, this.missCount, this.evictionCount, this.getHitRatio()) );
+	}
+	
+	/**
+	 * <p>
+	 * Obtm a chave do cache para a verso solicitada da classe dinmica.
+	 * <p><i>
+	 * Gets the cache key for the requested LiveClass version.
+	 * </i>
+	 */
+	private CacheKey toCacheKey(ILiveClassVersionInfo versionInfo, boolean safeMode)
+	{
+		return ( new CacheKey(versionInfo.getClassName(), safeMode ? versionInfo.getSafeModeVersion() : versionInfo.getCurrentVersion()) );
+	}
+	
+	/**
+	 * <p>
+	 * Descarta as informaes das verses da classe dinmica a partir da verso informada.
+	 * <p><i>
+	 * Discards the information of the LiveClass versions starting at the specified version.
+	 * </i>
+	 * 
+	 * @param liveClassName nome da classe dinmica
+	 * <br><i>name of the LiveClass</i>
+	 * @param fromVersion verso inicial a ser descartada
+	 * <br><i>the first version to be discarded</i>
+	 */
+	private void invalidate(String liveClassName, int fromVersion)
+	{
+		this.classInfoCache.keySet().removeIf(k -> k.className.equals(liveClassName) && (k.version >= fromVersion));
+		
+		// log: debug
+		LiveClassUtils.logDebug(String.format("Cache de classes invalidado: %s (versao >= %d) -> %s", liveClassName, fromVersion, this));
+	}
+	
+	
+	/**
+	 * <p>
+	 * Chave do cache, formada pelo nome e verso da classe dinmica.
+	 * <p><i>
+	 * Cache key, made of the LiveClass name and version.
+	 * </i>
+	 */
+	private static class CacheKey
+	{
+		// nome da classe dinamica
+		private final String className;
+		
+		// versao da classe dinamica
+		private final int version;
+		
+		
+		/**
+		 * <p>
+		 * Constri uma nova chave.
+		 * <p><i>
+		 * Constructs a new key.
+		 * </i>
+		 */
+		CacheKey(String className, int version)
+		{
+			this.className = className;
+			this.version = version;
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return ( Objects.hash(this.className, this.version) );
+		}
+		
+		@Override
+		public boolean equals(Object obj)
+		{
+			if ( !(obj instanceof CacheKey) )
+				return ( false );
+			
+			CacheKey other = (CacheKey) obj;
+			
+			return ( this.className.equals(other.className) && (this.version == other.version) );
+		}
+	}
+}
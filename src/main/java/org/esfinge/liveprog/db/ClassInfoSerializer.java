@@ -0,0 +1,626 @@
+package org.esfinge.liveprog.db;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.esfinge.liveprog.reflect.AnnotationInfo;
+import org.esfinge.liveprog.reflect.ClassInfo;
+import org.esfinge.liveprog.reflect.FieldInfo;
+import org.esfinge.liveprog.reflect.MethodInfo;
+import org.esfinge.liveprog.reflect.ParameterInfo;
+import org.esfinge.liveprog.reflect.TypeHandler;
+
+/**
+ * <p>
+ * Serializao binria compacta das informaes de uma classe (metadados),
+ * permitindo recuper-las sem inspecionar novamente o bytecode.
+ * <br>
+ * As strings repetidas (nomes, descritores de tipos e de anotaes) so gravadas uma nica vez
+ * e referenciadas pela sua posio nas ocorrncias seguintes. O bytecode e as classes internas
+ * no fazem parte da serializao.
+ * <p><i>
+ * Compact binary serialization of the class information (metadata),
+ * allowing it to be retrieved without inspecting the bytecode again.
+ * <br>
+ * Repeated strings (names, type and annotation descriptors) are written only once
+ * and referenced by their position on the following occurrences. The bytecode and the inner classes
+ * are not part of the serialization.
+ * </i>
+ */
+class ClassInfoSerializer
+{
+	// versao do formato serializado
+	private static final int FORMAT_VERSION = 1;
+	
+	// codigos das strings (os demais valores referenciam uma string ja gravada)
+	private static final int STRING_NULL = 0;
+	private static final int STRING_NEW = 1;
+	private static final int STRING_REF = 2;
+	
+	// tipos dos valores dos atributos das anotacoes
+	private static final int VALUE_STRING = 0;
+	private static final int VALUE_INTEGER = 1;
+	private static final int VALUE_LONG = 2;
+	private static final int VALUE_BOOLEAN = 3;
+	private static final int VALUE_BYTE = 4;
+	private static final int VALUE_CHARACTER = 5;
+	private static final int VALUE_SHORT = 6;
+	private static final int VALUE_FLOAT = 7;
+	private static final int VALUE_DOUBLE = 8;
+	private static final int VALUE_ANNOTATION = 9;
+	
+	
+	/**
+	 * <p>
+	 * Construtor privado, classe utilitria.
+	 * <p><i>
+	 * Private constructor, utilitary class.
+	 * </i>
+	 */
+	private ClassInfoSerializer()
+	{
+	}
+	
+	/**
+	 * <p>
+	 * Serializa as informaes da classe, exceto o bytecode e as classes internas.
+	 * <p><i>
+	 * Serializes the class information, except for the bytecode and the inner classes.
+	 * </i>
+	 * 
+	 * @param classInfo informaes da classe
+	 * <br><i>the class information</i>
+	 * @return as informaes serializadas
+	 * <br><i>the serialized information</i>
+	 * @throws IllegalArgumentException caso alguma anotao possua um valor de tipo no suportado
+	 * <br><i>if an annotation has a value of an unsupported type</i>
+	 */
+	static byte[] serialize(ClassInfo classInfo) throws IllegalArgumentException
+	{
+		try
+		{
+			Writer out = new Writer();
+			out.writeVarint(FORMAT_VERSION);
+			
+			out.writeInt(classInfo.getVersion());
+			out.writeVarint(classInfo.getAccessFlag());
+			out.writeString(classInfo.getName());
+			out.writeString(classInfo.getSuperclassName());
+			out.writeString(classInfo.getEnclosingClassName());
+			out.writeString(classInfo.getDeclaringClassName());
+			out.writeStrings(classInfo.getInnerClassNames());
+			out.writeStrings(classInfo.getInterfaceNames());
+			
+			// campos
+			out.writeVarint(classInfo.getFieldsInfo().size());
+			for ( FieldInfo field : classInfo.getFieldsInfo() )
+			{
+				out.writeVarint(field.getAccessFlag());
+				out.writeString(field.getName());
+				out.writeType(field.getType());
+				out.writeAnnotations(field.getAnnotationsInfo());
+			}
+			
+			// metodos
+			out.writeVarint(classInfo.getMethodsInfo().size());
+			for ( MethodInfo method : classInfo.getMethodsInfo() )
+			{
+				out.writeVarint(method.getAccessFlag());
+				out.writeString(method.getName());
+				out.writeType(method.getReturnType());
+				out.writeStrings(method.getThrownExceptionNames());
+				out.writeAnnotations(method.getAnnotationsInfo());
+				
+				out.writeVarint(method.getParametersInfo().size());
+				for ( ParameterInfo param : method.getParametersInfo() )
+				{
+					out.writeVarint(param.getIndex());
+					out.writeString(param.getName());
+					out.writeType(param.getType());
+					out.writeAnnotations(param.getAnnotationsInfo());
+				}
+			}
+			
+			// anotacoes da classe
+			out.writeAnnotations(classInfo.getAnnotationsInfo());
+			
+			return ( out.toByteArray() );
+		}
+		catch ( IOException e )
+		{
+			// nao ocorre ao gravar em memoria
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Recupera as informaes serializadas, preenchendo o objeto informado.
+	 * <p><i>
+	 * Restores the serialized information, filling the specified object.
+	 * </i>
+	 * 
+	 * @param data informaes serializadas
+	 * <br><i>the serialized information</i>
+	 * @param classInfo objeto a ser preenchido com as informaes da classe
+	 * <br><i>the object to be filled with the class information</i>
+	 * @return o objeto informado, preenchido
+	 * <br><i>the specified object, filled</i>
+	 * @throws IOException caso as informaes serializadas estejam corrompidas ou em um formato desconhecido
+	 * <br><i>if the serialized information is corrupted or in an unknown format</i>
+	 */
+	static <T extends ClassInfo> T deserialize(byte[] data, T classInfo) throws IOException
+	{
+		Reader in = new Reader(data);
+		
+		int format = in.readVarint();
+		if ( format != FORMAT_VERSION )
+			throw new IOException("Unknown class metadata format: " + format);
+		
+		classInfo.setVersion(in.readInt());
+		classInfo.setAccessFlag(in.readVarint());
+		classInfo.setName(in.readString());
+		classInfo.setSuperclassName(in.readString());
+		classInfo.setEnclosingClassName(in.readString());
+		classInfo.setDeclaringClassName(in.readString());
+		classInfo.addInnerClassName(in.readStrings());
+		classInfo.addInterfaceName(in.readStrings());
+		
+		// campos
+		for ( int i = in.readVarint(); i > 0; i-- )
+		{
+			FieldInfo field = new FieldInfo();
+			field.setAccessFlag(in.readVarint());
+			field.setName(in.readString());
+			field.setType(in.readType());
+			field.addAnnotationInfo(in.readAnnotations());
+			
+			classInfo.addFieldInfo(field);
+		}
+		
+		// metodos
+		for ( int i = in.readVarint(); i > 0; i-- )
+		{
+			MethodInfo method = new MethodInfo();
+			method.setAccessFlag(in.readVarint());
+			method.setName(in.readString());
+			method.setReturnType(in.readType());
+			method.addThrownExceptionName(in.readStrings());
+			method.addAnnotationInfo(in.readAnnotations());
+			
+			for ( int j = in.readVarint(); j > 0; j-- )
+			{
+				ParameterInfo param = new ParameterInfo();
+				param.setIndex(in.readVarint());
+				param.setName(in.readString());
+				param.setType(in.readType());
+				param.addAnnotationInfo(in.readAnnotations());
+				
+				method.addParameterInfo(param);
+			}
+			
+			classInfo.addMethodInfo(method);
+		}
+		
+		// anotacoes da classe
+		classInfo.addAnnotationInfo(in.readAnnotations());
+		
+		if ( in.available() > 0 )
+			throw new IOException("Invalid class metadata: " + in.available() + " trailing bytes");
+		
+		return ( classInfo );
+	}
+	
+	
+	/**
+	 * <p>
+	 * Gravao dos valores serializados, com a tabela das strings j gravadas.
+	 * <p><i>
+	 * Writes the serialized values, keeping the table of the strings already written.
+	 * </i>
+	 */
+	private static class Writer extends DataOutputStream
+	{
+		// posicao das strings ja gravadas
+		private Map<String,Integer> strings = new HashMap<String,Integer>();
+		
+		
+		/**
+		 * <p>
+		 * Constri um novo gravador em memria.
+		 * <p><i>
+		 * Constructs a new in-memory writer.
+		 * </i>
+		 */
+		Writer()
+		{
+			super(new ByteArrayOutputStream(256));
+		}
+		
+		/**
+		 * <p>
+		 * Obtm os bytes gravados.
+		 * <p><i>
+		 * Gets the written bytes.
+		 * </i>
+		 */
+		byte[] toByteArray()
+		{
+			return ( ((ByteArrayOutputStream) this.out).toByteArray() );
+		}
+		
+		/**
+		 * <p>
+		 * Grava o valor informado como um <i>varint</i> (7 bits por byte).
+		 * <p><i>
+		 * Writes the specified value as a varint (7 bits per byte).
+		 * </i>
+		 */
+		void writeVarint(int value) throws IOException
+		{
+			while ( (value & ~0x7F) != 0 )
+			{
+				this.write((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			
+			this.write(value);
+		}
+		
+		/**
+		 * <p>
+		 * Grava a string informada, ou a referncia para ela caso j tenha sido gravada.
+		 * <p><i>
+		 * Writes the specified string, or a reference to it if it has already been written.
+		 * </i>
+		 */
+		void writeString(String value) throws IOException
+		{
+			if ( value == null )
+			{
+				this.writeVarint(STRING_NULL);
+				return;
+			}
+			
+			Integer index = this.strings.get(value);
+			
+			if ( index != null )
+				this.writeVarint(STRING_REF + index);
+			else
+			{
+				this.strings.put(value, this.strings.size());
+				this.writeVarint(STRING_NEW);
+				this.writeUTF(value);
+			}
+		}
+		
+		/**
+		 * <p>
+		 * Grava a quantidade e as strings da coleo informada.
+		 * <p><i>
+		 * Writes the size and the strings of the specified collection.
+		 * </i>
+		 */
+		void writeStrings(Collection<String> values) throws IOException
+		{
+			this.writeVarint(values.size());
+			
+			for ( String value : values )
+				this.writeString(value);
+		}
+		
+		/**
+		 * <p>
+		 * Grava o descritor do tipo informado.
+		 * <p><i>
+		 * Writes the descriptor of the specified type.
+		 * </i>
+		 */
+		void writeType(TypeHandler type) throws IOException
+		{
+			this.writeString(type == null ? null : type.getDescriptor());
+		}
+		
+		/**
+		 * <p>
+		 * Grava a quantidade e as informaes das anotaes informadas, incluindo as anotaes aninhadas.
+		 * <p><i>
+		 * Writes the size and the information of the specified annotations, including the nested annotations.
+		 * </i>
+		 */
+		void writeAnnotations(Collection<AnnotationInfo> annotations) throws IOException
+		{
+			this.writeVarint(annotations.size());
+			
+			for ( AnnotationInfo annotation : annotations )
+			{
+				this.writeString(annotation.getName());
+				this.writeAnnotations(annotation.getAnnotationsInfo());
+				
+				this.writeVarint(annotation.getAttributesInfo().size());
+				for ( AnnotationInfo.AttributeInfo attribute : annotation.getAttributesInfo() )
+				{
+					this.writeString(attribute.getName());
+					this.writeType(attribute.getType());
+					
+					this.writeVarint(attribute.getValues().size());
+					for ( Object value : attribute.getValues() )
+						this.writeValue(value);
+				}
+			}
+		}
+		
+		/**
+		 * <p>
+		 * Grava o tipo e o valor de um atributo de anotao.
+		 * <p><i>
+		 * Writes the type and the value of an annotation attribute.
+		 * </i>
+		 */
+		void writeValue(Object value) throws IOException
+		{
+			if ( value instanceof String )
+			{
+				this.write(VALUE_STRING);
+				this.writeString((String) value);
+			}
+			else if ( value instanceof Integer )
+			{
+				this.write(VALUE_INTEGER);
+				this.writeInt((Integer) value);
+			}
+			else if ( value instanceof Long )
+			{
+				this.write(VALUE_LONG);
+				this.writeLong((Long) value);
+			}
+			else if ( value instanceof Boolean )
+			{
+				this.write(VALUE_BOOLEAN);
+				this.writeBoolean((Boolean) value);
+			}
+			else if ( value instanceof Byte )
+			{
+				this.write(VALUE_BYTE);
+				this.writeByte((Byte) value);
+			}
+			else if ( value instanceof Character )
+			{
+				this.write(VALUE_CHARACTER);
+				this.writeChar((Character) value);
+			}
+			else if ( value instanceof Short )
+			{
+				this.write(VALUE_SHORT);
+				this.writeShort((Short) value);
+			}
+			else if ( value instanceof Float )
+			{
+				this.write(VALUE_FLOAT);
+				this.writeFloat((Float) value);
+			}
+			else if ( value instanceof Double )
+			{
+				this.write(VALUE_DOUBLE);
+				this.writeDouble((Double) value);
+			}
+			else if ( value instanceof AnnotationInfo )
+			{
+				// anotacao aninhada
+				List<AnnotationInfo> annotation = new ArrayList<AnnotationInfo>();
+				annotation.add((AnnotationInfo) value);
+				
+				this.write(VALUE_ANNOTATION);
+				this.writeAnnotations(annotation);
+			}
+			else
+				throw new IllegalArgumentException("Unsupported annotation value: " + (value == null ? null : value.getClass().getName()));
+		}
+	}
+	
+	
+	/**
+	 * <p>
+	 * Leitura dos valores serializados, com a tabela das strings j lidas.
+	 * <p><i>
+	 * Reads the serialized values, keeping the table of the strings already read.
+	 * </i>
+	 */
+	private static class Reader extends DataInputStream
+	{
+		// strings ja lidas, na ordem em que foram gravadas
+		private List<String> strings = new ArrayList<String>();
+		
+		
+		/**
+		 * <p>
+		 * Constri um novo leitor para os bytes informados.
+		 * <p><i>
+		 * Constructs a new reader for the specified bytes.
+		 * </i>
+		 */
+		Reader(byte[] data)
+		{
+			super(new ByteArrayInputStream(data));
+		}
+		
+		/**
+		 * <p>
+		 * L um <i>varint</i> (7 bits por byte).
+		 * <p><i>
+		 * Reads a varint (7 bits per byte).
+		 * </i>
+		 */
+		int readVarint() throws IOException
+		{
+			int value = 0;
+			int shift = 0;
+			int b;
+			
+			do
+			{
+				if ( shift > 28 )
+					throw new IOException("Invalid class metadata: malformed varint");
+				
+				b = this.readUnsignedByte();
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			}
+			while ( (b & 0x80) != 0 );
+			
+			return ( value );
+		}
+		
+		/**
+		 * <p>
+		 * L uma string, ou a referncia para uma string j lida.
+		 * <p><i>
+		 * Reads a string, or a reference to a string already read.
+		 * </i>
+		 */
+		String readString() throws IOException
+		{
+			int code = this.readVarint();
+			
+			if ( code == STRING_NULL )
+				return ( null );
+			
+			if ( code == STRING_NEW )
+			{
+				String value = this.readUTF();
+				this.strings.add(value);
+				
+				return ( value );
+			}
+			
+			if ( code - STRING_REF >= this.strings.size() )
+				throw new IOException("Invalid class metadata: unknown string reference " + code);
+			
+			return ( this.strings.get(code - STRING_REF) );
+		}
+		
+		/**
+		 * <p>
+		 * L a quantidade e as strings de uma coleo.
+		 * <p><i>
+		 * Reads the size and the strings of a collection.
+		 * </i>
+		 */
+		String[] readStrings() throws IOException
+		{
+			String[] values = new String[this.readVarint()];
+			
+			for ( int i = 0; i < values.length; i++ )
+				values[i] = this.readString();
+			
+			return ( values );
+		}
+		
+		/**
+		 * <p>
+		 * L o descritor de um tipo.
+		 * <p><i>
+		 * Reads a type descriptor.
+		 * </i>
+		 */
+		TypeHandler readType() throws IOException
+		{
+			String descriptor = this.readString();
+			
+			return ( descriptor == null ? null : new TypeHandler(descriptor) );
+		}
+		
+		/**
+		 * <p>
+		 * L a quantidade e as informaes de um conjunto de anotaes, incluindo as anotaes aninhadas.
+		 * <p><i>
+		 * Reads the size and the information of a set of annotations, including the nested annotations.
+		 * </i>
+		 */
+		AnnotationInfo[] readAnnotations() throws IOException
+		{
+			AnnotationInfo[] annotations = new AnnotationInfo[this.readVarint()];
+			
+			for ( int i = 0; i < annotations.length; i++ )
+			{
+				annotations[i] = new AnnotationInfo();
+				annotations[i].setName(this.readString());
+				annotations[i].addAnnotationInfo(this.readAnnotations());
+				
+				for ( int j = this.readVarint(); j > 0; j-- )
+				{
+					AnnotationInfo.AttributeInfo attribute = new AnnotationInfo.AttributeInfo();
+					attribute.setName(this.readString());
+					attribute.setType(this.readType());
+					
+					for ( int k = this.readVarint(); k > 0; k-- )
+						attribute.addValue(this.readValue());
+					
+					annotations[i].addAttributeInfo(attribute);
+				}
+			}
+			
+			return ( annotations );
+		}
+		
+		/**
+		 * <p>
+		 * L o tipo e o valor de um atributo de anotao.
+		 * <p><i>
+		 * Reads the type and the value of an annotation attribute.
+		 * </i>
+		 */
+		Object readValue() throws IOException
+		{
+			int type = this.readUnsignedByte();
+			
+			switch ( type )
+			{
+				case VALUE_STRING:
+					return ( this.readString() );
+				
+				case VALUE_INTEGER:
+					return ( this.readInt() );
+				
+				case VALUE_LONG:
+					return ( this.readLong() );
+				
+				case VALUE_BOOLEAN:
+					return ( this.readBoolean() );
+				
+				case VALUE_BYTE:
+					return ( this.readByte() );
+				
+				case VALUE_CHARACTER:
+					return ( this.readChar() );
+				
+				case VALUE_SHORT:
+					return ( this.readShort() );
+				
+				case VALUE_FLOAT:
+					return ( this.readFloat() );
+				
+				case VALUE_DOUBLE:
+					return ( this.readDouble() );
+				
+				case VALUE_ANNOTATION:
+					AnnotationInfo[] annotation = this.readAnnotations();
+					if ( annotation.length != 1 )
+						throw new IOException("Invalid class metadata: nested annotation count " + annotation.length);
+					
+					return ( annotation[0] );
+				
+				default:
+					throw new IOException("Invalid class metadata: unknown value type " + type);
+			}
+		}
+	}
+}
@@ -1,7 +1,10 @@
 package org.esfinge.liveprog.db;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
@@ -9,12 +12,21 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.esfinge.liveprog.instrumentation.InstrumentationHelper;
 import org.esfinge.liveprog.reflect.ClassInfo;
 import org.esfinge.liveprog.util.LiveClassUtils;
 import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteErrorCode;
 
 /**
  * <p>
@@ -38,16 +50,140 @@ public class DefaultLiveClassPersistence implements ILiveClassPersistence
 	// caminho para o arquivo do BD
 	private static String _dbFilePath = "liveclasses.db";
 	
+	// tamanho maximo do I/O mapeado em memoria (bytes)
+	private static final long MMAP_SIZE = 64L * 1024 * 1024;
+	
+	// tempo de espera pelo lock do BD (milissegundos)
+	private static final int BUSY_TIMEOUT = 5000;
+	
+	// versao atual do esquema do BD (PRAGMA user_version)
+	private static final int SCHEMA_VERSION = 6;
+	
+	// comandos de migracao do esquema do BD, 
+	// onde o indice i contem os comandos para migrar da versao i para a versao i+1
+	private static final String[][] SCHEMA_MIGRATIONS = {
+		{
+			// ponteiro para a versao atual da classe, evitando o MAX(version)
+			"ALTER TABLE LiveClass ADD COLUMN currentVersion integer",
+			"UPDATE LiveClass SET currentVersion = (SELECT MAX(c.version) FROM ClassVersion c WHERE c.id_class = LiveClass.id)",
+			
+			// indices para as buscas por nome, por versao (cobre a chave da versao) e por classes internas
+			"CREATE UNIQUE INDEX IF NOT EXISTS idx_LiveClass_className ON LiveClass (className)",
+			"CREATE UNIQUE INDEX IF NOT EXISTS idx_ClassVersion_class_version ON ClassVersion (id_class, version)",
+			"CREATE INDEX IF NOT EXISTS idx_InnerClasses_version ON InnerClasses (id_version)"
+		},
+		{
+			// formato dos bytecodes persistidos (registros existentes permanecem nao compactados)
+			"ALTER TABLE ClassVersion ADD COLUMN format integer NOT NULL DEFAULT " + BytecodeCompression.FORMAT_RAW,
+			"ALTER TABLE InnerClasses ADD COLUMN format integer NOT NULL DEFAULT " + BytecodeCompression.FORMAT_RAW
+		},
+		{
+			// versao base dos bytecodes persistidos como delta (NULL para versoes completas)
+			"ALTER TABLE ClassVersion ADD COLUMN id_base integer"
+		},
+		{
+			// repositorio de bytecodes enderecado pelo conteudo (SHA-256), com contagem de referencias;
+			// id_base e depth descrevem a cadeia de deltas do registro
+			"CREATE TABLE IF NOT EXISTS Blob ("        + 
+			"	id integer PRIMARY KEY AUTOINCREMENT," + 
+			"	hash BLOB NOT NULL,"                   + 
+			"	data BLOB NOT NULL,"                   + 
+			"	format integer NOT NULL,"              + 
+			"	id_base integer,"                      + 
+			"	depth integer NOT NULL DEFAULT 0,"     + 
+			"	refCount integer NOT NULL DEFAULT 0);",
+			"CREATE UNIQUE INDEX IF NOT EXISTS idx_Blob_hash ON Blob (hash)",
+			
+			// as versoes e classes internas passam a referenciar o repositorio
+			// (as colunas bytecode, format e id_base destas tabelas ficam vazias)
+			"ALTER TABLE ClassVersion ADD COLUMN id_blob integer",
+			"ALTER TABLE InnerClasses ADD COLUMN id_blob integer"
+		},
+		{
+			// informacoes das classes ja inspecionadas (metadados serializados), 
+			// evitando inspecionar o bytecode ao recuperar uma versao
+			"ALTER TABLE ClassVersion ADD COLUMN metadata BLOB",
+			"ALTER TABLE InnerClasses ADD COLUMN metadata BLOB"
+		},
+		{
+			// instante de criacao das versoes, para a politica de retencao por idade
+			// (as versoes existentes recebem o instante da migracao)
+			"ALTER TABLE ClassVersion ADD COLUMN createdAt integer",
+			"UPDATE ClassVersion SET createdAt = CAST(strftime('%s', 'now') AS integer) * 1000"
+		}
+	};
+	
+	// numero maximo de entradas do cache de bytecodes reconstruidos
+	private static final int RECONSTRUCTION_CACHE_SIZE = 64;
+	
+	// intervalo entre versoes completas (keyframes) de uma classe, as demais sao persistidas como delta
+	private static int _keyframeInterval = 10;
+	
+	// bytecode vazio, gravado nas colunas legadas das tabelas ClassVersion e InnerClasses
+	private static final byte[] EMPTY_BYTECODE = new byte[0];
+	
+	// politica de retencao: quantidade de versoes mais recentes mantidas por classe (0 mantem todas as versoes)
+	private static int _retainedVersions = 0;
+	
+	// politica de retencao: idade (ms) abaixo da qual as versoes sao mantidas, independentemente da quantidade
+	private static long _retainedAgeMillis = 0;
+	
+	// numero maximo de versoes removidas por transacao durante a manutencao
+	private static final int MAINTENANCE_BATCH_SIZE = 256;
+	
+	// numero maximo de paginas liberadas por execucao do VACUUM incremental
+	private static final int VACUUM_PAGES_PER_RUN = 4096;
+	
+	// numero maximo de classes por consulta nas operacoes em lote (limite de parametros do SQLite)
+	private static final int BULK_QUERY_SIZE = 500;
+	
+	// nome e caminho do arquivo do BD desta instancia
+	private String dbFilePath;
+	
+	// conexao com o BD, mantida aberta entre as operacoes
+	private Connection connection;
+	
+	// cache dos comandos preparados, por clausula SQL
+	private Map<String,PreparedStatement> statementCache;
+	
+	// cache LRU dos bytecodes reconstruidos, pela chave do registro na tabela Blob
+	private Map<Integer,byte[]> reconstructionCache;
+	
+	// tarefa de manutencao executada em segundo plano
+	private ScheduledExecutorService maintenanceExecutor;
+	
+	// instante do ultimo acesso ao BD, para executar a manutencao somente com o BD ocioso
+	private volatile long lastAccess;
+	
+	// indica se a manutencao esta em execucao (seus acessos nao contam como uso do BD)
+	private boolean inMaintenance;
+	
+	// total de bytes liberados pela manutencao
+	private long reclaimedBytes;
+	
 	
 	/**
 	 * <p>
-	 * Construtor padro, privado para garantir o uso da classe somente via Singleton.
+	 * Construtor privado, para garantir o uso da classe somente via Singleton ou {@link #newInstance(String)}.
 	 * <p><i>
-	 * Default private constructor to ensure the usage of the Singleton pattern.
+	 * Private constructor to ensure the usage of the Singleton pattern or {@link #newInstance(String)}.
 	 * </i>
+	 * 
+	 * @param dbFilePath nome e caminho para o arquivo de base de dados
+	 * <br><i>filename and path of the database file</i>
 	 */
-	private DefaultLiveClassPersistence()
+	private DefaultLiveClassPersistence(String dbFilePath)
 	{		
+		this.dbFilePath = dbFilePath;
+		this.statementCache = new HashMap<String,PreparedStatement>();
+		this.reconstructionCache = new LinkedHashMap<Integer,byte[]>(16, 0.75f, true)
+		{
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer,byte[]> eldest)
+			{
+				return ( this.size() > RECONSTRUCTION_CACHE_SIZE );
+			}
+		};
 	}
 	
 	/**
@@ -68,6 +204,69 @@ public class DefaultLiveClassPersistence implements ILiveClassPersistence
 		LiveClassUtils.logDebug("database file: '" + filePath + "'");
 	}
 	
+	/**
+	 * <p>
+	 * Especifica o intervalo entre as verses completas (<i>keyframes</i>) de uma classe dinmica.
+	 * As demais verses so persistidas como delta em relao  verso anterior.
+	 * O valor <b>1</b> desabilita a persistncia por delta.
+	 * <p><i>
+	 * Sets the interval between full versions (keyframes) of a LiveClass.
+	 * The other versions are persisted as deltas against their previous version.
+	 * The value 1 disables delta persistence.
+	 * </i>
+	 * 
+	 * @param interval intervalo entre as verses completas
+	 * <br><i>the interval between full versions</i>
+	 * @throws IllegalArgumentException caso o intervalo seja menor que 1
+	 * <br><i>if the interval is lower than 1</i>
+	 */
+	public static void setKeyframeInterval(int interval) throws IllegalArgumentException
+	{
+		if ( interval < 1 )
+			throw new IllegalArgumentException("Keyframe interval must be at least 1!");
+		
+		_keyframeInterval = interval;
+		
+		// log: debug
+		LiveClassUtils.logDebug("keyframe interval: " + interval);
+	}
+	
+	/**
+	 * <p>
+	 * Especifica a poltica de reteno do histrico de verses das classes dinmicas, aplicada pela manuteno do BD.
+	 * <br>
+	 * Uma verso  removida somente se no estiver entre as <i>keepLastVersions</i> verses mais recentes da classe
+	 * e for mais antiga que <i>keepNewerThanMillis</i>. As verses atual e do modo seguro nunca so removidas.
+	 * <p><i>
+	 * Sets the retention policy of the LiveClasses version history, applied by the database maintenance.
+	 * <br>
+	 * A version is only removed if it is not among the keepLastVersions most recent versions of the class
+	 * and is older than keepNewerThanMillis. The current and safe mode versions are never removed.
+	 * </i>
+	 * 
+	 * @param keepLastVersions quantidade de verses mais recentes mantidas por classe
+	 * <br><i>the number of most recent versions kept per class</i>
+	 * @param keepNewerThanMillis idade, em milissegundos, abaixo da qual as verses so mantidas
+	 * <br><i>the age, in milliseconds, below which versions are kept</i>
+	 * @throws IllegalArgumentException caso a quantidade seja menor que 1 ou a idade seja negativa
+	 * <br><i>if the number of versions is lower than 1 or the age is negative</i>
+	 * @see #runMaintenance()
+	 */
+	public static void setRetentionPolicy(int keepLastVersions, long keepNewerThanMillis) throws IllegalArgumentException
+	{
+		if ( keepLastVersions < 1 )
+			throw new IllegalArgumentException("Retained versions must be at least 1: " + keepLastVersions);
+		
+		if ( keepNewerThanMillis < 0 )
+			throw new IllegalArgumentException("Retained age must not be negative: " + keepNewerThanMillis);
+		
+		_retainedVersions = keepLastVersions;
+		_retainedAgeMillis = keepNewerThanMillis;
+		
+		// log: debug
+		LiveClassUtils.logDebug(String.format("retention policy: last %d versions, newer than %d ms", keepLastVersions, keepNewerThanMillis));
+	}
+	
 	/**
 	 * <p>
 	 * Obtm a instncia para persistncia de classes dinmicas.
@@ -90,15 +289,48 @@ public class DefaultLiveClassPersistence implements ILiveClassPersistence
 		
 		if ( _singleton == null )
 		{
-			_singleton = new DefaultLiveClassPersistence();
+			_singleton = new DefaultLiveClassPersistence(_dbFilePath);
 			_singleton.configure();
 		}
 		
 		return ( _singleton );
 	}
 	
+	/**
+	 * <p>
+	 * Cria uma instncia isolada para persistncia de classes dinmicas, independente do <i>Singleton</i>, 
+	 * utilizando o arquivo de persistncia informado.
+	 * <br>
+	 * Cada arquivo deve ser utilizado por uma nica instncia, pois o controle de concorrncia  feito por instncia.
+	 * <p><i>
+	 * Creates an isolated instance for LiveClasses persistence, independent of the Singleton,
+	 * using the specified database file.
+	 * <br>
+	 * Each file must be used by a single instance, since the concurrency control is done per instance.
+	 * </i>
+	 * 
+	 * @param filePath nome e caminho para o arquivo de base de dados
+	 * <br><i>filename and path of the database file</i>
+	 * @return uma nova instncia para a persistncia de classes dinmicas
+	 * <br><i>a new instance for persistence of LiveClasses</i>
+	 * @throws IllegalArgumentException caso o arquivo de persistncia no seja informado
+	 * <br><i>if the database file path is not specified</i>
+	 * @throws SQLException em caso de erros com o banco de dados
+	 * <br><i>if an error occurs when configuring the database</i>
+	 */
+	public static DefaultLiveClassPersistence newInstance(String filePath) throws IllegalArgumentException, SQLException
+	{
+		if ( filePath == null )
+			throw new IllegalArgumentException("Database file path not set!");
+		
+		DefaultLiveClassPersistence instance = new DefaultLiveClassPersistence(filePath);
+		instance.configure();
+		
+		return ( instance );
+	}
+	
 	@Override
-	public ClassInfo getLiveClassInfo(String liveClassName, boolean safeMode) throws Exception
+	public synchronized ClassInfo getLiveClassInfo(String liveClassName, boolean safeMode) throws Exception
 	{
 		// obtem a conexao com o BD
 		Connection conn = this.getConnection();
@@ -110,81 +342,29 @@ public class DefaultLiveClassPersistence implements ILiveClassPersistence
 		if ( keysInfo.getSafeModeVersion() < 0 )
 			return ( null );
 		
-		// bytecode da classe
-		byte[] classBytecode;
-		
-		if ( safeMode )
-			classBytecode = this.readFromClassVersionTable(conn, keysInfo.getClassId(), keysInfo.getSafeModeVersion());
-		else
-			classBytecode = this.readFromClassVersionTable(conn, keysInfo.getClassId(), keysInfo.getSafeModeVersion());
+		// versao solicitada
+		int version = safeMode ? keysInfo.getSafeModeVersion() : keysInfo.getCurrentVersion();
 		
 		// recupera as informacoes da classe
-		ClassInfo classInfo = InstrumentationHelper.inspect(classBytecode);
-		
-		// obtem os bytecodes das classes internas..
-		List<byte[]> innerClassesBytecodeList = this.readFromInnerClassesTable(conn, keysInfo.getVersionId());
+		// (a partir dos metadados persistidos, sem inspecionar os bytecodes)
+		ClassInfo classInfo = this.readFromClassVersionTable(conn, keysInfo.getClassId(), version);
 		
 		// recupera as informacoes das classes internas
-		for ( byte[] innerClassBytecode : innerClassesBytecodeList )
-			classInfo.addInnerClassInfo(InstrumentationHelper.inspect(innerClassBytecode));
-		
-		// fecha a conexao com o BD
-		conn.close();
+		for ( ClassInfo innerClassInfo : this.readFromInnerClassesTable(conn, keysInfo.getClassId(), version) )
+			classInfo.addInnerClassInfo(innerClassInfo);
 		
 		return ( classInfo );
 	}
 	
 	@Override
-	public void saveLiveClassInfo(String liveClassName, ClassInfo liveClassInfo) throws SQLException
+	public synchronized void saveLiveClassInfo(String liveClassName, ClassInfo liveClassInfo) throws SQLException
 	{
-		// obtem a conexao com o BD
-		Connection conn = this.getConnection();
-
-		// obtem as versoes da classe salvas no BD
-		TableKeysInfo keysInfo = this.getTableKeysInfo(conn, liveClassName);
-		
-		// nao ha versao salva no BD para essa classe
-		if ( keysInfo.getCurrentVersion() < 0 )
-		{
-			// primeira versao				
-			int version = 1;
-			
-			// salva as informacoes da classe
-			int classId = this.saveToLiveClassTable(conn, liveClassName, version);
-			
-			// salva a versao e o bytecode da classe
-			int versionId = this.saveToClassVersionTable(conn, classId, version, liveClassInfo.getBytecode());
-			
-			// salva as classes internas da classe
-			for ( ClassInfo innerClass : liveClassInfo.getInnerClassesInfo() )
-				this.saveInnerClass(conn, versionId, innerClass);
-		}
-		else
-		{
-			// ja existe uma versao salva, atualiza a tabela de versoes..
-			
-			// verifica a versao do modo seguro
-			if ( keysInfo.getSafeModeVersion() != keysInfo.getCurrentVersion() )
-			{
-				// remove a versao de teste atual para incluir a nova versao
-				// (e as classes internas associadas a essa versao)
-				this.removeFromClassVersionTable(conn, keysInfo.getVersionId());
-			}
-			
-			// insere na tabela de versoes
-			int versionId = this.saveToClassVersionTable(conn, keysInfo.getClassId(), keysInfo.getSafeModeVersion()+1, liveClassInfo.getBytecode());
-				
-			// salva as classes internas da classe
-			for ( ClassInfo innerClass : liveClassInfo.getInnerClassesInfo() )
-				this.saveInnerClass(conn, versionId, innerClass);
-		}
-		
-		// fecha a conexao com o BD
-		conn.close();
+		// salva a nova versao em uma unica transacao
+		this.executeInTransaction(conn -> this.saveNewVersion(conn, liveClassName, liveClassInfo));
 	}
 
 	@Override
-	public ILiveClassVersionInfo getLiveClassVersionInfo(String liveClassName) throws SQLException
+	public synchronized ILiveClassVersionInfo getLiveClassVersionInfo(String liveClassName) throws SQLException
 	{
 		// obtem a conexao com o BD
 		Connection conn = this.getConnection();
@@ -192,14 +372,11 @@ public class DefaultLiveClassPersistence implements ILiveClassPersistence
 		// obtem as versoes da classe salvas no BD
 		TableKeysInfo keysInfo = this.getTableKeysInfo(conn, liveClassName);
 		
-		// fecha a conexao com o BD
-		conn.close();
-
 		return ( keysInfo );
 	}
 	
 	@Override
-	public List<ILiveClassVersionInfo> getAllLiveClassesVersionInfo() throws SQLException
+	public synchronized List<ILiveClassVersionInfo> getAllLiveClassesVersionInfo() throws SQLException
 	{
 		// obtem a conexao com o BD
 		Connection conn = this.getConnection();
@@ -207,66 +384,195 @@ public class DefaultLiveClassPersistence implements ILiveClassPersistence
 		// obtem as versoes da classe salvas no BD
 		List<TableKeysInfo> keysInfoList = this.getAllTableKeysInfo(conn);
 
-		// fecha a conexao com o BD
-		conn.close();
-
 		return ( new ArrayList<ILiveClassVersionInfo>(keysInfoList) );
 	}
 	
 	@Override
-	public boolean commitLiveClass(String liveClassName) throws SQLException
+	public synchronized boolean commitLiveClass(String liveClassName) throws SQLException
+	{
+		// aceita a versao atual em uma unica transacao
+		return ( this.executeInTransaction(conn -> this.commitVersion(conn, liveClassName)) );
+	}
+
+	@Override
+	public synchronized boolean rollbackLiveClass(String liveClassName) throws SQLException
+	{
+		// descarta a versao atual em uma unica transacao
+		return ( this.executeInTransaction(conn -> this.rollbackVersion(conn, liveClassName)) );
+	}
+
+	@Override
+	public synchronized Map<String,ClassInfo> getLiveClassInfos(Collection<String> liveClassNames, boolean safeMode) throws SQLException
 	{
 		// obtem a conexao com o BD
 		Connection conn = this.getConnection();
 		
-		// obtem as versoes da classe salvas no BD
-		TableKeysInfo keysInfo = this.getTableKeysInfo(conn, liveClassName);
-		
-		// 
-		boolean updated = false;
+		Map<String,ClassInfo> classInfoMap = new LinkedHashMap<String,ClassInfo>();
 		
-		// a versao do modo seguro eh diferente da versao do modo padrao?
-		if ( keysInfo.getSafeModeVersion() < keysInfo.getCurrentVersion() )
+		// versoes solicitadas das classes e suas classes internas, em uma unica consulta por lote
+		for ( List<String> names : partition(liveClassNames) )
 		{
-			// atualiza a versao do modo seguro
-			updated = this.updateSafeModeVersion(conn, liveClassName, keysInfo.getCurrentVersion());
+			String SQL = "SELECT l.className, c.id_blob, c.metadata, i.id_blob, i.metadata " + 
+						 "FROM LiveClass l JOIN ClassVersion c ON c.id_class = l.id AND c.version = " + 
+						 (safeMode ? "l.safeModeVersion " : "l.currentVersion ") + 
+						 "LEFT JOIN InnerClasses i ON i.id_version = c.id " + 
+						 "WHERE l.className IN (" + placeholders(names.size()) + ")";
+			
+			// log: debug
+			LiveClassUtils.logDebug(this.debugSQL(SQL, names));
+			
+			try ( PreparedStatement pStmt = conn.prepareStatement(SQL) )
+			{
+				for ( int i = 0; i < names.size(); i++ )
+					pStmt.setString(i + 1, names.get(i));
+				
+				try ( ResultSet rs = pStmt.executeQuery() )
+				{
+					while ( rs.next() )
+					{
+						// informacoes da classe, repetidas para cada classe interna
+						ClassInfo classInfo = classInfoMap.get(rs.getString(1));
+						
+						if ( classInfo == null )
+						{
+							classInfo = this.toClassInfo(conn, rs.getInt(2), rs.getBytes(3));
+							classInfoMap.put(rs.getString(1), classInfo);
+						}
+						
+						// classe interna, se houver
+						if ( rs.getObject(4) != null )
+							classInfo.addInnerClassInfo(this.toClassInfo(conn, rs.getInt(4), rs.getBytes(5)));
+					}
+				}
+			}
 		}
 		
-		// fecha a conexao com o BD
-		conn.close();
+		// log: debug
+		LiveClassUtils.logDebug(String.format("classes encontradas -> %d/%d", classInfoMap.size(), liveClassNames.size()));
 		
-		return ( updated );
+		return ( classInfoMap );
 	}
-
+	
 	@Override
-	public boolean rollbackLiveClass(String liveClassName) throws SQLException
+	public synchronized Map<String,ILiveClassVersionInfo> getLiveClassVersionInfos(Collection<String> liveClassNames) throws SQLException
 	{
-		// obtem a conexao com o BD
-		Connection conn = this.getConnection();
+		// obtem as versoes das classes salvas no BD
+		Map<String,TableKeysInfo> keysInfoMap = this.getTableKeysInfo(this.getConnection(), liveClassNames);
 		
-		// obtem as versoes da classe salvas no BD
-		TableKeysInfo keysInfo = this.getTableKeysInfo(conn, liveClassName);
+		return ( new LinkedHashMap<String,ILiveClassVersionInfo>(keysInfoMap) );
+	}
+	
+	@Override
+	public synchronized List<ILiveClassVersionInfo> getLiveClassesVersionInfo(String afterClassName, int maxResults) throws SQLException
+	{
+		//
+		String SQL = "SELECT l.className, l.id, c.id, l.safeModeVersion, l.currentVersion " + 
+					 "FROM LiveClass l, ClassVersion c " + 
+					 "WHERE c.id_class = l.id AND c.version = l.currentVersion AND (? IS NULL OR l.className > ?) " + 
+					 "ORDER BY l.className LIMIT ?";
+		
+		// log: debug
+		LiveClassUtils.logDebug(this.debugSQL(SQL, afterClassName, afterClassName, maxResults));
+		
+		PreparedStatement pStmt = this.prepareStatement(this.getConnection(), SQL);
+		pStmt.setString(1, afterClassName);
+		pStmt.setString(2, afterClassName);
+		pStmt.setInt(3, Math.max(maxResults, 0));
+		
+		return ( new ArrayList<ILiveClassVersionInfo>(this.readTableKeysInfo(pStmt)) );
+	}
+	
+	@Override
+	public synchronized List<Integer> getLiveClassVersionHistory(String liveClassName) throws SQLException
+	{
+		//
+		String SQL = "SELECT c.version FROM LiveClass l, ClassVersion c " + 
+					 "WHERE l.className = ? AND c.id_class = l.id ORDER BY c.version";
 		
-		// verifica se nao eh a primeira versao
-		if ( keysInfo.getCurrentVersion() > 1 )
+		// log: debug
+		LiveClassUtils.logDebug(this.debugSQL(SQL, liveClassName));
+		
+		PreparedStatement pStmt = this.prepareStatement(this.getConnection(), SQL);
+		pStmt.setString(1, liveClassName);
+		
+		List<Integer> versions = new ArrayList<Integer>();
+		
+		try ( ResultSet rs = pStmt.executeQuery() )
 		{
-			// retrocede uma versao
-			int newVersion = keysInfo.getCurrentVersion() - 1;
-
-			// verifica a versao do modo seguro
-			if ( keysInfo.getSafeModeVersion() == keysInfo.getCurrentVersion() )
-				this.updateSafeModeVersion(conn, liveClassName, newVersion);
-			
-			// 
-			this.removeFromClassVersionTable(conn, keysInfo.getVersionId());
+			while ( rs.next() )
+				versions.add(rs.getInt(1));
 		}
 		
-		// fecha a conexao com o BD
-		conn.close();
-		
-		return ( true );
+		return ( versions );
 	}
-
+	
+	@Override
+	public synchronized void saveLiveClassInfos(Map<String,ClassInfo> liveClassInfos, boolean commit) throws SQLException
+	{
+		// persiste todas as versoes em uma unica transacao
+		this.executeInTransaction(conn -> {
+			for ( Map.Entry<String,ClassInfo> entry : liveClassInfos.entrySet() )
+			{
+				this.saveNewVersion(conn, entry.getKey(), entry.getValue());
+				
+				if ( commit )
+					this.commitVersion(conn, entry.getKey());
+			}
+			
+			return ( null );
+		});
+	}
+	
+	@Override
+	public synchronized Map<String,Boolean> commitLiveClasses(Collection<String> liveClassNames) throws SQLException
+	{
+		// aceita as versoes atuais em uma unica transacao
+		return ( this.executeInTransaction(conn -> 
+		{
+			Map<String,Boolean> resultMap = new LinkedHashMap<String,Boolean>();
+			
+			// classes cuja versao atual ainda nao foi aceita
+			for ( TableKeysInfo keysInfo : this.getTableKeysInfo(conn, liveClassNames).values() )
+				resultMap.put(keysInfo.getClassName(), keysInfo.getSafeModeVersion() < keysInfo.getCurrentVersion());
+			
+			// atualiza a versao do modo seguro, em um unico comando por lote
+			for ( List<String> names : partition(liveClassNames) )
+			{
+				String SQL = "UPDATE LiveClass SET safeModeVersion = currentVersion " + 
+							 "WHERE safeModeVersion < currentVersion AND className IN (" + placeholders(names.size()) + ")";
+				
+				// log: debug
+				LiveClassUtils.logDebug(this.debugSQL(SQL, names));
+				
+				try ( PreparedStatement pStmt = conn.prepareStatement(SQL) )
+				{
+					for ( int i = 0; i < names.size(); i++ )
+						pStmt.setString(i + 1, names.get(i));
+					
+					// log: debug
+					LiveClassUtils.logDebug(String.format("registros afetados -> %d", pStmt.executeUpdate()));
+				}
+			}
+			
+			return ( resultMap );
+		}) );
+	}
+	
+	@Override
+	public synchronized Map<String,Boolean> rollbackLiveClasses(Collection<String> liveClassNames) throws SQLException
+	{
+		// descarta as versoes atuais em uma unica transacao
+		return ( this.executeInTransaction(conn -> 
+		{
+			Map<String,Boolean> resultMap = new LinkedHashMap<String,Boolean>();
+			
+			for ( String liveClassName : liveClassNames )
+				resultMap.put(liveClassName, this.rollbackVersion(conn, liveClassName));
+			
+			return ( resultMap );
+		}) );
+	}
+	
 	/**
 	 * <p>
 	 * Configura o acesso ao banco de dados.
@@ -282,19 +588,26 @@ public class DefaultLiveClassPersistence implements ILiveClassPersistence
 		// obtem a conexao com o BD
 		Connection conn = this.getConnection();
 		
-		try
+		// cria as tabelas do BD, caso nao existam
+		String SQL = "CREATE TABLE IF NOT EXISTS LiveClass (" + 
+					 " id integer PRIMARY KEY AUTOINCREMENT," + 
+					 " className text NOT NULL," + 
+					 " safeModeVersion integer);";
+		
+		// log: debug
+		LiveClassUtils.logDebug(SQL);
+
+		// cria a tabela de versao corrente
+		try ( Statement stmt = conn.createStatement() )
 		{
-			// cria as tabelas do BD, caso nao existam
-			String SQL = "CREATE TABLE IF NOT EXISTS LiveClass (" + 
-						 " id integer PRIMARY KEY AUTOINCREMENT," + 
-						 " className text NOT NULL," + 
-						 " safeModeVersion integer);";
+			// habilita o auto_vacuum incremental nos BDs novos, cujo VACUUM nao tem custo por estarem vazios
+			// (o modo WAL ja inicializou o arquivo; nos BDs existentes, deve ser habilitado por enableIncrementalVacuum())
+			if ( this.isEmptyDatabase(stmt) )
+			{
+				stmt.execute("PRAGMA auto_vacuum = INCREMENTAL");
+				stmt.execute("VACUUM");
+			}
 			
-			// log: debug
-			LiveClassUtils.logDebug(SQL);
-
-			// cria a tabela de versao corrente
-			Statement stmt = conn.createStatement();
 			stmt.execute(SQL);
 
 			// cria a tabela de versoes das classes
@@ -324,257 +637,1815 @@ public class DefaultLiveClassPersistence implements ILiveClassPersistence
 			
 			stmt.execute(SQL);
 
+			// atualiza o esquema do BD para a versao atual
+			this.migrateSchema(conn);
+			
 			// log: info
-			LiveClassUtils.logInfo("Conexao com o banco de dados '" + Paths.get(_dbFilePath).toAbsolutePath() + "' estabelecida!");
+			LiveClassUtils.logInfo("Conexao com o banco de dados '" + Paths.get(this.dbFilePath).toAbsolutePath() + "' estabelecida!");
 		}		
-		
-		finally
+		catch ( SQLException e )
 		{
-			conn.close();
+			// descarta a conexao em caso de erro
+			this.close();
+			
+			throw e;
 		}
 	}
 	
 	/**
 	 * <p>
-	 * Obtm uma conexo com o banco de dados.
+	 * Atualiza o esquema do banco de dados para a verso atual, aplicando em uma nica transao 
+	 * as migraes pendentes a partir da verso registrada no <i>PRAGMA user_version</i>.
 	 * <p><i>
-	 * Gets a database connection.
+	 * Upgrades the database schema to the current version, applying in a single transaction 
+	 * the pending migrations from the version recorded on the user_version PRAGMA.
 	 * </i>
 	 * 
-	 * @return uma conexo com o banco de dados 
-	 * <br><i>a database connection</i>
+	 * @param conn conexo com o banco de dados
+	 * <br><i>the database connection</i>
 	 * @throws SQLException em caso de erros com o banco de dados
 	 * <br><i>if an error occurs when accessing the database</i>
 	 */
-	private Connection getConnection() throws SQLException
+	private void migrateSchema(Connection conn) throws SQLException
 	{
-		// arquivo do BD
-		File dbFile = Paths.get(_dbFilePath).toFile();
-
-		// URL JDBC
-		String url = "jdbc:sqlite:" + dbFile.getAbsolutePath();
+		try ( Statement stmt = conn.createStatement() )
+		{
+			// versao do esquema do BD
+			int version;
+			try ( ResultSet rs = stmt.executeQuery("PRAGMA user_version") )
+			{
+				version = rs.next() ? rs.getInt(1) : 0;
+			}
+			
+			// esquema ja atualizado
+			if ( version >= SCHEMA_VERSION )
+				return;
+			
+			// log: info
+			LiveClassUtils.logInfo(String.format("Atualizando esquema do banco de dados: %d -> %d", version, SCHEMA_VERSION));
+			
+			conn.setAutoCommit(false);
+			
+			try
+			{
+				for ( int i = version; i < SCHEMA_VERSION; i++ )
+				{
+					// unifica as classes duplicadas de BDs legados antes de criar o indice unico por nome
+					if ( i == 0 )
+						this.mergeDuplicateClasses(conn);
+					
+					for ( String SQL : SCHEMA_MIGRATIONS[i] )
+					{
+						// log: debug
+						LiveClassUtils.logDebug(SQL);
+						
+						stmt.execute(SQL);
+					}
+					
+					// migra os dados que dependem da nova versao do esquema
+					this.migrateData(conn, i + 1);
+				}
+				
+				stmt.execute("PRAGMA user_version = " + SCHEMA_VERSION);
+				conn.commit();
+			}
+			catch ( SQLException | RuntimeException e )
+			{
+				conn.rollback();
+				this.reconstructionCache.clear();
+				throw e;
+			}
+			finally
+			{
+				conn.setAutoCommit(true);
+			}
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Migra os dados existentes para a verso informada do esquema, 
+	 * quando a migrao no puder ser feita somente por comandos SQL.
+	 * <p><i>
+	 * Migrates the existing data to the specified schema version, 
+	 * when the migration can not be done by SQL commands only.
+	 * </i>
+	 * 
+	 * @param conn conexo com o banco de dados
+	 * <br><i>the database connection</i>
+	 * @param version verso do esquema recm aplicada
+	 * <br><i>the schema version just applied</i>
+	 * @throws SQLException em caso de erros com o banco de dados
+	 * <br><i>if an error occurs when accessing the database</i>
+	 */
+	private void migrateData(Connection conn, int version) throws SQLException
+	{
+		if ( version == 4 )
+			this.migrateToBlobStore(conn);
+		
+		else if ( version == 5 )
+			this.migrateToMetadata(conn);
+	}
+	
+	/**
+	 * <p>
+	 * Unifica os registros duplicados da tabela LiveClass (mesmo nome de classe), 
+	 * permitidos pelas gravaes no transacionais das verses anteriores.
+	 * <br>
+	 * Mantm o registro efetivamente usado nas consultas (o de menor id com verses persistidas), 
+	 * para o qual so movidas as verses dos demais registros, renumeradas como verses anteriores 
+	 * s suas, de modo que as verses atual e de modo seguro da classe no so alteradas.
+	 * <p><i>
+	 * Merges the duplicated rows of the LiveClass table (same class name), 
+	 * allowed by the non-transactional writes of the previous versions.
+	 * <br>
+	 * Keeps the row actually used by the queries (the lowest id with persisted versions), 
+	 * to which the versions of the other rows are moved, renumbered as versions older 
+	 * than its own, so that the current and safe mode versions of the class are not changed.
+	 * </i>
+	 * 
+	 * @param conn conexo com o banco de dados
+	 * <br><i>the database connection</i>
+	 * @throws SQLException em caso de erros com o banco de dados
+	 * <br><i>if an error occurs when accessing the database</i>
+	 */
+	private void mergeDuplicateClasses(Connection conn) throws SQLException
+	{
+		// classes com registros duplicados
+		List<String> classNames = new ArrayList<String>();
+		
+		try ( Statement stmt = conn.createStatement(); 
+			  ResultSet rs = stmt.executeQuery("SELECT className FROM LiveClass GROUP BY className HAVING COUNT(*) > 1") )
+		{
+			while ( rs.next() )
+				classNames.add(rs.getString(1));
+		}
+		
+		for ( String className : classNames )
+		{
+			// registros da classe: id, versao de modo seguro e quantidade de versoes
+			List<int[]> rows = new ArrayList<int[]>();
+			PreparedStatement pStmt = this.prepareStatement(conn, 
+					"SELECT l.id, l.safeModeVersion, (SELECT COUNT(*) FROM ClassVersion c WHERE c.id_class = l.id) " + 
+					"FROM LiveClass l WHERE l.className = ? ORDER BY l.id");
+			pStmt.setString(1, className);
+			
+			try ( ResultSet rs = pStmt.executeQuery() )
+			{
+				while ( rs.next() )
+					rows.add(new int[] { rs.getInt(1), rs.getInt(2), rs.getInt(3) });
+			}
+			
+			// registro mantido
+			int[] kept = rows.get(0);
+			for ( int[] row : rows )
+			{
+				if ( row[2] > 0 )
+				{
+					kept = row;
+					break;
+				}
+			}
+			
+			// versoes dos registros, as dos registros removidos antes das do registro mantido
+			List<int[]> versions = new ArrayList<int[]>();
+			pStmt = this.prepareStatement(conn, 
+					"SELECT c.id, c.version, c.id_class = ? FROM ClassVersion c, LiveClass l " + 
+					"WHERE c.id_class = l.id AND l.className = ? ORDER BY 3, c.version, c.id");
+			pStmt.setInt(1, kept[0]);
+			pStmt.setString(2, className);
+			
+			try ( ResultSet rs = pStmt.executeQuery() )
+			{
+				while ( rs.next() )
+					versions.add(new int[] { rs.getInt(1), rs.getInt(2), rs.getInt(3) });
+			}
+			
+			// renumera as versoes no registro mantido
+			int safeModeVersion = kept[1];
+			pStmt = this.prepareStatement(conn, "UPDATE ClassVersion SET id_class = ?, version = ? WHERE id = ?");
+			
+			for ( int i = 0; i < versions.size(); i++ )
+			{
+				int[] v = versions.get(i);
+				
+				if ( (v[2] == 1) && (v[1] == kept[1]) )
+					safeModeVersion = i + 1;
+				
+				pStmt.setInt(1, kept[0]);
+				pStmt.setInt(2, i + 1);
+				pStmt.setInt(3, v[0]);
+				pStmt.executeUpdate();
+			}
+			
+			pStmt = this.prepareStatement(conn, "UPDATE LiveClass SET safeModeVersion = ? WHERE id = ?");
+			pStmt.setInt(1, safeModeVersion);
+			pStmt.setInt(2, kept[0]);
+			pStmt.executeUpdate();
+			
+			pStmt = this.prepareStatement(conn, "DELETE FROM LiveClass WHERE className = ? AND id <> ?");
+			pStmt.setString(1, className);
+			pStmt.setInt(2, kept[0]);
+			pStmt.executeUpdate();
+			
+			// log: warning
+			LiveClassUtils.logWarning(String.format("Registros duplicados da classe '%s' unificados: %d registros, %d versoes", 
+					className, rows.size(), versions.size()));
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Move os bytecodes armazenados diretamente nas tabelas ClassVersion e InnerClasses para a tabela Blob.
+	 * <p><i>
+	 * Moves the bytecode stored directly on the ClassVersion and InnerClasses tables to the Blob table.
+	 * </i>
+	 * 
+	 * @param conn conexo com o banco de dados
+	 * <br><i>the database connection</i>
+	 * @throws SQLException em caso de erros com o banco de dados
+	 * <br><i>if an error occurs when accessing the database</i>
+	 */
+	private void migrateToBlobStore(Connection conn) throws SQLException
+	{
+		// versoes a serem migradas, ordenadas para que a versao base de um delta seja migrada antes dele
+		List<int[]> versions = new ArrayList<int[]>();
+		
+		try ( Statement stmt = conn.createStatement(); 
+			  ResultSet rs = stmt.executeQuery("SELECT id, id_class FROM ClassVersion ORDER BY id_class, version") )
+		{
+			while ( rs.next() )
+				versions.add(new int[] { rs.getInt(1), rs.getInt(2) });
+		}
+		
+		// log: info
+		LiveClassUtils.logInfo(String.format("Migrando %d versoes de classes para o repositorio de bytecodes", versions.size()));
+		
+		// bytecodes ja migrados da classe corrente, para reconstruir os deltas legados
+		Map<Integer,byte[]> classBytecodes = new HashMap<Integer,byte[]>();
+		int prevClassId = -1;
+		int prevBlobId = -1;
+		
+		for ( int[] v : versions )
+		{
+			if ( v[1] != prevClassId )
+			{
+				classBytecodes.clear();
+				prevClassId = v[1];
+				prevBlobId = -1;
+			}
+			
+			// reconstroi o bytecode legado
+			byte[] bytecode;
+			PreparedStatement pStmt = this.prepareStatement(conn, "SELECT bytecode, format, id_base FROM ClassVersion WHERE id = ?");
+			pStmt.setInt(1, v[0]);
+			
+			try ( ResultSet rs = pStmt.executeQuery() )
+			{
+				rs.next();
+				bytecode = BytecodeCompression.decompress(rs.getBytes(1), rs.getInt(2));
+				
+				if ( rs.getInt(2) == BytecodeCompression.FORMAT_DELTA )
+					bytecode = BytecodeDelta.apply(classBytecodes.get(rs.getInt(3)), bytecode);
+			}
+			
+			classBytecodes.put(v[0], bytecode);
+			prevBlobId = this.saveToBlobTable(conn, bytecode, prevBlobId);
+			
+			pStmt = this.prepareStatement(conn, "UPDATE ClassVersion SET id_blob = ?, bytecode = ?, format = ?, id_base = NULL WHERE id = ?");
+			pStmt.setInt(1, prevBlobId);
+			pStmt.setBytes(2, EMPTY_BYTECODE);
+			pStmt.setInt(3, BytecodeCompression.FORMAT_RAW);
+			pStmt.setInt(4, v[0]);
+			pStmt.executeUpdate();
+		}
+		
+		// classes internas a serem migradas
+		List<Integer> innerClasses = new ArrayList<Integer>();
+		
+		try ( Statement stmt = conn.createStatement(); 
+			  ResultSet rs = stmt.executeQuery("SELECT id FROM InnerClasses") )
+		{
+			while ( rs.next() )
+				innerClasses.add(rs.getInt(1));
+		}
+		
+		for ( int innerClassId : innerClasses )
+		{
+			byte[] bytecode;
+			PreparedStatement pStmt = this.prepareStatement(conn, "SELECT bytecode, format FROM InnerClasses WHERE id = ?");
+			pStmt.setInt(1, innerClassId);
+			
+			try ( ResultSet rs = pStmt.executeQuery() )
+			{
+				rs.next();
+				bytecode = BytecodeCompression.decompress(rs.getBytes(1), rs.getInt(2));
+			}
+			
+			pStmt = this.prepareStatement(conn, "UPDATE InnerClasses SET id_blob = ?, bytecode = ?, format = ? WHERE id = ?");
+			pStmt.setInt(1, this.saveToBlobTable(conn, bytecode, -1));
+			pStmt.setBytes(2, EMPTY_BYTECODE);
+			pStmt.setInt(3, BytecodeCompression.FORMAT_RAW);
+			pStmt.setInt(4, innerClassId);
+			pStmt.executeUpdate();
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Persiste os metadados das verses e classes internas j armazenadas, inspecionando seus bytecodes uma nica vez.
+	 * <p><i>
+	 * Persists the metadata of the already stored versions and inner classes, inspecting their bytecode only once.
+	 * </i>
+	 * 
+	 * @param conn conexo com o banco de dados
+	 * <br><i>the database connection</i>
+	 * @throws SQLException em caso de erros com o banco de dados
+	 * <br><i>if an error occurs when accessing the database</i>
+	 */
+	private void migrateToMetadata(Connection conn) throws SQLException
+	{
+		for ( String table : new String[] { "ClassVersion", "InnerClasses" } )
+		{
+			// registros a serem migrados
+			List<int[]> rows = new ArrayList<int[]>();
+			
+			try ( Statement stmt = conn.createStatement(); 
+				  ResultSet rs = stmt.executeQuery("SELECT id, id_blob FROM " + table + " WHERE id_blob IS NOT NULL") )
+			{
+				while ( rs.next() )
+					rows.add(new int[] { rs.getInt(1), rs.getInt(2) });
+			}
+			
+			// log: info
+			LiveClassUtils.logInfo(String.format("Gerando metadados de %d registros da tabela %s", rows.size(), table));
+			
+			PreparedStatement pStmt = this.prepareStatement(conn, "UPDATE " + table + " SET metadata = ? WHERE id = ?");
+			
+			for ( int[] row : rows )
+			{
+				pStmt.setBytes(1, this.serializeMetadata(InstrumentationHelper.inspect(this.readFromBlobTable(conn, row[1]))));
+				pStmt.setInt(2, row[0]);
+				pStmt.executeUpdate();
+			}
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Obtm a conexo com o banco de dados.
+	 * <br>
+	 * A conexo  mantida aberta e reutilizada por todas as operaes desta classe, 
+	 * sendo reaberta somente se tiver sido fechada.
+	 * <p><i>
+	 * Gets the database connection.
+	 * <br>
+	 * The connection is kept open and shared by all operations of this class, 
+	 * being reopened only if it has been closed.
+	 * </i>
+	 * 
+	 * @return a conexo com o banco de dados 
+	 * <br><i>the database connection</i>
+	 * @throws SQLException em caso de erros com o banco de dados
+	 * <br><i>if an error occurs when accessing the database</i>
+	 */
+	private Connection getConnection() throws SQLException
+	{
+		// registra o uso do BD
+		if (! this.inMaintenance )
+			this.lastAccess = System.currentTimeMillis();
+		
+		// verifica se a conexao ja esta aberta
+		if ( (this.connection != null) && !this.connection.isClosed() )
+			return ( this.connection );
+		
+		// arquivo do BD
+		File dbFile = Paths.get(this.dbFilePath).toFile();
+
+		// URL JDBC
+		String url = "jdbc:sqlite:" + dbFile.getAbsolutePath();
+		
+		// SQLite config
+		SQLiteConfig config = new SQLiteConfig();
+		config.enforceForeignKeys(true);
+		config.setJournalMode(SQLiteConfig.JournalMode.WAL);
+		config.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+		config.setTransactionMode(SQLiteConfig.TransactionMode.IMMEDIATE);
+		config.setBusyTimeout(String.valueOf(BUSY_TIMEOUT));
+
+		// abre a conexao com o BD
+		this.connection = DriverManager.getConnection(url, config.toProperties());
+		this.statementCache.clear();
+		
+		// habilita o I/O mapeado em memoria
+		try ( Statement stmt = this.connection.createStatement() )
+		{
+			stmt.execute("PRAGMA mmap_size=" + MMAP_SIZE);
+		}
+		
+		// log: debug
+		LiveClassUtils.logDebug("conexao aberta -> " + url);
+		
+		return ( this.connection );
+	}
+	
+	/**
+	 * <p>
+	 * Obtm o comando preparado para a clusula SQL informada, reutilizando-o caso j tenha sido preparado.
+	 * <p><i>
+	 * Gets the prepared statement for the specified SQL clause, reusing it if it has already been prepared.
+	 * </i>
+	 * 
+	 * @param conn conexo com o banco de dados
+	 * <br><i>the database connection</i>
+	 * @param sql clusula SQL a ser preparada
+	 * <br><i>the SQL clause to be prepared</i>
+	 * @return o comando preparado para a clusula SQL informada
+	 * <br><i>the prepared statement for the specified SQL clause</i>
+	 * @throws SQLException em caso de erros com o banco de dados
+	 * <br><i>if an error occurs when accessing the database</i>
+	 */
+	private PreparedStatement prepareStatement(Connection conn, String sql) throws SQLException
+	{
+		PreparedStatement pStmt = this.statementCache.get(sql);
+		
+		if ( (pStmt == null) || pStmt.isClosed() )
+		{
+			pStmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+			this.statementCache.put(sql, pStmt);
+		}
+		else
+			pStmt.clearParameters();
+		
+		return ( pStmt );
+	}
+	
+	/**
+	 * <p>
+	 * Fecha a conexo com o banco de dados e os comandos preparados em cache.
+	 * A conexo  reaberta automaticamente no prximo uso desta classe.
+	 * <p><i>
+	 * Closes the database connection and the cached prepared statements.
+	 * The connection is automatically reopened on the next use of this class.
+	 * </i>
+	 * 
+	 * @throws SQLException em caso de erros com o banco de dados
+	 * <br><i>if an error occurs when accessing the database</i>
+	 */
+	public synchronized void close() throws SQLException
+	{
+		try
+		{
+			for ( PreparedStatement pStmt : this.statementCache.values() )
+				pStmt.close();
+		}
+		finally
+		{
+			this.statementCache.clear();
+			
+			if ( this.connection != null )
+				this.connection.close();
+			
+			this.connection = null;
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Inicia a manuteno peridica do BD em segundo plano.
+	 * <br>
+	 * A cada intervalo, a manuteno  executada somente se o BD estiver ocioso h pelo menos o tempo informado,
+	 * sendo adiada para o prximo intervalo caso contrrio.
+	 * <p><i>
+	 * Starts the periodic database maintenance in background.
+	 * <br>
+	 * At each interval, the maintenance only runs if the database has been idle for at least the specified time,
+	 * being postponed to the next interval otherwise.
+	 * </i>
+	 * 
+	 * @param intervalMillis intervalo, em milissegundos, entre as execues da manuteno
+	 * <br><i>the interval, in milliseconds, between maintenance runs</i>
+	 * @param idleMillis tempo mnimo, em milissegundos, sem acessos ao BD para executar a manuteno
+	 * <br><i>the minimum time, in milliseconds, without database accesses to run the maintenance</i>
+	 * @throws IllegalArgumentException caso o intervalo no seja positivo ou o tempo ocioso seja negativo
+	 * <br><i>if the interval is not positive or the idle time is negative</i>
+	 * @see #runMaintenance()
+	 */
+	public synchronized void startMaintenance(long intervalMillis, long idleMillis) throws IllegalArgumentException
+	{
+		if ( intervalMillis <= 0 )
+			throw new IllegalArgumentException("Maintenance interval must be positive: " + intervalMillis);
+		
+		if ( idleMillis < 0 )
+			throw new IllegalArgumentException("Maintenance idle time must not be negative: " + idleMillis);
+		
+		// substitui a manutencao em execucao, se houver
+		this.stopMaintenance();
+		
+		this.maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(r -> 
+		{
+			Thread thread = new Thread(r, "LiveClassMaintenance");
+			thread.setDaemon(true);
+			
+			return ( thread );
+		});
+		
+		this.maintenanceExecutor.scheduleWithFixedDelay(() -> 
+		{
+			// adia a manutencao enquanto o BD estiver em uso
+			if ( System.currentTimeMillis() - this.lastAccess < idleMillis )
+			{
+				// log: debug
+				LiveClassUtils.logDebug("Manutencao do banco de dados adiada, banco de dados em uso");
+				
+				return;
+			}
+			
+			try
+			{
+				this.runMaintenance();
+			}
+			catch ( Exception e )
+			{
+				// log: error
+				LiveClassUtils.logError("Erro na manutencao do banco de dados!");
+				LiveClassUtils.logException(e);
+			}
+		}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+		
+		// log: info
+		LiveClassUtils.logInfo(String.format("Manutencao do banco de dados iniciada: intervalo %d ms, ocioso %d ms", intervalMillis, idleMillis));
+	}
+	
+	/**
+	 * <p>
+	 * Encerra a manuteno peridica do BD, se estiver em execuo.
+	 * <p><i>
+	 * Stops the periodic database maintenance, if it is running.
+	 * </i>
+	 */
+	public synchronized void stopMaintenance()
+	{
+		if ( this.maintenanceExecutor != null )
+		{
+			this.maintenanceExecutor.shutdownNow();
+			this.maintenanceExecutor = null;
+			
+			// log: info
+			LiveClassUtils.logInfo("Manutencao do banco de dados encerrada");
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Executa a manuteno do BD: remove as verses fora da poltica de reteno, em lotes de transaes curtas, 
+	 * libera as pginas livres do arquivo (<i>VACUUM</i> incremental) e atualiza as estatsticas das consultas 
+	 * (<i>PRAGMA optimize</i>).
+	 * <br>
+	 * Os bytecodes das verses removidas so liberados somente quando no forem mais referenciados 
+	 * por outras verses, inclusive como base de deltas.
+	 * <br>
+	 * As pginas livres s so devolvidas ao sistema de arquivos se o <i>auto_vacuum</i> incremental estiver habilitado, 
+	 * o que ocorre nos BDs criados por esta verso; nos BDs anteriores, ele deve ser habilitado por 
+	 * {@link #enableIncrementalVacuum()}, pois a manuteno nunca executa um <i>VACUUM</i> completo.
+	 * <p><i>
+	 * Runs the database maintenance: removes the versions outside the retention policy, in batches of short transactions,
+	 * releases the free pages of the file (incremental VACUUM) and updates the query statistics (PRAGMA optimize).
+	 * <br>
+	 * The bytecode of the removed versions is only released when no longer referenced 
+	 * by other versions, including as the base of deltas.
+	 * <br>
+	 * The free pages are only returned to the file system if the incremental auto_vacuum is enabled, 
+	 * which is the case for the databases created by this version; on older databases, it must be enabled by 
+	 * {@link #enableIncrementalVacuum()}, as the maintenance never runs a full VACUUM.
+	 * </i>
+	 * 
+	 * @return a quantidade de bytes liberados do arquivo do BD
+	 * <br><i>the number of bytes reclaimed from the database file</i>
+	 * @throws SQLException em caso de erros com o banco de dados
+	 * <br><i>if an error occurs when accessing the database</i>
+	 * @see #setRetentionPolicy(int, long)
+	 * @see #enableIncrementalVacuum()
+	 */
+	public long runMaintenance() throws SQLException
+	{
+		// remove as versoes em lotes, liberando o acesso ao BD entre eles
+		int removed = 0;
+		
+		if ( _retainedVersions > 0 )
+		{
+			long cutoff = System.currentTimeMillis() - _retainedAgeMillis;
+			
+			for ( int batch = this.removeExpiredVersions(cutoff); batch > 0; batch = this.removeExpiredVersions(cutoff) )
+				removed += batch;
+		}
+		
+		// libera as paginas livres
+		long reclaimed = this.vacuum();
+		
+		// log: info
+		LiveClassUtils.logInfo(String.format("Manutencao do banco de dados: %d versoes removidas, %d bytes liberados", removed, reclaimed));
+		
+		return ( reclaimed );
+	}
+	
+	/**
+	 * <p>
+	 * Habilita o <i>auto_vacuum</i> incremental do BD, caso ainda no esteja habilitado, 
+	 * permitindo que a manuteno devolva as pginas livres ao sistema de arquivos.
+	 * <br>
+	 * A converso exige um <i>VACUUM</i> completo, que reescreve todo o arquivo do BD, bloqueando o seu acesso 
+	 * durante a operao e exigindo espao livre em disco equivalente ao tamanho do arquivo. 
+	 * Deve ser chamado explicitamente, uma nica vez, em um momento em que esse custo seja aceitvel.
+	 * <p><i>
+	 * Enables the incremental auto_vacuum of the database, if not yet enabled, 
+	 * allowing the maintenance to return the free pages to the file system.
+	 * <br>
+	 * The conversion requires a full VACUUM, which rewrites the whole database file, blocking its access 
+	 * during the operation and requiring free disk space equivalent to the file size. 
+	 * It must be called explicitly, only once, at a time when this cost is acceptable.
+	 * </i>
+	 * 
+	 * @return a quantidade de bytes liberados pelo <i>VACUUM</i>, ou zero caso j estivesse habilitado
+	 * <br><i>the number of bytes reclaimed by the VACUUM, or zero if it was already enabled</i>
+	 * @throws SQLException em caso de erros com o banco de dados
+	 * <br><i>if an error occurs when accessing the database</i>
+	 * @see #runMaintenance()
+	 */
+	public synchronized long enableIncrementalVacuum() throws SQLException
+	{
+		this.inMaintenance = true;
+		
+		try
+		{
+			try ( Statement stmt = this.getConnection().createStatement() )
+			{
+				// ja habilitado
+				if ( this.isIncrementalVacuum(stmt) )
+					return ( 0 );
+			}
+			
+			// log: info
+			LiveClassUtils.logInfo("Habilitando o auto_vacuum incremental do banco de dados (VACUUM completo)");
+			
+			// o VACUUM nao pode ser executado com comandos preparados pendentes
+			this.close();
+			
+			try ( Statement stmt = this.getConnection().createStatement() )
+			{
+				long sizeBefore = this.getDatabaseSize(stmt);
+				
+				stmt.execute("PRAGMA auto_vacuum = INCREMENTAL");
+				stmt.execute("VACUUM");
+				
+				long reclaimed = Math.max(0, sizeBefore - this.getDatabaseSize(stmt));
+				this.reclaimedBytes += reclaimed;
+				
+				return ( reclaimed );
+			}
+		}
+		finally
+		{
+			this.inMaintenance = false;
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Obtm o total de bytes liberados do arquivo do BD pelas manutenes j executadas.
+	 * <p><i>
+	 * Gets the total number of bytes reclaimed from the database file by the maintenance runs.
+	 * </i>
+	 * 
+	 * @return o total de bytes liberados
+	 * <br><i>the total number of reclaimed bytes</i>
+	 */
+	public synchronized long getReclaimedBytes()
+	{
+		return ( this.reclaimedBytes );
+	}
+	
+	/**
+	 * <p>
+	 * Remove, em uma nica transao, um lote de verses fora da poltica de reteno.
+	 * <p><i>
+	 * Removes, in a single transaction, a batch of versions outside the retention policy.
+	 * </i>
+	 * 
+	 * @param cutoff instante a partir do qual as verses so mantidas pela idade
+	 * <br><i>the instant from which versions are kept by their age</i>
+	 * @return a quantidade de verses removidas
+	 * <br><i>the number of removed versions</i>
+	 * @throws SQLException em caso de erros com o banco de dados
+	 * <br><i>if an error occurs when accessing the database</i>
+	 */
+	private synchronized int removeExpiredVersions(long cutoff) throws SQLException
+	{
+		this.inMaintenance = true;
+		
+		try
+		{
+			return ( this.executeInTransaction(conn -> 
+			{
+				// as versoes atual e do modo seguro sempre sao mantidas
+				String SQL = "SELECT c.id FROM ClassVersion c, LiveClass l " + 
+							 "WHERE l.id = c.id_class AND c.version <> l.safeModeVersion AND c.version <= l.currentVersion - ? " + 
+							 "AND (c.createdAt IS NULL OR c.createdAt < ?) LIMIT ?";
+				
+				// log: debug
+				LiveClassUtils.logDebug(this.debugSQL(SQL, _retainedVersions, cutoff, MAINTENANCE_BATCH_SIZE));
+				
+				PreparedStatement pStmt = this.prepareStatement(conn, SQL);
+				pStmt.setInt(1, _retainedVersions);
+				pStmt.setLong(2, cutoff);
+				pStmt.setInt(3, MAINTENANCE_BATCH_SIZE);
+				
+				List<Integer> versionIds = new ArrayList<Integer>();
+				
+				try ( ResultSet rs = pStmt.executeQuery() )
+				{
+					while ( rs.next() )
+						versionIds.add(rs.getInt(1));
+				}
+				
+				// remove as versoes, liberando os seus bytecodes
+				for ( int versionId : versionIds )
+					this.removeFromClassVersionTable(conn, versionId);
+				
+				return ( versionIds.size() );
+			}) );
+		}
+		finally
+		{
+			this.inMaintenance = false;
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Libera as pginas livres do arquivo do BD, caso o <i>auto_vacuum</i> incremental esteja habilitado, 
+	 * atualiza as estatsticas das consultas e reduz o arquivo de log (<i>WAL</i>).
+	 * <p><i>
+	 * Releases the free pages of the database file, if the incremental auto_vacuum is enabled, 
+	 * updates the query statistics and shrinks the log file (WAL).
+	 * </i>
+	 * 
+	 * @return a quantidade de bytes liberados
+	 * <br><i>the number of reclaimed bytes</i>
+	 * @throws SQLException em caso de erros com o banco de dados
+	 * <br><i>if an error occurs when accessing the database</i>
+	 */
+	private synchronized long vacuum() throws SQLException
+	{
+		this.inMaintenance = true;
+		
+		try
+		{
+			long sizeBefore;
+			boolean incremental;
+			
+			try ( Statement stmt = this.getConnection().createStatement() )
+			{
+				sizeBefore = this.getDatabaseSize(stmt);
+				incremental = this.isIncrementalVacuum(stmt);
+			}
+			
+			if ( incremental )
+			{
+				// cada execucao do comando pelo driver libera uma unica pagina
+				this.executeInTransaction(conn -> 
+				{
+					try ( Statement stmt = conn.createStatement() )
+					{
+						int freePages;
+						try ( ResultSet rs = stmt.executeQuery("PRAGMA freelist_count") )
+						{
+							freePages = rs.next() ? rs.getInt(1) : 0;
+						}
+						
+						for ( int i = Math.min(freePages, VACUUM_PAGES_PER_RUN); i > 0; i-- )
+							stmt.execute("PRAGMA incremental_vacuum(1)");
+						
+						return ( null );
+					}
+				});
+			}
+			else
+			{
+				// log: debug
+				LiveClassUtils.logDebug("auto_vacuum incremental nao habilitado, paginas livres mantidas no arquivo");
+			}
+			
+			try ( Statement stmt = this.getConnection().createStatement() )
+			{
+				// atualiza as estatisticas
+				try
+				{
+					stmt.execute("PRAGMA optimize");
+				}
+				catch ( SQLException e )
+				{
+					// o optimize falha ao criar as tabelas de estatisticas apos um VACUUM,
+					// nesse caso as estatisticas sao atualizadas diretamente
+					if ( e.getErrorCode() != SQLiteErrorCode.SQLITE_SCHEMA.code )
+						throw e;
+					
+					stmt.execute("ANALYZE");
+				}
+				
+				// reduz o arquivo de log (WAL)
+				stmt.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+				
+				long reclaimed = Math.max(0, sizeBefore - this.getDatabaseSize(stmt));
+				this.reclaimedBytes += reclaimed;
+				
+				return ( reclaimed );
+			}
+		}
+		finally
+		{
+			this.inMaintenance = false;
+		}
+	}
+	
+	
+	/**
+	 * <p>
+	 * Verifica se o <i>auto_vacuum</i> incremental est habilitado no BD.
+	 * <p><i>
+	 * Checks whether the incremental auto_vacuum is enabled on the database.
+	 * </i>
+	 * 
+	 * @param stmt comando para consultar o BD
+	 * <br><i>the statement used to query the database</i>
+	 * @return <i>true</i> caso esteja habilitado, <i>false</i> caso contrrio
+	 * <br><i>true if it is enabled, false otherwise</i>
+	 * @throws SQLException em caso de erros com o banco de dados
+	 * <br><i>if an error occurs when accessing the database</i>
+	 */
+	private boolean isIncrementalVacuum(Statement stmt) throws SQLException
+	{
+		// modo de auto_vacuum do BD (2 = INCREMENTAL)
+		try ( ResultSet rs = stmt.executeQuery("PRAGMA auto_vacuum") )
+		{
+			return ( rs.next() && rs.getInt(1) == 2 );
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Verifica se o BD ainda no possui tabelas.
+	 * <p><i>
+	 * Checks whether the database has no tables yet.
+	 * </i>
+	 * 
+	 * @param stmt comando para consultar o BD
+	 * <br><i>the statement used to query the database</i>
+	 * @return <i>true</i> caso o BD no possua tabelas, <i>false</i> caso contrrio
+	 * <br><i>true if the database has no tables, false otherwise</i>
+	 * @throws SQLException em caso de erros com o banco de dados
+	 * <br><i>if an error occurs when accessing the database</i>
+	 */
+	private boolean isEmptyDatabase(Statement stmt) throws SQLException
+	{
+		try ( ResultSet rs = stmt.executeQuery("SELECT count(*) FROM sqlite_master") )
+		{
+			return ( rs.next() && rs.getInt(1) == 0 );
+		}
+	}
+	/**
+	 * <p>
+	 * Obtm o tamanho do BD, pelo nmero e tamanho das suas pginas.
+	 * <p><i>
+	 * Gets the database size, by the number and size of its pages.
+	 * </i>
+	 */
+	private long getDatabaseSize(Statement stmt) throws SQLException
+	{
+		long pageCount;
+		try ( ResultSet rs = stmt.executeQuery("PRAGMA page_count") )
+		{
+			pageCount = rs.next() ? rs.getLong(1) : 0;
+		}
+		
+		try ( ResultSet rs = stmt.executeQuery("PRAGMA page_size") )
+		{
+			return ( pageCount * (rs.next() ? rs.getLong(1) : 0) );
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Executa a operao informada em uma nica transao, desfazendo-a em caso de erro.
+	 * <p><i>
+	 * Executes the specified operation in a single transaction, rolling it back on errors.
+	 * </i>
+	 * 
+	 * @param operation operao a ser executada
+	 * <br><i>the operation to be executed</i>
+	 * @return o resultado da operao
+	 * <br><i>the result of the operation</i>
+	 * @throws SQLException em caso de erros com o banco de dados
+	 * <br><i>if an error occurs when accessing the database</i>
+	 */
+	private <T> T executeInTransaction(SQLOperation<T> operation) throws SQLException
+	{
+		// obtem a conexao com o BD
+		Connection conn = this.getConnection();
+		conn.setAutoCommit(false);
+		
+		try
+		{
+			T result = operation.execute(conn);
+			conn.commit();
+			
+			return ( result );
+		}
+		catch ( SQLException | RuntimeException e )
+		{
+			// log: erro
+			LiveClassUtils.logError("Erro na transacao, desfazendo alteracoes!");
+			
+			conn.rollback();
+			
+			// descarta bytecodes que podem ter sido lidos de registros desfeitos
+			this.reconstructionCache.clear();
+			
+			throw e;
+		}
+		finally
+		{
+			conn.setAutoCommit(true);
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Persiste uma nova verso da classe dinmica, substituindo a verso atual caso ela ainda no tenha sido aceita.
+	 * <p><i>
+	 * Persists a new version of the LiveClass, replacing the current version if it has not been committed yet.
+	 * </i>
+	 * 
+	 * @param conn conexo com o banco de dados
+	 * <br><i>the database connection</i>
+	 * @param liveClassName nome da classe dinmica
+	 * <br><i>the name of the LiveClass</i> 
+	 * @param liveClassInfo informaes da classe dinmica a ser persistida
+	 * <br><i>information of the LiveClass to be persisted</i>
+	 * @return a chave criada na tabela ClassVersion para a nova verso
+	 * <br><i>the key created on the ClassVersion table for the new version</i>
+	 * @throws SQLException em caso de erros com o banco de dados
+	 * <br><i>if an error occurs when accessing the database</i>
+	 */
+	private int saveNewVersion(Connection conn, String liveClassName, ClassInfo liveClassInfo) throws SQLException
+	{
+		// obtem as versoes da classe salvas no BD
+		TableKeysInfo keysInfo = this.getTableKeysInfo(conn, liveClassName);
+		
+		// chave da nova versao
+		int versionId;
+		
+		// nao ha versao salva no BD para essa classe
+		if ( keysInfo.getCurrentVersion() < 0 )
+		{
+			// primeira versao				
+			int version = 1;
+			
+			// salva as informacoes da classe
+			int classId = this.saveToLiveClassTable(conn, liveClassName, version);
+			
+			// salva a versao e o bytecode da classe
+			versionId = this.saveToClassVersionTable(conn, classId, version, liveClassInfo);
+		}
+		else
+		{
+			// ja existe uma versao salva, atualiza a tabela de versoes..
+			
+			// verifica a versao do modo seguro
+			if ( keysInfo.getSafeModeVersion() != keysInfo.getCurrentVersion() )
+			{
+				// remove a versao de teste atual para incluir a nova versao
+				// (e as classes internas associadas a essa versao)
+				this.removeFromClassVersionTable(conn, keysInfo.getVersionId());
+			}
+			
+			// insere na tabela de versoes
+			int version = keysInfo.getSafeModeVersion() + 1;
+			versionId = this.saveToClassVersionTable(conn, keysInfo.getClassId(), version, liveClassInfo);
+			
+			// atualiza a versao atual da classe
+			this.updateCurrentVersion(conn, keysInfo.getClassId(), version);
+		}
+		
+		// salva as classes internas da classe
+		this.saveInnerClasses(conn, versionId, liveClassInfo);
+		
+		return ( versionId );
+	}
+	
+	/**
+	 * <p>
+	 * Aceita a verso atual da classe dinmica, promovendo-a como uma verso segura.
+	 * <p><i>
+	 * Commits the current LiveClass version, promoting it as a safe version.
+	 * </i>
+	 * 
+	 * @param conn conexo com o banco de dados
+	 * <br><i>the database connection</i>
+	 * @param liveClassName nome da classe dinmica
+	 * <br><i>the name of the LiveClass</i> 
+	 * @return <i>true</i> se a verso atual foi promovida como uma verso segura, <i>false</i> caso contrrio
+	 * <br><i>true if the current version was promoted as a safe version, false otherwise</i>
+	 * @throws SQLException em caso de erros com o banco de dados
+	 * <br><i>if an error occurs when accessing the database</i>
+	 */
+	private boolean commitVersion(Connection conn, String liveClassName) throws SQLException
+	{
+		// obtem as versoes da classe salvas no BD
+		TableKeysInfo keysInfo = this.getTableKeysInfo(conn, liveClassName);
+		
+		// 
+		boolean updated = false;
+		
+		// a versao do modo seguro eh diferente da versao do modo padrao?
+		if ( keysInfo.getSafeModeVersion() < keysInfo.getCurrentVersion() )
+		{
+			// atualiza a versao do modo seguro
+			updated = this.updateSafeModeVersion(conn, liveClassName, keysInfo.getCurrentVersion());
+		}
+		
+		return ( updated );
+	}
+	
+	/**
+	 * <p>
+	 * Descarta a verso atual da classe dinmica, retrocendo-a para a verso anterior.
+	 * <p><i>
+	 * Rolls back the current LiveClass version, reverting it to its previous version.
+	 * </i>
+	 * 
+	 * @param conn conexo com o banco de dados
+	 * <br><i>the database connection</i>
+	 * @param liveClassName nome da classe dinmica
+	 * <br><i>the name of the LiveClass</i> 
+	 * @return sempre <i>true</i>
+	 * <br><i>always true</i>
+	 * @throws SQLException em caso de erros com o banco de dados
+	 * <br><i>if an error occurs when accessing the database</i>
+	 */
+	private boolean rollbackVersion(Connection conn, String liveClassName) throws SQLException
+	{
+		// obtem as versoes da classe salvas no BD
+		TableKeysInfo keysInfo = this.getTableKeysInfo(conn, liveClassName);
+		
+		// retrocede para a versao anterior mais recente 
+		// (as versoes antigas podem ter sido removidas pela politica de retencao)
+		int newVersion = (keysInfo.getCurrentVersion() > 1) ? this.findPreviousVersion(conn, keysInfo.getClassId(), keysInfo.getCurrentVersion()) : 0;
+		
+		// verifica se ha uma versao anterior
+		if ( newVersion > 0 )
+		{
+			// verifica a versao do modo seguro
+			if ( keysInfo.getSafeModeVersion() == keysInfo.getCurrentVersion() )
+				this.updateSafeModeVersion(conn, liveClassName, newVersion);
+			
+			// atualiza a versao atual da classe
+			this.updateCurrentVersion(conn, keysInfo.getClassId(), newVersion);
+			
+			// 
+			this.removeFromClassVersionTable(conn, keysInfo.getVersionId());
+		}
+		
+		return ( true );
+	}
+	
+	/**
+	 * <p>
+	 * Persiste as informaes da classe dinmica.
+	 * <p><i>
+	 * Persists the information of the specified LiveClass.
+	 * </i>
+	 * 
+	 * @param conn conexo com o banco de dados
+	 * <br><i>the database connection</i>
+	 * @param liveClassName nome da classe dinmica
+	 * <br><i>the name of the LiveClass</i> 
+	 * @param safeModeVersion verso do modo seguro da classe dinmica
+	 * <br><i>the LiveClass safe mode version</i>
+	 * @return a chave criada na tabela LiveClass para a classe dinmica persistida
+	 * <br><i>the key created on the LiveClass table for the persisted LiveClass</i>
+	 * @throws SQLException em caso de erros com o banco de dados
+	 * <br><i>if an error occurs when accessing the database</i>
+ 	 */
+	private int saveToLiveClassTable(Connection conn, String liveClassName, int safeModeVersion) throws SQLException
+	{
+		//
+		String SQL = "INSERT INTO LiveCLass (className, safeModeVersion, currentVersion) VALUES (?, ?, ?)";
+		
+		// log: debug
+		LiveClassUtils.logDebug(this.debugSQL(SQL, liveClassName, safeModeVersion, safeModeVersion));
+		
+		PreparedStatement pStmt = this.prepareStatement(conn, SQL);
+		pStmt.setString(1, liveClassName);
+		pStmt.setInt(2, safeModeVersion);
+		pStmt.setInt(3, safeModeVersion);
+		
+		pStmt.executeUpdate();
+		
+		// chave gerada
+		int result;
+		try ( ResultSet rs = pStmt.getGeneratedKeys() )
+		{
+			rs.next();
+			result = rs.getInt(1);
+		}
+		
+		// log: debug
+		LiveClassUtils.logDebug(String.format("chave gerada -> %d", result));
+		
+		return ( result );
+	}
+	
+	/**
+	 * <p>
+	 * Persiste as informaes da classe dinmica da verso informada.
+	 * <p><i>
+	 * Persists the information of the specified LiveClass version.
+	 * </i>
+	 * 
+	 * @param conn conexo com o banco de dados
+	 * <br><i>the database connection</i>
+	 * @param classId chave da classe dinmica na tabela LiveClass
+	 * <br><i>key of the LiveClass, from the LiveClass table</i>
+	 * @param classVersion verso da classe dinmica
+	 * <br><i>the LiveClass version</i>
+	 * @param classInfo informaes da classe dinmica a ser persistida
+	 * <br><i>information of the LiveClass to be persisted</i>
+	 * @return a chave criada na tabela ClassVersion para a classe dinmica persistida
+	 * <br><i>the key created on the ClassVersion table for the persisted LiveClass</i>
+	 * @throws SQLException em caso de erros com o banco de dados
+	 * <br><i>if an error occurs when accessing the database</i>
+	 */
+	private int saveToClassVersionTable(Connection conn, int classId, int classVersion, ClassInfo classInfo) throws SQLException
+	{
+		// a versao anterior eh a base para persistir a nova versao como delta
+		int baseBlobId = (classVersion > 1) ? this.findClassVersionBlobId(conn, classId, classVersion - 1) : -1;
+		
+		// salva o bytecode no repositorio
+		int blobId = this.saveToBlobTable(conn, classInfo.getBytecode(), baseBlobId);
+		
+		// metadados da classe
+		byte[] metadata = this.serializeMetadata(classInfo);
+		
+		//
+		String SQL = "INSERT INTO ClassVersion (id_class, version, bytecode, id_blob, metadata, createdAt) VALUES (?, ?, ?, ?, ?, ?)";
+		long createdAt = System.currentTimeMillis();
+		
+		// log: debug
+		LiveClassUtils.logDebug(this.debugSQL(SQL, classId, classVersion, "[]", blobId, metadata == null ? null : "[" + metadata.length + "]", createdAt));
+		
+		PreparedStatement pStmt = this.prepareStatement(conn, SQL);
+		pStmt.setInt(1, classId);
+		pStmt.setInt(2, classVersion);
+		pStmt.setBytes(3, EMPTY_BYTECODE);
+		pStmt.setInt(4, blobId);
+		pStmt.setBytes(5, metadata);
+		pStmt.setLong(6, createdAt);
+		
+		pStmt.executeUpdate();
+		
+		// chave gerada
+		int result;
+		try ( ResultSet rs = pStmt.getGeneratedKeys() )
+		{
+			rs.next();
+			result = rs.getInt(1);
+		}
+		
+		// log: debug
+		LiveClassUtils.logDebug(String.format("chave gerada -> %d", result));
+		
+		return ( result );
+	}
+	
+	/**
+	 * <p>
+	 * Persiste em lote as informaes das classes internas da verso informada da classe dinmica.
+	 * <p><i>
+	 * Persists in batch the inner classes information of the specified LiveClass version.
+	 * </i>
+	 * 
+	 * @param conn conexo com o banco de dados
+	 * <br><i>the database connection</i>
+	 * @param versionId chave da verso da classe dinmica na tabela ClassVersion
+	 * <br><i>key of the LiveClass version, from the ClassVersion table</i>
+	 * @param innerClassesInfo informaes das classes internas a serem persistidas
+	 * <br><i>information of the inner classes to be persisted</i>
+	 * @throws SQLException em caso de erros com o banco de dados
+	 * <br><i>if an error occurs when accessing the database</i>
+	 */
+	private void saveToInnerClassesTable(Connection conn, int versionId, List<ClassInfo> innerClassesInfo) throws SQLException
+	{
+		// nenhuma classe interna
+		if ( innerClassesInfo.isEmpty() )
+			return;
+		
+		//
+		// salva os bytecodes no repositorio (classes internas inalteradas apenas incrementam as referencias)
+		List<Integer> blobIds = new ArrayList<Integer>();
+		for ( ClassInfo innerClassInfo : innerClassesInfo )
+			blobIds.add(this.saveToBlobTable(conn, innerClassInfo.getBytecode(), -1));
+		
+		//
+		String SQL = "INSERT INTO InnerClasses (id_version, bytecode, id_blob, metadata) VALUES (?, ?, ?, ?)";
+		
+		// log: debug
+		LiveClassUtils.logDebug(this.debugSQL(SQL, versionId, "[]", blobIds, "[]"));
+		
+		PreparedStatement pStmt = this.prepareStatement(conn, SQL);
+		
+		for ( int i = 0; i < blobIds.size(); i++ )
+		{
+			pStmt.setInt(1, versionId);
+			pStmt.setBytes(2, EMPTY_BYTECODE);
+			pStmt.setInt(3, blobIds.get(i));
+			pStmt.setBytes(4, this.serializeMetadata(innerClassesInfo.get(i)));
+			pStmt.addBatch();
+		}
+		
+		//
+		int[] result = pStmt.executeBatch();
+		
+		// log: debug
+		LiveClassUtils.logDebug(String.format("registros inseridos -> %d", result.length));
+	}
+
+	/**
+	 * <p>
+	 * Obtm as informaes da classe dinmica na verso informada.
+	 * <p><i>
+	 * Gets the LiveClass information on the specified version.
+	 * </i>
+	 * 
+	 * @param conn conexo com o banco de dados
+	 * <br><i>the database connection</i>
+	 * @param classId chave da classe dinmica na tabela LiveClass
+	 * <br><i>key of the LiveClass, from the LiveClass table</i>
+	 * @param version verso da classe dinmica a ser obtida
+	 * <br><i>the LiveClass version to be retrieved</i>
+	 * @return as informaes da classe dinmica na verso informada, ou <i>null</i> caso a verso no exista
+	 * <br><i>the LiveClass information of its specified version, or null if the version is not found</i>
+	 * @throws SQLException em caso de erros com o banco de dados
+	 * <br><i>if an error occurs when accessing the database</i>
+	 */
+	private ClassInfo readFromClassVersionTable(Connection conn, int classId, int version) throws SQLException
+	{
+		//
+		String SQL = "SELECT id_blob, metadata FROM ClassVersion WHERE id_class = ? AND version = ?";
+		
+		// log: debug
+		LiveClassUtils.logDebug(this.debugSQL(SQL, classId, version));
+		
+		PreparedStatement pStmt = this.prepareStatement(conn, SQL);
+		pStmt.setInt(1, classId);
+		pStmt.setInt(2, version);
+		
+		ClassInfo classInfo = null;
+		
+		try ( ResultSet rs = pStmt.executeQuery() )
+		{
+			if ( rs.next() )
+				classInfo = this.toClassInfo(conn, rs.getInt(1), rs.getBytes(2));
+		}
+		
+		// log: debug
+		LiveClassUtils.logDebug(String.format("classe encontrada -> %s", classInfo == null ? "false" : "true"));
+		
+		return ( classInfo );
+	}
+	
+	/**
+	 * <p>
+	 * Obtm a chave no repositrio de bytecodes da verso informada da classe dinmica.
+	 * <p><i>
+	 * Gets the bytecode repository key of the specified LiveClass version.
+	 * </i>
+	 * 
+	 * @param conn conexo com o banco de dados
+	 * <br><i>the database connection</i>
+	 * @param classId chave da classe dinmica na tabela LiveClass
+	 * <br><i>key of the LiveClass, from the LiveClass table</i>
+	 * @param version verso da classe dinmica
+	 * <br><i>the LiveClass version</i>
+	 * @return a chave do bytecode da verso na tabela Blob, ou <b>-1</b> caso a verso no exista
+	 * <br><i>the key of the version bytecode on the Blob table, or -1 if the version is not found</i>
+	 * @throws SQLException em caso de erros com o banco de dados
+	 * <br><i>if an error occurs when accessing the database</i>
+	 */
+	private int findClassVersionBlobId(Connection conn, int classId, int version) throws SQLException
+	{
+		//
+		String SQL = "SELECT id_blob FROM ClassVersion WHERE id_class = ? AND version = ?";
+		
+		// log: debug
+		LiveClassUtils.logDebug(this.debugSQL(SQL, classId, version));
+		
+		PreparedStatement pStmt = this.prepareStatement(conn, SQL);
+		pStmt.setInt(1, classId);
+		pStmt.setInt(2, version);
+		
+		try ( ResultSet rs = pStmt.executeQuery() )
+		{
+			return ( rs.next() ? rs.getInt(1) : -1 );
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Obtm a verso persistida mais recente da classe dinmica anterior  verso informada.
+	 * <p><i>
+	 * Gets the most recent persisted LiveClass version previous to the specified version.
+	 * </i>
+	 * 
+	 * @param conn conexo com o banco de dados
+	 * <br><i>the database connection</i>
+	 * @param classId chave da classe dinmica na tabela LiveClass
+	 * <br><i>key of the LiveClass, from the LiveClass table</i>
+	 * @param version verso da classe dinmica
+	 * <br><i>the LiveClass version</i>
+	 * @return a verso anterior mais recente, ou <b>0</b> caso no exista
+	 * <br><i>the most recent previous version, or 0 if there is none</i>
+	 * @throws SQLException em caso de erros com o banco de dados
+	 * <br><i>if an error occurs when accessing the database</i>
+	 */
+	private int findPreviousVersion(Connection conn, int classId, int version) throws SQLException
+	{
+		//
+		String SQL = "SELECT MAX(version) FROM ClassVersion WHERE id_class = ? AND version < ?";
+		
+		// log: debug
+		LiveClassUtils.logDebug(this.debugSQL(SQL, classId, version));
+		
+		PreparedStatement pStmt = this.prepareStatement(conn, SQL);
+		pStmt.setInt(1, classId);
+		pStmt.setInt(2, version);
+		
+		try ( ResultSet rs = pStmt.executeQuery() )
+		{
+			// MAX de nenhum registro eh NULL, lido como 0
+			return ( rs.next() ? rs.getInt(1) : 0 );
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Persiste o bytecode no repositrio enderecado pelo contedo. 
+	 * Caso um bytecode idntico j exista, apenas incrementa a sua contagem de referncias.
+	 * Caso contrrio, o bytecode  persistido como delta da verso base informada, 
+	 * respeitando o intervalo entre verses completas (<i>keyframes</i>).
+	 * <p><i>
+	 * Persists the bytecode on the content-addressed repository.
+	 * If an identical bytecode already exists, only increments its reference count.
+	 * Otherwise, the bytecode is persisted as a delta against the specified base version,
+	 * respecting the interval between full versions (keyframes).
+	 * </i>
+	 * 
+	 * @param conn conexo com o banco de dados
+	 * <br><i>the database connection</i>
+	 * @param bytecode bytecode a ser persistido
+	 * <br><i>the bytecode to be persisted</i>
+	 * @param baseBlobId chave da verso base para o delta, ou <b>-1</b> para persistir a verso completa
+	 * <br><i>key of the base version for the delta, or -1 to persist the full version</i>
+	 * @return a chave do bytecode na tabela Blob
+	 * <br><i>the key of the bytecode on the Blob table</i>
+	 * @throws SQLException em caso de erros com o banco de dados
+	 * <br><i>if an error occurs when accessing the database</i>
+	 */
+	private int saveToBlobTable(Connection conn, byte[] bytecode, int baseBlobId) throws SQLException
+	{
+		byte[] hash = sha256(bytecode);
+		
+		// verifica se o bytecode ja foi persistido
+		String SQL = "SELECT id FROM Blob WHERE hash = ?";
+		
+		PreparedStatement pStmt = this.prepareStatement(conn, SQL);
+		pStmt.setBytes(1, hash);
+		
+		try ( ResultSet rs = pStmt.executeQuery() )
+		{
+			if ( rs.next() )
+			{
+				int blobId = rs.getInt(1);
+				this.updateBlobRefCount(conn, blobId, 1);
+				
+				// log: debug
+				LiveClassUtils.logDebug(String.format("bytecode ja persistido -> %d", blobId));
+				
+				return ( blobId );
+			}
+		}
+		
+		// por padrao, persiste a versao completa
+		byte[] data = BytecodeCompression.compress(bytecode);
+		int format = BytecodeCompression.FORMAT_DEFLATE_DICT;
+		Integer baseId = null;
+		int depth = 0;
+		
+		// verifica se pode ser persistido como delta da versao base
+		if ( baseBlobId > 0 )
+		{
+			int baseDepth = this.getBlobDepth(conn, baseBlobId);
+			
+			if ( baseDepth + 1 < _keyframeInterval )
+			{
+				byte[] delta = BytecodeCompression.compress(BytecodeDelta.encode(this.readFromBlobTable(conn, baseBlobId), bytecode));
+				
+				// utiliza o delta somente se for menor que a versao completa
+				if ( delta.length < data.length )
+				{
+					data = delta;
+					format = BytecodeCompression.FORMAT_DELTA;
+					baseId = baseBlobId;
+					depth = baseDepth + 1;
+					
+					// a versao base passa a ser referenciada pelo delta
+					this.updateBlobRefCount(conn, baseBlobId, 1);
+				}
+			}
+		}
+		
+		SQL = "INSERT INTO Blob (hash, data, format, id_base, depth, refCount) VALUES (?, ?, ?, ?, ?, 1)";
+		
+		// log: debug
+		LiveClassUtils.logDebug(this.debugSQL(SQL, "[hash]", "[data]", format, baseId, depth));
+		
+		pStmt = this.prepareStatement(conn, SQL);
+		pStmt.setBytes(1, hash);
+		pStmt.setBytes(2, data);
+		pStmt.setInt(3, format);
+		pStmt.setObject(4, baseId);
+		pStmt.setInt(5, depth);
+		pStmt.executeUpdate();
+		
+		// chave gerada
+		int result;
+		try ( ResultSet rs = pStmt.getGeneratedKeys() )
+		{
+			rs.next();
+			result = rs.getInt(1);
+		}
+		
+		// log: debug
+		LiveClassUtils.logDebug(String.format("chave gerada -> %d", result));
+		
+		return ( result );
+	}
+	
+	/**
+	 * <p>
+	 * Obtm o bytecode do repositrio pela sua chave na tabela Blob.
+	 * <p><i>
+	 * Gets the bytecode from the repository by its key on the Blob table.
+	 * </i>
+	 * 
+	 * @param conn conexo com o banco de dados
+	 * <br><i>the database connection</i>
+	 * @param blobId chave do bytecode na tabela Blob
+	 * <br><i>key of the bytecode, from the Blob table</i>
+	 * @return o bytecode
+	 * <br><i>the bytecode</i>
+	 * @throws SQLException em caso de erros com o banco de dados ou caso o bytecode no seja encontrado
+	 * <br><i>if an error occurs when accessing the database or if the bytecode is not found</i>
+	 */
+	private byte[] readFromBlobTable(Connection conn, int blobId) throws SQLException
+	{
+		// verifica se o bytecode ja foi reconstruido
+		byte[] bytecode = this.reconstructionCache.get(blobId);
+		
+		if ( bytecode != null )
+			return ( bytecode );
+		
+		// deltas da cadeia, da versao mais nova para a mais antiga
+		List<Integer> deltaIds = new ArrayList<Integer>();
+		List<byte[]> deltas = new ArrayList<byte[]>();
+		
+		// percorre a cadeia de deltas ate uma versao completa ou ja reconstruida,
+		// lendo cada registro por completo antes de consultar a sua versao base
+		int id = blobId;
+		
+		while ( bytecode == null )
+		{
+			String SQL = "SELECT data, format, id_base FROM Blob WHERE id = ?";
+			
+			// log: debug
+			LiveClassUtils.logDebug(this.debugSQL(SQL, id));
+			
+			PreparedStatement pStmt = this.prepareStatement(conn, SQL);
+			pStmt.setInt(1, id);
+			
+			byte[] data;
+			int format;
+			int baseId;
+			
+			try ( ResultSet rs = pStmt.executeQuery() )
+			{
+				if (! rs.next() )
+					throw new SQLException("Bytecode not found: " + id);
+				
+				data = rs.getBytes(1);
+				format = rs.getInt(2);
+				baseId = rs.getInt(3);
+			}
+			
+			if ( format == BytecodeCompression.FORMAT_DELTA )
+			{
+				deltaIds.add(id);
+				deltas.add(BytecodeCompression.decompress(data, format));
+				
+				id = baseId;
+				bytecode = this.reconstructionCache.get(id);
+			}
+			else
+			{
+				bytecode = BytecodeCompression.decompress(data, format);
+				this.reconstructionCache.put(id, bytecode);
+			}
+		}
 		
-		// SQLite config
-		SQLiteConfig config = new SQLiteConfig();
-		config.enforceForeignKeys(true);
-
-		// retorna a conexao com o BD
-		return ( DriverManager.getConnection(url, config.toProperties()) );
+		// reconstroi as versoes, da mais antiga para a mais nova
+		for ( int i = deltas.size() - 1; i >= 0; i-- )
+		{
+			bytecode = BytecodeDelta.apply(bytecode, deltas.get(i));
+			this.reconstructionCache.put(deltaIds.get(i), bytecode);
+		}
+		
+		return ( bytecode );
 	}
 	
 	/**
 	 * <p>
-	 * Persiste as informaes da classe dinmica.
+	 * Obtm a profundidade do bytecode na sua cadeia de deltas (<b>0</b> para verses completas).
 	 * <p><i>
-	 * Persists the information of the specified LiveClass.
+	 * Gets the depth of the bytecode on its delta chain (0 for full versions).
 	 * </i>
 	 * 
 	 * @param conn conexo com o banco de dados
 	 * <br><i>the database connection</i>
-	 * @param liveClassName nome da classe dinmica
-	 * <br><i>the name of the LiveClass</i> 
-	 * @param safeModeVersion verso do modo seguro da classe dinmica
-	 * <br><i>the LiveClass safe mode version</i>
-	 * @return a chave criada na tabela LiveClass para a classe dinmica persistida
-	 * <br><i>the key created on the LiveClass table for the persisted LiveClass</i>
+	 * @param blobId chave do bytecode na tabela Blob
+	 * <br><i>key of the bytecode, from the Blob table</i>
+	 * @return a profundidade do bytecode na sua cadeia de deltas
+	 * <br><i>the depth of the bytecode on its delta chain</i>
 	 * @throws SQLException em caso de erros com o banco de dados
 	 * <br><i>if an error occurs when accessing the database</i>
- 	 */
-	private int saveToLiveClassTable(Connection conn, String liveClassName, int safeModeVersion) throws SQLException
+	 */
+	private int getBlobDepth(Connection conn, int blobId) throws SQLException
 	{
-		//
-		String SQL = "INSERT INTO LiveCLass (className, safeModeVersion) VALUES (?, ?)";
-		
-		// log: debug
-		LiveClassUtils.logDebug(this.debugSQL(SQL, liveClassName, safeModeVersion));
-		
-		PreparedStatement pStmt = conn.prepareStatement(SQL, Statement.RETURN_GENERATED_KEYS);
-		pStmt.setString(1, liveClassName);
-		pStmt.setInt(2, safeModeVersion);
-		
-		pStmt.executeUpdate();
-		ResultSet rs = pStmt.getGeneratedKeys();
-		rs.next();
-		
-		// chave gerada
-		int result = rs.getInt(1);
-		
-		// log: debug
-		LiveClassUtils.logDebug(String.format("chave gerada -> %d", result));
+		PreparedStatement pStmt = this.prepareStatement(conn, "SELECT depth FROM Blob WHERE id = ?");
+		pStmt.setInt(1, blobId);
 		
-		return ( result );
+		try ( ResultSet rs = pStmt.executeQuery() )
+		{
+			return ( rs.next() ? rs.getInt(1) : Integer.MAX_VALUE - 1 );
+		}
 	}
 	
 	/**
 	 * <p>
-	 * Persiste as informaes da classe dinmica da verso informada.
+	 * Atualiza a contagem de referncias do bytecode. 
+	 * Quando a contagem chega a zero, o bytecode  apagado e a referncia  sua verso base  liberada.
 	 * <p><i>
-	 * Persists the information of the specified LiveClass version.
+	 * Updates the reference count of the bytecode.
+	 * When the count reaches zero, the bytecode is deleted and the reference to its base version is released.
 	 * </i>
 	 * 
 	 * @param conn conexo com o banco de dados
 	 * <br><i>the database connection</i>
-	 * @param classId chave da classe dinmica na tabela LiveClass
-	 * <br><i>key of the LiveClass, from the LiveClass table</i>
-	 * @param classVersion verso da classe dinmica
-	 * <br><i>the LiveClass version</i>
-	 * @param classBytecode bytecode da classe dinmica a ser persistida
-	 * <br><i>the LiveClass bytecode to be persisted</i>
-	 * @return a chave criada na tabela ClassVersion para a classe dinmica persistida
-	 * <br><i>the key created on the ClassVersion table for the persisted LiveClass</i>
+	 * @param blobId chave do bytecode na tabela Blob
+	 * <br><i>key of the bytecode, from the Blob table</i>
+	 * @param delta valor a ser somado  contagem de referncias
+	 * <br><i>the value to be added to the reference count</i>
 	 * @throws SQLException em caso de erros com o banco de dados
 	 * <br><i>if an error occurs when accessing the database</i>
 	 */
-	private int saveToClassVersionTable(Connection conn, int classId, int classVersion, byte[] classBytecode ) throws SQLException
+	private void updateBlobRefCount(Connection conn, int blobId, int delta) throws SQLException
 	{
-		//
-		String SQL = "INSERT INTO ClassVersion (id_class, version, bytecode) VALUES (?, ?, ?)";
+		PreparedStatement pStmt = this.prepareStatement(conn, "UPDATE Blob SET refCount = refCount + ? WHERE id = ?");
+		pStmt.setInt(1, delta);
+		pStmt.setInt(2, blobId);
+		pStmt.executeUpdate();
 		
-		// log: debug
-		LiveClassUtils.logDebug(this.debugSQL(SQL, classId, classVersion, "[bytecode]"));
+		if ( delta >= 0 )
+			return;
 		
-		PreparedStatement pStmt = conn.prepareStatement(SQL, Statement.RETURN_GENERATED_KEYS);
-		pStmt.setInt(1, classId);
-		pStmt.setInt(2, classVersion);
-		pStmt.setBytes(3, classBytecode);
+		// verifica se o bytecode ainda eh referenciado
+		int baseId = -1;
 		
-		pStmt.executeUpdate();
-		ResultSet rs = pStmt.getGeneratedKeys();
-		rs.next();
+		pStmt = this.prepareStatement(conn, "SELECT refCount, id_base FROM Blob WHERE id = ?");
+		pStmt.setInt(1, blobId);
 		
-		// chave gerada
-		int result = rs.getInt(1);
+		try ( ResultSet rs = pStmt.executeQuery() )
+		{
+			if ( !rs.next() || (rs.getInt(1) > 0) )
+				return;
+			
+			baseId = rs.getInt(2);
+		}
 		
 		// log: debug
-		LiveClassUtils.logDebug(String.format("chave gerada -> %d", result));
+		LiveClassUtils.logDebug(String.format("bytecode sem referencias, apagando -> %d", blobId));
 		
-		return ( result );
+		pStmt = this.prepareStatement(conn, "DELETE FROM Blob WHERE id = ?");
+		pStmt.setInt(1, blobId);
+		pStmt.executeUpdate();
+		
+		this.reconstructionCache.remove(blobId);
+		
+		// libera a versao base
+		if ( baseId > 0 )
+			this.updateBlobRefCount(conn, baseId, -1);
 	}
 	
 	/**
 	 * <p>
-	 * Persiste as informaes da classe interna da verso informada da classe dinmica.
+	 * Libera as referncias ao repositrio de bytecodes feitas pela verso da classe dinmica e suas classes internas.
 	 * <p><i>
-	 * Persists the inner class information of the specified LiveClass version.
+	 * Releases the bytecode repository references held by the LiveClass version and its inner classes.
 	 * </i>
 	 * 
 	 * @param conn conexo com o banco de dados
 	 * <br><i>the database connection</i>
 	 * @param versionId chave da verso da classe dinmica na tabela ClassVersion
 	 * <br><i>key of the LiveClass version, from the ClassVersion table</i>
-	 * @param innerClassBytecode bytecode da classe interna a ser persistida
-	 * <br><i>the inner class bytecode to be persisted</i>
-	 * @return a chave criada na tabela InnerClasses para a classe interna persistida
-	 * <br><i>the key created on the InnerClasses table for the persisted inner class</i>
 	 * @throws SQLException em caso de erros com o banco de dados
 	 * <br><i>if an error occurs when accessing the database</i>
 	 */
-	private int saveToInnerClassesTable(Connection conn, int versionId, byte[] innerClassBytecode ) throws SQLException
+	private void releaseBlobs(Connection conn, int versionId) throws SQLException
 	{
-		//
-		String SQL = "INSERT INTO InnerClasses (id_version, bytecode) VALUES (?, ?)";
-		
-		// log: debug
-		LiveClassUtils.logDebug(this.debugSQL(SQL, versionId, "[bytecode]"));
+		List<Integer> blobIds = new ArrayList<Integer>();
 		
-		PreparedStatement pStmt = conn.prepareStatement(SQL, Statement.RETURN_GENERATED_KEYS);
+		PreparedStatement pStmt = this.prepareStatement(conn, 
+				"SELECT id_blob FROM ClassVersion WHERE id = ? UNION ALL SELECT id_blob FROM InnerClasses WHERE id_version = ?");
 		pStmt.setInt(1, versionId);
-		pStmt.setObject(2, innerClassBytecode);
-		
-		pStmt.executeUpdate();
-		ResultSet rs = pStmt.getGeneratedKeys();
-		rs.next();
-		
-		// chave gerada
-		int result = rs.getInt(1);
+		pStmt.setInt(2, versionId);
 		
-		// log: debug
-		LiveClassUtils.logDebug(String.format("chave gerada -> %d", result));
+		try ( ResultSet rs = pStmt.executeQuery() )
+		{
+			while ( rs.next() )
+				if ( rs.getInt(1) > 0 )
+					blobIds.add(rs.getInt(1));
+		}
 		
-		return ( result );
+		for ( int blobId : blobIds )
+			this.updateBlobRefCount(conn, blobId, -1);
 	}
-
+	
 	/**
 	 * <p>
-	 * Obtm as informaes da classe dinmica na verso informada.
+	 * Calcula o hash SHA-256 do bytecode informado.
 	 * <p><i>
-	 * Gets the LiveClass information on the specified version.
+	 * Computes the SHA-256 hash of the specified bytecode.
+	 * </i>
+	 * 
+	 * @param bytecode o bytecode
+	 * <br><i>the bytecode</i>
+	 * @return o hash SHA-256 do bytecode
+	 * <br><i>the SHA-256 hash of the bytecode</i>
+	 */
+	private static byte[] sha256(byte[] bytecode)
+	{
+		try
+		{
+			return ( MessageDigest.getInstance("SHA-256").digest(bytecode) );
+		}
+		catch ( NoSuchAlgorithmException e )
+		{
+			// todas as implementacoes Java devem suportar SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Obtm as informaes das classes internas relacionadas  verso informada da classe dinmica.
+	 * <p><i>
+	 * Gets the inner classes information associated to the specified version of a LiveClass.
 	 * </i>
 	 * 
 	 * @param conn conexo com o banco de dados
 	 * <br><i>the database connection</i>
 	 * @param classId chave da classe dinmica na tabela LiveClass
 	 * <br><i>key of the LiveClass, from the LiveClass table</i>
-	 * @param version verso da classe dinmica a ser obtida
-	 * <br><i>the LiveClass version to be retrieved</i>
-	 * @return o bytecode da classe dinmica na verso informada
-	 * <br><i>the LiveClass bytecode of its specified version</i>
+	 * @param version verso da classe dinmica
+	 * <br><i>the LiveClass version</i>
+	 * @return as informaes das classes internas relacionadas  verso informada da classe dinmica
+	 * <br><i>the information of the inner classes associated to the specified version of a LiveClass</i>
 	 * @throws SQLException em caso de erros com o banco de dados
 	 * <br><i>if an error occurs when accessing the database</i>
 	 */
-	private byte[] readFromClassVersionTable(Connection conn, int classId, int version) throws SQLException
+	private List<ClassInfo> readFromInnerClassesTable(Connection conn, int classId, int version) throws SQLException
 	{
 		//
-		String SQL = "SELECT bytecode FROM ClassVersion WHERE id_class = ? AND version = ?";
+		String SQL = "SELECT i.id_blob, i.metadata FROM ClassVersion c, InnerClasses i " + 
+					 "WHERE c.id_class = ? AND c.version = ? AND i.id_version = c.id";
 		
 		// log: debug
 		LiveClassUtils.logDebug(this.debugSQL(SQL, classId, version));
 		
-		PreparedStatement pStmt = conn.prepareStatement(SQL);
+		PreparedStatement pStmt = this.prepareStatement(conn, SQL);
 		pStmt.setInt(1, classId);
 		pStmt.setInt(2, version);
 		
-		ResultSet rs = pStmt.executeQuery();
-		
-		byte[] bytecode = null;
+		List<ClassInfo> classInfoList = new ArrayList<ClassInfo>();
 		
-		if ( rs.next() )
-			bytecode = rs.getBytes(1);
+		try ( ResultSet rs = pStmt.executeQuery() )
+		{
+			while ( rs.next() )
+				classInfoList.add( this.toClassInfo(conn, rs.getInt(1), rs.getBytes(2)) );
+		}
 		
 		// log: debug
-		LiveClassUtils.logDebug(String.format("classe encontrada -> %s", bytecode == null ? "false" : "true"));
+		LiveClassUtils.logDebug(String.format("classes internas -> %d", classInfoList.size()));
 		
-		return ( bytecode );
+		return ( classInfoList );
 	}
 	
 	/**
 	 * <p>
-	 * Obtm as informaes das classes internas relacionadas  verso informada da classe dinmica.
+	 * Serializa os metadados da classe informada.
 	 * <p><i>
-	 * Gets the inner classes information associated to the specified version of a LiveClass.
+	 * Serializes the metadata of the specified class.
+	 * </i>
+	 * 
+	 * @param classInfo informaes da classe
+	 * <br><i>information of the class</i>
+	 * @return os metadados serializados, ou <i>null</i> caso no seja possvel serializ-los 
+	 * (a classe ser inspecionada ao ser recuperada)
+	 * <br><i>the serialized metadata, or null if it can not be serialized 
+	 * (the class will be inspected when retrieved)</i>
+	 */
+	private byte[] serializeMetadata(ClassInfo classInfo)
+	{
+		try
+		{
+			return ( ClassInfoSerializer.serialize(classInfo) );
+		}
+		catch ( IllegalArgumentException e )
+		{
+			// log: error
+			LiveClassUtils.logError(String.format("Metadados da classe '%s' nao persistidos: %s", classInfo.getName(), e.getMessage()));
+			
+			return ( null );
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Recupera as informaes de uma classe a partir dos seus metadados persistidos, 
+	 * sem inspecionar o bytecode, que  lido na mesma conexo para que as informaes 
+	 * retornadas no dependam de um bytecode que possa ser descartado posteriormente.
+	 * <br>
+	 * Caso no haja metadados vlidos, o bytecode  lido e inspecionado.
+	 * <p><i>
+	 * Restores the class information from its persisted metadata, 
+	 * without inspecting the bytecode, which is read on the same connection so the returned 
+	 * information does not depend on a bytecode that might be dropped later.
+	 * <br>
+	 * If there is no valid metadata, the bytecode is read and inspected.
 	 * </i>
 	 * 
 	 * @param conn conexo com o banco de dados
 	 * <br><i>the database connection</i>
-	 * @param versionId chave da verso da classe dinmica na tabela ClassVersion
-	 * <br><i>key of the LiveClass version, from the ClassVersion table</i>
-	 * @return os bytecodes das classes internas relacionadas  verso informada da classe dinmica
-	 * <br><i>the bytecode list of the inner classes associated to the specified version of a LiveClass</i>
+	 * @param blobId chave do bytecode na tabela Blob
+	 * <br><i>key of the bytecode, from the Blob table</i>
+	 * @param metadata metadados persistidos da classe, ou <i>null</i>
+	 * <br><i>the persisted class metadata, or null</i>
+	 * @return as informaes da classe
+	 * <br><i>the class information</i>
 	 * @throws SQLException em caso de erros com o banco de dados
 	 * <br><i>if an error occurs when accessing the database</i>
 	 */
-	private List<byte[]> readFromInnerClassesTable(Connection conn, int versionId) throws SQLException
+	private ClassInfo toClassInfo(Connection conn, int blobId, byte[] metadata) throws SQLException
 	{
-		//
-		String SQL = "SELECT bytecode FROM InnerClasses WHERE id_version = ?";
-		
-		// log: debug
-		LiveClassUtils.logDebug(this.debugSQL(SQL, versionId));
-		
-		PreparedStatement pStmt = conn.prepareStatement(SQL);
-		pStmt.setInt(1, versionId);
-		
-		ResultSet rs = pStmt.executeQuery();
-
-		List<byte[]> bytecodeList = new ArrayList<byte[]>();
-		
-		while ( rs.next() )
-			bytecodeList.add( rs.getBytes(1) );
+		byte[] bytecode = this.readFromBlobTable(conn, blobId);
 		
-		// log: debug
-		LiveClassUtils.logDebug(String.format("classes internas -> %d", bytecodeList.size()));
+		if ( metadata != null )
+		{
+			try
+			{
+				ClassInfo classInfo = ClassInfoSerializer.deserialize(metadata, new ClassInfo());
+				classInfo.setBytecode(bytecode);
+				
+				return ( classInfo );
+			}
+			catch ( IOException e )
+			{
+				// log: error
+				LiveClassUtils.logError(String.format("Metadados invalidos (blob %d), inspecionando o bytecode", blobId));
+				LiveClassUtils.logException(e);
+			}
+		}
 		
-		return ( bytecodeList );
+		return ( InstrumentationHelper.inspect(bytecode) );
 	}
 	
 	/**
@@ -599,7 +2470,10 @@ public class DefaultLiveClassPersistence implements ILiveClassPersistence
 		// log: debug
 		LiveClassUtils.logDebug(this.debugSQL(SQL, versionId));
 		
-		PreparedStatement pStmt = conn.prepareStatement(SQL);
+		// libera os bytecodes da versao e das suas classes internas
+		this.releaseBlobs(conn, versionId);
+		
+		PreparedStatement pStmt = this.prepareStatement(conn, SQL);
 		pStmt.setInt(1, versionId);
 				
 		//
@@ -611,28 +2485,51 @@ public class DefaultLiveClassPersistence implements ILiveClassPersistence
 	
 	/**
 	 * <p>
-	 * Persiste as informaes de classe interna.
+	 * Persiste as informaes das classes internas da classe informada, incluindo as classes internas destas.
 	 * <p><i>
-	 * Persists inner class information.
+	 * Persists the inner classes information of the specified class, including their own inner classes.
 	 * </i>
 	 * 
 	 * @param conn conexo com o banco de dados
 	 * <br><i>the database connection</i>
 	 * @param versionId chave da verso da classe dinmica na tabela ClassVersion
 	 * <br><i>key of the LiveClass version, from the ClassVersion table</i>
-	 * @param innerClassInfo informaes da classe interna
-	 * <br><i>inner class information to be persisted</i>
+	 * @param classInfo informaes da classe cujas classes internas sero persistidas
+	 * <br><i>information of the class whose inner classes are to be persisted</i>
 	 * @throws SQLException em caso de erros com o banco de dados
 	 * <br><i>if an error occurs when accessing the database</i>
 	 */
-	private void saveInnerClass(Connection conn, int versionId, ClassInfo innerClassInfo) throws SQLException
+	private void saveInnerClasses(Connection conn, int versionId, ClassInfo classInfo) throws SQLException
 	{
-		// salva na tabela de classes internas
-		this.saveToInnerClassesTable(conn, versionId, innerClassInfo.getBytecode());
+		// informacoes das classes internas
+		List<ClassInfo> innerClassesInfo = new ArrayList<ClassInfo>();
+		this.collectInnerClasses(classInfo, innerClassesInfo);
 		
-		// salva as classes internas das classes internas
-		for ( ClassInfo innerClass : innerClassInfo.getInnerClassesInfo() )
-			this.saveInnerClass(conn, versionId, innerClass);
+		// salva na tabela de classes internas
+		this.saveToInnerClassesTable(conn, versionId, innerClassesInfo);
+	}
+	
+	/**
+	 * <p>
+	 * Obtm recursivamente as informaes das classes internas da classe informada.
+	 * <p><i>
+	 * Recursively gathers the inner classes information of the specified class.
+	 * </i>
+	 * 
+	 * @param classInfo informaes da classe
+	 * <br><i>information of the class</i>
+	 * @param classInfoList lista onde as informaes das classes internas sero adicionadas
+	 * <br><i>list to which the inner classes information are added</i>
+	 */
+	private void collectInnerClasses(ClassInfo classInfo, List<ClassInfo> classInfoList)
+	{
+		for ( ClassInfo innerClass : classInfo.getInnerClassesInfo() )
+		{
+			classInfoList.add(innerClass);
+			
+			// classes internas das classes internas
+			this.collectInnerClasses(innerClass, classInfoList);
+		}
 	}
 	
 	/**
@@ -654,31 +2551,32 @@ public class DefaultLiveClassPersistence implements ILiveClassPersistence
 	private TableKeysInfo getTableKeysInfo(Connection conn, String liveClassName) throws SQLException
 	{
 		//
-		String SQL = "SELECT l.id, c.id, l.safeModeVersion, MAX(c.version) AS currentVersion " + 
+		String SQL = "SELECT l.id, c.id, l.safeModeVersion, l.currentVersion " + 
 					 "FROM LiveClass l, ClassVersion c " + 
-					 "WHERE l.id = c.id_class AND l.className = ? " +
-					 "GROUP BY l.id";
+					 "WHERE l.className = ? AND c.id_class = l.id AND c.version = l.currentVersion";
 		
 		// log: debug
 		LiveClassUtils.logDebug(this.debugSQL(SQL, liveClassName));
 
 		
-		PreparedStatement pStmt = conn.prepareStatement(SQL);
+		PreparedStatement pStmt = this.prepareStatement(conn, SQL);
 		pStmt.setString(1,  liveClassName);
-		ResultSet rs = pStmt.executeQuery();
 		
 		TableKeysInfo keysInfo = new TableKeysInfo();
 		keysInfo.setClassName(liveClassName);
 		
-		if ( rs.next() )
+		try ( ResultSet rs = pStmt.executeQuery() )
 		{
-			keysInfo.setClassId(rs.getInt(1));
-			keysInfo.setVersionId(rs.getInt(2));
-			keysInfo.setSafeModeVersion(rs.getInt(3));
-			keysInfo.setCurrentVersion(rs.getInt(4));
-			
-			// log: debug
-			LiveClassUtils.logDebug(keysInfo.toString());
+			if ( rs.next() )
+			{
+				keysInfo.setClassId(rs.getInt(1));
+				keysInfo.setVersionId(rs.getInt(2));
+				keysInfo.setSafeModeVersion(rs.getInt(3));
+				keysInfo.setCurrentVersion(rs.getInt(4));
+				
+				// log: debug
+				LiveClassUtils.logDebug(keysInfo.toString());
+			}
 		}
 		
 		return ( keysInfo );
@@ -701,37 +2599,147 @@ public class DefaultLiveClassPersistence implements ILiveClassPersistence
 	private List<TableKeysInfo> getAllTableKeysInfo(Connection conn) throws SQLException
 	{
 		//
-		String SQL = "SELECT l.className, l.id, c.id, l.safeModeVersion, MAX(c.version) AS currentVersion " + 
+		String SQL = "SELECT l.className, l.id, c.id, l.safeModeVersion, l.currentVersion " + 
 					 "FROM LiveClass l, ClassVersion c " + 
-					 "WHERE l.id = c.id_class " +
-					 "GROUP BY l.id";
+					 "WHERE c.id_class = l.id AND c.version = l.currentVersion";
 
 		// log: debug
 		LiveClassUtils.logDebug(SQL);		
 		
-		PreparedStatement pStmt = conn.prepareStatement(SQL);
-		ResultSet rs = pStmt.executeQuery();
+		PreparedStatement pStmt = this.prepareStatement(conn, SQL);
 		
-		List<TableKeysInfo> keysInfoList = new ArrayList<TableKeysInfo>();
+		return ( this.readTableKeysInfo(pStmt) );
+	}
+	
+	/**
+	 * <p>
+	 * Obtm as chaves e verses das classes dinmicas informadas, em uma nica consulta por lote.
+	 * <p><i>
+	 * Gets the database keys and versions of the specified LiveClasses, in a single query per batch.
+	 * </i>
+	 * 
+	 * @param conn conexo com o banco de dados
+	 * <br><i>the database connection</i>
+	 * @param liveClassNames nomes das classes dinmicas
+	 * <br><i>the names of the LiveClasses</i> 
+	 * @return as chaves e verses das classes dinmicas informadas, por nome 
+	 * (com os valores <b>-1</b> para as classes no persistidas)
+	 * <br><i>the database keys and versions of the specified LiveClasses, by name 
+	 * (with -1 values for the classes not persisted)</i>
+	 * @throws SQLException em caso de erros com o banco de dados
+	 * <br><i>if an error occurs when accessing the database</i>
+	 */
+	private Map<String,TableKeysInfo> getTableKeysInfo(Connection conn, Collection<String> liveClassNames) throws SQLException
+	{
+		Map<String,TableKeysInfo> keysInfoMap = new LinkedHashMap<String,TableKeysInfo>();
 		
-		while ( rs.next() )
+		// classes nao persistidas
+		for ( String liveClassName : liveClassNames )
 		{
 			TableKeysInfo keysInfo = new TableKeysInfo();
-			keysInfo.setClassName(rs.getString(1));
-			keysInfo.setClassId(rs.getInt(2));
-			keysInfo.setVersionId(rs.getInt(3));
-			keysInfo.setSafeModeVersion(rs.getInt(4));
-			keysInfo.setCurrentVersion(rs.getInt(5));
+			keysInfo.setClassName(liveClassName);
 			
-			keysInfoList.add(keysInfo);
+			keysInfoMap.put(liveClassName, keysInfo);
+		}
+		
+		for ( List<String> names : partition(liveClassNames) )
+		{
+			String SQL = "SELECT l.className, l.id, c.id, l.safeModeVersion, l.currentVersion " + 
+						 "FROM LiveClass l, ClassVersion c " + 
+						 "WHERE c.id_class = l.id AND c.version = l.currentVersion AND l.className IN (" + placeholders(names.size()) + ")";
 			
 			// log: debug
-			LiveClassUtils.logDebug(keysInfo.toString());
+			LiveClassUtils.logDebug(this.debugSQL(SQL, names));
+			
+			try ( PreparedStatement pStmt = conn.prepareStatement(SQL) )
+			{
+				for ( int i = 0; i < names.size(); i++ )
+					pStmt.setString(i + 1, names.get(i));
+				
+				for ( TableKeysInfo keysInfo : this.readTableKeysInfo(pStmt) )
+					keysInfoMap.put(keysInfo.getClassName(), keysInfo);
+			}
+		}
+		
+		return ( keysInfoMap );
+	}
+	
+	/**
+	 * <p>
+	 * Executa a consulta informada, lendo as chaves e verses das classes dinmicas 
+	 * (colunas: nome, chave da classe, chave da verso atual, verso do modo seguro e verso atual).
+	 * <p><i>
+	 * Executes the specified query, reading the database keys and versions of the LiveClasses 
+	 * (columns: name, class key, current version key, safe mode version and current version).
+	 * </i>
+	 * 
+	 * @param pStmt consulta a ser executada
+	 * <br><i>the query to be executed</i>
+	 * @return as chaves e verses das classes dinmicas retornadas pela consulta
+	 * <br><i>the database keys and versions of the LiveClasses returned by the query</i>
+	 * @throws SQLException em caso de erros com o banco de dados
+	 * <br><i>if an error occurs when accessing the database</i>
+	 */
+	private List<TableKeysInfo> readTableKeysInfo(PreparedStatement pStmt) throws SQLException
+	{
+		List<TableKeysInfo> keysInfoList = new ArrayList<TableKeysInfo>();
+		
+		try ( ResultSet rs = pStmt.executeQuery() )
+		{
+			while ( rs.next() )
+			{
+				TableKeysInfo keysInfo = new TableKeysInfo();
+				keysInfo.setClassName(rs.getString(1));
+				keysInfo.setClassId(rs.getInt(2));
+				keysInfo.setVersionId(rs.getInt(3));
+				keysInfo.setSafeModeVersion(rs.getInt(4));
+				keysInfo.setCurrentVersion(rs.getInt(5));
+				
+				keysInfoList.add(keysInfo);
+				
+				// log: debug
+				LiveClassUtils.logDebug(keysInfo.toString());
+			}
 		}
 		
 		return ( keysInfoList );
 	}
 	
+	/**
+	 * <p>
+	 * Divide os nomes informados em lotes de at BULK_QUERY_SIZE nomes distintos.
+	 * <p><i>
+	 * Splits the specified names in batches of up to BULK_QUERY_SIZE distinct names.
+	 * </i>
+	 */
+	private static List<List<String>> partition(Collection<String> names)
+	{
+		List<String> distinctNames = new ArrayList<String>(new LinkedHashSet<String>(names));
+		List<List<String>> batches = new ArrayList<List<String>>();
+		
+		for ( int i = 0; i < distinctNames.size(); i += BULK_QUERY_SIZE )
+			batches.add(distinctNames.subList(i, Math.min(i + BULK_QUERY_SIZE, distinctNames.size())));
+		
+		return ( batches );
+	}
+	
+	/**
+	 * <p>
+	 * Gera a lista de parmetros (<i>?, ?, ...</i>) de uma clusula IN.
+	 * <p><i>
+	 * Generates the parameter list (?, ?, ...) of an IN clause.
+	 * </i>
+	 */
+	private static String placeholders(int count)
+	{
+		StringBuilder sb = new StringBuilder();
+		
+		for ( int i = 0; i < count; i++ )
+			sb.append(i == 0 ? "?" : ", ?");
+		
+		return ( sb.toString() );
+	}
+	
 	/**
 	 * <p>
 	 * Atualiza a verso de modo seguro da classe dinmica.
@@ -758,7 +2766,7 @@ public class DefaultLiveClassPersistence implements ILiveClassPersistence
 		// log: debug
 		LiveClassUtils.logDebug(this.debugSQL(SQL, version, liveClassName));
 		
-		PreparedStatement pStmt = conn.prepareStatement(SQL);
+		PreparedStatement pStmt = this.prepareStatement(conn, SQL);
 		pStmt.setInt(1, version);
 		pStmt.setString(2, liveClassName);
 		
@@ -771,6 +2779,41 @@ public class DefaultLiveClassPersistence implements ILiveClassPersistence
 		return ( result > 0 );
 	}
 	
+	/**
+	 * <p>
+	 * Atualiza a verso atual da classe dinmica.
+	 * <p><i>
+	 * Updates the LiveClass current version.
+	 * </i>
+	 * 
+	 * @param conn conexo com o banco de dados
+	 * <br><i>the database connection</i>
+	 * @param classId chave da classe dinmica na tabela LiveClass
+	 * <br><i>key of the LiveClass, from the LiveClass table</i>
+	 * @param version nova verso atual da classe dinmica
+	 * <br><i>the new current version of the LiveClass</i>
+	 * @throws SQLException em caso de erros com o banco de dados
+	 * <br><i>if an error occurs when accessing the database</i>
+	 */
+	private void updateCurrentVersion(Connection conn, int classId, int version) throws SQLException
+	{
+		// 
+		String SQL = "UPDATE LiveClass SET currentVersion=? WHERE id=?";
+
+		// log: debug
+		LiveClassUtils.logDebug(this.debugSQL(SQL, version, classId));
+		
+		PreparedStatement pStmt = this.prepareStatement(conn, SQL);
+		pStmt.setInt(1, version);
+		pStmt.setInt(2, classId);
+		
+		//
+		int result = pStmt.executeUpdate();
+		
+		// log: debug
+		LiveClassUtils.logDebug(String.format("registros afetados -> %d", result));
+	}
+	
 	/**
 	 * <p>
 	 * Mtodo utilitrio interno para o log de debug de SQL.
@@ -791,13 +2834,41 @@ public class DefaultLiveClassPersistence implements ILiveClassPersistence
 		for ( Object arg : args )
 		{
 			int index = buff.indexOf("?");
-			buff.replace(index, index+1, arg.toString());
+			buff.replace(index, index+1, String.valueOf(arg));
 		}
 		
 		return ( buff.toString() );
 	}
 	
 	
+	/**
+	 * <p>
+	 * Operao sobre o banco de dados a ser executada dentro de uma transao.
+	 * <p><i>
+	 * Database operation to be executed within a transaction.
+	 * </i>
+	 */
+	@FunctionalInterface
+	private interface SQLOperation<T>
+	{
+		/**
+		 * <p>
+		 * Executa a operao.
+		 * <p><i>
+		 * Executes the operation.
+		 * </i>
+		 * 
+		 * @param conn conexo com o banco de dados
+		 * <br><i>the database connection</i>
+		 * @return o resultado da operao
+		 * <br><i>the result of the operation</i>
+		 * @throws SQLException em caso de erros com o banco de dados
+		 * <br><i>if an error occurs when accessing the database</i>
+		 */
+		public T execute(Connection conn) throws SQLException;
+	}
+	
+	
 	/**
 	 * <p>
 	 * Classe auxiliar para mapear as chaves e verses de uma classe dinmica persistida no banco de dados.
@@ -819,7 +2890,7 @@ public class DefaultLiveClassPersistence implements ILiveClassPersistence
 		// a versao de modo seguro da classe dinamica (armazenada na tabela LiveClass)
 		private int safeModeVersion;
 		
-		// a versao de modo padrao da classe dinamica (armazenada na tabela ClassVersion)
+		// a versao de modo padrao da classe dinamica (armazenada na tabela LiveClass)
 		private int currentVersion;
 
 		
@@ -943,9 +3014,9 @@ public class DefaultLiveClassPersistence implements ILiveClassPersistence
 
 		/**
 		 * <p>
-		 * Atribui a verso atual da classe dinmica, lida da tabela ClassVersion.
+		 * Atribui a verso atual da classe dinmica, lida da tabela LiveClass.
 		 * <p><i>
-		 * Sets the LiveClass current version, read from the ClassVersion table.
+		 * Sets the LiveClass current version, read from the LiveClass table.
 		 * </i>
 		 * 
 		 * @param currentVersion verso atual da classe dinmica
@@ -77,7 +77,7 @@ public class DefaultLiveClassVersionManager extends JFrame implements ILiveClass
 	private JButton btnRollback;
 	
 	// interface com o BD
-	private ILiveClassPersistence liveClassDB;
+	private volatile ILiveClassPersistence liveClassDB;
 	
 	// mapa dos labels dos componentes
 	private Map<String,String> labelsMap;
@@ -150,7 +150,7 @@ public class DefaultLiveClassVersionManager extends JFrame implements ILiveClass
 		// Tabela das classes dinamicas e suas versoes
 		this.tableModel = new LiveClassTableModel();
 		this.liveClassTable = new JTable(this.tableModel);
-		this.liveClassTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		this.liveClassTable.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
 		this.liveClassTable.getSelectionModel().addListSelectionListener((evt) -> updateButtons());
 		this.liveClassTable.getTableHeader().setFont(this.liveClassTable.getTableHeader().getFont().deriveFont(Font.BOLD));
 		this.liveClassTable.setDefaultRenderer(Object.class, new LiveClassTableCellRenderer());
@@ -193,6 +193,12 @@ public class DefaultLiveClassVersionManager extends JFrame implements ILiveClass
 		this.observers.remove(observer);
 	}
 	
+	@Override
+	public void setPersistenceManager(ILiveClassPersistence liveClassDB)
+	{
+		this.liveClassDB = liveClassDB;
+	}
+	
 	/**
 	 * <p>
 	 * Notifica os observadores sobre a alterao de uma verso de classe dinmica.
@@ -219,34 +225,52 @@ public class DefaultLiveClassVersionManager extends JFrame implements ILiveClass
 	/**
 	 * <p>
 	 * Habilita ou desabilita os botes de commit e rollback 
-	 * conforme as verses da classe dinmica selecionada na tabela.
+	 * conforme as verses das classes dinmicas selecionadas na tabela.
 	 * <p><i>
 	 * Enables or disables the commit and rollback buttons 
-	 * according to the versioning of the selected LiveClass.
+	 * according to the versioning of the selected LiveClasses.
 	 * </i>
 	 */
 	private void updateButtons()
 	{
-		// a linha selecionada
-		int selectedRow = liveClassTable.getSelectedRow();
-	
-		if ( selectedRow >= 0 )
+		boolean canCommit = false;
+		boolean canRollback = false;
+		
+		// as linhas selecionadas
+		for ( int selectedRow : liveClassTable.getSelectedRows() )
 		{
 			// obtem o bean da linha selecionada
 			ILiveClassVersionInfo dbVersion = tableModel.getObjectAt(selectedRow);
 			
 			// pode executar commit?
-			this.btnCommit.setEnabled(dbVersion.getCurrentVersion() > dbVersion.getSafeModeVersion());
+			canCommit |= dbVersion.getCurrentVersion() > dbVersion.getSafeModeVersion();
 			
 			// pode executar rollback?
-			this.btnRollback.setEnabled(dbVersion.getCurrentVersion() > 1);
-		}
-		else
-		{
-			// desabilita
-			this.btnCommit.setEnabled(false);
-			this.btnRollback.setEnabled(false);
+			canRollback |= dbVersion.getCurrentVersion() > 1;
 		}
+		
+		this.btnCommit.setEnabled(canCommit);
+		this.btnRollback.setEnabled(canRollback);
+	}
+	
+	/**
+	 * <p>
+	 * Obtm os nomes das classes dinmicas selecionadas na tabela.
+	 * <p><i>
+	 * Gets the names of the LiveClasses selected in the table.
+	 * </i>
+	 * 
+	 * @return os nomes das classes dinmicas selecionadas
+	 * <br><i>the names of the selected LiveClasses</i>
+	 */
+	private List<String> getSelectedClassNames()
+	{
+		List<String> classNames = new ArrayList<String>();
+		
+		for ( int selectedRow : liveClassTable.getSelectedRows() )
+			classNames.add(tableModel.getObjectAt(selectedRow).getClassName());
+		
+		return ( classNames );
 	}
 	
 	/**
@@ -272,38 +296,38 @@ public class DefaultLiveClassVersionManager extends JFrame implements ILiveClass
 	
 	/**
 	 * <p>
-	 * Executa o commit da verso da classe dinmica selecionada.
+	 * Executa o commit das verses das classes dinmicas selecionadas, em uma nica operao.
 	 * <p><i>
-	 * Commits the version of the selected LiveClass.
+	 * Commits the versions of the selected LiveClasses, in a single operation.
 	 * </i>
 	 */
 	private void executeCommit()
 	{
+		// as classes selecionadas
+		List<String> classNames = this.getSelectedClassNames();
+		
+		if ( classNames.isEmpty() )
+			return;
+		
 		new Thread(()->{
 			try
 			{
-				// a linha selecionada
-				int selectedRow = liveClassTable.getSelectedRow();
-			
-				if ( selectedRow >= 0 )
-				{
-					// obtem o bean da linha selecionada
-					ILiveClassVersionInfo dbVersion = tableModel.getObjectAt(selectedRow);
-	
-					// faz o commit no banco de dados
-					liveClassDB.commitLiveClass(dbVersion.getClassName());
+				// faz o commit no banco de dados
+				Map<String,Boolean> results = liveClassDB.commitLiveClasses(classNames);
 				
-					// notifica os observadores
-					notifyObservers(dbVersion.getClassName(), true);
-					
-					// atualiza a tabela
-					executeReload();
-				}
+				// notifica os observadores
+				results.forEach((className, committed) -> {
+					if ( committed )
+						notifyObservers(className, true);
+				});
+				
+				// atualiza a tabela
+				executeReload();
 			}
 			catch (Exception e)
 			{
 				// log: erro
-				LiveClassUtils.logError("Erro ao executar o commit de classe dinamica selecionada");
+				LiveClassUtils.logError("Erro ao executar o commit das classes dinamicas selecionadas");
 				LiveClassUtils.logException(e);
 			}
 		}).start();
@@ -311,38 +335,38 @@ public class DefaultLiveClassVersionManager extends JFrame implements ILiveClass
 	
 	/**
 	 * <p>
-	 * Executa o rollback da verso da classe dinmica selecionada.
+	 * Executa o rollback das verses das classes dinmicas selecionadas, em uma nica operao.
 	 * <p><i>
-	 * Rolls back the version of the selected LiveClass.
+	 * Rolls back the versions of the selected LiveClasses, in a single operation.
 	 * </i>
 	 */
 	private void executeRollback()
 	{
+		// as classes selecionadas
+		List<String> classNames = this.getSelectedClassNames();
+		
+		if ( classNames.isEmpty() )
+			return;
+		
 		new Thread(()->{
 			try
 			{
-				// a linha selecionada
-				int selectedRow = liveClassTable.getSelectedRow();
-			
-				if ( selectedRow >= 0 )
-				{
-					// obtem o bean da linha selecionada
-					ILiveClassVersionInfo dbVersion = tableModel.getObjectAt(selectedRow);
-	
-					// faz o rollback no banco de dados
-					liveClassDB.rollbackLiveClass(dbVersion.getClassName());
+				// faz o rollback no banco de dados
+				Map<String,Boolean> results = liveClassDB.rollbackLiveClasses(classNames);
+				
+				// notifica os observadores
+				results.forEach((className, rolledBack) -> {
+					if ( rolledBack )
+						notifyObservers(className, false);
+				});
 				
-					// notifica os observadores
-					notifyObservers(dbVersion.getClassName(), false);
-					
-					// atualiza a tabela
-					executeReload();
-				}
+				// atualiza a tabela
+				executeReload();
 			}
 			catch (Exception e)
 			{
 				// log: erro
-				LiveClassUtils.logError("Erro ao executar o rollback de classe dinamica selecionada");
+				LiveClassUtils.logError("Erro ao executar o rollback das classes dinamicas selecionadas");
 				LiveClassUtils.logException(e);
 			}
 		}).start();
@@ -1,6 +1,11 @@
 package org.esfinge.liveprog.db;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.esfinge.liveprog.reflect.ClassInfo;
 
@@ -124,4 +129,229 @@ public interface ILiveClassPersistence
  	 * @see org.esfinge.liveprog.db.ILiveClassVersionManager
 	 */
 	public boolean rollbackLiveClass(String liveClassName) throws Exception;
+	
+	/**
+	 * <p>
+	 * Obtm as informaes das classes dinmicas informadas.
+	 * <br>
+	 * A implementao padro recupera as classes uma a uma, 
+	 * devendo ser sobrescrita pelas implementaes que consigam recuper-las em uma nica consulta.
+	 * <p><i>
+	 * Gets the information of the specified LiveClasses.
+	 * <br>
+	 * The default implementation retrieves the classes one by one, 
+	 * and should be overridden by the implementations able to retrieve them in a single query.
+	 * </i>
+	 * 
+	 * @param liveClassNames nomes das classes dinmicas
+	 * <br><i>names of the persisted LiveClasses</i>
+	 * @param safeMode <i>true</i> para recuperar as informaes das classes dinmicas do modo seguro, 
+	 * <i>false</i> para as informaes do modo normal
+	 * <br><i>true to get the information of the LiveClasses on their safe mode, false for the information of the standard mode</i>
+	 * @return as informaes das classes dinmicas persistidas, por nome 
+	 * (as classes sem verso persistida no so includas)
+	 * <br><i>the information of the persisted LiveClasses, by name 
+	 * (the classes without a persisted version are not included)</i>
+	 * @throws Exception em caso de erros ao recuperar as informaes das classes dinmicas persistidas
+ 	 * <br><i>if an error occurs when retrieving the information of the persisted LiveClasses</i>
+	 * @see #getLiveClassInfo(String, boolean)
+	 */
+	public default Map<String,ClassInfo> getLiveClassInfos(Collection<String> liveClassNames, boolean safeMode) throws Exception
+	{
+		Map<String,ClassInfo> classInfoMap = new LinkedHashMap<String,ClassInfo>();
+		
+		for ( String liveClassName : liveClassNames )
+		{
+			ClassInfo classInfo = this.getLiveClassInfo(liveClassName, safeMode);
+			
+			if ( classInfo != null )
+				classInfoMap.put(liveClassName, classInfo);
+		}
+		
+		return ( classInfoMap );
+	}
+	
+	/**
+	 * <p>
+	 * Obtm as informaes de versionamento das classes dinmicas informadas.
+	 * <br>
+	 * A implementao padro recupera as informaes uma a uma.
+	 * <p><i>
+	 * Gets the versioning information of the specified LiveClasses.
+	 * <br>
+	 * The default implementation retrieves the information one by one.
+	 * </i>
+	 * 
+	 * @param liveClassNames nomes das classes dinmicas
+	 * <br><i>names of the persisted LiveClasses</i>
+	 * @return as informaes de versionamento das classes dinmicas informadas, por nome
+	 * <br><i>the versioning information of the specified LiveClasses, by name</i>
+	 * @throws Exception em caso de erros ao recuperar as informaes de versionamento das classes dinmicas
+ 	 * <br><i>if an error occurs when retrieving the versioning information of the LiveClasses</i>
+	 * @see #getLiveClassVersionInfo(String)
+	 */
+	public default Map<String,ILiveClassVersionInfo> getLiveClassVersionInfos(Collection<String> liveClassNames) throws Exception
+	{
+		Map<String,ILiveClassVersionInfo> versionInfoMap = new LinkedHashMap<String,ILiveClassVersionInfo>();
+		
+		for ( String liveClassName : liveClassNames )
+			versionInfoMap.put(liveClassName, this.getLiveClassVersionInfo(liveClassName));
+		
+		return ( versionInfoMap );
+	}
+	
+	/**
+	 * <p>
+	 * Obtm uma pgina das informaes de versionamento das classes dinmicas persistidas, ordenadas pelo nome da classe.
+	 * <br>
+	 * Para percorrer todas as classes, a primeira pgina  obtida com <i>afterClassName</i> nulo e as seguintes 
+	 * com o nome da ltima classe da pgina anterior, at que uma pgina vazia seja retornada.
+	 * <p><i>
+	 * Gets a page of the versioning information of the persisted LiveClasses, sorted by the class name.
+	 * <br>
+	 * To iterate over all classes, the first page is retrieved with a null afterClassName and the following ones 
+	 * with the name of the last class of the previous page, until an empty page is returned.
+	 * </i>
+	 * 
+	 * @param afterClassName nome a partir do qual (exclusive) as classes so retornadas, ou <i>null</i> para a primeira pgina
+	 * <br><i>the name after which the classes are returned, or null for the first page</i>
+	 * @param maxResults nmero mximo de classes da pgina
+	 * <br><i>the maximum number of classes in the page</i>
+	 * @return as informaes de versionamento das classes dinmicas da pgina
+	 * <br><i>the versioning information of the LiveClasses in the page</i>
+	 * @throws Exception em caso de erros ao recuperar as informaes de versionamento das classes dinmicas
+ 	 * <br><i>if an error occurs when retrieving the versioning information of the persisted LiveClasses</i>
+	 */
+	public default List<ILiveClassVersionInfo> getLiveClassesVersionInfo(String afterClassName, int maxResults) throws Exception
+	{
+		List<ILiveClassVersionInfo> versionInfoList = new ArrayList<ILiveClassVersionInfo>(this.getAllLiveClassesVersionInfo());
+		versionInfoList.removeIf(v -> (afterClassName != null) && (v.getClassName().compareTo(afterClassName) <= 0));
+		versionInfoList.sort(Comparator.comparing(ILiveClassVersionInfo::getClassName));
+		
+		return ( versionInfoList.subList(0, Math.min(Math.max(maxResults, 0), versionInfoList.size())) );
+	}
+	
+	/**
+	 * <p>
+	 * Obtm as verses persistidas da classe dinmica, em ordem crescente.
+	 * <br>
+	 * A implementao padro considera que todas as verses at a verso atual esto persistidas, 
+	 * devendo ser sobrescrita pelas implementaes que removam verses antigas.
+	 * <p><i>
+	 * Gets the persisted versions of the LiveClass, in ascending order.
+	 * <br>
+	 * The default implementation considers that all versions up to the current version are persisted, 
+	 * and should be overridden by the implementations that remove old versions.
+	 * </i>
+	 * 
+	 * @param liveClassName nome da classe dinmica
+	 * <br><i>name of the persisted LiveClass</i>
+	 * @return as verses persistidas da classe dinmica, ou uma lista vazia caso a classe no tenha sido persistida
+	 * <br><i>the persisted versions of the LiveClass, or an empty list if the class has not been persisted</i>
+	 * @throws Exception em caso de erros ao recuperar as verses da classe dinmica
+ 	 * <br><i>if an error occurs when retrieving the LiveClass versions</i>
+	 */
+	public default List<Integer> getLiveClassVersionHistory(String liveClassName) throws Exception
+	{
+		List<Integer> versions = new ArrayList<Integer>();
+		
+		for ( int version = 1; version <= this.getLiveClassVersionInfo(liveClassName).getCurrentVersion(); version++ )
+			versions.add(version);
+		
+		return ( versions );
+	}
+	
+	/**
+	 * <p>
+	 * Persiste uma nova verso de cada classe dinmica informada, opcionalmente aceitando-as como verses seguras.
+	 * <br>
+	 * A implementao padro persiste as classes uma a uma, 
+	 * devendo ser sobrescrita pelas implementaes que consigam persisti-las em uma nica transao.
+	 * <p><i>
+	 * Persists a new version of each specified LiveClass, optionally committing them as safe versions.
+	 * <br>
+	 * The default implementation persists the classes one by one, 
+	 * and should be overridden by the implementations able to persist them in a single transaction.
+	 * </i>
+	 * 
+	 * @param liveClassInfos informaes das classes dinmicas a serem persistidas, pelo nome da classe
+	 * <br><i>information of the LiveClasses to be persisted, by class name</i>
+	 * @param commit <i>true</i> para aceitar as novas verses, <i>false</i> para mant-las como verses de teste
+	 * <br><i>true to commit the new versions, false to keep them as test versions</i>
+	 * @throws Exception em caso de erros ao persistir as informaes das classes dinmicas
+ 	 * <br><i>if an error occurs when persisting the LiveClasses information</i>
+	 * @see #saveLiveClassInfo(String, ClassInfo)
+	 */
+	public default void saveLiveClassInfos(Map<String,ClassInfo> liveClassInfos, boolean commit) throws Exception
+	{
+		for ( Map.Entry<String,ClassInfo> entry : liveClassInfos.entrySet() )
+		{
+			this.saveLiveClassInfo(entry.getKey(), entry.getValue());
+			
+			if ( commit )
+				this.commitLiveClass(entry.getKey());
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Aceita a verso atual das classes dinmicas informadas, promovendo-as como verses seguras.
+	 * <br>
+	 * A implementao padro aceita as classes uma a uma, 
+	 * devendo ser sobrescrita pelas implementaes que consigam aceit-las em uma nica transao.
+	 * <p><i>
+	 * Commits the current version of the specified LiveClasses, promoting them as safe versions.
+	 * <br>
+	 * The default implementation commits the classes one by one, 
+	 * and should be overridden by the implementations able to commit them in a single transaction.
+	 * </i>
+	 * 
+	 * @param liveClassNames nomes das classes dinmicas
+	 * <br><i>names of the persisted LiveClasses</i>
+	 * @return o resultado do commit de cada classe dinmica, por nome
+	 * <br><i>the commit result of each LiveClass, by name</i>
+	 * @throws Exception em caso de erros ao persistir o versionamento das classes dinmicas
+ 	 * <br><i>if an error occurs when persisting the LiveClasses versioning</i>
+	 * @see #commitLiveClass(String)
+	 */
+	public default Map<String,Boolean> commitLiveClasses(Collection<String> liveClassNames) throws Exception
+	{
+		Map<String,Boolean> resultMap = new LinkedHashMap<String,Boolean>();
+		
+		for ( String liveClassName : liveClassNames )
+			resultMap.put(liveClassName, this.commitLiveClass(liveClassName));
+		
+		return ( resultMap );
+	}
+	
+	/**
+	 * <p>
+	 * Descarta a verso atual das classes dinmicas informadas, retrocendo-as para as verses anteriores.
+	 * <br>
+	 * A implementao padro retrocede as classes uma a uma, 
+	 * devendo ser sobrescrita pelas implementaes que consigam retroced-las em uma nica transao.
+	 * <p><i>
+	 * Rolls back the current version of the specified LiveClasses, reverting them to their previous versions.
+	 * <br>
+	 * The default implementation rolls back the classes one by one, 
+	 * and should be overridden by the implementations able to roll them back in a single transaction.
+	 * </i>
+	 * 
+	 * @param liveClassNames nomes das classes dinmicas
+	 * <br><i>names of the persisted LiveClasses</i>
+	 * @return o resultado do rollback de cada classe dinmica, por nome
+	 * <br><i>the rollback result of each LiveClass, by name</i>
+	 * @throws Exception em caso de erros ao persistir o versionamento das classes dinmicas
+ 	 * <br><i>if an error occurs when persisting the LiveClasses versioning</i>
+	 * @see #rollbackLiveClass(String)
+	 */
+	public default Map<String,Boolean> rollbackLiveClasses(Collection<String> liveClassNames) throws Exception
+	{
+		Map<String,Boolean> resultMap = new LinkedHashMap<String,Boolean>();
+		
+		for ( String liveClassName : liveClassNames )
+			resultMap.put(liveClassName, this.rollbackLiveClass(liveClassName));
+		
+		return ( resultMap );
+	}
 }
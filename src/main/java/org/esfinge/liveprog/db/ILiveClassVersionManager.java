@@ -36,4 +36,27 @@ public interface ILiveClassVersionManager
 	 * @see org.esfinge.liveprog.db.ILiveClassVersionObserver
 	 */
 	public void removeObserver(ILiveClassVersionObserver observer);
+	
+	/**
+	 * <p>
+	 * Especifica o gerenciador de persistncia da fbrica de objetos de classes dinmicas, 
+	 * por meio do qual as verses devem ser aceitas e descartadas, para que os decoradores 
+	 * da persistncia (cache e gravao em segundo plano) sejam mantidos consistentes.
+	 * <br>
+	 * A implementao padro no faz nada, para gerenciadores que no acessam a persistncia.
+	 * <p><i>
+	 * Sets the persistence manager of the LiveClass objects factory, 
+	 * through which the versions must be committed and rolled back, so that the 
+	 * persistence decorators (cache and write-behind) are kept consistent.
+	 * <br>
+	 * The default implementation does nothing, for managers that do not access the persistence.
+	 * </i> 
+	 * 
+	 * @param liveClassDB gerenciador de persistncia de classes dinmicas
+	 * <br><i>LiveClasses persistence manager</i>
+	 * @see org.esfinge.liveprog.db.ILiveClassPersistence
+	 */
+	public default void setPersistenceManager(ILiveClassPersistence liveClassDB)
+	{
+	}
 }
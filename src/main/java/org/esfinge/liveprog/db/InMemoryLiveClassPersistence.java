@@ -0,0 +1,384 @@
+package org.esfinge.liveprog.db;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.esfinge.liveprog.reflect.ClassInfo;
+
+/**
+ * <p>
+ * Gerenciador de persistncia de classes dinmicas mantido somente em memria, sem durabilidade entre execues.
+ * Indicado para ns sem estado e testes, onde o histrico de verses no precisa sobreviver  aplicao.
+ * <br>
+ * Segue a mesma semntica de versionamento, aceite e descarte de {@link DefaultLiveClassPersistence}.
+ * As verses de cada classe so mantidas em uma pilha limitada ao tamanho de histrico informado
+ * (as verses atual e do modo seguro nunca so descartadas), e o acesso concorrente  controlado
+ * por um conjunto fixo de <i>locks</i>, distribudos pelo nome da classe.
+ * <p><i>
+ * LiveClasses persistence manager kept only in memory, without durability between executions.
+ * Meant for stateless nodes and tests, where the version history does not need to outlive the application.
+ * <br>
+ * Follows the same versioning, commit and rollback semantics of DefaultLiveClassPersistence.
+ * The versions of each class are kept in a stack bounded to the specified history size
+ * (the current and safe mode versions are never discarded), and concurrent access is controlled
+ * by a fixed set of locks, striped by the class name.
+ * </i>
+ * 
+ * @see org.esfinge.liveprog.db.ILiveClassPersistence
+ */
+public class InMemoryLiveClassPersistence implements ILiveClassPersistence
+{
+	// tamanho padrao do historico de versoes de cada classe
+	private static final int DEFAULT_MAX_HISTORY = 16;
+	
+	// numero de locks (potencia de 2)
+	private static final int LOCK_STRIPES = 32;
+	
+	// pilhas de versoes, pelo nome da classe
+	private Map<String,VersionStack> classes;
+	
+	// locks distribuidos pelo nome da classe
+	private ReadWriteLock[] locks;
+	
+	// numero maximo de versoes mantidas por classe
+	private int maxHistory;
+	
+	
+	/**
+	 * <p>
+	 * Cria um gerenciador em memria com o tamanho padro de histrico de verses.
+	 * <p><i>
+	 * Creates an in-memory manager with the default version history size.
+	 * </i>
+	 */
+	public InMemoryLiveClassPersistence()
+	{
+		this(DEFAULT_MAX_HISTORY);
+	}
+	
+	/**
+	 * <p>
+	 * Cria um gerenciador em memria que mantm no mximo o nmero de verses informado por classe.
+	 * <p><i>
+	 * Creates an in-memory manager that keeps at most the specified number of versions per class.
+	 * </i>
+	 * 
+	 * @param maxHistory nmero mximo de verses mantidas por classe
+	 * <br><i>the maximum number of versions kept per class</i>
+	 * @throws IllegalArgumentException caso o nmero de verses seja menor que 1
+	 * <br><i>if the number of versions is lower than 1</i>
+	 */
+	public InMemoryLiveClassPersistence(int maxHistory) throws IllegalArgumentException
+	{
+		if ( maxHistory < 1 )
+			throw new IllegalArgumentException("History size must be at least 1: " + maxHistory);
+		
+		this.maxHistory = maxHistory;
+		this.classes = new ConcurrentHashMap<String,VersionStack>();
+		this.locks = new ReadWriteLock[LOCK_STRIPES];
+		
+		for ( int i = 0; i < LOCK_STRIPES; i++ )
+			this.locks[i] = new ReentrantReadWriteLock();
+	}
+	
+	@Override
+	public ClassInfo getLiveClassInfo(String liveClassName, boolean safeMode) throws Exception
+	{
+		ReadWriteLock lock = this.getLock(liveClassName);
+		
+		lock.readLock().lock();
+		try
+		{
+			VersionStack stack = this.classes.get(liveClassName);
+			
+			// nao ha versao salva para essa classe
+			if ( stack == null )
+				return ( null );
+			
+			return ( stack.versions.get(safeMode ? stack.safeModeVersion : stack.currentVersion) );
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+	
+	@Override
+	public void saveLiveClassInfo(String liveClassName, ClassInfo liveClassInfo) throws Exception
+	{
+		ReadWriteLock lock = this.getLock(liveClassName);
+		
+		lock.writeLock().lock();
+		try
+		{
+			VersionStack stack = this.classes.get(liveClassName);
+			
+			// primeira versao
+			if ( stack == null )
+			{
+				stack = new VersionStack();
+				stack.safeModeVersion = 1;
+				stack.currentVersion = 1;
+				stack.versions.put(1, liveClassInfo);
+				
+				this.classes.put(liveClassName, stack);
+				return;
+			}
+			
+			// remove a versao de teste atual para incluir a nova versao
+			if ( stack.safeModeVersion != stack.currentVersion )
+				stack.versions.remove(stack.currentVersion);
+			
+			// inclui a nova versao
+			stack.currentVersion = stack.safeModeVersion + 1;
+			stack.versions.put(stack.currentVersion, liveClassInfo);
+			
+			// descarta as versoes mais antigas alem do tamanho do historico
+			// (preservando a versao do modo seguro)
+			while ( stack.versions.size() > this.maxHistory )
+			{
+				Integer oldest = stack.versions.firstKey();
+				
+				if ( oldest == stack.safeModeVersion )
+					oldest = stack.versions.higherKey(oldest);
+				
+				if ( oldest == stack.currentVersion )
+					break;
+				
+				stack.versions.remove(oldest);
+			}
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+	
+	@Override
+	public ILiveClassVersionInfo getLiveClassVersionInfo(String liveClassName) throws Exception
+	{
+		ReadWriteLock lock = this.getLock(liveClassName);
+		
+		lock.readLock().lock();
+		try
+		{
+			VersionStack stack = this.classes.get(liveClassName);
+			
+			if ( stack == null )
+				return ( new VersionInfo(liveClassName, -1, -1) );
+			
+			return ( new VersionInfo(liveClassName, stack.currentVersion, stack.safeModeVersion) );
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+	
+	@Override
+	public List<ILiveClassVersionInfo> getAllLiveClassesVersionInfo() throws Exception
+	{
+		List<ILiveClassVersionInfo> versionInfoList = new ArrayList<ILiveClassVersionInfo>();
+		
+		// le cada classe sob o seu lock (as classes incluidas durante a iteracao podem nao ser listadas)
+		for ( String liveClassName : this.classes.keySet() )
+			versionInfoList.add(this.getLiveClassVersionInfo(liveClassName));
+		
+		return ( versionInfoList );
+	}
+	
+	@Override
+	public boolean commitLiveClass(String liveClassName) throws Exception
+	{
+		ReadWriteLock lock = this.getLock(liveClassName);
+		
+		lock.writeLock().lock();
+		try
+		{
+			VersionStack stack = this.classes.get(liveClassName);
+			
+			// a versao do modo seguro eh diferente da versao do modo padrao?
+			if ( (stack == null) || (stack.safeModeVersion >= stack.currentVersion) )
+				return ( false );
+			
+			stack.safeModeVersion = stack.currentVersion;
+			
+			return ( true );
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+	
+	@Override
+	public boolean rollbackLiveClass(String liveClassName) throws Exception
+	{
+		ReadWriteLock lock = this.getLock(liveClassName);
+		
+		lock.writeLock().lock();
+		try
+		{
+			VersionStack stack = this.classes.get(liveClassName);
+			
+			// retrocede para a versao anterior mais recente
+			// (as versoes antigas podem ter sido descartadas pelo limite do historico)
+			Integer newVersion = (stack == null) ? null : stack.versions.lowerKey(stack.currentVersion);
+			
+			if ( newVersion != null )
+			{
+				// verifica a versao do modo seguro
+				if ( stack.safeModeVersion == stack.currentVersion )
+					stack.safeModeVersion = newVersion;
+				
+				stack.versions.remove(stack.currentVersion);
+				stack.currentVersion = newVersion;
+			}
+			
+			return ( true );
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+	
+	@Override
+	public List<Integer> getLiveClassVersionHistory(String liveClassName) throws Exception
+	{
+		ReadWriteLock lock = this.getLock(liveClassName);
+		
+		lock.readLock().lock();
+		try
+		{
+			VersionStack stack = this.classes.get(liveClassName);
+			
+			if ( stack == null )
+				return ( new ArrayList<Integer>() );
+			
+			return ( new ArrayList<Integer>(stack.versions.keySet()) );
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Descarta todas as classes dinmicas mantidas em memria.
+	 * <p><i>
+	 * Discards all the LiveClasses kept in memory.
+	 * </i>
+	 */
+	public void clear()
+	{
+		this.classes.clear();
+	}
+	
+	/**
+	 * <p>
+	 * Obtm o <i>lock</i> de uma classe dinmica.
+	 * <p><i>
+	 * Gets the lock of a LiveClass.
+	 * </i>
+	 * 
+	 * @param liveClassName nome da classe dinmica
+	 * <br><i>the LiveClass name</i>
+	 * @return o <i>lock</i> responsvel pela classe
+	 * <br><i>the lock in charge of the class</i>
+	 */
+	private ReadWriteLock getLock(String liveClassName)
+	{
+		// espalha os bits do hash (nomes de classes possuem prefixos comuns)
+		int hash = liveClassName.hashCode();
+		hash ^= (hash >>> 16);
+		
+		return ( this.locks[hash & (LOCK_STRIPES - 1)] );
+	}
+	
+	
+	/**
+	 * <p>
+	 * Pilha de verses de uma classe dinmica.
+	 * <p><i>
+	 * Version stack of a LiveClass.
+	 * </i>
+	 */
+	private static class VersionStack
+	{
+		// versao do modo seguro
+		private int safeModeVersion;
+		
+		// versao do modo padrao
+		private int currentVersion;
+		
+		// informacoes das versoes mantidas, pelo numero da versao
+		private TreeMap<Integer,ClassInfo> versions = new TreeMap<Integer,ClassInfo>();
+	}
+	
+	
+	/**
+	 * <p>
+	 * Informaes de versionamento de uma classe dinmica mantida em memria.
+	 * <p><i>
+	 * Versioning information of a LiveClass kept in memory.
+	 * </i>
+	 */
+	private static class VersionInfo implements ILiveClassVersionInfo
+	{
+		// nome da classe
+		private String className;
+		
+		// versao do modo padrao
+		private int currentVersion;
+		
+		// versao do modo seguro
+		private int safeModeVersion;
+		
+		
+		/**
+		 * <p>
+		 * Cria as informaes de versionamento.
+		 * <p><i>
+		 * Creates the versioning information.
+		 * </i>
+		 * 
+		 * @param className nome da classe dinmica
+		 * <br><i>the LiveClass name</i>
+		 * @param currentVersion verso do modo padro
+		 * <br><i>the current version</i>
+		 * @param safeModeVersion verso do modo seguro
+		 * <br><i>the safe mode version</i>
+		 */
+		VersionInfo(String className, int currentVersion, int safeModeVersion)
+		{
+			this.className = className;
+			this.currentVersion = currentVersion;
+			this.safeModeVersion = safeModeVersion;
+		}
+		
+		@Override
+		public String getClassName()
+		{
+			return ( this.className );
+		}
+		
+		@Override
+		public int getCurrentVersion()
+		{
+			return ( this.currentVersion );
+		}
+		
+		@Override
+		public int getSafeModeVersion()
+		{
+			return ( this.safeModeVersion );
+		}
+	}
+}
@@ -0,0 +1,434 @@
+package org.esfinge.liveprog.db;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+import org.esfinge.liveprog.instrumentation.InstrumentationHelper;
+import org.esfinge.liveprog.reflect.ClassInfo;
+import org.esfinge.liveprog.util.LiveClassUtils;
+
+/**
+ * <p>
+ * Exportao e importao das verses aceitas das classes dinmicas em um nico arquivo compactado (<i>bundle</i>),
+ * permitindo que novos ns obtenham as verses atuais das classes em uma nica etapa.
+ * <br>
+ * O <i>bundle</i> contm, para cada classe, o nmero da sua verso do modo seguro, o seu bytecode,
+ * os bytecodes das suas classes internas e os seus metadados serializados (evitando a inspeo dos bytecodes
+ * na importao). O contedo  compactado com <i>Deflate</i> e verificado por um <i>checksum</i> CRC32.
+ * <p><i>
+ * Export and import of the committed LiveClasses versions on a single compressed file (bundle),
+ * allowing new nodes to get the current versions of the classes in a single step.
+ * <br>
+ * The bundle holds, for each class, its safe mode version number, its bytecode, the bytecode
+ * of its inner classes and its serialized metadata (avoiding the bytecode inspection on import).
+ * The content is compressed with Deflate and verified by a CRC32 checksum.
+ * </i>
+ * 
+ * @see org.esfinge.liveprog.db.ILiveClassPersistence#saveLiveClassInfos(Map, boolean)
+ */
+public class LiveClassBundle
+{
+	// identificacao e formato do arquivo de bundle
+	private static final int BUNDLE_MAGIC = 0x4C43424E;
+	private static final int BUNDLE_FORMAT = 1;
+	
+	// numero de classes consultadas por vez na exportacao
+	private static final int EXPORT_PAGE_SIZE = 500;
+	
+	
+	/**
+	 * <p>
+	 * Exporta as verses aceitas (do modo seguro) de todas as classes dinmicas persistidas para um arquivo de <i>bundle</i>.
+	 * O arquivo  gravado em um arquivo temporrio e movido para o destino somente ao final da exportao.
+	 * <p><i>
+	 * Exports the committed (safe mode) versions of all the persisted LiveClasses to a bundle file.
+	 * The bundle is written to a temporary file and moved to the destination only when the export finishes.
+	 * </i>
+	 * 
+	 * @param dbManager gerenciador de persistncia de onde as classes so exportadas
+	 * <br><i>the persistence manager the classes are exported from</i>
+	 * @param bundleFile nome e caminho do arquivo de <i>bundle</i>
+	 * <br><i>filename and path of the bundle file</i>
+	 * @return o nmero de classes exportadas
+	 * <br><i>the number of exported classes</i>
+	 * @throws Exception em caso de erros ao obter as classes ou gravar o arquivo
+	 * <br><i>if an error occurs when retrieving the classes or writing the file</i>
+	 */
+	public static int exportBundle(ILiveClassPersistence dbManager, String bundleFile) throws Exception
+	{
+		Path target = Paths.get(bundleFile).toAbsolutePath();
+		Path tempFile = target.resolveSibling(target.getFileName() + ".tmp");
+		int count = 0;
+		
+		CRC32 crc = new CRC32();
+		Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+		
+		try ( OutputStream fileOut = new BufferedOutputStream(Files.newOutputStream(tempFile)) )
+		{
+			// cabecalho (nao compactado)
+			DataOutputStream header = new DataOutputStream(fileOut);
+			header.writeInt(BUNDLE_MAGIC);
+			header.writeInt(BUNDLE_FORMAT);
+			
+			DeflaterOutputStream deflaterOut = new DeflaterOutputStream(fileOut, deflater, 64 * 1024);
+			DataOutputStream out = new DataOutputStream(new CheckedOutputStream(deflaterOut, crc));
+			
+			// percorre as classes por paginas
+			String lastClassName = null;
+			List<ILiveClassVersionInfo> page;
+			
+			while (! (page = dbManager.getLiveClassesVersionInfo(lastClassName, EXPORT_PAGE_SIZE)).isEmpty() )
+			{
+				// versoes do modo seguro de cada classe da pagina
+				Map<String,Integer> safeModeVersions = new LinkedHashMap<String,Integer>();
+				
+				for ( ILiveClassVersionInfo versionInfo : page )
+					if ( versionInfo.getSafeModeVersion() > 0 )
+						safeModeVersions.put(versionInfo.getClassName(), versionInfo.getSafeModeVersion());
+				
+				// obtem as versoes da pagina em uma unica consulta
+				Map<String,ClassInfo> classInfoMap = dbManager.getLiveClassInfos(safeModeVersions.keySet(), true);
+				
+				for ( Map.Entry<String,ClassInfo> entry : classInfoMap.entrySet() )
+				{
+					// indica o inicio de um novo registro
+					out.writeBoolean(true);
+					writeClass(out, entry.getKey(), safeModeVersions.get(entry.getKey()), entry.getValue());
+					count++;
+				}
+				
+				lastClassName = page.get(page.size() - 1).getClassName();
+			}
+			
+			// final dos registros, seguido do checksum (fora do calculo)
+			out.writeBoolean(false);
+			out.flush();
+			new DataOutputStream(deflaterOut).writeLong(crc.getValue());
+			deflaterOut.finish();
+		}
+		catch ( Exception e )
+		{
+			Files.deleteIfExists(tempFile);
+			
+			throw e;
+		}
+		finally
+		{
+			deflater.end();
+		}
+		
+		Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		
+		// log: info
+		LiveClassUtils.logInfo(String.format("Bundle exportado: %d classes dinamicas em '%s' (%d bytes)", count, target, Files.size(target)));
+		
+		return ( count );
+	}
+	
+	/**
+	 * <p>
+	 * L as classes dinmicas de um arquivo de <i>bundle</i>, verificando a sua integridade.
+	 * O contedo  descompactado e o <i>checksum</i> verificado antes da leitura dos registros.
+	 * <p><i>
+	 * Reads the LiveClasses from a bundle file, verifying its integrity.
+	 * The content is decompressed and the checksum verified before the records are read.
+	 * </i>
+	 * 
+	 * @param bundleFile nome e caminho do arquivo de <i>bundle</i>
+	 * <br><i>filename and path of the bundle file</i>
+	 * @return as informaes das classes dinmicas do <i>bundle</i>, pelo nome da classe
+	 * <br><i>information of the bundle LiveClasses, by class name</i>
+	 * @throws IOException em caso de erros ao ler o arquivo, ou caso ele esteja corrompido ou em um formato desconhecido
+	 * <br><i>if an error occurs when reading the file, or if it is corrupted or in an unknown format</i>
+	 */
+	public static Map<String,ClassInfo> readBundle(String bundleFile) throws IOException
+	{
+		Map<String,ClassInfo> classInfoMap = new LinkedHashMap<String,ClassInfo>();
+		Inflater inflater = new Inflater();
+		byte[] content;
+		
+		try ( InputStream fileIn = new BufferedInputStream(Files.newInputStream(Paths.get(bundleFile))) )
+		{
+			// cabecalho
+			DataInputStream header = new DataInputStream(fileIn);
+			
+			if ( header.readInt() != BUNDLE_MAGIC )
+				throw new IOException("Not a LiveClasses bundle: " + bundleFile);
+			
+			int format = header.readInt();
+			if ( format != BUNDLE_FORMAT )
+				throw new IOException("Unsupported bundle format: " + format);
+			
+			// descompacta todo o conteudo (registros e checksum) antes de interpretar os registros
+			// (um arquivo truncado lanca EOFException ao aguardar os bytes restantes)
+			InflaterInputStream inflaterIn = new InflaterInputStream(fileIn, inflater, 64 * 1024);
+			ByteArrayOutputStream contentOut = new ByteArrayOutputStream();
+			byte[] buffer = new byte[64 * 1024];
+			int read;
+			
+			while ( (read = inflaterIn.read(buffer)) >= 0 )
+				contentOut.write(buffer, 0, read);
+			
+			// verifica o final do conteudo compactado, incluindo o seu trailer
+			if (! inflater.finished() )
+				throw new IOException("Corrupted bundle (truncated content): " + bundleFile);
+			
+			content = contentOut.toByteArray();
+		}
+		catch ( ZipException | EOFException e )
+		{
+			throw new IOException("Corrupted bundle: " + bundleFile, e);
+		}
+		finally
+		{
+			inflater.end();
+		}
+		
+		// verifica o checksum dos registros, gravado no final do conteudo
+		int recordsLength = content.length - Long.BYTES;
+		if ( recordsLength < 1 )
+			throw new IOException("Corrupted bundle (truncated content): " + bundleFile);
+		
+		CRC32 crc = new CRC32();
+		crc.update(content, 0, recordsLength);
+		
+		if ( ByteBuffer.wrap(content, recordsLength, Long.BYTES).getLong() != crc.getValue() )
+			throw new IOException("Corrupted bundle (checksum mismatch): " + bundleFile);
+		
+		// interpreta os registros verificados
+		try
+		{
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(content, 0, recordsLength));
+			
+			while ( in.readBoolean() )
+			{
+				String liveClassName = in.readUTF();
+				classInfoMap.put(liveClassName, readClass(in));
+			}
+			
+			if ( in.available() > 0 )
+				throw new IOException("Corrupted bundle (trailing data): " + bundleFile);
+		}
+		catch ( EOFException | RuntimeException e )
+		{
+			throw new IOException("Corrupted bundle (invalid record): " + bundleFile, e);
+		}
+		
+		return ( classInfoMap );
+	}
+	
+	/**
+	 * <p>
+	 * Importa as classes dinmicas de um arquivo de <i>bundle</i>, persistindo-as como as verses aceitas
+	 * (atual e do modo seguro) de cada classe em uma nica operao em lote.
+	 * <br>
+	 * O <i>bundle</i>  lido e verificado por completo antes de qualquer alterao no gerenciador de persistncia.
+	 * <p><i>
+	 * Imports the LiveClasses from a bundle file, persisting them as the committed (current and safe mode) versions
+	 * of each class in a single batch operation.
+	 * <br>
+	 * The bundle is fully read and verified before any change to the persistence manager.
+	 * </i>
+	 * 
+	 * @param dbManager gerenciador de persistncia para onde as classes so importadas
+	 * <br><i>the persistence manager the classes are imported to</i>
+	 * @param bundleFile nome e caminho do arquivo de <i>bundle</i>
+	 * <br><i>filename and path of the bundle file</i>
+	 * @return as informaes das classes dinmicas importadas, pelo nome da classe
+	 * <br><i>information of the imported LiveClasses, by class name</i>
+	 * @throws Exception em caso de erros ao ler o arquivo ou ao persistir as classes
+	 * <br><i>if an error occurs when reading the file or persisting the classes</i>
+	 */
+	public static Map<String,ClassInfo> importBundle(ILiveClassPersistence dbManager, String bundleFile) throws Exception
+	{
+		Map<String,ClassInfo> classInfoMap = readBundle(bundleFile);
+		
+		// persiste e aceita todas as versoes em lote
+		dbManager.saveLiveClassInfos(classInfoMap, true);
+		
+		// log: info
+		LiveClassUtils.logInfo(String.format("Bundle importado: %d classes dinamicas de '%s'", classInfoMap.size(), bundleFile));
+		
+		return ( classInfoMap );
+	}
+	
+	/**
+	 * <p>
+	 * Grava o registro de uma classe dinmica no <i>bundle</i>.
+	 * <p><i>
+	 * Writes the record of a LiveClass to the bundle.
+	 * </i>
+	 * 
+	 * @param out fluxo de sada do <i>bundle</i>
+	 * <br><i>the bundle output stream</i>
+	 * @param liveClassName nome da classe dinmica
+	 * <br><i>the LiveClass name</i>
+	 * @param safeModeVersion nmero da verso do modo seguro exportada
+	 * <br><i>the exported safe mode version number</i>
+	 * @param classInfo informaes da verso exportada
+	 * <br><i>information of the exported version</i>
+	 * @throws IOException em caso de erros ao gravar o registro
+	 * <br><i>if an error occurs when writing the record</i>
+	 */
+	private static void writeClass(DataOutputStream out, String liveClassName, int safeModeVersion, ClassInfo classInfo) throws IOException
+	{
+		out.writeUTF(liveClassName);
+		out.writeInt(safeModeVersion);
+		writeClassInfo(out, classInfo);
+		
+		// classes internas
+		out.writeInt(classInfo.getInnerClassesInfo().size());
+		
+		for ( ClassInfo innerClassInfo : classInfo.getInnerClassesInfo() )
+			writeClassInfo(out, innerClassInfo);
+	}
+	
+	/**
+	 * <p>
+	 * L o registro de uma classe dinmica do <i>bundle</i>, aps o nome da classe.
+	 * <p><i>
+	 * Reads the record of a LiveClass from the bundle, after the class name.
+	 * </i>
+	 * 
+	 * @param in fluxo de entrada do <i>bundle</i>
+	 * <br><i>the bundle input stream</i>
+	 * @return as informaes da classe dinmica, incluindo as classes internas
+	 * <br><i>information of the LiveClass, including the inner classes</i>
+	 * @throws IOException em caso de erros ao ler o registro
+	 * <br><i>if an error occurs when reading the record</i>
+	 */
+	private static ClassInfo readClass(DataInputStream in) throws IOException
+	{
+		// versao exportada (informativa, a versao importada eh numerada pelo gerenciador de destino)
+		in.readInt();
+		
+		ClassInfo classInfo = readClassInfo(in);
+		
+		// classes internas
+		int innerCount = in.readInt();
+		List<ClassInfo> innerClasses = new ArrayList<ClassInfo>(innerCount);
+		
+		for ( int i = 0; i < innerCount; i++ )
+			innerClasses.add(readClassInfo(in));
+		
+		classInfo.addInnerClassInfo(innerClasses.toArray(new ClassInfo[0]));
+		
+		return ( classInfo );
+	}
+	
+	/**
+	 * <p>
+	 * Grava os metadados serializados e o bytecode de uma classe.
+	 * <p><i>
+	 * Writes the serialized metadata and the bytecode of a class.
+	 * </i>
+	 * 
+	 * @param out fluxo de sada do <i>bundle</i>
+	 * <br><i>the bundle output stream</i>
+	 * @param classInfo informaes da classe
+	 * <br><i>the class information</i>
+	 * @throws IOException em caso de erros ao gravar as informaes
+	 * <br><i>if an error occurs when writing the information</i>
+	 */
+	private static void writeClassInfo(DataOutputStream out, ClassInfo classInfo) throws IOException
+	{
+		// metadados (vazio caso nao possam ser serializados, sendo obtidos pela inspecao do bytecode)
+		byte[] metadata;
+		try
+		{
+			metadata = ClassInfoSerializer.serialize(classInfo);
+		}
+		catch ( IllegalArgumentException e )
+		{
+			metadata = new byte[0];
+		}
+		
+		byte[] bytecode = classInfo.getBytecode();
+		
+		out.writeInt(metadata.length);
+		out.write(metadata);
+		out.writeInt(bytecode.length);
+		out.write(bytecode);
+	}
+	
+	/**
+	 * <p>
+	 * L os metadados serializados e o bytecode de uma classe.
+	 * <p><i>
+	 * Reads the serialized metadata and the bytecode of a class.
+	 * </i>
+	 * 
+	 * @param in fluxo de entrada do <i>bundle</i>
+	 * <br><i>the bundle input stream</i>
+	 * @return as informaes da classe
+	 * <br><i>the class information</i>
+	 * @throws IOException em caso de erros ao ler as informaes
+	 * <br><i>if an error occurs when reading the information</i>
+	 */
+	private static ClassInfo readClassInfo(DataInputStream in) throws IOException
+	{
+		byte[] metadata = readBytes(in);
+		byte[] bytecode = readBytes(in);
+		
+		// sem metadados, inspeciona o bytecode
+		if ( metadata.length == 0 )
+			return ( InstrumentationHelper.inspect(bytecode) );
+		
+		ClassInfo classInfo = ClassInfoSerializer.deserialize(metadata, new ClassInfo());
+		classInfo.setBytecode(bytecode);
+		
+		return ( classInfo );
+	}
+	
+	/**
+	 * <p>
+	 * L um bloco de bytes precedido pelo seu tamanho.
+	 * <p><i>
+	 * Reads a block of bytes preceded by its length.
+	 * </i>
+	 * 
+	 * @param in fluxo de entrada do <i>bundle</i>
+	 * <br><i>the bundle input stream</i>
+	 * @return os bytes lidos
+	 * <br><i>the bytes read</i>
+	 * @throws IOException em caso de erros ao ler os bytes, ou caso o tamanho seja invlido
+	 * <br><i>if an error occurs when reading the bytes, or if the length is invalid</i>
+	 */
+	private static byte[] readBytes(DataInputStream in) throws IOException
+	{
+		int length = in.readInt();
+		
+		// os registros ja estao em memoria: o tamanho nao pode exceder os bytes restantes
+		if ( (length < 0) || (length > in.available()) )
+			throw new IOException("Corrupted bundle record (invalid length: " + length + ")");
+		
+		byte[] data = new byte[length];
+		in.readFully(data);
+		
+		return ( data );
+	}
+}
@@ -0,0 +1,1307 @@
+package org.esfinge.liveprog.db;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.esfinge.liveprog.instrumentation.InstrumentationHelper;
+import org.esfinge.liveprog.reflect.ClassInfo;
+import org.esfinge.liveprog.util.LiveClassUtils;
+
+/**
+ * <p>
+ * Gerenciador de persistncia de classes dinmicas baseado em um log de registros somente de incluso,
+ * dividido em segmentos acessados por mapeamento em memria (<i>FileChannel.map</i>), sem utilizar banco de dados.
+ * <br>
+ * Cada nova verso  includa no final do log junto com o estado de versionamento da classe, e os aceites e descartes
+ * de verses incluem somente o novo estado. A localizao de cada verso  mantida em um ndice em memria,
+ * gravado periodicamente em um arquivo de ndice compacto e reconstrudo na inicializao a partir desse arquivo
+ * e dos registros includos aps a sua gravao.
+ * <br>
+ * As verses descartadas e substitudas permanecem no log at a execuo de {@link #compact()}.
+ * <br>
+ * Por padro, os registros includos so gravados em disco pelo sistema operacional, sendo garantidos 
+ * somente aps a troca de segmento, a gravao do ndice ou {@link #close()}: uma falha do sistema operacional 
+ * pode descartar as ltimas operaes confirmadas. Para garantir cada operao ao confirm-la, 
+ * utilize {@link #setForceOnAppend(boolean)}.
+ * <p><i>
+ * LiveClasses persistence manager based on an append-only log of records,
+ * split in segments accessed by memory mapping (FileChannel.map), without using a database.
+ * <br>
+ * Each new version is appended to the log along with the versioning state of the class, and version commits and
+ * rollbacks append only the new state. The location of each version is kept in an in-memory index,
+ * periodically written to a compact index file and rebuilt on startup from that file
+ * and the records appended after it was written.
+ * <br>
+ * Rolled back and replaced versions remain in the log until {@link #compact()} is executed.
+ * <br>
+ * By default, the appended records are written to disk by the operating system, being durable 
+ * only after a segment roll, an index write or {@link #close()}: an operating system crash 
+ * may discard the last acknowledged operations. To make each operation durable when it is acknowledged, 
+ * use {@link #setForceOnAppend(boolean)}.
+ * </i>
+ * 
+ * @see org.esfinge.liveprog.db.ILiveClassPersistence
+ */
+public class MappedLogLiveClassPersistence implements ILiveClassPersistence
+{
+	// nome do arquivo de indice
+	private static final String INDEX_FILE = "index.dat";
+	
+	// extensao dos arquivos de segmentos do log
+	private static final String SEGMENT_EXTENSION = ".log";
+	
+	// tamanho dos segmentos do log
+	private static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+	
+	// identificacao e formato do arquivo de indice
+	private static final int INDEX_MAGIC = 0x4C43494E;
+	private static final int INDEX_FORMAT = 1;
+	
+	// numero de registros incluidos no log entre as gravacoes do arquivo de indice
+	private static final int CHECKPOINT_INTERVAL = 1024;
+	
+	// tipos de registros do log (zero indica o final dos registros do segmento)
+	private static final byte RECORD_VERSION = 1;
+	private static final byte RECORD_STATE = 2;
+	
+	// tamanho do cabecalho dos registros: tipo (1) + tamanho (4) + CRC32 (4)
+	private static final int RECORD_HEADER_SIZE = 9;
+	
+	// diretorio dos arquivos de log e indice
+	private Path directory;
+	
+	// segmentos do log, pelo seu numero de sequencia
+	private TreeMap<Integer,Segment> segments;
+	
+	// segmento onde os novos registros sao incluidos
+	private Segment activeSegment;
+	
+	// indice em memoria das classes dinamicas
+	private Map<String,ClassEntry> index;
+	
+	// controle de acesso concorrente (leituras em paralelo, inclusoes exclusivas)
+	private ReadWriteLock lock;
+	
+	// registros incluidos desde a ultima gravacao do arquivo de indice
+	private int uncheckpointedRecords;
+	
+	// indica se cada registro incluido eh gravado em disco antes de confirmar a operacao
+	private volatile boolean forceOnAppend;
+	
+	
+	/**
+	 * <p>
+	 * Abre (ou cria) o log de classes dinmicas no diretrio informado.
+	 * <p><i>
+	 * Opens (or creates) the LiveClasses log on the specified directory.
+	 * </i>
+	 * 
+	 * @param directory diretrio dos arquivos de log e ndice
+	 * <br><i>the directory of the log and index files</i>
+	 * @throws IOException em caso de erros ao abrir os arquivos de log e ndice
+	 * <br><i>if an error occurs when opening the log and index files</i>
+	 */
+	public MappedLogLiveClassPersistence(String directory) throws IOException
+	{
+		this.directory = Paths.get(directory).toAbsolutePath();
+		this.segments = new TreeMap<Integer,Segment>();
+		this.index = new HashMap<String,ClassEntry>();
+		this.lock = new ReentrantReadWriteLock();
+		
+		Files.createDirectories(this.directory);
+		this.open();
+	}
+	
+	/**
+	 * <p>
+	 * Especifica se cada registro includo no log  gravado em disco (<i>MappedByteBuffer.force</i>) 
+	 * antes de confirmar a operao, tornando-a durvel a falhas do sistema operacional, ao custo de uma 
+	 * sincronizao com o disco por operao.
+	 * <p><i>
+	 * Sets whether each record appended to the log is written to disk (MappedByteBuffer.force) 
+	 * before acknowledging the operation, making it durable to operating system crashes, at the cost of one 
+	 * disk sync per operation.
+	 * </i>
+	 * 
+	 * @param forceOnAppend <i>true</i> para gravar cada registro em disco ao inclu-lo, 
+	 * <i>false</i> (padro) para grav-los somente na troca de segmento, na gravao do ndice e no fechamento
+	 * <br><i>true to write each record to disk when appending it, false (default) to write them 
+	 * only on segment rolls, index writes and on close</i>
+	 */
+	public void setForceOnAppend(boolean forceOnAppend)
+	{
+		this.forceOnAppend = forceOnAppend;
+	}
+	
+	@Override
+	public ClassInfo getLiveClassInfo(String liveClassName, boolean safeMode) throws Exception
+	{
+		byte[][] bytecodes;
+		
+		this.lock.readLock().lock();
+		try
+		{
+			ClassEntry entry = this.index.get(liveClassName);
+			
+			// nao ha versao salva para essa classe
+			if ( entry == null )
+				return ( null );
+			
+			// copia os bytecodes diretamente do segmento mapeado
+			VersionLocation location = entry.versions.get(safeMode ? entry.safeModeVersion : entry.currentVersion);
+			bytecodes = this.readBytecodes(location);
+		}
+		finally
+		{
+			this.lock.readLock().unlock();
+		}
+		
+		// recupera as informacoes da classe e das classes internas
+		ClassInfo classInfo = InstrumentationHelper.inspect(bytecodes[0]);
+		
+		for ( int i = 1; i < bytecodes.length; i++ )
+			classInfo.addInnerClassInfo(InstrumentationHelper.inspect(bytecodes[i]));
+		
+		return ( classInfo );
+	}
+	
+	@Override
+	public void saveLiveClassInfo(String liveClassName, ClassInfo liveClassInfo) throws Exception
+	{
+		// bytecodes da classe e das classes internas
+		List<byte[]> bytecodes = new ArrayList<byte[]>();
+		bytecodes.add(liveClassInfo.getBytecode());
+		this.collectInnerClassesBytecode(liveClassInfo, bytecodes);
+		
+		this.lock.writeLock().lock();
+		try
+		{
+			ClassEntry entry = this.index.get(liveClassName);
+			
+			// primeira versao, ou a versao seguinte a versao do modo seguro
+			// (substituindo a versao de teste atual, se houver)
+			int safeModeVersion = (entry == null) ? 1 : entry.safeModeVersion;
+			int version = (entry == null) ? 1 : entry.safeModeVersion + 1;
+			
+			this.appendVersion(liveClassName, version, safeModeVersion, version, bytecodes);
+		}
+		finally
+		{
+			this.lock.writeLock().unlock();
+		}
+	}
+	
+	@Override
+	public ILiveClassVersionInfo getLiveClassVersionInfo(String liveClassName) throws Exception
+	{
+		this.lock.readLock().lock();
+		try
+		{
+			ClassEntry entry = this.index.get(liveClassName);
+			
+			if ( entry == null )
+				return ( new VersionInfo(liveClassName, -1, -1) );
+			
+			return ( new VersionInfo(liveClassName, entry.currentVersion, entry.safeModeVersion) );
+		}
+		finally
+		{
+			this.lock.readLock().unlock();
+		}
+	}
+	
+	@Override
+	public List<ILiveClassVersionInfo> getAllLiveClassesVersionInfo() throws Exception
+	{
+		this.lock.readLock().lock();
+		try
+		{
+			List<ILiveClassVersionInfo> versionInfoList = new ArrayList<ILiveClassVersionInfo>();
+			
+			for ( Map.Entry<String,ClassEntry> entry : this.index.entrySet() )
+				versionInfoList.add(new VersionInfo(entry.getKey(), entry.getValue().currentVersion, entry.getValue().safeModeVersion));
+			
+			return ( versionInfoList );
+		}
+		finally
+		{
+			this.lock.readLock().unlock();
+		}
+	}
+	
+	@Override
+	public List<ILiveClassVersionInfo> getLiveClassesVersionInfo(String afterClassName, int maxResults) throws Exception
+	{
+		this.lock.readLock().lock();
+		try
+		{
+			// ordena os nomes para a paginacao
+			TreeMap<String,ClassEntry> sortedIndex = new TreeMap<String,ClassEntry>(this.index);
+			Map<String,ClassEntry> pageIndex = (afterClassName == null) ? sortedIndex : sortedIndex.tailMap(afterClassName, false);
+			
+			List<ILiveClassVersionInfo> versionInfoList = new ArrayList<ILiveClassVersionInfo>();
+			
+			for ( Map.Entry<String,ClassEntry> entry : pageIndex.entrySet() )
+			{
+				if ( versionInfoList.size() >= maxResults )
+					break;
+				
+				versionInfoList.add(new VersionInfo(entry.getKey(), entry.getValue().currentVersion, entry.getValue().safeModeVersion));
+			}
+			
+			return ( versionInfoList );
+		}
+		finally
+		{
+			this.lock.readLock().unlock();
+		}
+	}
+	
+	@Override
+	public List<Integer> getLiveClassVersionHistory(String liveClassName) throws Exception
+	{
+		this.lock.readLock().lock();
+		try
+		{
+			ClassEntry entry = this.index.get(liveClassName);
+			
+			if ( entry == null )
+				return ( new ArrayList<Integer>() );
+			
+			return ( new ArrayList<Integer>(entry.versions.keySet()) );
+		}
+		finally
+		{
+			this.lock.readLock().unlock();
+		}
+	}
+	
+	@Override
+	public boolean commitLiveClass(String liveClassName) throws Exception
+	{
+		this.lock.writeLock().lock();
+		try
+		{
+			ClassEntry entry = this.index.get(liveClassName);
+			
+			// a versao do modo seguro eh diferente da versao do modo padrao?
+			if ( (entry == null) || (entry.safeModeVersion >= entry.currentVersion) )
+				return ( false );
+			
+			this.appendState(liveClassName, entry.currentVersion, entry.currentVersion);
+			
+			return ( true );
+		}
+		finally
+		{
+			this.lock.writeLock().unlock();
+		}
+	}
+	
+	@Override
+	public boolean rollbackLiveClass(String liveClassName) throws Exception
+	{
+		this.lock.writeLock().lock();
+		try
+		{
+			ClassEntry entry = this.index.get(liveClassName);
+			
+			// verifica se nao eh a primeira versao
+			if ( (entry != null) && (entry.currentVersion > 1) )
+			{
+				// retrocede uma versao (e a versao do modo seguro, se for a mesma)
+				int newVersion = entry.currentVersion - 1;
+				int safeModeVersion = Math.min(entry.safeModeVersion, newVersion);
+				
+				this.appendState(liveClassName, safeModeVersion, newVersion);
+			}
+			
+			return ( true );
+		}
+		finally
+		{
+			this.lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Reescreve o log somente com as verses em uso das classes dinmicas,
+	 * removendo as verses descartadas e substitudas e os registros de versionamento.
+	 * <br>
+	 * As demais operaes ficam bloqueadas durante a compactao.
+	 * <p><i>
+	 * Rewrites the log with only the LiveClass versions in use,
+	 * removing the rolled back and replaced versions and the versioning records.
+	 * <br>
+	 * All other operations are blocked while compacting.
+	 * </i>
+	 * 
+	 * @return o nmero de bytes liberados
+	 * <br><i>the number of bytes reclaimed</i>
+	 * @throws IOException em caso de erros ao reescrever o log
+	 * <br><i>if an error occurs when rewriting the log</i>
+	 */
+	public long compact() throws IOException
+	{
+		this.lock.writeLock().lock();
+		try
+		{
+			long sizeBefore = this.getLogSize();
+			
+			// registros das versoes em uso
+			List<byte[]> records = new ArrayList<byte[]>();
+			List<String> recordClasses = new ArrayList<String>();
+			List<Integer> recordVersions = new ArrayList<Integer>();
+			
+			for ( Map.Entry<String,ClassEntry> entry : this.index.entrySet() )
+			{
+				ClassEntry classEntry = entry.getValue();
+				
+				for ( Map.Entry<Integer,VersionLocation> version : classEntry.versions.entrySet() )
+				{
+					byte[][] bytecodes = this.readBytecodes(version.getValue());
+					List<byte[]> bytecodeList = new ArrayList<byte[]>();
+					for ( byte[] bytecode : bytecodes )
+						bytecodeList.add(bytecode);
+					
+					records.add(this.encodeVersion(entry.getKey(), version.getKey(),
+							classEntry.safeModeVersion, classEntry.currentVersion, bytecodeList, null));
+					recordClasses.add(entry.getKey());
+					recordVersions.add(version.getKey());
+				}
+			}
+			
+			// grava os registros em novos segmentos, dimensionados pelo seu conteudo
+			TreeMap<Integer,Segment> oldSegments = new TreeMap<Integer,Segment>(this.segments);
+			this.segments.clear();
+			this.activeSegment = null;
+			
+			int nextSegmentId = oldSegments.isEmpty() ? 1 : oldSegments.lastKey() + 1;
+			int start = 0;
+			
+			while ( start < records.size() )
+			{
+				int end = start;
+				long size = 0;
+				
+				while ( (end < records.size()) && ((end == start) || (size + RECORD_HEADER_SIZE + records.get(end).length <= SEGMENT_SIZE)) )
+					size += RECORD_HEADER_SIZE + records.get(end++).length;
+				
+				this.activeSegment = Segment.open(this.segmentPath(nextSegmentId), nextSegmentId, (int) size);
+				this.segments.put(nextSegmentId++, this.activeSegment);
+				
+				for ( int i = start; i < end; i++ )
+				{
+					int offset = this.write(this.activeSegment, RECORD_VERSION, records.get(i));
+					this.index.get(recordClasses.get(i)).versions.put(recordVersions.get(i),
+							this.locateVersion(this.activeSegment, offset, records.get(i)));
+				}
+				
+				start = end;
+			}
+			
+			// o novo indice passa a referenciar somente os novos segmentos
+			for ( Segment segment : this.segments.values() )
+				segment.buffer.force();
+			this.writeIndex();
+			
+			// remove os segmentos antigos
+			for ( Segment segment : oldSegments.values() )
+			{
+				segment.close();
+				Files.deleteIfExists(segment.path);
+			}
+			
+			long reclaimed = sizeBefore - this.getLogSize();
+			
+			// log: info
+			LiveClassUtils.logInfo(String.format("Log de classes dinamicas compactado: %d versoes, %d bytes liberados", records.size(), reclaimed));
+			
+			return ( reclaimed );
+		}
+		finally
+		{
+			this.lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Grava o arquivo de ndice e fecha os arquivos de log.
+	 * <p><i>
+	 * Writes the index file and closes the log files.
+	 * </i>
+	 * 
+	 * @throws IOException em caso de erros ao gravar o ndice ou fechar os arquivos
+	 * <br><i>if an error occurs when writing the index or closing the files</i>
+	 */
+	public void close() throws IOException
+	{
+		this.lock.writeLock().lock();
+		try
+		{
+			this.writeIndex();
+			
+			for ( Segment segment : this.segments.values() )
+				segment.close();
+			
+			this.segments.clear();
+			this.activeSegment = null;
+		}
+		finally
+		{
+			this.lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Abre os segmentos existentes e reconstri o ndice em memria.
+	 * <p><i>
+	 * Opens the existing segments and rebuilds the in-memory index.
+	 * </i>
+	 * 
+	 * @throws IOException em caso de erros ao abrir os arquivos
+	 * <br><i>if an error occurs when opening the files</i>
+	 */
+	private void open() throws IOException
+	{
+		// abre os segmentos existentes
+		try ( DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory, "*" + SEGMENT_EXTENSION) )
+		{
+			for ( Path path : stream )
+			{
+				String fileName = path.getFileName().toString();
+				
+				try
+				{
+					int id = Integer.parseInt(fileName.substring(0, fileName.length() - SEGMENT_EXTENSION.length()));
+					this.segments.put(id, Segment.open(path, id, 0));
+				}
+				catch ( NumberFormatException e )
+				{
+					// log: aviso
+					LiveClassUtils.logInfo("Arquivo ignorado no diretorio do log: " + fileName);
+				}
+			}
+		}
+		
+		// posicao do log a partir da qual os registros devem ser reprocessados
+		int[] replayFrom = this.readIndex();
+		
+		if ( replayFrom == null )
+		{
+			// reconstroi o indice a partir de todo o log
+			this.index.clear();
+			replayFrom = new int[] { this.segments.isEmpty() ? 0 : this.segments.firstKey(), 0 };
+		}
+		
+		int replayed = 0;
+		
+		for ( Segment segment : this.segments.tailMap(replayFrom[0], true).values() )
+			replayed += this.replay(segment, (segment.id == replayFrom[0]) ? replayFrom[1] : 0);
+		
+		if (! this.segments.isEmpty() )
+			this.activeSegment = this.segments.lastEntry().getValue();
+		
+		// log: info
+		LiveClassUtils.logInfo(String.format("Log de classes dinamicas aberto: %s (%d classes, %d segmentos, %d registros reprocessados)",
+				this.directory, this.index.size(), this.segments.size(), replayed));
+	}
+	
+	/**
+	 * <p>
+	 * Reprocessa os registros do segmento a partir da posio informada, atualizando o ndice em memria.
+	 * Um registro incompleto ou corrompido encerra o segmento, sendo descartado juntamente com o restante dele.
+	 * <p><i>
+	 * Replays the records of the segment starting at the specified position, updating the in-memory index.
+	 * An incomplete or corrupted record ends the segment, being discarded along with the rest of it.
+	 * </i>
+	 * 
+	 * @param segment segmento a ser reprocessado
+	 * <br><i>the segment to be replayed</i>
+	 * @param position posio inicial
+	 * <br><i>the start position</i>
+	 * @return o nmero de registros reprocessados
+	 * <br><i>the number of replayed records</i>
+	 */
+	private int replay(Segment segment, int position)
+	{
+		ByteBuffer buffer = segment.buffer.duplicate();
+		int count = 0;
+		
+		while ( position + RECORD_HEADER_SIZE <= buffer.capacity() )
+		{
+			byte type = buffer.get(position);
+			
+			// final dos registros do segmento
+			if ( type == 0 )
+				break;
+			
+			int length = buffer.getInt(position + 1);
+			int checksum = buffer.getInt(position + 5);
+			int payloadOffset = position + RECORD_HEADER_SIZE;
+			
+			if ( (length < 0) || (length > buffer.capacity() - payloadOffset) || (checksum != crc32(buffer, payloadOffset, length)) )
+			{
+				// log: erro
+				LiveClassUtils.logError(String.format("Registro corrompido no log de classes dinamicas, descartando o restante do segmento: %s (posicao %d)",
+						segment.path, position));
+				
+				// apaga o restante do segmento
+				for ( int i = position; i < buffer.capacity(); i++ )
+					buffer.put(i, (byte) 0);
+				break;
+			}
+			
+			ByteBuffer payload = buffer.duplicate();
+			payload.position(payloadOffset);
+			payload.limit(payloadOffset + length);
+			
+			String className = readString(payload);
+			
+			if ( type == RECORD_VERSION )
+			{
+				int version = payload.getInt();
+				int safeModeVersion = payload.getInt();
+				int currentVersion = payload.getInt();
+				
+				this.applyVersion(className, version, safeModeVersion, currentVersion, this.locateVersion(segment, payloadOffset, payload));
+			}
+			else
+				this.applyState(className, payload.getInt(), payload.getInt());
+			
+			position = payloadOffset + length;
+			count++;
+		}
+		
+		segment.position = position;
+		
+		return ( count );
+	}
+	
+	/**
+	 * <p>
+	 * Inclui no log uma nova verso da classe dinmica, atualizando o ndice em memria.
+	 * <p><i>
+	 * Appends a new LiveClass version to the log, updating the in-memory index.
+	 * </i>
+	 */
+	private void appendVersion(String className, int version, int safeModeVersion, int currentVersion, List<byte[]> bytecodes) throws IOException
+	{
+		int[] bytecodeOffsets = new int[bytecodes.size()];
+		byte[] payload = this.encodeVersion(className, version, safeModeVersion, currentVersion, bytecodes, bytecodeOffsets);
+		
+		Segment segment = this.reserve(payload.length);
+		int payloadOffset = this.write(segment, RECORD_VERSION, payload);
+		
+		// localizacao dos bytecodes no segmento
+		VersionLocation location = new VersionLocation(segment.id, bytecodes.size());
+		for ( int i = 0; i < bytecodeOffsets.length; i++ )
+		{
+			location.offsets[i] = payloadOffset + bytecodeOffsets[i];
+			location.lengths[i] = bytecodes.get(i).length;
+		}
+		
+		this.applyVersion(className, version, safeModeVersion, currentVersion, location);
+		this.force();
+		this.checkpoint();
+	}
+	
+	/**
+	 * <p>
+	 * Inclui no log o novo estado de versionamento da classe dinmica, atualizando o ndice em memria.
+	 * <p><i>
+	 * Appends the new versioning state of the LiveClass to the log, updating the in-memory index.
+	 * </i>
+	 */
+	private void appendState(String className, int safeModeVersion, int currentVersion) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		writeString(out, className);
+		out.writeInt(safeModeVersion);
+		out.writeInt(currentVersion);
+		
+		byte[] payload = bytes.toByteArray();
+		this.write(this.reserve(payload.length), RECORD_STATE, payload);
+		
+		this.applyState(className, safeModeVersion, currentVersion);
+		this.force();
+		this.checkpoint();
+	}
+	
+	/**
+	 * <p>
+	 * Grava em disco o segmento atual, caso cada registro includo deva ser gravado antes de confirmar a operao.
+	 * <p><i>
+	 * Writes the current segment to disk, if each appended record must be written before acknowledging the operation.
+	 * </i>
+	 */
+	private void force()
+	{
+		if ( this.forceOnAppend )
+			this.activeSegment.buffer.force();
+	}
+	
+	/**
+	 * <p>
+	 * Codifica o registro de uma verso da classe dinmica.
+	 * <p><i>
+	 * Encodes the record of a LiveClass version.
+	 * </i>
+	 * 
+	 * @param bytecodeOffsets se no for nulo, recebe a posio de cada bytecode no registro
+	 * <br><i>if not null, receives the position of each bytecode on the record</i>
+	 */
+	private byte[] encodeVersion(String className, int version, int safeModeVersion, int currentVersion,
+			List<byte[]> bytecodes, int[] bytecodeOffsets) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		
+		writeString(out, className);
+		out.writeInt(version);
+		out.writeInt(safeModeVersion);
+		out.writeInt(currentVersion);
+		out.writeInt(bytecodes.size());
+		
+		for ( int i = 0; i < bytecodes.size(); i++ )
+		{
+			out.writeInt(bytecodes.get(i).length);
+			
+			if ( bytecodeOffsets != null )
+				bytecodeOffsets[i] = out.size();
+			
+			out.write(bytecodes.get(i));
+		}
+		
+		return ( bytes.toByteArray() );
+	}
+	
+	/**
+	 * <p>
+	 * Obtm a localizao dos bytecodes de um registro de verso j gravado no segmento.
+	 * <p><i>
+	 * Gets the bytecode location of a version record already written on the segment.
+	 * </i>
+	 */
+	private VersionLocation locateVersion(Segment segment, int payloadOffset, byte[] payload)
+	{
+		ByteBuffer buffer = segment.buffer.duplicate();
+		buffer.position(payloadOffset);
+		buffer.limit(payloadOffset + payload.length);
+		
+		readString(buffer);
+		buffer.position(buffer.position() + 12);
+		
+		return ( this.locateVersion(segment, payloadOffset, buffer) );
+	}
+	
+	/**
+	 * <p>
+	 * Obtm a localizao dos bytecodes de um registro de verso, a partir da quantidade de bytecodes.
+	 * <p><i>
+	 * Gets the bytecode location of a version record, starting at the bytecode count.
+	 * </i>
+	 */
+	private VersionLocation locateVersion(Segment segment, int payloadOffset, ByteBuffer payload)
+	{
+		VersionLocation location = new VersionLocation(segment.id, payload.getInt());
+		
+		for ( int i = 0; i < location.offsets.length; i++ )
+		{
+			location.lengths[i] = payload.getInt();
+			location.offsets[i] = payload.position();
+			payload.position(payload.position() + location.lengths[i]);
+		}
+		
+		return ( location );
+	}
+	
+	/**
+	 * <p>
+	 * Atualiza o ndice em memria com uma nova verso da classe dinmica.
+	 * <p><i>
+	 * Updates the in-memory index with a new LiveClass version.
+	 * </i>
+	 */
+	private void applyVersion(String className, int version, int safeModeVersion, int currentVersion, VersionLocation location)
+	{
+		ClassEntry entry = this.index.get(className);
+		
+		if ( entry == null )
+		{
+			entry = new ClassEntry();
+			this.index.put(className, entry);
+		}
+		
+		entry.versions.put(version, location);
+		this.applyState(className, safeModeVersion, currentVersion);
+	}
+	
+	/**
+	 * <p>
+	 * Atualiza o estado de versionamento da classe dinmica no ndice em memria,
+	 * descartando as verses posteriores  verso atual.
+	 * <p><i>
+	 * Updates the versioning state of the LiveClass on the in-memory index,
+	 * discarding the versions after the current version.
+	 * </i>
+	 */
+	private void applyState(String className, int safeModeVersion, int currentVersion)
+	{
+		ClassEntry entry = this.index.get(className);
+		
+		if ( entry == null )
+			return;
+		
+		entry.safeModeVersion = safeModeVersion;
+		entry.currentVersion = currentVersion;
+		entry.versions.tailMap(currentVersion, false).clear();
+	}
+	
+	/**
+	 * <p>
+	 * Obtm o segmento onde ser gravado um registro com o tamanho informado,
+	 * criando um novo segmento caso o segmento atual no possua espao suficiente.
+	 * <p><i>
+	 * Gets the segment where a record with the specified size will be written,
+	 * creating a new segment if the current segment does not have enough space.
+	 * </i>
+	 */
+	private Segment reserve(int payloadLength) throws IOException
+	{
+		int size = RECORD_HEADER_SIZE + payloadLength;
+		
+		if ( (this.activeSegment == null) || (this.activeSegment.buffer.capacity() - this.activeSegment.position < size) )
+		{
+			int id = this.segments.isEmpty() ? 1 : this.segments.lastKey() + 1;
+			
+			// o segmento anterior esta completo
+			if ( this.activeSegment != null )
+				this.activeSegment.buffer.force();
+			
+			this.activeSegment = Segment.open(this.segmentPath(id), id, Math.max(SEGMENT_SIZE, size));
+			this.segments.put(id, this.activeSegment);
+		}
+		
+		return ( this.activeSegment );
+	}
+	
+	/**
+	 * <p>
+	 * Grava o registro no final do segmento. O tipo do registro  gravado por ltimo,
+	 * de forma que um registro incompleto nunca seja considerado vlido.
+	 * <p><i>
+	 * Writes the record at the end of the segment. The record type is written last,
+	 * so an incomplete record is never considered valid.
+	 * </i>
+	 * 
+	 * @return a posio dos dados do registro no segmento
+	 * <br><i>the position of the record data on the segment</i>
+	 */
+	private int write(Segment segment, byte type, byte[] payload)
+	{
+		int position = segment.position;
+		int payloadOffset = position + RECORD_HEADER_SIZE;
+		
+		ByteBuffer buffer = segment.buffer.duplicate();
+		buffer.position(payloadOffset);
+		buffer.put(payload);
+		
+		buffer.putInt(position + 1, payload.length);
+		buffer.putInt(position + 5, crc32(buffer, payloadOffset, payload.length));
+		buffer.put(position, type);
+		
+		segment.position = payloadOffset + payload.length;
+		this.uncheckpointedRecords++;
+		
+		return ( payloadOffset );
+	}
+	
+	/**
+	 * <p>
+	 * Copia os bytecodes da verso a partir do segmento mapeado.
+	 * <p><i>
+	 * Copies the version bytecode from the mapped segment.
+	 * </i>
+	 */
+	private byte[][] readBytecodes(VersionLocation location)
+	{
+		ByteBuffer buffer = this.segments.get(location.segmentId).buffer.duplicate();
+		byte[][] bytecodes = new byte[location.offsets.length][];
+		
+		for ( int i = 0; i < bytecodes.length; i++ )
+		{
+			bytecodes[i] = new byte[location.lengths[i]];
+			buffer.position(location.offsets[i]);
+			buffer.get(bytecodes[i]);
+		}
+		
+		return ( bytecodes );
+	}
+	
+	/**
+	 * <p>
+	 * Grava o arquivo de ndice caso tenham sido includos registros suficientes desde a ltima gravao.
+	 * <p><i>
+	 * Writes the index file if enough records were appended since it was last written.
+	 * </i>
+	 */
+	private void checkpoint() throws IOException
+	{
+		if ( this.uncheckpointedRecords >= CHECKPOINT_INTERVAL )
+			this.writeIndex();
+	}
+	
+	/**
+	 * <p>
+	 * Grava o ndice em memria no arquivo de ndice, juntamente com a posio final do log.
+	 * O segmento atual  gravado em disco antes do ndice, que nunca referencia registros ainda no gravados,
+	 * e o ndice  gravado em um arquivo temporrio, sincronizado com o disco e ento renomeado, de forma atmica.
+	 * <p><i>
+	 * Writes the in-memory index to the index file, along with the log end position.
+	 * The current segment is written to disk before the index, which never references records not yet written,
+	 * and the index is written to a temporary file, synced to disk and then atomically renamed.
+	 * </i>
+	 */
+	private void writeIndex() throws IOException
+	{
+		// os registros referenciados pelo indice devem estar em disco antes dele
+		if ( this.activeSegment != null )
+			this.activeSegment.buffer.force();
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		
+		out.writeInt(INDEX_MAGIC);
+		out.writeInt(INDEX_FORMAT);
+		out.writeInt(this.activeSegment == null ? 0 : this.activeSegment.id);
+		out.writeInt(this.activeSegment == null ? 0 : this.activeSegment.position);
+		out.writeInt(this.index.size());
+		
+		for ( Map.Entry<String,ClassEntry> entry : this.index.entrySet() )
+		{
+			ClassEntry classEntry = entry.getValue();
+			
+			writeString(out, entry.getKey());
+			out.writeInt(classEntry.safeModeVersion);
+			out.writeInt(classEntry.currentVersion);
+			out.writeInt(classEntry.versions.size());
+			
+			for ( Map.Entry<Integer,VersionLocation> version : classEntry.versions.entrySet() )
+			{
+				VersionLocation location = version.getValue();
+				
+				out.writeInt(version.getKey());
+				out.writeInt(location.segmentId);
+				out.writeInt(location.offsets.length);
+				
+				for ( int i = 0; i < location.offsets.length; i++ )
+				{
+					out.writeInt(location.offsets[i]);
+					out.writeInt(location.lengths[i]);
+				}
+			}
+		}
+		
+		// CRC32 do conteudo do indice
+		CRC32 crc = new CRC32();
+		crc.update(bytes.toByteArray());
+		out.writeInt((int) crc.getValue());
+		
+		Path tempFile = this.directory.resolve(INDEX_FILE + ".tmp");
+		try ( FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, 
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE) )
+		{
+			ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+			while ( buffer.hasRemaining() )
+				channel.write(buffer);
+			
+			channel.force(true);
+		}
+		
+		Files.move(tempFile, this.directory.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		
+		this.uncheckpointedRecords = 0;
+	}
+	
+	/**
+	 * <p>
+	 * Carrega o ndice em memria a partir do arquivo de ndice.
+	 * <p><i>
+	 * Loads the in-memory index from the index file.
+	 * </i>
+	 * 
+	 * @return a posio do log (segmento e posio) gravada no ndice,
+	 * ou <i>null</i> caso o arquivo no exista, esteja corrompido ou no corresponda aos segmentos existentes
+	 * <br><i>the log position (segment and position) stored on the index,
+	 * or null if the file does not exist, is corrupted or does not match the existing segments</i>
+	 */
+	private int[] readIndex()
+	{
+		Path indexFile = this.directory.resolve(INDEX_FILE);
+		
+		if (! Files.exists(indexFile) )
+			return ( null );
+		
+		try
+		{
+			byte[] bytes = Files.readAllBytes(indexFile);
+			
+			// verifica o CRC32 do conteudo do indice
+			CRC32 crc = new CRC32();
+			crc.update(bytes, 0, Math.max(bytes.length - 4, 0));
+			
+			if ( (bytes.length < 24) || ((int) crc.getValue() != ByteBuffer.wrap(bytes, bytes.length - 4, 4).getInt()) )
+				throw new IOException("Invalid index checksum");
+			
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 4));
+			
+			if ( (in.readInt() != INDEX_MAGIC) || (in.readInt() != INDEX_FORMAT) )
+				throw new IOException("Unknown index format");
+			
+			int[] position = { in.readInt(), in.readInt() };
+			
+			for ( int count = in.readInt(); count > 0; count-- )
+			{
+				ClassEntry entry = new ClassEntry();
+				String className = readString(in);
+				entry.safeModeVersion = in.readInt();
+				entry.currentVersion = in.readInt();
+				
+				for ( int versions = in.readInt(); versions > 0; versions-- )
+				{
+					int version = in.readInt();
+					VersionLocation location = new VersionLocation(in.readInt(), in.readInt());
+					
+					if (! this.segments.containsKey(location.segmentId) )
+						throw new IOException("Missing log segment: " + location.segmentId);
+					
+					for ( int i = 0; i < location.offsets.length; i++ )
+					{
+						location.offsets[i] = in.readInt();
+						location.lengths[i] = in.readInt();
+					}
+					
+					entry.versions.put(version, location);
+				}
+				
+				this.index.put(className, entry);
+			}
+			
+			return ( position );
+		}
+		catch ( IOException | RuntimeException e )
+		{
+			// log: erro
+			LiveClassUtils.logError("Arquivo de indice invalido, reconstruindo a partir do log: " + indexFile);
+			LiveClassUtils.logException(e);
+			
+			return ( null );
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Obtm o caminho do arquivo do segmento informado.
+	 * <p><i>
+	 * Gets the file path of the specified segment.
+	 * </i>
+	 */
+	private Path segmentPath(int id)
+	{
+		return ( this.directory.resolve(String.format("%08d%s", id, SEGMENT_EXTENSION)) );
+	}
+	
+	/**
+	 * <p>
+	 * Obtm o tamanho total dos arquivos de segmentos do log.
+	 * <p><i>
+	 * Gets the total size of the log segment files.
+	 * </i>
+	 */
+	private long getLogSize()
+	{
+		long size = 0;
+		
+		for ( Segment segment : this.segments.values() )
+			size += segment.buffer.capacity();
+		
+		return ( size );
+	}
+	
+	/**
+	 * <p>
+	 * Obtm os bytecodes das classes internas, recursivamente.
+	 * <p><i>
+	 * Gets the inner classes bytecode, recursively.
+	 * </i>
+	 */
+	private void collectInnerClassesBytecode(ClassInfo classInfo, List<byte[]> bytecodeList)
+	{
+		for ( ClassInfo innerClass : classInfo.getInnerClassesInfo() )
+		{
+			bytecodeList.add(innerClass.getBytecode());
+			
+			// classes internas das classes internas
+			this.collectInnerClassesBytecode(innerClass, bytecodeList);
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Calcula o CRC32 do trecho informado do buffer.
+	 * <p><i>
+	 * Computes the CRC32 of the specified buffer range.
+	 * </i>
+	 */
+	private static int crc32(ByteBuffer buffer, int offset, int length)
+	{
+		ByteBuffer range = buffer.duplicate();
+		range.position(offset);
+		range.limit(offset + length);
+		
+		CRC32 crc = new CRC32();
+		byte[] chunk = new byte[Math.min(length, 8192)];
+		
+		while ( range.hasRemaining() )
+		{
+			int count = Math.min(chunk.length, range.remaining());
+			range.get(chunk, 0, count);
+			crc.update(chunk, 0, count);
+		}
+		
+		return ( (int) crc.getValue() );
+	}
+	
+	/**
+	 * <p>
+	 * Grava a string em UTF-8, precedida pelo seu tamanho (u2).
+	 * <p><i>
+	 * Writes the string in UTF-8, preceded by its length (u2).
+	 * </i>
+	 */
+	private static void writeString(DataOutputStream out, String value) throws IOException
+	{
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeShort(bytes.length);
+		out.write(bytes);
+	}
+	
+	/**
+	 * <p>
+	 * L uma string gravada por {@link #writeString(DataOutputStream, String)} a partir do buffer.
+	 * <p><i>
+	 * Reads a string written by {@link #writeString(DataOutputStream, String)} from the buffer.
+	 * </i>
+	 */
+	private static String readString(ByteBuffer buffer)
+	{
+		byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(bytes);
+		
+		return ( new String(bytes, StandardCharsets.UTF_8) );
+	}
+	
+	/**
+	 * <p>
+	 * L uma string gravada por {@link #writeString(DataOutputStream, String)} a partir do stream.
+	 * <p><i>
+	 * Reads a string written by {@link #writeString(DataOutputStream, String)} from the stream.
+	 * </i>
+	 */
+	private static String readString(DataInputStream in) throws IOException
+	{
+		byte[] bytes = new byte[in.readUnsignedShort()];
+		in.readFully(bytes);
+		
+		return ( new String(bytes, StandardCharsets.UTF_8) );
+	}
+	
+	
+	/**
+	 * <p>
+	 * Segmento do log, mapeado em memria.
+	 * <p><i>
+	 * Log segment, mapped in memory.
+	 * </i>
+	 */
+	private static class Segment
+	{
+		// numero de sequencia do segmento
+		private int id;
+		
+		// arquivo do segmento
+		private Path path;
+		
+		// canal do arquivo do segmento
+		private FileChannel channel;
+		
+		// conteudo do segmento mapeado em memoria
+		private MappedByteBuffer buffer;
+		
+		// posicao final dos registros gravados
+		private int position;
+		
+		
+		/**
+		 * <p>
+		 * Abre (ou cria) o arquivo do segmento, mapeando-o em memria.
+		 * <p><i>
+		 * Opens (or creates) the segment file, mapping it in memory.
+		 * </i>
+		 * 
+		 * @param capacity tamanho mnimo do segmento
+		 * <br><i>the minimum segment size</i>
+		 */
+		static Segment open(Path path, int id, int capacity) throws IOException
+		{
+			Segment segment = new Segment();
+			segment.id = id;
+			segment.path = path;
+			segment.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			segment.buffer = segment.channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(segment.channel.size(), capacity));
+			
+			return ( segment );
+		}
+		
+		/**
+		 * <p>
+		 * Fecha o arquivo do segmento.
+		 * <p><i>
+		 * Closes the segment file.
+		 * </i>
+		 */
+		void close() throws IOException
+		{
+			this.channel.close();
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Entrada do ndice em memria de uma classe dinmica.
+	 * <p><i>
+	 * In-memory index entry of a LiveClass.
+	 * </i>
+	 */
+	private static class ClassEntry
+	{
+		// versao do modo seguro
+		private int safeModeVersion;
+		
+		// versao do modo padrao
+		private int currentVersion;
+		
+		// localizacao das versoes no log
+		private TreeMap<Integer,VersionLocation> versions = new TreeMap<Integer,VersionLocation>();
+	}
+	
+	/**
+	 * <p>
+	 * Localizao no log dos bytecodes de uma verso (o primeiro  o da classe dinmica, os demais das classes internas).
+	 * <p><i>
+	 * Log location of the bytecode of a version (the first is the LiveClass bytecode, the others of the inner classes).
+	 * </i>
+	 */
+	private static class VersionLocation
+	{
+		// segmento do registro da versao
+		private int segmentId;
+		
+		// posicao e tamanho de cada bytecode no segmento
+		private int[] offsets;
+		private int[] lengths;
+		
+		
+		/**
+		 * <p>
+		 * Constri uma nova localizao.
+		 * <p><i>
+		 * Constructs a new location.
+		 * </i>
+		 */
+		VersionLocation(int segmentId, int count)
+		{
+			this.segmentId = segmentId;
+			this.offsets = new int[count];
+			this.lengths = new int[count];
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Informaes de versionamento de uma classe dinmica.
+	 * <p><i>
+	 * Versioning information of a LiveClass.
+	 * </i>
+	 */
+	private static class VersionInfo implements ILiveClassVersionInfo
+	{
+		// nome da classe dinamica
+		private String className;
+		
+		// versao do modo padrao
+		private int currentVersion;
+		
+		// versao do modo seguro
+		private int safeModeVersion;
+		
+		
+		/**
+		 * <p>
+		 * Constri as informaes de versionamento.
+		 * <p><i>
+		 * Constructs the versioning information.
+		 * </i>
+		 */
+		VersionInfo(String className, int currentVersion, int safeModeVersion)
+		{
+			this.className = className;
+			this.currentVersion = currentVersion;
+			this.safeModeVersion = safeModeVersion;
+		}
+		
+		@Override
+		public String getClassName()
+		{
+			return ( this.className );
+		}
+		
+		@Override
+		public int getCurrentVersion()
+		{
+			return ( this.currentVersion );
+		}
+		
+		@Override
+		public int getSafeModeVersion()
+		{
+			return ( this.safeModeVersion );
+		}
+	}
+}
@@ -0,0 +1,612 @@
+package org.esfinge.liveprog.db;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.esfinge.liveprog.reflect.ClassInfo;
+import org.esfinge.liveprog.util.LiveClassUtils;
+
+/**
+ * <p>
+ * Gerenciador de persistncia de classes dinmicas que distribui as classes entre vrios arquivos de banco de dados
+ * (<i>shards</i>), cada um gerenciado por uma instncia isolada de {@link DefaultLiveClassPersistence}.
+ * <br>
+ * Como cada arquivo possui a sua prpria conexo e o seu prprio controle de concorrncia, operaes sobre classes
+ * de <i>shards</i> diferentes so executadas em paralelo, sem aguardar o bloqueio de escrita de um nico BD.
+ * <br>
+ * As classes so distribudas pelo <i>hash</i> do seu pacote ou do seu nome. A distribuio de cada chave 
+ * registrada em um arquivo de diretrio, de forma que a localizao das classes j persistidas no se altera
+ * caso o nmero de <i>shards</i> seja aumentado.
+ * <br>
+ * As operaes em lote so executadas em uma transao por <i>shard</i>, no havendo atomicidade entre <i>shards</i>.
+ * <p><i>
+ * LiveClasses persistence manager that distributes the classes among several database files (shards),
+ * each one managed by an isolated instance of DefaultLiveClassPersistence.
+ * <br>
+ * Since each file has its own connection and concurrency control, operations on classes of different shards
+ * are executed in parallel, without waiting for the write lock of a single database.
+ * <br>
+ * The classes are distributed by the hash of their package or name. The shard of each key is recorded
+ * on a directory file, so that the location of the already persisted classes does not change
+ * if the number of shards is increased.
+ * <br>
+ * Batch operations run in one transaction per shard, with no atomicity across shards.
+ * </i>
+ * 
+ * @see org.esfinge.liveprog.db.ILiveClassPersistence
+ * @see org.esfinge.liveprog.db.DefaultLiveClassPersistence#newInstance(String)
+ */
+public class ShardedLiveClassPersistence implements ILiveClassPersistence
+{
+	// nome do arquivo de diretorio
+	private static final String DIRECTORY_FILE = "shards.dir";
+	
+	// formato do nome dos arquivos dos shards
+	private static final String SHARD_FILE_FORMAT = "shard-%02d.db";
+	
+	// prefixo da linha de configuracao do criterio de distribuicao no arquivo de diretorio
+	private static final String ROUTING_ENTRY = "@routing=";
+	
+	// diretorio dos arquivos de BD
+	private Path directory;
+	
+	// criterio de distribuicao das classes
+	private ShardRouting routing;
+	
+	// gerenciadores de persistencia dos shards
+	private List<DefaultLiveClassPersistence> shards;
+	
+	// shard de cada chave de distribuicao ja atribuida
+	private Map<String,Integer> shardMap;
+	
+	
+	/**
+	 * <p>
+	 * Critrio de distribuio das classes dinmicas entre os <i>shards</i>.
+	 * <p><i>
+	 * Criteria for distributing the LiveClasses among the shards.
+	 * </i>
+	 */
+	public enum ShardRouting
+	{
+		/**
+		 * <p>
+		 * Classes do mesmo pacote so persistidas no mesmo <i>shard</i>.
+		 * <p><i>
+		 * Classes of the same package are persisted on the same shard.
+		 * </i>
+		 */
+		PACKAGE,
+		
+		/**
+		 * <p>
+		 * Cada classe  distribuda pelo <i>hash</i> do seu nome.
+		 * <p><i>
+		 * Each class is distributed by the hash of its name.
+		 * </i>
+		 */
+		CLASS_NAME
+	}
+	
+	
+	/**
+	 * <p>
+	 * Abre (ou cria) os arquivos de BD dos <i>shards</i> no diretrio informado.
+	 * <br>
+	 * Caso o diretrio j exista, o critrio de distribuio registrado prevalece sobre o informado, e so abertos
+	 * no mnimo os <i>shards</i> que j possuem classes atribudas.
+	 * <p><i>
+	 * Opens (or creates) the database files of the shards on the specified directory.
+	 * <br>
+	 * If the directory already exists, its recorded routing criteria prevails over the specified one, and at least
+	 * the shards that already have classes assigned are opened.
+	 * </i>
+	 * 
+	 * @param directory diretrio dos arquivos de BD e de diretrio
+	 * <br><i>the directory of the database and directory files</i>
+	 * @param shardCount nmero de <i>shards</i>
+	 * <br><i>the number of shards</i>
+	 * @param routing critrio de distribuio das classes entre os <i>shards</i>
+	 * <br><i>criteria for distributing the classes among the shards</i>
+	 * @throws IllegalArgumentException caso o nmero de <i>shards</i> seja menor que 1
+	 * <br><i>if the number of shards is lower than 1</i>
+	 * @throws IOException em caso de erros ao ler ou criar o arquivo de diretrio
+	 * <br><i>if an error occurs when reading or creating the directory file</i>
+	 * @throws SQLException em caso de erros ao configurar os bancos de dados
+	 * <br><i>if an error occurs when configuring the databases</i>
+	 */
+	public ShardedLiveClassPersistence(String directory, int shardCount, ShardRouting routing) throws IllegalArgumentException, IOException, SQLException
+	{
+		if ( shardCount < 1 )
+			throw new IllegalArgumentException("Shard count must be at least 1: " + shardCount);
+		
+		this.directory = Paths.get(directory).toAbsolutePath();
+		this.routing = routing;
+		this.shardMap = new ConcurrentHashMap<String,Integer>();
+		this.shards = new ArrayList<DefaultLiveClassPersistence>();
+		
+		Files.createDirectories(this.directory);
+		
+		// le o arquivo de diretorio
+		int mappedShards = this.readDirectory();
+		
+		try
+		{
+			// abre os shards
+			for ( int i = 0; i < Math.max(shardCount, mappedShards); i++ )
+				this.shards.add(DefaultLiveClassPersistence.newInstance(
+						this.directory.resolve(String.format(SHARD_FILE_FORMAT, i)).toString()));
+		}
+		catch ( SQLException e )
+		{
+			// fecha os shards ja abertos
+			this.close();
+			
+			throw e;
+		}
+		
+		// log: info
+		LiveClassUtils.logInfo(String.format("Persistencia distribuida em %d shards (%s) no diretorio '%s'",
+				this.shards.size(), this.routing, this.directory));
+	}
+	
+	@Override
+	public ClassInfo getLiveClassInfo(String liveClassName, boolean safeMode) throws Exception
+	{
+		return ( this.getShard(liveClassName).getLiveClassInfo(liveClassName, safeMode) );
+	}
+	
+	@Override
+	public void saveLiveClassInfo(String liveClassName, ClassInfo liveClassInfo) throws Exception
+	{
+		this.assignShard(liveClassName).saveLiveClassInfo(liveClassName, liveClassInfo);
+	}
+	
+	@Override
+	public ILiveClassVersionInfo getLiveClassVersionInfo(String liveClassName) throws Exception
+	{
+		return ( this.getShard(liveClassName).getLiveClassVersionInfo(liveClassName) );
+	}
+	
+	@Override
+	public List<ILiveClassVersionInfo> getAllLiveClassesVersionInfo() throws Exception
+	{
+		List<ILiveClassVersionInfo> versionInfoList = new ArrayList<ILiveClassVersionInfo>();
+		
+		for ( DefaultLiveClassPersistence shard : this.shards )
+			versionInfoList.addAll(shard.getAllLiveClassesVersionInfo());
+		
+		return ( versionInfoList );
+	}
+	
+	@Override
+	public boolean commitLiveClass(String liveClassName) throws Exception
+	{
+		return ( this.getShard(liveClassName).commitLiveClass(liveClassName) );
+	}
+	
+	@Override
+	public boolean rollbackLiveClass(String liveClassName) throws Exception
+	{
+		return ( this.getShard(liveClassName).rollbackLiveClass(liveClassName) );
+	}
+	
+	@Override
+	public Map<String,ClassInfo> getLiveClassInfos(Collection<String> liveClassNames, boolean safeMode) throws Exception
+	{
+		Map<String,ClassInfo> classInfoMap = new LinkedHashMap<String,ClassInfo>();
+		
+		// uma consulta por shard
+		for ( Map.Entry<DefaultLiveClassPersistence,List<String>> entry : this.groupByShard(liveClassNames).entrySet() )
+			classInfoMap.putAll(entry.getKey().getLiveClassInfos(entry.getValue(), safeMode));
+		
+		return ( classInfoMap );
+	}
+	
+	@Override
+	public Map<String,ILiveClassVersionInfo> getLiveClassVersionInfos(Collection<String> liveClassNames) throws Exception
+	{
+		Map<String,ILiveClassVersionInfo> versionInfoMap = new LinkedHashMap<String,ILiveClassVersionInfo>();
+		
+		for ( Map.Entry<DefaultLiveClassPersistence,List<String>> entry : this.groupByShard(liveClassNames).entrySet() )
+			versionInfoMap.putAll(entry.getKey().getLiveClassVersionInfos(entry.getValue()));
+		
+		return ( versionInfoMap );
+	}
+	
+	@Override
+	public List<ILiveClassVersionInfo> getLiveClassesVersionInfo(String afterClassName, int maxResults) throws Exception
+	{
+		List<ILiveClassVersionInfo> versionInfoList = new ArrayList<ILiveClassVersionInfo>();
+		
+		// cada shard contribui com no maximo uma pagina, que sao intercaladas pelo nome da classe
+		for ( DefaultLiveClassPersistence shard : this.shards )
+			versionInfoList.addAll(shard.getLiveClassesVersionInfo(afterClassName, maxResults));
+		
+		versionInfoList.sort(Comparator.comparing(ILiveClassVersionInfo::getClassName));
+		
+		if ( versionInfoList.size() > maxResults )
+			return ( new ArrayList<ILiveClassVersionInfo>(versionInfoList.subList(0, maxResults)) );
+		
+		return ( versionInfoList );
+	}
+	
+	@Override
+	public List<Integer> getLiveClassVersionHistory(String liveClassName) throws Exception
+	{
+		return ( this.getShard(liveClassName).getLiveClassVersionHistory(liveClassName) );
+	}
+	
+	@Override
+	public void saveLiveClassInfos(Map<String,ClassInfo> liveClassInfos, boolean commit) throws Exception
+	{
+		Map<DefaultLiveClassPersistence,Map<String,ClassInfo>> groups = new LinkedHashMap<DefaultLiveClassPersistence,Map<String,ClassInfo>>();
+		
+		for ( Map.Entry<String,ClassInfo> entry : liveClassInfos.entrySet() )
+			groups.computeIfAbsent(this.assignShard(entry.getKey()), s -> new LinkedHashMap<String,ClassInfo>()).put(entry.getKey(), entry.getValue());
+		
+		// uma transacao por shard
+		for ( Map.Entry<DefaultLiveClassPersistence,Map<String,ClassInfo>> entry : groups.entrySet() )
+			entry.getKey().saveLiveClassInfos(entry.getValue(), commit);
+	}
+	
+	@Override
+	public Map<String,Boolean> commitLiveClasses(Collection<String> liveClassNames) throws Exception
+	{
+		Map<String,Boolean> results = new LinkedHashMap<String,Boolean>();
+		
+		// uma transacao por shard
+		for ( Map.Entry<DefaultLiveClassPersistence,List<String>> entry : this.groupByShard(liveClassNames).entrySet() )
+			results.putAll(entry.getKey().commitLiveClasses(entry.getValue()));
+		
+		return ( results );
+	}
+	
+	@Override
+	public Map<String,Boolean> rollbackLiveClasses(Collection<String> liveClassNames) throws Exception
+	{
+		Map<String,Boolean> results = new LinkedHashMap<String,Boolean>();
+		
+		for ( Map.Entry<DefaultLiveClassPersistence,List<String>> entry : this.groupByShard(liveClassNames).entrySet() )
+			results.putAll(entry.getKey().rollbackLiveClasses(entry.getValue()));
+		
+		return ( results );
+	}
+	
+	/**
+	 * <p>
+	 * Inicia a manuteno peridica em segundo plano de todos os <i>shards</i>.
+	 * <p><i>
+	 * Starts the periodic background maintenance of all shards.
+	 * </i>
+	 * 
+	 * @param intervalMillis intervalo, em milissegundos, entre as verificaes de manuteno
+	 * <br><i>the interval, in milliseconds, between the maintenance checks</i>
+	 * @param idleMillis tempo mnimo, em milissegundos, sem acessos ao BD para executar a manuteno
+	 * <br><i>the minimum time, in milliseconds, without database accesses to run the maintenance</i>
+	 * @see DefaultLiveClassPersistence#startMaintenance(long, long)
+	 */
+	public void startMaintenance(long intervalMillis, long idleMillis)
+	{
+		for ( DefaultLiveClassPersistence shard : this.shards )
+			shard.startMaintenance(intervalMillis, idleMillis);
+	}
+	
+	/**
+	 * <p>
+	 * Interrompe a manuteno peridica em segundo plano de todos os <i>shards</i>.
+	 * <p><i>
+	 * Stops the periodic background maintenance of all shards.
+	 * </i>
+	 */
+	public void stopMaintenance()
+	{
+		for ( DefaultLiveClassPersistence shard : this.shards )
+			shard.stopMaintenance();
+	}
+	
+	/**
+	 * <p>
+	 * Executa imediatamente a manuteno de todos os <i>shards</i>.
+	 * <p><i>
+	 * Immediately runs the maintenance of all shards.
+	 * </i>
+	 * 
+	 * @return o total de bytes liberados nos arquivos de BD
+	 * <br><i>the total of bytes released on the database files</i>
+	 * @throws SQLException em caso de erros com os bancos de dados
+	 * <br><i>if an error occurs with the databases</i>
+	 * @see DefaultLiveClassPersistence#runMaintenance()
+	 */
+	public long runMaintenance() throws SQLException
+	{
+		long reclaimed = 0;
+		
+		for ( DefaultLiveClassPersistence shard : this.shards )
+			reclaimed += shard.runMaintenance();
+		
+		return ( reclaimed );
+	}
+	
+	/**
+	 * <p>
+	 * Habilita o <i>auto_vacuum</i> incremental de todos os <i>shards</i> que ainda no o possuem.
+	 * <p><i>
+	 * Enables the incremental auto_vacuum of all shards that do not have it yet.
+	 * </i>
+	 * 
+	 * @return o total de bytes liberados nos arquivos de BD
+	 * <br><i>the total of bytes released on the database files</i>
+	 * @throws SQLException em caso de erros com os bancos de dados
+	 * <br><i>if an error occurs with the databases</i>
+	 * @see DefaultLiveClassPersistence#enableIncrementalVacuum()
+	 */
+	public long enableIncrementalVacuum() throws SQLException
+	{
+		long reclaimed = 0;
+		
+		for ( DefaultLiveClassPersistence shard : this.shards )
+			reclaimed += shard.enableIncrementalVacuum();
+		
+		return ( reclaimed );
+	}
+	
+	/**
+	 * <p>
+	 * Obtm o nmero de <i>shards</i> abertos.
+	 * <p><i>
+	 * Gets the number of opened shards.
+	 * </i>
+	 * 
+	 * @return o nmero de <i>shards</i>
+	 * <br><i>the number of shards</i>
+	 */
+	public int getShardCount()
+	{
+		return ( this.shards.size() );
+	}
+	
+	/**
+	 * <p>
+	 * Fecha as conexes com os bancos de dados de todos os <i>shards</i>.
+	 * <p><i>
+	 * Closes the database connections of all shards.
+	 * </i>
+	 * 
+	 * @throws SQLException em caso de erros ao fechar as conexes
+	 * <br><i>if an error occurs when closing the connections</i>
+	 */
+	public void close() throws SQLException
+	{
+		SQLException error = null;
+		
+		for ( DefaultLiveClassPersistence shard : this.shards )
+		{
+			try
+			{
+				shard.close();
+			}
+			catch ( SQLException e )
+			{
+				// fecha os demais shards antes de propagar o erro
+				if ( error == null )
+					error = e;
+			}
+		}
+		
+		if ( error != null )
+			throw error;
+	}
+	
+	/**
+	 * <p>
+	 * Obtm o <i>shard</i> de uma classe dinmica, sem registr-lo no diretrio.
+	 * Classes ainda no persistidas so direcionadas ao <i>shard</i> calculado pelo <i>hash</i>,
+	 * onde no so encontradas.
+	 * <p><i>
+	 * Gets the shard of a LiveClass, without recording it on the directory.
+	 * Classes not yet persisted are routed to the shard computed by the hash, where they are not found.
+	 * </i>
+	 * 
+	 * @param liveClassName nome da classe dinmica
+	 * <br><i>the LiveClass name</i>
+	 * @return o gerenciador de persistncia do <i>shard</i> da classe
+	 * <br><i>the persistence manager of the class shard</i>
+	 */
+	private DefaultLiveClassPersistence getShard(String liveClassName)
+	{
+		String key = this.getRoutingKey(liveClassName);
+		Integer shard = this.shardMap.get(key);
+		
+		return ( this.shards.get(shard != null ? shard : this.hashShard(key)) );
+	}
+	
+	/**
+	 * <p>
+	 * Obtm o <i>shard</i> de uma classe dinmica, registrando no diretrio as novas chaves de distribuio.
+	 * <p><i>
+	 * Gets the shard of a LiveClass, recording the new routing keys on the directory.
+	 * </i>
+	 * 
+	 * @param liveClassName nome da classe dinmica
+	 * <br><i>the LiveClass name</i>
+	 * @return o gerenciador de persistncia do <i>shard</i> da classe
+	 * <br><i>the persistence manager of the class shard</i>
+	 * @throws IOException em caso de erros ao gravar o arquivo de diretrio
+	 * <br><i>if an error occurs when writing the directory file</i>
+	 */
+	private DefaultLiveClassPersistence assignShard(String liveClassName) throws IOException
+	{
+		String key = this.getRoutingKey(liveClassName);
+		Integer shard = this.shardMap.get(key);
+		
+		if ( shard == null )
+		{
+			synchronized ( this.shardMap )
+			{
+				shard = this.shardMap.get(key);
+				
+				if ( shard == null )
+				{
+					shard = this.hashShard(key);
+					
+					// registra a chave no diretorio antes de persistir a classe
+					Files.write(this.directory.resolve(DIRECTORY_FILE), (key + "=" + shard + "\n").getBytes(StandardCharsets.UTF_8),
+							StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.DSYNC);
+					this.shardMap.put(key, shard);
+					
+					// log: debug
+					LiveClassUtils.logDebug("Chave '" + key + "' atribuida ao shard " + shard);
+				}
+			}
+		}
+		
+		return ( this.shards.get(shard) );
+	}
+	
+	/**
+	 * <p>
+	 * Agrupa os nomes das classes dinmicas pelos seus <i>shards</i>.
+	 * <p><i>
+	 * Groups the LiveClasses names by their shards.
+	 * </i>
+	 * 
+	 * @param liveClassNames nomes das classes dinmicas
+	 * <br><i>the LiveClasses names</i>
+	 * @return os nomes das classes de cada <i>shard</i>
+	 * <br><i>the class names of each shard</i>
+	 */
+	private Map<DefaultLiveClassPersistence,List<String>> groupByShard(Collection<String> liveClassNames)
+	{
+		Map<DefaultLiveClassPersistence,List<String>> groups = new LinkedHashMap<DefaultLiveClassPersistence,List<String>>();
+		
+		for ( String liveClassName : liveClassNames )
+			groups.computeIfAbsent(this.getShard(liveClassName), s -> new ArrayList<String>()).add(liveClassName);
+		
+		return ( groups );
+	}
+	
+	/**
+	 * <p>
+	 * Obtm a chave de distribuio de uma classe dinmica, conforme o critrio de distribuio.
+	 * <p><i>
+	 * Gets the routing key of a LiveClass, according to the routing criteria.
+	 * </i>
+	 * 
+	 * @param liveClassName nome da classe dinmica
+	 * <br><i>the LiveClass name</i>
+	 * @return o pacote ou o nome da classe
+	 * <br><i>the package or the name of the class</i>
+	 */
+	private String getRoutingKey(String liveClassName)
+	{
+		if ( this.routing == ShardRouting.CLASS_NAME )
+			return ( liveClassName );
+		
+		// pacote da classe (vazio para o pacote padrao)
+		int index = liveClassName.lastIndexOf('.');
+		
+		return ( index < 0 ? "" : liveClassName.substring(0, index) );
+	}
+	
+	/**
+	 * <p>
+	 * Calcula o <i>shard</i> de uma chave de distribuio pelo seu <i>hash</i>.
+	 * <p><i>
+	 * Computes the shard of a routing key by its hash.
+	 * </i>
+	 * 
+	 * @param key chave de distribuio
+	 * <br><i>the routing key</i>
+	 * @return o ndice do <i>shard</i>
+	 * <br><i>the shard index</i>
+	 */
+	private int hashShard(String key)
+	{
+		// espalha os bits do hash (nomes de pacotes possuem prefixos comuns)
+		int hash = key.hashCode();
+		hash ^= (hash >>> 16);
+		
+		return ( Math.floorMod(hash, this.shards.size()) );
+	}
+	
+	/**
+	 * <p>
+	 * L o arquivo de diretrio, criando-o caso no exista.
+	 * <p><i>
+	 * Reads the directory file, creating it if it does not exist.
+	 * </i>
+	 * 
+	 * @return o nmero de <i>shards</i> com chaves atribudas
+	 * <br><i>the number of shards with assigned keys</i>
+	 * @throws IOException em caso de erros ao ler ou criar o arquivo de diretrio
+	 * <br><i>if an error occurs when reading or creating the directory file</i>
+	 */
+	private int readDirectory() throws IOException
+	{
+		Path directoryFile = this.directory.resolve(DIRECTORY_FILE);
+		
+		// cria o arquivo de diretorio
+		if (! Files.exists(directoryFile) )
+		{
+			Files.write(directoryFile, (ROUTING_ENTRY + this.routing + "\n").getBytes(StandardCharsets.UTF_8),
+					StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.DSYNC);
+			
+			return ( 0 );
+		}
+		
+		int mappedShards = 0;
+		
+		for ( String line : Files.readAllLines(directoryFile, StandardCharsets.UTF_8) )
+		{
+			// criterio de distribuicao registrado
+			if ( line.startsWith(ROUTING_ENTRY) )
+			{
+				ShardRouting recordedRouting = ShardRouting.valueOf(line.substring(ROUTING_ENTRY.length()).trim());
+				
+				if ( recordedRouting != this.routing )
+				{
+					// log: info
+					LiveClassUtils.logInfo("Utilizando o criterio de distribuicao registrado no diretorio: " + recordedRouting);
+					
+					this.routing = recordedRouting;
+				}
+				
+				continue;
+			}
+			
+			// chave atribuida (ignora linhas incompletas de uma gravacao interrompida)
+			int index = line.lastIndexOf('=');
+			
+			if ( index < 0 )
+				continue;
+			
+			try
+			{
+				int shard = Integer.parseInt(line.substring(index + 1).trim());
+				
+				this.shardMap.put(line.substring(0, index), shard);
+				mappedShards = Math.max(mappedShards, shard + 1);
+			}
+			catch ( NumberFormatException e )
+			{
+				// log: erro
+				LiveClassUtils.logError("Entrada invalida no diretorio de shards: '" + line + "'");
+			}
+		}
+		
+		return ( mappedShards );
+	}
+}
@@ -0,0 +1,1040 @@
+package org.esfinge.liveprog.db;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.esfinge.liveprog.instrumentation.InstrumentationHelper;
+import org.esfinge.liveprog.reflect.ClassInfo;
+import org.esfinge.liveprog.util.LiveClassUtils;
+
+/**
+ * <p>
+ * Decorador de gerenciadores de persistncia que persiste as novas verses das classes dinmicas em segundo plano.
+ * <br>
+ * Cada nova verso  registrada em um arquivo de <i>journal</i> local e enfileirada, retornando imediatamente.
+ * Uma thread de gravao obtm todas as verses enfileiradas, sincroniza o <i>journal</i> em disco uma nica vez
+ * para o grupo (<i>group commit</i>) e as persiste no gerenciador decorado, descartando as verses de teste
+ * substitudas por outra verso da mesma classe no grupo. Verses registradas no <i>journal</i> e
+ * ainda no persistidas so recuperadas na prxima inicializao. As verses salvas em lote so enfileiradas 
+ * da mesma forma e persistidas em uma nica chamada ao gerenciador decorado.
+ * <br>
+ * Enquanto houver verses pendentes de uma classe, as suas informaes de versionamento e de verses pendentes so
+ * obtidas da fila. Os aceites e descartes de verses aguardam a persistncia de todas as verses pendentes,
+ * de forma que o <i>journal</i> nunca contenha verses anteriores a um aceite ou descarte.
+ * <br>
+ * As verses cuja persistncia falhar permanecem na fila e no <i>journal</i>, sendo gravadas novamente aps um intervalo,
+ * e as verses seguintes da mesma classe aguardam a sua gravao. Enquanto houver verses com falha, 
+ * os aceites e descartes de verses so recusados.
+ * <p><i>
+ * Persistence manager decorator that persists new LiveClass versions in background.
+ * <br>
+ * Each new version is recorded on a local journal file and enqueued, returning immediately.
+ * A writer thread takes all the enqueued versions, syncs the journal to disk only once for the group (group commit)
+ * and persists them on the decorated manager, discarding the test versions replaced by another version 
+ * of the same class in the group. Versions recorded on the journal but not yet persisted are recovered
+ * on the next startup. Versions saved in batch are enqueued the same way and persisted in a single call
+ * to the decorated manager.
+ * <br>
+ * While a class has pending versions, its versioning information and pending versions are taken from the queue.
+ * Version commits and rollbacks wait for all the pending versions to be persisted,
+ * so the journal never holds versions older than a commit or rollback.
+ * <br>
+ * Versions whose write fails remain in the queue and in the journal, being written again after a delay,
+ * and the next versions of the same class wait for them. While there are failed versions, 
+ * version commits and rollbacks are refused.
+ * </i>
+ * 
+ * @see org.esfinge.liveprog.db.ILiveClassPersistence
+ */
+public class WriteBehindLiveClassPersistence implements ILiveClassPersistence
+{
+	// intervalo entre as tentativas de gravacao das versoes que falharam (milissegundos)
+	private static final long RETRY_DELAY = 1000;
+	
+	// gerenciador de persistencia decorado
+	private ILiveClassPersistence delegate;
+	
+	// arquivo de journal
+	private Path journalFile;
+	
+	// canal do arquivo de journal
+	private FileChannel journal;
+	
+	// versoes aguardando a persistencia, na ordem em que foram salvas
+	private LinkedList<PendingVersion> queue;
+	
+	// estado de versionamento projetado das classes com versoes pendentes
+	private Map<String,PendingClass> pendingClasses;
+	
+	// ultimo versionamento persistido conhecido das classes (versao do modo seguro e padrao), 
+	// evitando consultar o gerenciador decorado enquanto este persiste as versoes pendentes
+	private Map<String,int[]> persistedVersions;
+	
+	// numero de versoes enfileiradas e persistidas
+	private long enqueuedCount;
+	private long persistedCount;
+	
+	// erro da ultima gravacao em segundo plano, mantido enquanto houver versoes com falha na fila
+	private Exception writeError;
+	
+	// thread de gravacao
+	private Thread writer;
+	
+	// indica se o decorador esta ativo
+	private volatile boolean running;
+	
+	
+	/**
+	 * <p>
+	 * Constri um novo decorador para o gerenciador de persistncia informado,
+	 * recuperando as verses pendentes registradas no <i>journal</i>.
+	 * <p><i>
+	 * Constructs a new decorator for the specified persistence manager,
+	 * recovering the pending versions recorded on the journal.
+	 * </i>
+	 * 
+	 * @param delegate gerenciador de persistncia decorado
+	 * <br><i>the decorated persistence manager</i>
+	 * @param journalFile nome e caminho do arquivo de <i>journal</i>
+	 * <br><i>filename and path of the journal file</i>
+	 * @throws Exception em caso de erros ao abrir o <i>journal</i> ou ao persistir as verses recuperadas
+	 * <br><i>if an error occurs when opening the journal or persisting the recovered versions</i>
+	 */
+	public WriteBehindLiveClassPersistence(ILiveClassPersistence delegate, String journalFile) throws Exception
+	{
+		if ( delegate == null )
+			throw new IllegalArgumentException("Persistence manager must not be null!");
+		
+		this.delegate = delegate;
+		this.journalFile = Paths.get(journalFile).toAbsolutePath();
+		this.queue = new LinkedList<PendingVersion>();
+		this.pendingClasses = new HashMap<String,PendingClass>();
+		this.persistedVersions = new HashMap<String,int[]>();
+		
+		if ( this.journalFile.getParent() != null )
+			Files.createDirectories(this.journalFile.getParent());
+		
+		this.journal = FileChannel.open(this.journalFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		
+		// recupera as versoes nao persistidas
+		this.recover();
+		
+		this.running = true;
+		this.writer = new Thread(this::writeLoop, "LiveClassWriteBehind");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+	
+	@Override
+	public ClassInfo getLiveClassInfo(String liveClassName, boolean safeMode) throws Exception
+	{
+		synchronized ( this )
+		{
+			PendingClass pending = this.pendingClasses.get(liveClassName);
+			
+			if ( pending != null )
+			{
+				// verifica se a versao solicitada esta pendente
+				ClassInfo classInfo = pending.versions.get(safeMode ? pending.safeModeVersion : pending.currentVersion);
+				
+				if ( classInfo != null )
+					return ( classInfo );
+			}
+		}
+		
+		// as versoes nao pendentes nao sao alteradas pelas versoes pendentes
+		return ( this.delegate.getLiveClassInfo(liveClassName, safeMode) );
+	}
+	
+	@Override
+	public void saveLiveClassInfo(String liveClassName, ClassInfo liveClassInfo) throws Exception
+	{
+		if (! this.running )
+			throw new IllegalStateException("Write-behind persistence is closed!");
+		
+		synchronized ( this )
+		{
+			PendingVersion version = this.projectVersion(liveClassName, liveClassInfo, null);
+			
+			// registra no journal com a versao projetada (sem sincronizar em disco, o que eh feito pela thread de gravacao)
+			this.journal.write(ByteBuffer.wrap(encodeRecord(version)), this.journal.size());
+			
+			this.enqueue(version);
+			this.notifyAll();
+		}
+	}
+	
+	@Override
+	public ILiveClassVersionInfo getLiveClassVersionInfo(String liveClassName) throws Exception
+	{
+		synchronized ( this )
+		{
+			PendingClass pending = this.pendingClasses.get(liveClassName);
+			
+			if ( pending != null )
+				return ( new PendingVersionInfo(liveClassName, pending.currentVersion, pending.safeModeVersion) );
+		}
+		
+		return ( this.delegate.getLiveClassVersionInfo(liveClassName) );
+	}
+	
+	@Override
+	public List<ILiveClassVersionInfo> getAllLiveClassesVersionInfo() throws Exception
+	{
+		this.awaitDurability();
+		
+		return ( this.delegate.getAllLiveClassesVersionInfo() );
+	}
+	
+	@Override
+	public boolean commitLiveClass(String liveClassName) throws Exception
+	{
+		this.awaitDurability();
+		
+		try
+		{
+			return ( this.delegate.commitLiveClass(liveClassName) );
+		}
+		finally
+		{
+			this.forgetPersistedVersions(liveClassName);
+		}
+	}
+	
+	@Override
+	public boolean rollbackLiveClass(String liveClassName) throws Exception
+	{
+		this.awaitDurability();
+		
+		try
+		{
+			return ( this.delegate.rollbackLiveClass(liveClassName) );
+		}
+		finally
+		{
+			this.forgetPersistedVersions(liveClassName);
+		}
+	}
+	
+	@Override
+	public Map<String,ClassInfo> getLiveClassInfos(Collection<String> liveClassNames, boolean safeMode) throws Exception
+	{
+		Map<String,ClassInfo> classInfoMap = new LinkedHashMap<String,ClassInfo>();
+		List<String> persistedNames = new ArrayList<String>();
+		
+		synchronized ( this )
+		{
+			for ( String liveClassName : liveClassNames )
+			{
+				PendingClass pending = this.pendingClasses.get(liveClassName);
+				
+				// verifica se a versao solicitada esta pendente
+				ClassInfo classInfo = (pending == null) ? null : 
+					pending.versions.get(safeMode ? pending.safeModeVersion : pending.currentVersion);
+				
+				if ( classInfo != null )
+					classInfoMap.put(liveClassName, classInfo);
+				else
+					persistedNames.add(liveClassName);
+			}
+		}
+		
+		// as versoes nao pendentes sao obtidas em uma unica chamada
+		if (! persistedNames.isEmpty() )
+			classInfoMap.putAll(this.delegate.getLiveClassInfos(persistedNames, safeMode));
+		
+		return ( classInfoMap );
+	}
+	
+	@Override
+	public Map<String,ILiveClassVersionInfo> getLiveClassVersionInfos(Collection<String> liveClassNames) throws Exception
+	{
+		Map<String,ILiveClassVersionInfo> versionInfoMap = new LinkedHashMap<String,ILiveClassVersionInfo>();
+		List<String> persistedNames = new ArrayList<String>();
+		
+		synchronized ( this )
+		{
+			for ( String liveClassName : liveClassNames )
+			{
+				PendingClass pending = this.pendingClasses.get(liveClassName);
+				
+				if ( pending != null )
+					versionInfoMap.put(liveClassName, new PendingVersionInfo(liveClassName, pending.currentVersion, pending.safeModeVersion));
+				else
+					persistedNames.add(liveClassName);
+			}
+		}
+		
+		if (! persistedNames.isEmpty() )
+			versionInfoMap.putAll(this.delegate.getLiveClassVersionInfos(persistedNames));
+		
+		return ( versionInfoMap );
+	}
+	
+	@Override
+	public List<ILiveClassVersionInfo> getLiveClassesVersionInfo(String afterClassName, int maxResults) throws Exception
+	{
+		this.awaitDurability();
+		
+		return ( this.delegate.getLiveClassesVersionInfo(afterClassName, maxResults) );
+	}
+	
+	@Override
+	public List<Integer> getLiveClassVersionHistory(String liveClassName) throws Exception
+	{
+		this.awaitDurability();
+		
+		return ( this.delegate.getLiveClassVersionHistory(liveClassName) );
+	}
+	
+	@Override
+	public void saveLiveClassInfos(Map<String,ClassInfo> liveClassInfos, boolean commit) throws Exception
+	{
+		if (! commit )
+		{
+			this.enqueueBatch(liveClassInfos);
+			return;
+		}
+		
+		// o aceite das versoes aguarda a persistencia das versoes pendentes
+		this.awaitDurability();
+		
+		try
+		{
+			this.delegate.saveLiveClassInfos(liveClassInfos, commit);
+		}
+		finally
+		{
+			for ( String liveClassName : liveClassInfos.keySet() )
+				this.forgetPersistedVersions(liveClassName);
+		}
+	}
+	
+	@Override
+	public Map<String,Boolean> commitLiveClasses(Collection<String> liveClassNames) throws Exception
+	{
+		this.awaitDurability();
+		
+		try
+		{
+			return ( this.delegate.commitLiveClasses(liveClassNames) );
+		}
+		finally
+		{
+			for ( String liveClassName : liveClassNames )
+				this.forgetPersistedVersions(liveClassName);
+		}
+	}
+	
+	@Override
+	public Map<String,Boolean> rollbackLiveClasses(Collection<String> liveClassNames) throws Exception
+	{
+		this.awaitDurability();
+		
+		try
+		{
+			return ( this.delegate.rollbackLiveClasses(liveClassNames) );
+		}
+		finally
+		{
+			for ( String liveClassName : liveClassNames )
+				this.forgetPersistedVersions(liveClassName);
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Aguarda a persistncia de todas as verses salvas at o momento.
+	 * <p><i>
+	 * Waits until all the versions saved so far are persisted.
+	 * </i>
+	 * 
+	 * @throws Exception caso a gravao em segundo plano de alguma verso tenha falhado 
+	 * (a verso permanece na fila para uma nova tentativa), ou caso a thread seja interrompida durante a espera
+	 * <br><i>if the background write of any version failed (the version remains queued to be retried), 
+	 * or if the thread is interrupted while waiting</i>
+	 */
+	public void awaitDurability() throws Exception
+	{
+		synchronized ( this )
+		{
+			long target = this.enqueuedCount;
+			
+			while ( (this.persistedCount < target) && this.writer.isAlive() && (this.writeError == null) )
+				this.wait();
+			
+			if ( (this.persistedCount < target) && (this.writeError != null) )
+				throw new IOException("Background write of LiveClass version failed, it remains queued to be retried!", this.writeError);
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Obtm o nmero de verses aguardando a persistncia.
+	 * <p><i>
+	 * Gets the number of versions waiting to be persisted.
+	 * </i>
+	 * 
+	 * @return o nmero de verses pendentes
+	 * <br><i>the number of pending versions</i>
+	 */
+	public synchronized long getPendingCount()
+	{
+		return ( this.enqueuedCount - this.persistedCount );
+	}
+	
+	/**
+	 * <p>
+	 * Persiste as verses pendentes e encerra a thread de gravao.
+	 * As verses cuja gravao falhar permanecem no <i>journal</i>, sendo recuperadas na prxima inicializao.
+	 * <p><i>
+	 * Persists the pending versions and stops the writer thread.
+	 * The versions whose write fails remain on the journal, being recovered on the next startup.
+	 * </i>
+	 * 
+	 * @throws Exception caso a gravao de alguma verso pendente falhe
+	 * <br><i>if the write of any pending version fails</i>
+	 */
+	public void close() throws Exception
+	{
+		try
+		{
+			this.awaitDurability();
+		}
+		finally
+		{
+			synchronized ( this )
+			{
+				this.running = false;
+				this.notifyAll();
+			}
+			
+			this.writer.join();
+			this.journal.close();
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Descarta o ltimo versionamento persistido conhecido da classe dinmica, alterado por um aceite ou descarte.
+	 * <p><i>
+	 * Discards the last known persisted versioning of the LiveClass, changed by a commit or rollback.
+	 * </i>
+	 */
+	private synchronized void forgetPersistedVersions(String liveClassName)
+	{
+		this.persistedVersions.remove(liveClassName);
+	}
+	
+	/**
+	 * <p>
+	 * Enfileira um lote de verses, persistidas pela thread de gravao em uma nica chamada ao gerenciador decorado.
+	 * Os registros do lote so gravados no <i>journal</i> em uma nica escrita.
+	 * <p><i>
+	 * Enqueues a batch of versions, persisted by the writer thread in a single call to the decorated manager.
+	 * The records of the batch are written to the journal in a single write.
+	 * </i>
+	 */
+	private void enqueueBatch(Map<String,ClassInfo> liveClassInfos) throws Exception
+	{
+		if (! this.running )
+			throw new IllegalStateException("Write-behind persistence is closed!");
+		
+		if ( liveClassInfos.isEmpty() )
+			return;
+		
+		synchronized ( this )
+		{
+			// projeta as versoes do lote (as classes do lote sao distintas)
+			List<PendingVersion> batch = new ArrayList<PendingVersion>();
+			ByteArrayOutputStream records = new ByteArrayOutputStream();
+			
+			for ( Map.Entry<String,ClassInfo> entry : liveClassInfos.entrySet() )
+			{
+				PendingVersion version = this.projectVersion(entry.getKey(), entry.getValue(), batch);
+				records.write(encodeRecord(version));
+				batch.add(version);
+			}
+			
+			// registra no journal (sem sincronizar em disco, o que eh feito pela thread de gravacao)
+			this.journal.write(ByteBuffer.wrap(records.toByteArray()), this.journal.size());
+			
+			for ( PendingVersion version : batch )
+				this.enqueue(version);
+			
+			this.notifyAll();
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Projeta o versionamento da classe dinmica aps a persistncia de uma nova verso: 
+	 * primeira verso, ou a verso seguinte  verso do modo seguro (substituindo a verso de teste atual).
+	 * <p><i>
+	 * Projects the versioning of the LiveClass after persisting a new version: 
+	 * first version, or the version next to the safe mode version (replacing the current test version).
+	 * </i>
+	 */
+	private PendingVersion projectVersion(String liveClassName, ClassInfo liveClassInfo, List<PendingVersion> batch) throws Exception
+	{
+		PendingClass pending = this.pendingClasses.get(liveClassName);
+		int[] versions;
+		
+		if ( pending != null )
+			versions = new int[] { pending.safeModeVersion, pending.currentVersion };
+		else
+		{
+			// primeira versao pendente da classe, obtem o versionamento persistido
+			versions = this.persistedVersions.get(liveClassName);
+			
+			if ( versions == null )
+			{
+				ILiveClassVersionInfo versionInfo = this.delegate.getLiveClassVersionInfo(liveClassName);
+				versions = new int[] { versionInfo.getSafeModeVersion(), versionInfo.getCurrentVersion() };
+			}
+		}
+		
+		if ( versions[1] < 1 )
+			return ( new PendingVersion(liveClassName, 1, liveClassInfo, true, batch) );
+		
+		return ( new PendingVersion(liveClassName, versions[0] + 1, liveClassInfo, false, batch) );
+	}
+	
+	/**
+	 * <p>
+	 * Enfileira a verso j registrada no <i>journal</i>, atualizando o versionamento projetado da sua classe.
+	 * <p><i>
+	 * Enqueues the version already recorded on the journal, updating the projected versioning of its class.
+	 * </i>
+	 */
+	private void enqueue(PendingVersion version)
+	{
+		PendingClass pending = this.pendingClasses.computeIfAbsent(version.className, k -> new PendingClass());
+		
+		// substitui a versao de teste pendente
+		if ( pending.currentVersion != pending.safeModeVersion )
+			pending.versions.remove(pending.currentVersion);
+		
+		pending.safeModeVersion = version.safeVersion ? version.version : version.version - 1;
+		pending.currentVersion = version.version;
+		pending.versions.put(version.version, version.classInfo);
+		pending.count++;
+		
+		this.queue.add(version);
+		this.enqueuedCount++;
+	}
+	
+	/**
+	 * <p>
+	 * Lao da thread de gravao: persiste as verses enfileiradas em grupos.
+	 * <br>
+	 * As verses que falharem, e as verses seguintes das mesmas classes, voltam para o incio da fila
+	 * e permanecem no <i>journal</i>, sendo gravadas novamente aps {@link #RETRY_DELAY} milissegundos.
+	 * <p><i>
+	 * Writer thread loop: persists the enqueued versions in groups.
+	 * <br>
+	 * The versions that fail, and the next versions of the same classes, go back to the head of the queue
+	 * and remain on the journal, being written again after {@link #RETRY_DELAY} milliseconds.
+	 * </i>
+	 */
+	private void writeLoop()
+	{
+		while ( true )
+		{
+			List<PendingVersion> group;
+			
+			synchronized ( this )
+			{
+				while ( this.queue.isEmpty() && this.running )
+				{
+					try
+					{
+						this.wait();
+					}
+					catch ( InterruptedException e )
+					{
+						return;
+					}
+				}
+				
+				// ao encerrar, as versoes com falha permanecem no journal para a proxima inicializacao
+				if ( this.queue.isEmpty() || (!this.running && (this.writeError != null)) )
+					return;
+				
+				group = new ArrayList<PendingVersion>(this.queue);
+				this.queue.clear();
+			}
+			
+			try
+			{
+				// sincroniza o journal uma unica vez para o grupo
+				this.journal.force(false);
+			}
+			catch ( IOException e )
+			{
+				// log: erro
+				LiveClassUtils.logError("Erro ao sincronizar o journal de versoes: " + this.journalFile);
+				LiveClassUtils.logException(e);
+			}
+			
+			// ultima versao de cada classe no grupo
+			Map<String,PendingVersion> lastVersions = new HashMap<String,PendingVersion>();
+			for ( PendingVersion version : group )
+				lastVersions.put(version.className, version);
+			
+			// versoes persistidas (ou substituidas) e versoes a serem gravadas novamente
+			List<PendingVersion> applied = new ArrayList<PendingVersion>();
+			List<PendingVersion> failed = new ArrayList<PendingVersion>();
+			
+			// classes com versoes que falharam no grupo
+			Set<String> failedClasses = new HashSet<String>();
+			Exception error = null;
+			
+			// persiste as versoes do grupo, na ordem em que foram salvas
+			// (as versoes de um lote sao persistidas em conjunto, na posicao da primeira versao do lote)
+			Set<PendingVersion> grouped = new HashSet<PendingVersion>(group);
+			Set<List<PendingVersion>> writtenBatches = new HashSet<List<PendingVersion>>();
+			int coalesced = 0;
+			
+			for ( PendingVersion version : group )
+			{
+				List<PendingVersion> members = Collections.singletonList(version);
+				
+				if ( version.batch != null )
+				{
+					if (! writtenBatches.add(version.batch) )
+						continue;
+					
+					// versoes do lote ainda pendentes (as substituidas em grupos anteriores ja foram descartadas)
+					members = new ArrayList<PendingVersion>();
+					for ( PendingVersion member : version.batch )
+						if ( grouped.contains(member) )
+							members.add(member);
+				}
+				
+				// as versoes seguintes a uma versao com falha aguardam a sua gravacao
+				boolean waiting = false;
+				for ( PendingVersion member : members )
+					waiting |= failedClasses.contains(member.className);
+				
+				if ( waiting )
+				{
+					for ( PendingVersion member : members )
+						failedClasses.add(member.className);
+					
+					failed.addAll(members);
+					continue;
+				}
+				
+				// uma versao de teste substituida por outra do mesmo grupo nao precisa ser persistida
+				Map<String,ClassInfo> classInfos = new LinkedHashMap<String,ClassInfo>();
+				List<PendingVersion> written = new ArrayList<PendingVersion>();
+				
+				for ( PendingVersion member : members )
+				{
+					if ( !member.safeVersion && (lastVersions.get(member.className) != member) )
+					{
+						applied.add(member);
+						coalesced++;
+					}
+					else
+					{
+						classInfos.put(member.className, member.classInfo);
+						written.add(member);
+					}
+				}
+				
+				if ( written.isEmpty() )
+					continue;
+				
+				try
+				{
+					if ( version.batch == null )
+						this.delegate.saveLiveClassInfo(version.className, version.classInfo);
+					else
+						this.delegate.saveLiveClassInfos(classInfos, false);
+					
+					applied.addAll(written);
+				}
+				catch ( Exception e )
+				{
+					// log: erro
+					LiveClassUtils.logError("Erro ao persistir versao das classes dinamicas " + classInfos.keySet() + ", nova tentativa em " + RETRY_DELAY + "ms");
+					LiveClassUtils.logException(e);
+					
+					failedClasses.addAll(classInfos.keySet());
+					failed.addAll(written);
+					error = e;
+				}
+			}
+			
+			synchronized ( this )
+			{
+				for ( PendingVersion version : applied )
+				{
+					PendingClass pending = this.pendingClasses.get(version.className);
+					
+					// todas as versoes pendentes da classe foram persistidas
+					if ( --pending.count == 0 )
+					{
+						this.pendingClasses.remove(version.className);
+						this.persistedVersions.put(version.className, new int[] { pending.safeModeVersion, pending.currentVersion });
+					}
+				}
+				
+				// as versoes com falha voltam para o inicio da fila, na ordem em que foram salvas,
+				// mantendo o versionamento projetado das suas classes
+				this.queue.addAll(0, failed);
+				this.writeError = error;
+				this.persistedCount += applied.size();
+				
+				try
+				{
+					// todas as versoes do journal foram persistidas
+					if ( this.queue.isEmpty() )
+						this.journal.truncate(0);
+					
+					// remove do journal as versoes persistidas, mantendo as versoes com falha
+					else if ( !failed.isEmpty() && !applied.isEmpty() )
+						this.rewriteJournal();
+				}
+				catch ( IOException e )
+				{
+					// log: erro
+					LiveClassUtils.logError("Erro ao limpar o journal de versoes: " + this.journalFile);
+					LiveClassUtils.logException(e);
+				}
+				
+				// log: debug
+				LiveClassUtils.logDebug(String.format("Versoes persistidas em segundo plano: %d, %d substituidas, %d com falha (pendentes: %d)", 
+						applied.size() - coalesced, coalesced, failed.size(), this.queue.size()));
+				
+				this.notifyAll();
+				
+				// aguarda o intervalo antes de gravar novamente as versoes com falha
+				long retryTime = System.currentTimeMillis() + RETRY_DELAY;
+				
+				while ( !failed.isEmpty() && this.running && (System.currentTimeMillis() < retryTime) )
+				{
+					try
+					{
+						this.wait(Math.max(1, retryTime - System.currentTimeMillis()));
+					}
+					catch ( InterruptedException e )
+					{
+						return;
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Reescreve o <i>journal</i> somente com as verses da fila, descartando os registros j persistidos.
+	 * O novo <i>journal</i>  gravado em um arquivo temporrio, sincronizado com o disco e ento renomeado.
+	 * <p><i>
+	 * Rewrites the journal with only the queued versions, discarding the records already persisted.
+	 * The new journal is written to a temporary file, synced to disk and then renamed.
+	 * </i>
+	 */
+	private void rewriteJournal() throws IOException
+	{
+		Path tempFile = this.journalFile.resolveSibling(this.journalFile.getFileName() + ".tmp");
+		
+		try ( FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, 
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE) )
+		{
+			for ( PendingVersion version : this.queue )
+			{
+				ByteBuffer record = ByteBuffer.wrap(encodeRecord(version));
+				while ( record.hasRemaining() )
+					channel.write(record);
+			}
+			
+			channel.force(false);
+		}
+		
+		this.journal.close();
+		Files.move(tempFile, this.journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		this.journal = FileChannel.open(this.journalFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+	}
+	
+	/**
+	 * <p>
+	 * Persiste as verses registradas no <i>journal</i> e ainda no persistidas, na ordem em que foram salvas.
+	 * Um registro incompleto ou corrompido encerra a recuperao.
+	 * <br>
+	 * Cada registro contm a verso projetada ao salv-lo. Os registros de verses j aceitas no gerenciador 
+	 * decorado (verso do modo seguro igual ou posterior) so ignorados, pois persisti-los novamente criaria 
+	 * uma nova verso de teste. Os demais registros so verses de teste, e persisti-los novamente na ordem 
+	 * em que foram salvos resulta na mesma verso de teste, de forma que todo o <i>journal</i> pode ser reprocessado.
+	 * <p><i>
+	 * Persists the versions recorded on the journal and not yet persisted, in the order they were saved.
+	 * An incomplete or corrupted record ends the recovery.
+	 * <br>
+	 * Each record holds the version projected when it was saved. Records of versions already committed on the 
+	 * decorated manager (same or later safe mode version) are skipped, since persisting them again would create 
+	 * a new test version. The remaining records are test versions, and persisting them again in the order 
+	 * they were saved results in the same test version, so the whole journal can be replayed.
+	 * </i>
+	 */
+	private void recover() throws Exception
+	{
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(this.journalFile));
+		int count = 0;
+		int skipped = 0;
+		
+		while ( buffer.remaining() >= 8 )
+		{
+			int length = buffer.getInt();
+			int checksum = buffer.getInt();
+			
+			if ( (length < 0) || (length > buffer.remaining()) )
+				break;
+			
+			byte[] payload = new byte[length];
+			buffer.get(payload);
+			
+			CRC32 crc = new CRC32();
+			crc.update(payload);
+			
+			if ( (int) crc.getValue() != checksum )
+				break;
+			
+			// reconstroi as informacoes da versao
+			ByteBuffer in = ByteBuffer.wrap(payload);
+			byte[] name = new byte[in.getShort() & 0xFFFF];
+			in.get(name);
+			
+			String className = new String(name, StandardCharsets.UTF_8);
+			int version = in.getInt();
+			
+			// versao ja aceita no gerenciador decorado
+			ILiveClassVersionInfo versionInfo = this.delegate.getLiveClassVersionInfo(className);
+			if ( (versionInfo != null) && (versionInfo.getSafeModeVersion() >= version) )
+			{
+				skipped++;
+				continue;
+			}
+			
+			ClassInfo classInfo = null;
+			
+			for ( int i = in.getInt(); i > 0; i-- )
+			{
+				byte[] bytecode = new byte[in.getInt()];
+				in.get(bytecode);
+				
+				if ( classInfo == null )
+					classInfo = InstrumentationHelper.inspect(bytecode);
+				else
+					classInfo.addInnerClassInfo(InstrumentationHelper.inspect(bytecode));
+			}
+			
+			this.delegate.saveLiveClassInfo(className, classInfo);
+			count++;
+		}
+		
+		if ( count + skipped > 0 )
+			// log: info
+			LiveClassUtils.logInfo(String.format("Versoes recuperadas do journal: %d, %d ja persistidas (%s)", count, skipped, this.journalFile));
+		
+		this.journal.truncate(0);
+		this.journal.force(false);
+	}
+	
+	/**
+	 * <p>
+	 * Codifica o registro do <i>journal</i> de uma verso: tamanho, CRC32, nome da classe, nmero projetado
+	 * da verso e bytecodes da classe e das suas classes internas.
+	 * <p><i>
+	 * Encodes the journal record of a version: length, CRC32, class name, projected version number
+	 * and the bytecode of the class and its inner classes.
+	 * </i>
+	 */
+	private static byte[] encodeRecord(PendingVersion version) throws IOException
+	{
+		List<byte[]> bytecodes = new ArrayList<byte[]>();
+		bytecodes.add(version.classInfo.getBytecode());
+		collectInnerClassesBytecode(version.classInfo, bytecodes);
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		
+		byte[] name = version.className.getBytes(StandardCharsets.UTF_8);
+		out.writeShort(name.length);
+		out.write(name);
+		out.writeInt(version.version);
+		out.writeInt(bytecodes.size());
+		
+		for ( byte[] bytecode : bytecodes )
+		{
+			out.writeInt(bytecode.length);
+			out.write(bytecode);
+		}
+		
+		byte[] payload = bytes.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		
+		ByteBuffer record = ByteBuffer.allocate(8 + payload.length);
+		record.putInt(payload.length);
+		record.putInt((int) crc.getValue());
+		record.put(payload);
+		
+		return ( record.array() );
+	}
+	
+	/**
+	 * <p>
+	 * Obtm os bytecodes das classes internas, recursivamente.
+	 * <p><i>
+	 * Gets the inner classes bytecode, recursively.
+	 * </i>
+	 */
+	private static void collectInnerClassesBytecode(ClassInfo classInfo, List<byte[]> bytecodeList)
+	{
+		for ( ClassInfo innerClass : classInfo.getInnerClassesInfo() )
+		{
+			bytecodeList.add(innerClass.getBytecode());
+			
+			// classes internas das classes internas
+			collectInnerClassesBytecode(innerClass, bytecodeList);
+		}
+	}
+	
+	
+	/**
+	 * <p>
+	 * Verso aguardando a persistncia.
+	 * <p><i>
+	 * Version waiting to be persisted.
+	 * </i>
+	 */
+	private static class PendingVersion
+	{
+		// nome da classe dinamica
+		private String className;
+		
+		// numero projetado da versao
+		private int version;
+		
+		// informacoes da versao
+		private ClassInfo classInfo;
+		
+		// indica se a versao sera a versao do modo seguro (primeira versao da classe)
+		private boolean safeVersion;
+		
+		// versoes do lote persistido em conjunto (null se a versao foi salva individualmente)
+		private List<PendingVersion> batch;
+		
+		
+		/**
+		 * <p>
+		 * Constri uma nova verso pendente.
+		 * <p><i>
+		 * Constructs a new pending version.
+		 * </i>
+		 */
+		PendingVersion(String className, int version, ClassInfo classInfo, boolean safeVersion, List<PendingVersion> batch)
+		{
+			this.className = className;
+			this.version = version;
+			this.classInfo = classInfo;
+			this.safeVersion = safeVersion;
+			this.batch = batch;
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Versionamento projetado de uma classe dinmica com verses pendentes.
+	 * <p><i>
+	 * Projected versioning of a LiveClass with pending versions.
+	 * </i>
+	 */
+	private static class PendingClass
+	{
+		// versoes do modo seguro e padrao apos a persistencia das versoes pendentes
+		private int safeModeVersion;
+		private int currentVersion;
+		
+		// informacoes das versoes pendentes, pelo numero da versao
+		private Map<Integer,ClassInfo> versions = new HashMap<Integer,ClassInfo>();
+		
+		// numero de versoes pendentes
+		private int count;
+	}
+	
+	/**
+	 * <p>
+	 * Informaes de versionamento projetadas de uma classe dinmica.
+	 * <p><i>
+	 * Projected versioning information of a LiveClass.
+	 * </i>
+	 */
+	private static class PendingVersionInfo implements ILiveClassVersionInfo
+	{
+		// nome da classe dinamica
+		private String className;
+		
+		// versao do modo padrao
+		private int currentVersion;
+		
+		// versao do modo seguro
+		private int safeModeVersion;
+		
+		
+		/**
+		 * <p>
+		 * Constri as informaes de versionamento.
+		 * <p><i>
+		 * Constructs the versioning information.
+		 * </i>
+		 */
+		PendingVersionInfo(String className, int currentVersion, int safeModeVersion)
+		{
+			this.className = className;
+			this.currentVersion = currentVersion;
+			this.safeModeVersion = safeModeVersion;
+		}
+		
+		@Override
+		public String getClassName()
+		{
+			return ( this.className );
+		}
+		
+		@Override
+		public int getCurrentVersion()
+		{
+			return ( this.currentVersion );
+		}
+		
+		@Override
+		public int getSafeModeVersion()
+		{
+			return ( this.safeModeVersion );
+		}
+	}
+}
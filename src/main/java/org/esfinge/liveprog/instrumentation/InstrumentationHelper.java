@@ -17,8 +17,12 @@ import java.lang.reflect.Modifier;
 import java.lang.reflect.Parameter;
 import java.net.URL;
 import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 import org.apache.commons.io.IOUtils;
@@ -497,6 +501,103 @@ public abstract class InstrumentationHelper
 		return ( newClassInfo );
 	}
 	
+	/**
+	 * <p>
+	 * Calcula a impresso digital (SHA-256) do bytecode da classe e das suas classes internas,
+	 * permitindo identificar verses idnticas de uma classe. As classes internas de todos os nveis
+	 * so consideradas em uma nica lista ordenada pelo nome, de modo que a impresso digital independe
+	 * de estarem aninhadas (lidas dos arquivos) ou agrupadas na classe principal (recuperadas do BD).
+	 * <p><i>
+	 * Computes the fingerprint (SHA-256) of the bytecode of the class and its inner classes,
+	 * allowing to identify identical versions of a class. The inner classes of every level
+	 * are taken as a single list sorted by name, so the fingerprint does not depend on whether they
+	 * are nested (read from the files) or grouped under the main class (restored from the database).
+	 * </i>
+	 * 
+	 * @param classInfo informaes da classe
+	 * <br><i>the class information</i>
+	 * @param ignoreDebugInfo <i>true</i> para desconsiderar as informaes de depurao (nmeros de linha, 
+	 * nomes de variveis locais e arquivo fonte), <i>false</i> para considerar o bytecode completo
+	 * <br><i>true to disregard the debug information (line numbers, local variable names and source file),
+	 * false to consider the whole bytecode</i>
+	 * @return a impresso digital da classe
+	 * <br><i>the class fingerprint</i>
+	 */
+	public static byte[] fingerprint(ClassInfo classInfo, boolean ignoreDebugInfo)
+	{
+		try
+		{
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			updateFingerprint(digest, classInfo.getBytecode(), ignoreDebugInfo);
+			
+			// classes internas de todos os niveis, ordenadas pelo nome
+			List<ClassInfo> innerClasses = new ArrayList<ClassInfo>();
+			collectInnerClasses(classInfo, innerClasses);
+			innerClasses.sort(Comparator.comparing(ClassInfo::getName));
+			
+			for ( ClassInfo innerClassInfo : innerClasses )
+				updateFingerprint(digest, innerClassInfo.getBytecode(), ignoreDebugInfo);
+			
+			return ( digest.digest() );
+		}
+		catch ( NoSuchAlgorithmException e )
+		{
+			// SHA-256 eh obrigatorio em todas as implementacoes da plataforma Java
+			throw new IllegalStateException("SHA-256 not available!", e);
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Inclui o bytecode de uma classe na impresso digital.
+	 * <p><i>
+	 * Adds the bytecode of a class to the fingerprint.
+	 * </i>
+	 * 
+	 * @param digest impresso digital sendo calculada
+	 * <br><i>the fingerprint being computed</i>
+	 * @param bytecode bytecode da classe
+	 * <br><i>the class bytecode</i>
+	 * @param ignoreDebugInfo <i>true</i> para desconsiderar as informaes de depurao
+	 * <br><i>true to disregard the debug information</i>
+	 */
+	private static void updateFingerprint(MessageDigest digest, byte[] bytecode, boolean ignoreDebugInfo)
+	{
+		// remove as informacoes de depuracao, reconstruindo o constant pool sem as suas entradas
+		if ( ignoreDebugInfo )
+		{
+			ClassWriter cw = new ClassWriter(0);
+			new ClassReader(bytecode).accept(cw, ClassReader.SKIP_DEBUG);
+			bytecode = cw.toByteArray();
+		}
+		
+		// tamanho seguido do bytecode, delimitando as classes
+		int length = bytecode.length;
+		digest.update(new byte[] { (byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length });
+		digest.update(bytecode);
+	}
+	
+	/**
+	 * <p>
+	 * Adiciona  lista as classes internas de todos os nveis da classe informada.
+	 * <p><i>
+	 * Adds to the list the inner classes of every level of the specified class.
+	 * </i>
+	 * 
+	 * @param classInfo informaes da classe
+	 * <br><i>the class information</i>
+	 * @param innerClasses lista das classes internas encontradas
+	 * <br><i>list of the inner classes found</i>
+	 */
+	private static void collectInnerClasses(ClassInfo classInfo, List<ClassInfo> innerClasses)
+	{
+		for ( ClassInfo innerClassInfo : classInfo.getInnerClassesInfo() )
+		{
+			innerClasses.add(innerClassInfo);
+			collectInnerClasses(innerClassInfo, innerClasses);
+		}
+	}
+	
 	/**
 	 * <p>
 	 * Tenta obter os bytecodes da classe informada.
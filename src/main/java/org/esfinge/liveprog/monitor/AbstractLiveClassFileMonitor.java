@@ -67,4 +67,19 @@ public abstract class AbstractLiveClassFileMonitor implements ILiveClassFileMoni
 	{
 		this.observers.forEach(obs -> obs.liveClassFileUpdated(liveClassFile));
 	}
+	
+	/**
+	 * <p>
+	 * Notifica os observadores de que os arquivos de classes dinmicas atualizadas foram encontrados em um mesmo lote.
+	 * <p><i>
+	 * Notifies the observers that updated LiveClass files were found in the same batch.
+	 * </i>
+	 * 
+	 * @param liveClassFiles arquivos das classes dinmicas atualizadas
+	 * <br><i>the updated LiveClass files</i>
+	 */
+	protected void notifyObservers(List<File> liveClassFiles)
+	{
+		this.observers.forEach(obs -> obs.liveClassFilesUpdated(liveClassFiles));
+	}
 }
@@ -1,17 +1,34 @@
 package org.esfinge.liveprog.monitor;
 
 import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.esfinge.liveprog.annotation.LiveClass;
 import org.esfinge.liveprog.instrumentation.InstrumentationHelper;
-import org.esfinge.liveprog.reflect.ClassInfo;
 import org.esfinge.liveprog.util.LiveClassUtils;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
 
 /**
  * <p>
  * Filtro que verifica se a classe contm a anotao {@link LiveClass}.
+ * <br>
+ * A verificao l somente o cabealho, as anotaes e as classes internas do arquivo, sem carregar a classe,
+ * e o resultado  mantido enquanto a data de modificao e o tamanho do arquivo (e, para as classes internas,
+ * os da classe externa) no forem alterados.
+ * Os bytecodes lidos so compartilhados com os observadores pelo {@link LiveClassFileCache}.
  * <p><i>
  * Filters classes annotated with {@link LiveClass}.
+ * <br>
+ * The check reads only the header, the annotations and the inner classes of the file, without loading the class,
+ * and the verdict is kept as long as the last modified date and the size of the file (and, for inner classes,
+ * the ones of the outer class) are not changed.
+ * The bytecodes read are shared with the observers through the LiveClassFileCache.
  * </i>
  * 
  * @see org.esfinge.liveprog.annotation.LiveClass
@@ -19,26 +36,35 @@ import org.esfinge.liveprog.util.LiveClassUtils;
  */
 public class AnnotatedLiveClassFileFilter  implements ILiveClassFileFilter
 {
+	// descritor da anotacao de classes dinamicas
+	private static final String LIVECLASS_DESC = Type.getDescriptor(LiveClass.class);
+	
+	// profundidade maxima de classes internas verificadas
+	private static final int MAX_DEPTH = 16;
+	
+	// numero maximo de veredictos mantidos
+	private static final int MAX_VERDICTS = 256;
+	
+	// veredictos ja calculados, pelo caminho do arquivo (descarta os acessados ha mais tempo)
+	private Map<String,Verdict> verdicts = Collections.synchronizedMap(
+		new LinkedHashMap<String,Verdict>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String,Verdict> eldest)
+			{
+				return ( this.size() > MAX_VERDICTS );
+			}
+		});
+	
+	
 	@Override
 	public boolean acceptFile(File file)
 	{
 		try
 		{
-			//
-			ClassInfo classInfo = InstrumentationHelper.inspect(file);
-			
-			// 
-			Class<?> clazz;
-			
-			// verifica se eh uma classe interna
-			if ( classInfo.isInnerClass() )
-				// obtem a classe raiz (principal)
-				clazz = Class.forName(classInfo.getDeclaringClassName());
-			else
-				clazz = classInfo.getClazz();
-
-			return ( clazz.isAnnotationPresent(LiveClass.class) );
-//			return ( Utils.getFromCollection(classInfo.getAnnotationsInfo(), annotInfo -> annotInfo.getName().equals(LiveClass.class.getTypeName())) != null );
+			return ( this.isLiveClassFile(file, 0) );
 		}
 		catch ( Exception e )
 		{
@@ -48,4 +74,227 @@ public class AnnotatedLiveClassFileFilter  implements ILiveClassFileFilter
 			return ( false );
 		}
 	}
+	
+	/**
+	 * <p>
+	 * Verifica se o arquivo contm uma classe dinmica ou uma classe interna de uma classe dinmica.
+	 * <p><i>
+	 * Checks if the file contains a LiveClass or an inner class of a LiveClass.
+	 * </i>
+	 * 
+	 * @param file arquivo de classe
+	 * <br><i>the class file</i>
+	 * @param depth nvel da classe interna sendo verificada
+	 * <br><i>the level of the inner class being checked</i>
+	 * @return <i>true</i> se a classe pertence a uma classe dinmica, <i>false</i> caso contrrio
+	 * <br><i>true if the class belongs to a LiveClass, false otherwise</i>
+	 * @throws Exception em caso de erro na leitura do arquivo ou da classe externa
+	 * <br><i>if an error occurs when reading the file or the outer class</i>
+	 */
+	private boolean isLiveClassFile(File file, int depth) throws Exception
+	{
+		String path = file.getAbsolutePath();
+		long lastModified = file.lastModified();
+		long size = file.length();
+		
+		// verifica se o arquivo ja foi verificado
+		Verdict verdict = this.verdicts.get(path);
+		String outerClassName;
+		boolean accept;
+		
+		if ( (verdict != null) && verdict.matches(lastModified, size) )
+		{
+			if ( verdict.outerClassName == null )
+				return ( verdict.accept );
+			
+			// classe interna: o veredicto depende tambem da classe externa, que pode ter sido alterada
+			outerClassName = verdict.outerClassName;
+			accept = false;
+		}
+		else
+		{
+			// leitura parcial da classe (sem codigo, depuracao ou frames)
+			ClassScanner scanner = new ClassScanner(LiveClassFileCache.read(file));
+			outerClassName = scanner.outerClassName;
+			accept = scanner.annotated;
+		}
+		
+		// verifica se eh uma classe interna
+		if ( outerClassName != null )
+			// verifica a classe raiz (principal), reaproveitando o seu veredicto se o arquivo nao foi alterado
+			accept = this.isLiveClass(file.getParentFile(), outerClassName, depth + 1);
+		
+		// os bytecodes de classes rejeitadas nao serao utilizados
+		if (! accept )
+			LiveClassFileCache.discard(file);
+		
+		this.verdicts.put(path, new Verdict(lastModified, size, accept, outerClassName));
+		
+		return ( accept );
+	}
+	
+	/**
+	 * <p>
+	 * Verifica se a classe externa  uma classe dinmica ou uma classe interna de uma classe dinmica.
+	 * A classe  lida do mesmo diretrio, se disponvel, ou do <i>classpath</i> da aplicao.
+	 * <p><i>
+	 * Checks if the outer class is a LiveClass or an inner class of a LiveClass.
+	 * The class is read from the same directory, if available, or from the application classpath.
+	 * </i>
+	 * 
+	 * @param dir diretrio da classe interna
+	 * <br><i>the directory of the inner class</i>
+	 * @param className nome da classe externa
+	 * <br><i>the name of the outer class</i>
+	 * @param depth nvel da classe interna sendo verificada
+	 * <br><i>the level of the inner class being checked</i>
+	 * @return <i>true</i> se a classe pertence a uma classe dinmica, <i>false</i> caso contrrio
+	 * <br><i>true if the class belongs to a LiveClass, false otherwise</i>
+	 * @throws Exception em caso de erro na leitura da classe externa
+	 * <br><i>if an error occurs when reading the outer class</i>
+	 */
+	private boolean isLiveClass(File dir, String className, int depth) throws Exception
+	{
+		if ( depth > MAX_DEPTH )
+			return ( false );
+		
+		// arquivo da classe externa, no mesmo diretorio
+		File classFile = new File(dir, className.substring(className.lastIndexOf('.') + 1) + ".class");
+		
+		if ( classFile.isFile() )
+			return ( this.isLiveClassFile(classFile, depth) );
+		
+		// obtem a classe externa sem inicializa-la
+		return ( Class.forName(className, false, this.getClass().getClassLoader()).isAnnotationPresent(LiveClass.class) );
+	}
+	
+	
+	/**
+	 * <p>
+	 * Leitura parcial de uma classe, que obtm somente a anotao {@link LiveClass} e a classe externa.
+	 * <p><i>
+	 * Partial reading of a class, which collects only the LiveClass annotation and the outer class.
+	 * </i>
+	 */
+	private static class ClassScanner extends ClassVisitor
+	{
+		// nome interno da classe
+		private String internalName;
+		
+		// indica se a classe contem a anotacao de classe dinamica
+		private boolean annotated;
+		
+		// nome da classe que declara esta classe (se for uma classe interna)
+		private String outerClassName;
+		
+		
+		/**
+		 * <p>
+		 * L as informaes necessrias da classe.
+		 * <p><i>
+		 * Reads the required information of the class.
+		 * </i>
+		 * 
+		 * @param classBytecode bytecodes da classe
+		 * <br><i>the bytecodes of the class</i>
+		 */
+		ClassScanner(byte[] classBytecode)
+		{
+			super(Opcodes.ASM6);
+			
+			new ClassReader(classBytecode).accept(this, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+		}
+		
+		@Override
+		public void visit(int version, int access, String name, String signature, String superName, String[] interfaces)
+		{
+			this.internalName = name;
+		}
+		
+		@Override
+		public AnnotationVisitor visitAnnotation(String desc, boolean visible)
+		{
+			if ( visible && LIVECLASS_DESC.equals(desc) )
+				this.annotated = true;
+			
+			return ( null );
+		}
+		
+		@Override
+		public void visitInnerClass(String name, String outerName, String innerName, int access)
+		{
+			// somente classes internas que referenciam a classe externa (como InstrumentationHelper.inspect())
+			if ( (outerName == null) || !name.equals(this.internalName) )
+				return;
+			
+			this.outerClassName = InstrumentationHelper.toQualifiedName(outerName);
+		}
+	}
+	
+	
+	/**
+	 * <p>
+	 * Resultado da verificao de um arquivo.
+	 * <p><i>
+	 * Verdict of a file check.
+	 * </i>
+	 */
+	private static class Verdict
+	{
+		// data de modificacao do arquivo verificado
+		private long lastModified;
+		
+		// tamanho do arquivo verificado
+		private long size;
+		
+		// resultado da verificacao
+		private boolean accept;
+		
+		// nome da classe externa (se for uma classe interna)
+		private String outerClassName;
+		
+		
+		/**
+		 * <p>
+		 * Armazena o resultado da verificao de um arquivo.
+		 * <p><i>
+		 * Stores the verdict of a file check.
+		 * </i>
+		 * 
+		 * @param lastModified data de modificao do arquivo
+		 * <br><i>the last modified date of the file</i>
+		 * @param size tamanho do arquivo
+		 * <br><i>the size of the file</i>
+		 * @param accept resultado da verificao
+		 * <br><i>the verdict</i>
+		 * @param outerClassName nome da classe externa, ou <i>null</i> se no for uma classe interna
+		 * <br><i>the name of the outer class, or null if it is not an inner class</i>
+		 */
+		Verdict(long lastModified, long size, boolean accept, String outerClassName)
+		{
+			this.lastModified = lastModified;
+			this.size = size;
+			this.accept = accept;
+			this.outerClassName = outerClassName;
+		}
+		
+		/**
+		 * <p>
+		 * Verifica se o resultado corresponde ao estado atual do arquivo.
+		 * <p><i>
+		 * Checks if the verdict matches the current state of the file.
+		 * </i>
+		 * 
+		 * @param lastModified data de modificao atual do arquivo
+		 * <br><i>the current last modified date of the file</i>
+		 * @param size tamanho atual do arquivo
+		 * <br><i>the current size of the file</i>
+		 * @return <i>true</i> se o arquivo no foi alterado, <i>false</i> caso contrrio
+		 * <br><i>true if the file was not changed, false otherwise</i>
+		 */
+		boolean matches(long lastModified, long size)
+		{
+			return ( (this.lastModified == lastModified) && (this.size == size) );
+		}
+	}
 }
@@ -1,40 +1,110 @@
 package org.esfinge.liveprog.monitor;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardWatchEventKinds;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import org.esfinge.liveprog.util.LiveClassUtils;
 
 /**
  * <p>
  * Monitora por arquivos de classes dinmicas atualizadas no sistema de arquivos.
+ * <br>
+ * Os eventos de um mesmo arquivo so agrupados, e o arquivo somente  notificado depois que o seu tamanho e
+ * a sua data de modificao permanecem estveis durante a janela de espera (<i>debounce</i>), evitando a leitura
+ * de arquivos parcialmente gravados. Os arquivos que se tornam estveis juntos so notificados em um mesmo lote.
+ * <br>
+ * O monitor mantm um ndice (tamanho, data de modificao e <i>hash</i> do contedo) dos arquivos de classes 
+ * monitorados. No incio do monitoramento, somente o tamanho e a data de modificao so indexados, e o contedo
+ *  lido somente quando necessrio para compar-lo. Quando o sistema operacional descarta eventos (<i>overflow</i>), 
+ * somente o diretrio afetado  verificado novamente, e somente os arquivos efetivamente alterados so notificados.
+ * <br>
+ * Opcionalmente, os arquivos alterados enquanto o monitor no estava em execuo so notificados no incio do
+ * monitoramento (reconciliao), e o ndice  persistido em arquivo para que somente os arquivos com tamanho ou
+ * data de modificao diferentes sejam lidos na prxima execuo. Os arquivos notificados somente so persistidos
+ * no ndice aps os observadores confirmarem que o seu contedo foi aplicado.
+ * <br>
+ * Para reduzir o nmero de diretrios monitorados em rvores grandes, o monitor pode monitorar somente os 
+ * diretrios dos pacotes das classes dinmicas conhecidas, registrando-os  medida que so criados.
  * <p><i>
  * Monitors for updated LiveClass files in the file system.
+ * <br>
+ * The events of the same file are coalesced, and the file is only notified after its size and last modified time
+ * remain stable during the debounce window, avoiding reads of partially written files.
+ * The files that become stable together are notified in the same batch.
+ * <br>
+ * The monitor keeps an index (size, last modified time and content hash) of the monitored class files.
+ * When the monitoring starts, only the size and last modified time are indexed, and the content is read
+ * only when needed to compare it. When the operating system drops events (overflow), only the affected 
+ * directory is rescanned, and only the files actually changed are notified.
+ * <br>
+ * Optionally, the files changed while the monitor was not running are notified when the monitoring starts
+ * (reconciliation), and the index is persisted to a file so that only the files with different size or
+ * last modified time are read on the next run. The notified files are only persisted on the index after
+ * the observers confirm that their content was applied.
+ * <br>
+ * To reduce the number of watches on large trees, the monitor can watch only the package directories
+ * of the known LiveClasses, registering them as they are created.
  * </i>
  * 
  * @see org.esfinge.liveprog.monitor.ILiveClassFileMonitor
  */
 public class FileSystemMonitor extends AbstractLiveClassFileMonitor
 {
+	// janela de espera padrao, em milissegundos
+	static final long DEFAULT_DEBOUNCE_WINDOW = 100;
+	
+	// identificacao e formato do arquivo de indice
+	private static final int INDEX_MAGIC = 0x4C43494E;
+	private static final int INDEX_FORMAT = 1;
+	
 	// diretorio a ser monitorado
 	private Path rootDir;
 	
 	// mapa dos diretorios/subdiretorios sendo monitorados
 	private Map<WatchKey,Path> mapKeyPath;
 	
+	// numero de registros de cada diretorio monitorado (diretorios raiz sobrepostos)
+	private Map<Path,Integer> dirRegistrations;
+	
+	// diretorios dos pacotes monitorados (null para monitorar todos os diretorios registrados)
+	private Set<Path> packageDirs;
+	
 	// monitor de mudancas de sistemas de arquivos
 	private WatchService watchService;
 	
@@ -44,6 +114,27 @@ public class FileSystemMonitor extends AbstractLiveClassFileMonitor
 	// flag de status de execucao do monitor
 	private boolean isRunning;
 	
+	// tempo, em milissegundos, que um arquivo deve permanecer inalterado para ser notificado
+	private volatile long debounceWindow;
+	
+	// indice dos arquivos de classes monitorados, pelo caminho
+	private Map<Path,IndexedFile> fileIndex;
+	
+	// arquivo do indice persistido (opcional)
+	private volatile Path indexFile;
+	
+	// indica se os arquivos alterados enquanto o monitor nao estava em execucao sao notificados no inicio
+	private volatile boolean reconcileOnStart;
+	
+	// arquivos notificados aos observadores (registrados somente quando o indice eh persistido)
+	private Set<Path> notifiedFiles;
+	
+	// hash do conteudo aplicado pelos observadores, pelo caminho do arquivo notificado
+	private Map<Path,byte[]> appliedHashes;
+	
+	// indica se algum conteudo foi aplicado desde a ultima persistencia do indice
+	private volatile boolean appliedChanged;
+	
 	
 	/**
 	 * <p>
@@ -62,19 +153,296 @@ public class FileSystemMonitor extends AbstractLiveClassFileMonitor
 	 */
 	public FileSystemMonitor(String dir, boolean includeSubdirs) throws Exception
 	{
-		this.rootDir = Paths.get(dir);
-		this.mapKeyPath = new HashMap<WatchKey,Path>();
-		this.watchService = FileSystems.getDefault().newWatchService();
-		this.executorService = Executors.newSingleThreadExecutor();
-		this.isRunning = false;
+		this(dir, includeSubdirs, DEFAULT_DEBOUNCE_WINDOW);
+	}
+	
+	/**
+	 * <p>
+	 * Constri um novo monitor de sistema de arquivos, com a janela de espera informada.
+	 * <p><i>
+	 * Constructs a new file system monitor, with the specified debounce window.
+	 * </i>
+	 * 
+	 * @param dir diretrio para monitorar por arquivos de classes dinmicas atualizadas
+	 * <br><i>directory for monitoring updated LiveClass files</i>
+	 * @param includeSubdirs <i>true</i> para monitorar tambm os subdiretrios, 
+	 * <i>false</i> para monitorar somente o diretrio informado
+	 * <br><i>true to also monitor subdirectories, false to monitor the specified directory only</i>
+	 * @param debounceWindow tempo, em milissegundos, que um arquivo deve permanecer inalterado para ser notificado
+	 * <br><i>the time, in milliseconds, a file must remain unchanged to be notified</i>
+	 * @throws Exception caso ocorra algum erro interno de inicializao
+	 * <br><i>in case of internal error during initialization</i>
+	 * @see #setDebounceWindow(long)
+	 */
+	public FileSystemMonitor(String dir, boolean includeSubdirs, long debounceWindow) throws Exception
+	{
+		this(dir, debounceWindow);
 		
-		// filtros: classes java, anotados com @LiveClass
-		this.setFileFilter(new CompositeFileFilter(new ExtensionFileFilter("class"), new AnnotatedLiveClassFileFilter()));
-
 		// registra o diretorio/subdiretorios a serem monitorados
 		this.registerDirectory(this.rootDir, includeSubdirs);
 	}
 	
+	/**
+	 * <p>
+	 * Constri um novo monitor de sistema de arquivos que monitora somente os diretrios dos pacotes informados.
+	 * <p><i>
+	 * Constructs a new file system monitor that monitors only the directories of the specified packages.
+	 * </i>
+	 * 
+	 * @param dir diretrio raiz dos pacotes
+	 * <br><i>the root directory of the packages</i>
+	 * @param packageNames nomes dos pacotes das classes dinmicas
+	 * <br><i>the package names of the LiveClasses</i>
+	 * @throws Exception caso ocorra algum erro interno de inicializao
+	 * <br><i>in case of internal error during initialization</i>
+	 * @see #watchPackage(String)
+	 */
+	public FileSystemMonitor(String dir, Collection<String> packageNames) throws Exception
+	{
+		this(dir, packageNames, DEFAULT_DEBOUNCE_WINDOW);
+	}
+	
+	/**
+	 * <p>
+	 * Constri um novo monitor de sistema de arquivos que monitora somente os diretrios dos pacotes informados,
+	 * com a janela de espera informada.
+	 * <br>
+	 * Somente os diretrios dos pacotes so monitorados por arquivos alterados; os diretrios intermedirios
+	 * so monitorados somente pela criao dos subdiretrios dos pacotes, que so registrados ao serem criados.
+	 * <p><i>
+	 * Constructs a new file system monitor that monitors only the directories of the specified packages,
+	 * with the specified debounce window.
+	 * <br>
+	 * Only the package directories are monitored for changed files; the intermediate directories
+	 * are monitored only for the creation of the package subdirectories, which are registered when created.
+	 * </i>
+	 * 
+	 * @param dir diretrio raiz dos pacotes
+	 * <br><i>the root directory of the packages</i>
+	 * @param packageNames nomes dos pacotes das classes dinmicas
+	 * <br><i>the package names of the LiveClasses</i>
+	 * @param debounceWindow tempo, em milissegundos, que um arquivo deve permanecer inalterado para ser notificado
+	 * <br><i>the time, in milliseconds, a file must remain unchanged to be notified</i>
+	 * @throws Exception caso ocorra algum erro interno de inicializao
+	 * <br><i>in case of internal error during initialization</i>
+	 * @see #watchPackage(String)
+	 */
+	public FileSystemMonitor(String dir, Collection<String> packageNames, long debounceWindow) throws Exception
+	{
+		this(dir, debounceWindow);
+		
+		// registra os diretorios dos pacotes
+		this.packageDirs = ConcurrentHashMap.newKeySet();
+		
+		for ( String packageName : packageNames )
+			this.watchPackage(packageName);
+	}
+	
+	/**
+	 * <p>
+	 * Inicializa o monitor, sem registrar os diretrios a serem monitorados.
+	 * <p><i>
+	 * Initializes the monitor, without registering the directories to be monitored.
+	 * </i>
+	 * 
+	 * @param dir diretrio a ser monitorado
+	 * <br><i>the directory to be monitored</i>
+	 * @param debounceWindow tempo, em milissegundos, que um arquivo deve permanecer inalterado para ser notificado
+	 * <br><i>the time, in milliseconds, a file must remain unchanged to be notified</i>
+	 * @throws Exception caso ocorra algum erro interno de inicializao
+	 * <br><i>in case of internal error during initialization</i>
+	 */
+	private FileSystemMonitor(String dir, long debounceWindow) throws Exception
+	{
+		this(Paths.get(dir), FileSystems.getDefault(), debounceWindow);
+		
+		// filtros: classes java, anotados com @LiveClass
+		this.setFileFilter(new CompositeFileFilter(new ExtensionFileFilter("class"), new AnnotatedLiveClassFileFilter()));
+	}
+	
+	/**
+	 * <p>
+	 * Constri um monitor compartilhado do sistema de arquivos informado, sem diretrio raiz.
+	 * Os diretrios so registrados pelo {@link FileSystemMonitorHub}, e somente os arquivos de classes 
+	 * so notificados, cabendo aos assinantes aplicar os seus prprios filtros.
+	 * <p><i>
+	 * Constructs a shared monitor of the specified file system, without a root directory.
+	 * The directories are registered by the FileSystemMonitorHub, and only the class files are notified,
+	 * leaving to the subscribers to apply their own filters.
+	 * </i>
+	 * 
+	 * @param fileSystem sistema de arquivos monitorado
+	 * <br><i>the monitored file system</i>
+	 * @param debounceWindow tempo, em milissegundos, que um arquivo deve permanecer inalterado para ser notificado
+	 * <br><i>the time, in milliseconds, a file must remain unchanged to be notified</i>
+	 * @throws Exception caso ocorra algum erro interno de inicializao
+	 * <br><i>in case of internal error during initialization</i>
+	 * @see #registerRoot(Path, boolean)
+	 */
+	FileSystemMonitor(FileSystem fileSystem, long debounceWindow) throws Exception
+	{
+		this(null, fileSystem, debounceWindow);
+		
+		// filtro: classes java
+		this.setFileFilter(new ExtensionFileFilter("class"));
+	}
+	
+	/**
+	 * <p>
+	 * Inicializa o monitor, sem registrar os diretrios a serem monitorados.
+	 * <p><i>
+	 * Initializes the monitor, without registering the directories to be monitored.
+	 * </i>
+	 * 
+	 * @param dir diretrio raiz a ser monitorado, ou <i>null</i> para um monitor compartilhado
+	 * <br><i>the root directory to be monitored, or null for a shared monitor</i>
+	 * @param fileSystem sistema de arquivos monitorado
+	 * <br><i>the monitored file system</i>
+	 * @param debounceWindow tempo, em milissegundos, que um arquivo deve permanecer inalterado para ser notificado
+	 * <br><i>the time, in milliseconds, a file must remain unchanged to be notified</i>
+	 * @throws Exception caso ocorra algum erro interno de inicializao
+	 * <br><i>in case of internal error during initialization</i>
+	 */
+	private FileSystemMonitor(Path dir, FileSystem fileSystem, long debounceWindow) throws Exception
+	{
+		this.setDebounceWindow(debounceWindow);
+		this.rootDir = dir;
+		this.mapKeyPath = new ConcurrentHashMap<WatchKey,Path>();
+		this.dirRegistrations = new ConcurrentHashMap<Path,Integer>();
+		this.fileIndex = new ConcurrentHashMap<Path,IndexedFile>();
+		this.notifiedFiles = ConcurrentHashMap.newKeySet();
+		this.appliedHashes = new ConcurrentHashMap<Path,byte[]>();
+		this.watchService = fileSystem.newWatchService();
+		this.executorService = Executors.newSingleThreadExecutor();
+		this.isRunning = false;
+	}
+	
+	/**
+	 * <p>
+	 * Especifica o tempo que um arquivo deve permanecer inalterado (tamanho e data de modificao) para ser notificado.
+	 * <p><i>
+	 * Sets the time a file must remain unchanged (size and last modified time) to be notified.
+	 * </i>
+	 * 
+	 * @param debounceWindow janela de espera, em milissegundos
+	 * <br><i>the debounce window, in milliseconds</i>
+	 * @throws IllegalArgumentException caso a janela de espera seja negativa
+	 * <br><i>if the debounce window is negative</i>
+	 */
+	public void setDebounceWindow(long debounceWindow) throws IllegalArgumentException
+	{
+		if ( debounceWindow < 0 )
+			throw new IllegalArgumentException("Debounce window must not be negative: " + debounceWindow);
+		
+		this.debounceWindow = debounceWindow;
+	}
+	
+	/**
+	 * <p>
+	 * Especifica se os arquivos de classes dinmicas alterados enquanto o monitor no estava em execuo
+	 * so notificados no incio do monitoramento. Cada arquivo  notificado individualmente.
+	 * <br>
+	 * Sem um ndice persistido, todos os arquivos de classes dinmicas existentes so notificados, 
+	 * cabendo aos observadores ignorar os idnticos s verses atuais.
+	 * <p><i>
+	 * Sets whether the LiveClass files changed while the monitor was not running are notified
+	 * when the monitoring starts. Each file is notified individually.
+	 * <br>
+	 * Without a persisted index, all the existing LiveClass files are notified,
+	 * leaving to the observers to ignore the ones identical to the current versions.
+	 * </i>
+	 * 
+	 * @param reconcileOnStart <i>true</i> para notificar os arquivos alterados no incio do monitoramento, 
+	 * <i>false</i> para notificar somente as alteraes posteriores
+	 * <br><i>true to notify the changed files when the monitoring starts, false to notify only the later changes</i>
+	 * @see #setIndexFile(String)
+	 */
+	public void setReconcileOnStart(boolean reconcileOnStart)
+	{
+		this.reconcileOnStart = reconcileOnStart;
+	}
+	
+	/**
+	 * <p>
+	 * Especifica o arquivo em que o ndice (tamanho, data de modificao e <i>hash</i>) dos arquivos de classes 
+	 * monitorados  persistido ao final do monitoramento e recuperado no incio do prximo.
+	 * O ndice somente  persistido na reconciliao, e os arquivos notificados somente so persistidos 
+	 * com o contedo aplicado pelos observadores.
+	 * <p><i>
+	 * Sets the file where the index (size, last modified time and hash) of the monitored class files
+	 * is persisted when the monitoring ends and recovered when the next one starts.
+	 * The index is only persisted when reconciling, and the notified files are only persisted
+	 * with the content applied by the observers.
+	 * </i>
+	 * 
+	 * @param indexFile nome e caminho do arquivo de ndice, ou <i>null</i> para no persistir o ndice
+	 * <br><i>filename and path of the index file, or null to not persist the index</i>
+	 */
+	public void setIndexFile(String indexFile)
+	{
+		this.indexFile = (indexFile == null) ? null : Paths.get(indexFile);
+	}
+	
+	@Override
+	public void liveClassFileApplied(File liveClassFile, byte[] bytecode)
+	{
+		if (! this.persistsIndex() )
+			return;
+		
+		// o conteudo aplicado eh persistido no indice caso o arquivo nao tenha sido alterado novamente
+		this.appliedHashes.put(liveClassFile.toPath(), hash(bytecode));
+		this.appliedChanged = true;
+	}
+	
+	/**
+	 * <p>
+	 * Passa a monitorar o diretrio do pacote informado, caso o monitor tenha sido criado para monitorar
+	 * somente os diretrios de pacotes. O diretrio  registrado quando for criado, caso ainda no exista.
+	 * <p><i>
+	 * Starts monitoring the directory of the specified package, if the monitor was created to monitor 
+	 * only package directories. The directory is registered when created, if it does not exist yet.
+	 * </i>
+	 * 
+	 * @param packageName nome do pacote
+	 * <br><i>the package name</i>
+	 * @see #FileSystemMonitor(String, Collection, long)
+	 */
+	public void watchPackage(String packageName)
+	{
+		// monitorando todos os diretorios
+		if ( this.packageDirs == null )
+			return;
+		
+		Path packageDir = packageName.isEmpty() ? this.rootDir : this.rootDir.resolve(packageName.replace('.', File.separatorChar));
+		
+		// verifica se o pacote ja esta sendo monitorado
+		if (! this.packageDirs.add(packageDir) )
+			return;
+		
+		try
+		{
+			// registra novamente a partir da raiz, incluindo os diretorios intermediarios
+			this.registerPackageDirectory(this.rootDir);
+			
+			// log: pacote monitorado
+			LiveClassUtils.logDebug("Monitorando pacote '" + packageName + "', diretorios registrados: " + this.mapKeyPath.size());
+		}
+		catch ( IOException e )
+		{
+			// log: erro
+			LiveClassUtils.logError("Erro ao registrar o diretorio do pacote [" + packageDir + "]");
+			LiveClassUtils.logException(e);
+		}
+	}
+	
+	@Override
+	public void watchLiveClass(String liveClassName)
+	{
+		int index = liveClassName.lastIndexOf('.');
+		
+		this.watchPackage(index < 0 ? "" : liveClassName.substring(0, index));
+	}
+	
 	@Override
 	public void start()
 	{
@@ -137,6 +505,7 @@ public class FileSystemMonitor extends AbstractLiveClassFileMonitor
 		
 		// mapeia a chave e o caminho do diretorio
 		this.mapKeyPath.put(key, dir);
+		this.dirRegistrations.merge(dir, 1, Integer::sum);
 		
 		// registra os subdiretorios
 		if ( includeSubdirs )
@@ -144,6 +513,423 @@ public class FileSystemMonitor extends AbstractLiveClassFileMonitor
 				this.registerDirectory(f.toPath(), true);
 	}
 	
+	/**
+	 * <p>
+	 * Registra um diretrio raiz a ser monitorado, indexando os seus arquivos de classes.
+	 * Os diretrios j registrados por outro diretrio raiz so compartilhados.
+	 * <p><i>
+	 * Registers a root directory to be monitored, indexing its class files.
+	 * The directories already registered by another root directory are shared.
+	 * </i>
+	 * 
+	 * @param dir diretrio raiz
+	 * <br><i>the root directory</i>
+	 * @param includeSubdirs <i>true</i> para monitorar tambm os subdiretrios, 
+	 * <i>false</i> para monitorar somente o diretrio informado
+	 * <br><i>true to also monitor subdirectories, false to monitor the specified directory only</i>
+	 * @throws IOException caso ocorra algum erro ao registrar os diretrios
+	 * <br><i>if an error occurs when registering the directories to be monitored</i>
+	 * @see #unregisterRoot(Path, boolean)
+	 */
+	synchronized void registerRoot(Path dir, boolean includeSubdirs) throws IOException
+	{
+		Set<Path> registeredDirs = new HashSet<Path>(this.mapKeyPath.values());
+		
+		this.registerDirectory(dir, includeSubdirs);
+		
+		// indexa os arquivos dos diretorios ainda nao monitorados
+		this.mapKeyPath.values().stream()
+								.filter(d -> !registeredDirs.contains(d))
+								.flatMap(d -> listClassFiles(d).stream())
+								.collect(Collectors.toList())
+								.parallelStream()
+								.forEach(path -> indexAttributes(path));
+	}
+	
+	/**
+	 * <p>
+	 * Remove o registro de um diretrio raiz. Os diretrios deixam de ser monitorados somente quando 
+	 * no pertencem a nenhum outro diretrio raiz registrado.
+	 * <p><i>
+	 * Unregisters a root directory. The directories stop being monitored only when they do not 
+	 * belong to any other registered root directory.
+	 * </i>
+	 * 
+	 * @param dir diretrio raiz
+	 * <br><i>the root directory</i>
+	 * @param includeSubdirs <i>true</i> se os subdiretrios foram registrados, <i>false</i> caso contrrio
+	 * <br><i>true if the subdirectories were registered, false otherwise</i>
+	 * @see #registerRoot(Path, boolean)
+	 */
+	synchronized void unregisterRoot(Path dir, boolean includeSubdirs)
+	{
+		for ( Iterator<Map.Entry<WatchKey,Path>> it = this.mapKeyPath.entrySet().iterator(); it.hasNext(); )
+		{
+			Map.Entry<WatchKey,Path> entry = it.next();
+			Path registeredDir = entry.getValue();
+			
+			if ( includeSubdirs ? !registeredDir.startsWith(dir) : !registeredDir.equals(dir) )
+				continue;
+			
+			// verifica se o diretorio pertence a outro diretorio raiz
+			if ( this.dirRegistrations.merge(registeredDir, -1, Integer::sum) > 0 )
+				continue;
+			
+			this.dirRegistrations.remove(registeredDir);
+			this.fileIndex.keySet().removeIf(path -> registeredDir.equals(path.getParent()));
+			entry.getKey().cancel();
+			it.remove();
+		}
+	}
+	
+	
+	/**
+	 * <p>
+	 * Registra o diretrio, caso seja o diretrio de um pacote monitorado ou um diretrio intermedirio,
+	 * e os seus subdiretrios no caminho dos pacotes.
+	 * <br>
+	 * Os diretrios de pacotes so monitorados por arquivos modificados e os intermedirios pela criao 
+	 * de subdiretrios (um diretrio pode ser ambos).
+	 * <p><i>
+	 * Registers the directory, if it is the directory of a monitored package or an intermediate directory,
+	 * and its subdirectories on the path of the packages.
+	 * <br>
+	 * The package directories are monitored for modified files and the intermediate ones for the creation
+	 * of subdirectories (a directory can be both).
+	 * </i>
+	 * 
+	 * @param dir diretrio a ser registrado
+	 * <br><i>the directory to be registered</i>
+	 * @throws IOException caso ocorra algum erro ao registrar os diretrios
+	 * <br><i>if an error occurs when registering the directories to be monitored</i>
+	 */
+	private synchronized void registerPackageDirectory(Path dir) throws IOException
+	{
+		// verifica se eh um diretorio
+		if (! Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS) )
+			return;
+		
+		// subdiretorios no caminho dos pacotes
+		Set<Path> subdirs = new LinkedHashSet<Path>();
+		
+		for ( Path packageDir : this.packageDirs )
+			if ( packageDir.startsWith(dir) && !packageDir.equals(dir) )
+				subdirs.add(dir.resolve(packageDir.getName(dir.getNameCount())));
+		
+		boolean isPackageDir = this.packageDirs.contains(dir);
+		
+		if ( !isPackageDir && subdirs.isEmpty() )
+			return;
+		
+		// (registrar novamente o diretorio substitui os tipos de eventos monitorados)
+		List<WatchEvent.Kind<?>> kinds = new ArrayList<WatchEvent.Kind<?>>();
+		
+		if ( isPackageDir )
+			kinds.add(StandardWatchEventKinds.ENTRY_MODIFY);
+		
+		if (! subdirs.isEmpty() )
+			kinds.add(StandardWatchEventKinds.ENTRY_CREATE);
+		
+		WatchKey key = dir.register(this.watchService, kinds.toArray(new WatchEvent.Kind<?>[kinds.size()]));
+		this.mapKeyPath.put(key, dir);
+		
+		// registra os subdiretorios no caminho dos pacotes
+		for ( Path subdir : subdirs )
+			this.registerPackageDirectory(subdir);
+	}
+	
+	/**
+	 * <p>
+	 * Verifica se os arquivos de classes do diretrio registrado so monitorados.
+	 * <p><i>
+	 * Checks if the class files of the registered directory are monitored.
+	 * </i>
+	 * 
+	 * @param dir diretrio registrado
+	 * <br><i>the registered directory</i>
+	 * @return <i>true</i> se o diretrio  monitorado por arquivos modificados, 
+	 * <i>false</i> se  somente um diretrio intermedirio
+	 * <br><i>true if the directory is monitored for modified files, false if it is only an intermediate directory</i>
+	 */
+	private boolean isClassDirectory(Path dir)
+	{
+		return ( (this.packageDirs == null) || this.packageDirs.contains(dir) );
+	}
+	
+	/**
+	 * <p>
+	 * Lista os arquivos de classes de um diretrio (sem os subdiretrios).
+	 * <p><i>
+	 * Lists the class files of a directory (without the subdirectories).
+	 * </i>
+	 * 
+	 * @param dir diretrio a ser listado
+	 * <br><i>the directory to be listed</i>
+	 * @return os arquivos de classes do diretrio
+	 * <br><i>the class files of the directory</i>
+	 */
+	private static List<Path> listClassFiles(Path dir)
+	{
+		List<Path> classFiles = new ArrayList<Path>();
+		
+		try ( DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.class") )
+		{
+			for ( Path path : stream )
+				if ( Files.isRegularFile(path) )
+					classFiles.add(path);
+		}
+		catch ( IOException e )
+		{
+			// log: erro
+			LiveClassUtils.logError("Erro ao listar o diretorio [" + dir + "]");
+			LiveClassUtils.logException(e);
+		}
+		
+		return ( classFiles );
+	}
+	
+	/**
+	 * <p>
+	 * Atualiza o ndice com o estado atual do arquivo de classe. 
+	 * O contedo somente  lido se o tamanho ou a data de modificao forem diferentes do ndice,
+	 * e  considerado alterado caso o ndice no tenha o <i>hash</i> do contedo anterior.
+	 * <p><i>
+	 * Updates the index with the current state of the class file.
+	 * The content is only read if the size or the last modified time differ from the index,
+	 * and it is considered changed if the index does not hold the hash of the previous content.
+	 * </i>
+	 * 
+	 * @param path caminho do arquivo
+	 * <br><i>the file path</i>
+	 * @param shareBytecode <i>true</i> para ler o arquivo pelo {@link LiveClassFileCache}, 
+	 * reaproveitando os bytecodes na notificao do arquivo
+	 * <br><i>true to read the file through the LiveClassFileCache, reusing the bytecodes when notifying the file</i>
+	 * @return <i>true</i> se o contedo do arquivo  diferente do indexado (ou se no estava indexado), 
+	 * <i>false</i> caso contrrio
+	 * <br><i>true if the file content differs from the indexed one (or if it was not indexed), false otherwise</i>
+	 */
+	private boolean updateIndex(Path path, boolean shareBytecode)
+	{
+		try
+		{
+			BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+			long size = attrs.size();
+			long lastModified = attrs.lastModifiedTime().toMillis();
+			
+			// verifica se o arquivo nao foi alterado
+			IndexedFile indexed = this.fileIndex.get(path);
+			
+			if ( (indexed != null) && (indexed.size == size) && (indexed.lastModified == lastModified) )
+				return ( false );
+			
+			// compara o conteudo do arquivo
+			byte[] bytecode = shareBytecode ? LiveClassFileCache.read(path.toFile()) : Files.readAllBytes(path);
+			byte[] hash = hash(bytecode);
+			
+			this.fileIndex.put(path, new IndexedFile(size, lastModified, hash));
+			
+			return ( (indexed == null) || (indexed.hash == null) || !Arrays.equals(indexed.hash, hash) );
+		}
+		catch ( IOException e )
+		{
+			// o arquivo foi removido (ou ainda nao esta acessivel)
+			this.fileIndex.remove(path);
+			
+			return ( false );
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Calcula o <i>hash</i> (SHA-256) do contedo de um arquivo de classe.
+	 * <p><i>
+	 * Computes the hash (SHA-256) of the content of a class file.
+	 * </i>
+	 */
+	private static byte[] hash(byte[] bytecode)
+	{
+		try
+		{
+			return ( MessageDigest.getInstance("SHA-256").digest(bytecode) );
+		}
+		catch ( NoSuchAlgorithmException e )
+		{
+			// SHA-256 eh obrigatorio em todas as implementacoes da plataforma Java
+			throw new IllegalStateException("SHA-256 not available!", e);
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Verifica se o ndice  persistido, o que somente ocorre na reconciliao.
+	 * <p><i>
+	 * Checks whether the index is persisted, which only happens when reconciling.
+	 * </i>
+	 */
+	private boolean persistsIndex()
+	{
+		return ( (this.indexFile != null) && this.reconcileOnStart );
+	}
+	
+	/**
+	 * <p>
+	 * Atualiza o ndice somente com o tamanho e a data de modificao do arquivo de classe, sem ler o seu contedo.
+	 * <p><i>
+	 * Updates the index with only the size and last modified time of the class file, without reading its content.
+	 * </i>
+	 * 
+	 * @param path caminho do arquivo
+	 * <br><i>the file path</i>
+	 * @return <i>true</i> se o tamanho ou a data de modificao so diferentes do indexado (ou se no estava indexado), 
+	 * <i>false</i> caso contrrio
+	 * <br><i>true if the size or last modified time differ from the indexed ones (or if it was not indexed), false otherwise</i>
+	 */
+	private boolean indexAttributes(Path path)
+	{
+		try
+		{
+			BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+			long size = attrs.size();
+			long lastModified = attrs.lastModifiedTime().toMillis();
+			
+			// verifica se o arquivo nao foi alterado
+			IndexedFile indexed = this.fileIndex.get(path);
+			
+			if ( (indexed != null) && (indexed.size == size) && (indexed.lastModified == lastModified) )
+				return ( false );
+			
+			// o hash sera calculado quando o conteudo for comparado
+			this.fileIndex.put(path, new IndexedFile(size, lastModified, null));
+			
+			return ( true );
+		}
+		catch ( IOException e )
+		{
+			// o arquivo foi removido (ou ainda nao esta acessivel)
+			this.fileIndex.remove(path);
+			
+			return ( false );
+		}
+	}
+	
+	
+	/**
+	 * <p>
+	 * Recupera o ndice persistido, caso exista. Um ndice invlido  descartado.
+	 * <p><i>
+	 * Recovers the persisted index, if any. An invalid index is discarded.
+	 * </i>
+	 */
+	private void loadIndex()
+	{
+		Path file = this.indexFile;
+		
+		if ( !this.persistsIndex() || !Files.isRegularFile(file) )
+			return;
+		
+		try ( DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file))) )
+		{
+			if ( (in.readInt() != INDEX_MAGIC) || (in.readInt() != INDEX_FORMAT) )
+				throw new IOException("Invalid index file: " + file);
+			
+			Map<Path,IndexedFile> persistedIndex = new HashMap<Path,IndexedFile>();
+			
+			for ( int i = in.readInt(); i > 0; i-- )
+			{
+				Path path = Paths.get(in.readUTF());
+				long size = in.readLong();
+				long lastModified = in.readLong();
+				byte[] hash = new byte[in.readUnsignedByte()];
+				in.readFully(hash);
+				
+				persistedIndex.put(path, new IndexedFile(size, lastModified, hash));
+			}
+			
+			this.fileIndex.putAll(persistedIndex);
+		}
+		catch ( IOException e )
+		{
+			// log: indice descartado
+			LiveClassUtils.logWarning("Indice de arquivos de classes descartado [" + file + "]");
+			LiveClassUtils.logException(e);
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Persiste o ndice, gravando um arquivo temporrio que substitui o anterior somente ao final da gravao.
+	 * <p><i>
+	 * Persists the index, writing a temporary file that replaces the previous one only when the writing finishes.
+	 * </i>
+	 * 
+	 * @param excludedFiles arquivos que no devem ser persistidos (alteraes ainda no notificadas)
+	 * <br><i>the files that must not be persisted (changes not notified yet)</i>
+	 * @see #liveClassFileApplied(File, byte[])
+	 */
+	private void saveIndex(Set<Path> excludedFiles)
+	{
+		Path file = this.indexFile;
+		
+		if (! this.persistsIndex() )
+			return;
+		
+		Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+		
+		try
+		{
+			Map<Path,IndexedFile> index = new HashMap<Path,IndexedFile>(this.fileIndex);
+			index.keySet().removeAll(excludedFiles);
+			
+			// os arquivos cujo conteudo nao foi lido sao lidos novamente na proxima execucao
+			index.values().removeIf(indexed -> indexed.hash == null);
+			
+			// os arquivos notificados somente sao persistidos com o conteudo aplicado pelos observadores
+			// (os demais sao lidos e notificados novamente na proxima execucao)
+			for ( Path path : this.notifiedFiles )
+			{
+				IndexedFile indexed = index.get(path);
+				
+				if ( (indexed != null) && !Arrays.equals(indexed.hash, this.appliedHashes.get(path)) )
+					index.remove(path);
+			}
+			
+			try ( DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile))) )
+			{
+				out.writeInt(INDEX_MAGIC);
+				out.writeInt(INDEX_FORMAT);
+				out.writeInt(index.size());
+				
+				for ( Map.Entry<Path,IndexedFile> entry : index.entrySet() )
+				{
+					out.writeUTF(entry.getKey().toString());
+					out.writeLong(entry.getValue().size);
+					out.writeLong(entry.getValue().lastModified);
+					out.writeByte(entry.getValue().hash.length);
+					out.write(entry.getValue().hash);
+				}
+			}
+			
+			Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			
+			// log: indice persistido
+			LiveClassUtils.logDebug("Indice de arquivos de classes persistido: " + index.size());
+		}
+		catch ( IOException e )
+		{
+			// log: erro
+			LiveClassUtils.logError("Erro ao persistir o indice de arquivos de classes [" + file + "]");
+			LiveClassUtils.logException(e);
+			
+			try
+			{
+				Files.deleteIfExists(tempFile);
+			}
+			catch ( IOException e1 )
+			{
+			}
+		}
+	}
+	
 	
 	/**
 	 * <p>
@@ -154,49 +940,82 @@ public class FileSystemMonitor extends AbstractLiveClassFileMonitor
 	 */
 	private class MonitorRunnable implements Runnable
 	{
+		// arquivos modificados aguardando a estabilizacao, pelo caminho
+		private Map<Path,PendingFile> pendingFiles = new LinkedHashMap<Path,PendingFile>();
+		
+		// diretorios cujos eventos foram descartados pelo sistema operacional
+		private Set<Path> overflowedDirs = new LinkedHashSet<Path>();
+		
+		// diretorios de pacotes criados durante o monitoramento
+		private Set<Path> createdDirs = new LinkedHashSet<Path>();
+		
+		// indica se o indice foi alterado desde a ultima persistencia
+		private boolean indexChanged;
+		
+		
 		@Override
 		public void run()
 		{
 			try
 			{
 				// log: o diretorio sendo monitorado
-				LiveClassUtils.logInfo("Monitorando diretorio [" + rootDir.toAbsolutePath() + "]");
+				if ( rootDir != null )
+					LiveClassUtils.logInfo("Monitorando diretorio [" + rootDir.toAbsolutePath() + "]");
+				else
+					LiveClassUtils.logInfo("Monitorando diretorios compartilhados: " + mapKeyPath.size());
 				
 				//
 				isRunning = true;
 				
-		    	WatchKey key;
-				while ( isRunning && ((key = watchService.take()) != null) )
+				// indexa os arquivos de classes ja existentes (a partir do indice persistido, se houver)
+				loadIndex();
+				List<Path> changedFiles = this.buildIndex();
+				
+				// notifica os arquivos alterados enquanto o monitor nao estava em execucao
+				if ( reconcileOnStart )
+					this.reconcile(changedFiles);
+				
+				while ( isRunning )
 				{
-					// Prevent receiving two separate ENTRY_MODIFY events: file modified
-					// and timestamp updated. Instead, receive one ENTRY_MODIFY event
-					// with two counts.
-					Thread.sleep( 50 );
+					// persiste o indice alterado (ou os conteudos aplicados) quando nao houver arquivos pendentes
+					if ( (this.indexChanged || appliedChanged) && this.pendingFiles.isEmpty() )
+					{
+						appliedChanged = false;
+						this.indexChanged = false;
+						saveIndex(this.pendingFiles.keySet());
+					}
 					
-				    for (WatchEvent<?> event : key.pollEvents()) 
-				    {
-				    	if ( event.kind() == StandardWatchEventKinds.OVERFLOW )
-				    		continue;
-				    	
-				    	// obtem o caminho do arquivo modificado
-			    		Path parent = mapKeyPath.get(key);
-			    		File arquivo = parent.resolve((Path) event.context()).toFile();
-			    		
-				    	// verifica se o arquivo eh uma classe Java compilada
-			    		// e do tipo dinamica
-				    	if ( fileFilter.acceptFile(arquivo) )
-			    		{
-				    		// log: arquivo aceito
-				    		LiveClassUtils.logInfo("Novo arquivo de classe encontrado: " + arquivo.getName() );
-
-				    		// notifica os observadores
-				    		FileSystemMonitor.this.notifyObservers(arquivo);
-				    	}
-				    }
-				    
-				    key.reset();
+					// sem arquivos pendentes, aguarda o proximo evento;
+					// caso contrario, aguarda no maximo ate a proxima verificacao dos pendentes
+					WatchKey key = this.pendingFiles.isEmpty() ? watchService.take() 
+							: watchService.poll(Math.max(1, debounceWindow / 2), TimeUnit.MILLISECONDS);
+					
+					// agrupa os eventos de todas as chaves disponiveis
+					while ( key != null )
+					{
+						this.collectEvents(key);
+						key = watchService.poll();
+					}
+					
+					// verifica novamente os diretorios com eventos descartados
+					if (! this.overflowedDirs.isEmpty() )
+						this.rescanOverflowedDirs();
+					
+					// verifica os diretorios de pacotes criados (arquivos gravados antes do registro)
+					if (! this.createdDirs.isEmpty() )
+						this.rescanCreatedDirs();
+					
+					// notifica os arquivos que se tornaram estaveis
+					List<File> stableFiles = this.pollStableFiles();
+					
+					if (! stableFiles.isEmpty() )
+						this.dispatch(stableFiles);
 				}
 			}
+			catch ( ClosedWatchServiceException e )
+			{
+				// monitor encerrado durante a espera por eventos (shutdown)
+			}
 			catch (Exception e)
 			{
 				// log: erro
@@ -206,6 +1025,10 @@ public class FileSystemMonitor extends AbstractLiveClassFileMonitor
 			
 			finally
 			{
+				// persiste o indice, sem os arquivos ainda nao notificados
+				if ( this.indexChanged || appliedChanged )
+					saveIndex(this.pendingFiles.keySet());
+				
 				// log: encerrando monitoramento
 				LiveClassUtils.logInfo("Monitoramente encerrado!");
 				
@@ -213,5 +1036,478 @@ public class FileSystemMonitor extends AbstractLiveClassFileMonitor
 				isRunning = false;
 			}
 		}
+		
+		/**
+		 * <p>
+		 * Registra os arquivos modificados informados pelos eventos da chave como pendentes,
+		 * reiniciando a espera dos arquivos que j estavam pendentes.
+		 * <p><i>
+		 * Registers the modified files reported by the key events as pending,
+		 * restarting the wait of the files that were already pending.
+		 * </i>
+		 * 
+		 * @param key chave do diretrio com eventos
+		 * <br><i>the key of the directory with events</i>
+		 */
+		private void collectEvents(WatchKey key)
+		{
+			Path parent = mapKeyPath.get(key);
+			
+			for ( WatchEvent<?> event : key.pollEvents() ) 
+			{
+				if ( parent == null )
+					continue;
+				
+				// eventos descartados, o diretorio sera verificado novamente
+				if ( event.kind() == StandardWatchEventKinds.OVERFLOW )
+				{
+					this.overflowedDirs.add(parent);
+					continue;
+				}
+				
+				// obtem o caminho do arquivo modificado
+				Path path = parent.resolve((Path) event.context());
+				
+				// criacao (somente monitorada nos diretorios intermediarios dos pacotes)
+				if ( event.kind() == StandardWatchEventKinds.ENTRY_CREATE )
+				{
+					if ( Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS) )
+					{
+						this.directoryCreated(path);
+						continue;
+					}
+					
+					// arquivos criados em diretorios intermediarios nao sao monitorados
+					if (! isClassDirectory(parent) )
+						continue;
+				}
+				
+				this.addPendingFile(path);
+			}
+			
+			// o diretorio nao esta mais acessivel
+			if (! key.reset() )
+			{
+				mapKeyPath.remove(key);
+				
+				if ( parent != null )
+					dirRegistrations.remove(parent);
+			}
+		}
+		
+		/**
+		 * <p>
+		 * Registra o diretrio criado, caso esteja no caminho dos pacotes monitorados, 
+		 * e agenda a verificao dos diretrios de pacotes criados.
+		 * <p><i>
+		 * Registers the created directory, if it is on the path of the monitored packages,
+		 * and schedules the check of the created package directories.
+		 * </i>
+		 * 
+		 * @param dir diretrio criado
+		 * <br><i>the created directory</i>
+		 */
+		private void directoryCreated(Path dir)
+		{
+			try
+			{
+				registerPackageDirectory(dir);
+			}
+			catch ( IOException e )
+			{
+				// log: erro
+				LiveClassUtils.logError("Erro ao registrar o diretorio [" + dir + "]");
+				LiveClassUtils.logException(e);
+			}
+			
+			for ( Path packageDir : packageDirs )
+				if ( packageDir.startsWith(dir) && Files.isDirectory(packageDir, LinkOption.NOFOLLOW_LINKS) )
+					this.createdDirs.add(packageDir);
+		}
+		
+		/**
+		 * <p>
+		 * (Re)inicia a espera pela estabilizao do arquivo modificado.
+		 * <p><i>
+		 * (Re)starts the wait for the modified file to become stable.
+		 * </i>
+		 * 
+		 * @param path caminho do arquivo modificado
+		 * <br><i>the path of the modified file</i>
+		 */
+		private void addPendingFile(Path path)
+		{
+			// (o evento indica uma alteracao, mesmo que o tamanho e a data de modificacao coincidam)
+			PendingFile pending = this.pendingFiles.get(path);
+			
+			if ( pending == null )
+				this.pendingFiles.put(path, new PendingFile(path));
+			else
+			{
+				pending.refresh(path);
+				pending.stableSince = System.currentTimeMillis();
+			}
+		}
+		
+		/**
+		 * <p>
+		 * Indexa os arquivos de classes existentes nos diretrios registrados, em paralelo.
+		 * Na reconciliao, somente os arquivos com tamanho ou data de modificao diferentes do ndice persistido 
+		 * so lidos; caso contrrio, nenhum arquivo  lido e somente o tamanho e a data de modificao so indexados.
+		 * <p><i>
+		 * Indexes the class files existing in the registered directories, in parallel.
+		 * When reconciling, only the files with size or last modified time different from the persisted index
+		 * are read; otherwise, no file is read and only the size and last modified time are indexed.
+		 * </i>
+		 * 
+		 * @return os arquivos alterados em relao ao ndice persistido (ou que no estavam indexados)
+		 * <br><i>the files changed with respect to the persisted index (or that were not indexed)</i>
+		 */
+		private List<Path> buildIndex()
+		{
+			List<Path> classFiles = mapKeyPath.values().parallelStream()
+												.filter(dir -> isClassDirectory(dir))
+												.flatMap(dir -> listClassFiles(dir).stream())
+												.collect(Collectors.toList());
+			
+			// remove do indice os arquivos que nao existem mais
+			fileIndex.keySet().retainAll(new HashSet<Path>(classFiles));
+			
+			// (na reconciliacao, os bytecodes lidos sao reaproveitados pelos filtros)
+			List<Path> changedFiles = classFiles.parallelStream()
+												.filter(path -> reconcileOnStart ? updateIndex(path, true) : indexAttributes(path))
+												.collect(Collectors.toList());
+			
+			// log: arquivos indexados
+			LiveClassUtils.logDebug("Arquivos de classes indexados: " + fileIndex.size() + ", alterados: " + changedFiles.size());
+			
+			this.indexChanged = true;
+			
+			return ( changedFiles );
+		}
+		
+		/**
+		 * <p>
+		 * Notifica individualmente os arquivos de classes dinmicas alterados enquanto o monitor no estava em execuo,
+		 * de forma que a rejeio de uma classe no impea a recarga das demais.
+		 * <p><i>
+		 * Notifies individually the LiveClass files changed while the monitor was not running,
+		 * so that the rejection of a class does not prevent the reload of the others.
+		 * </i>
+		 * 
+		 * @param changedFiles arquivos alterados
+		 * <br><i>the changed files</i>
+		 */
+		private void reconcile(List<Path> changedFiles)
+		{
+			int count = 0;
+			
+			for ( Path path : changedFiles )
+			{
+				File arquivo = path.toFile();
+				
+				if ( fileFilter.acceptFile(arquivo) )
+				{
+					this.markNotified(path);
+					FileSystemMonitor.this.notifyObservers(arquivo);
+					count++;
+				}
+			}
+			
+			// log: arquivos reconciliados
+			LiveClassUtils.logInfo("Arquivos de classes dinamicas alterados desde a ultima execucao: " + count);
+		}
+		
+		/**
+		 * <p>
+		 * Registra o arquivo notificado aos observadores, cujo contedo somente  persistido no ndice
+		 * aps os observadores confirmarem que foi aplicado.
+		 * <p><i>
+		 * Records the file notified to the observers, whose content is only persisted on the index
+		 * after the observers confirm it was applied.
+		 * </i>
+		 * 
+		 * @param path caminho do arquivo notificado
+		 * <br><i>the notified file path</i>
+		 */
+		private void markNotified(Path path)
+		{
+			if ( persistsIndex() )
+				notifiedFiles.add(path);
+		}
+		
+		/**
+		 * <p>
+		 * Verifica novamente os diretrios cujos eventos foram descartados.
+		 * <p><i>
+		 * Rescans the directories whose events were dropped.
+		 * </i>
+		 */
+		private void rescanOverflowedDirs()
+		{
+			for ( Path dir : this.overflowedDirs )
+			{
+				int changedFiles = this.rescanDirectory(dir);
+				
+				// log: eventos descartados
+				LiveClassUtils.logWarning("Eventos descartados no diretorio [" + dir + "], arquivos alterados: " + changedFiles);
+			}
+			
+			this.overflowedDirs.clear();
+		}
+		
+		/**
+		 * <p>
+		 * Verifica os diretrios de pacotes criados, cujos arquivos podem ter sido gravados antes do seu registro.
+		 * <p><i>
+		 * Checks the created package directories, whose files may have been written before their registration.
+		 * </i>
+		 */
+		private void rescanCreatedDirs()
+		{
+			for ( Path dir : this.createdDirs )
+			{
+				int changedFiles = this.rescanDirectory(dir);
+				
+				// log: diretorio criado
+				LiveClassUtils.logInfo("Diretorio de pacote registrado [" + dir + "], arquivos alterados: " + changedFiles);
+			}
+			
+			this.createdDirs.clear();
+		}
+		
+		/**
+		 * <p>
+		 * Verifica novamente, em paralelo, os arquivos de classes do diretrio,
+		 * aguardando a estabilizao somente dos arquivos efetivamente alterados.
+		 * <p><i>
+		 * Rescans, in parallel, the class files of the directory,
+		 * waiting for the stabilization only of the files actually changed.
+		 * </i>
+		 * 
+		 * @param dir diretrio a ser verificado
+		 * <br><i>the directory to be rescanned</i>
+		 * @return o nmero de arquivos alterados
+		 * <br><i>the number of changed files</i>
+		 */
+		private int rescanDirectory(Path dir)
+		{
+			List<Path> classFiles = listClassFiles(dir);
+			
+			// remove do indice os arquivos que nao existem mais
+			Set<Path> existingFiles = new HashSet<Path>(classFiles);
+			fileIndex.keySet().removeIf(path -> dir.equals(path.getParent()) && !existingFiles.contains(path));
+			
+			// verifica o conteudo somente dos arquivos com tamanho ou data de modificacao diferentes do indice
+			List<Path> changedFiles = classFiles.parallelStream()
+												.filter(path -> updateIndex(path, true))
+												.collect(Collectors.toList());
+			
+			for ( Path path : changedFiles )
+				this.addPendingFile(path);
+			
+			this.indexChanged = true;
+			
+			return ( changedFiles.size() );
+		}
+		
+		/**
+		 * <p>
+		 * Remove e retorna os arquivos pendentes cujo tamanho e data de modificao permaneceram estveis
+		 * durante a janela de espera. Os arquivos removidos do disco deixam de ser aguardados.
+		 * <p><i>
+		 * Removes and returns the pending files whose size and last modified time remained stable
+		 * during the debounce window. The files removed from disk are no longer awaited.
+		 * </i>
+		 * 
+		 * @return os arquivos estveis, na ordem em que foram modificados pela primeira vez
+		 * <br><i>the stable files, in the order they were first modified</i>
+		 */
+		private List<File> pollStableFiles()
+		{
+			List<File> stableFiles = new ArrayList<File>();
+			long now = System.currentTimeMillis();
+			
+			for ( Iterator<Map.Entry<Path,PendingFile>> it = this.pendingFiles.entrySet().iterator(); it.hasNext(); )
+			{
+				Map.Entry<Path,PendingFile> entry = it.next();
+				PendingFile pending = entry.getValue();
+				
+				// verifica se o arquivo foi alterado desde a ultima verificacao
+				if ( pending.refresh(entry.getKey()) )
+					continue;
+				
+				if (! pending.exists )
+				{
+					fileIndex.remove(entry.getKey());
+					this.indexChanged = true;
+					it.remove();
+				}
+				
+				else if ( (now - pending.stableSince) >= debounceWindow )
+				{
+					stableFiles.add(entry.getKey().toFile());
+					it.remove();
+				}
+			}
+			
+			return ( stableFiles );
+		}
+		
+		/**
+		 * <p>
+		 * Filtra os arquivos estveis e notifica os observadores sobre os aceitos, em um nico lote.
+		 * <p><i>
+		 * Filters the stable files and notifies the observers about the accepted ones, in a single batch.
+		 * </i>
+		 * 
+		 * @param stableFiles arquivos estveis
+		 * <br><i>the stable files</i>
+		 */
+		private void dispatch(List<File> stableFiles)
+		{
+			List<File> acceptedFiles = new ArrayList<File>();
+			
+			for ( File arquivo : stableFiles )
+			{
+				// atualiza o indice (os bytecodes lidos sao reaproveitados pelos filtros)
+				if ( arquivo.getName().endsWith(".class") )
+					this.indexChanged |= updateIndex(arquivo.toPath(), true);
+				
+				// verifica se o arquivo eh uma classe Java compilada
+				// e do tipo dinamica
+				if ( fileFilter.acceptFile(arquivo) )
+				{
+					// log: arquivo aceito
+					LiveClassUtils.logInfo("Novo arquivo de classe encontrado: " + arquivo.getName() );
+					
+					this.markNotified(arquivo.toPath());
+					acceptedFiles.add(arquivo);
+				}
+			}
+			
+			// notifica os observadores
+			if (! acceptedFiles.isEmpty() )
+				FileSystemMonitor.this.notifyObservers(acceptedFiles);
+		}
+	}
+	
+	
+	/**
+	 * <p>
+	 * Arquivo modificado aguardando a estabilizao do seu tamanho e data de modificao.
+	 * <p><i>
+	 * Modified file waiting for its size and last modified time to become stable.
+	 * </i>
+	 */
+	private static class PendingFile
+	{
+		// tamanho e data de modificacao observados por ultimo
+		private long size;
+		private long lastModified;
+		
+		// indica se o arquivo existia na ultima verificacao
+		private boolean exists;
+		
+		// instante a partir do qual o arquivo permanece inalterado
+		private long stableSince;
+		
+		
+		/**
+		 * <p>
+		 * Registra o estado atual do arquivo modificado.
+		 * <p><i>
+		 * Records the current state of the modified file.
+		 * </i>
+		 * 
+		 * @param path caminho do arquivo
+		 * <br><i>the file path</i>
+		 */
+		PendingFile(Path path)
+		{
+			this.size = -1;
+			this.refresh(path);
+			this.stableSince = System.currentTimeMillis();
+		}
+		
+		/**
+		 * <p>
+		 * Atualiza o estado do arquivo, reiniciando a espera caso ele tenha sido alterado.
+		 * <p><i>
+		 * Updates the file state, restarting the wait if it was changed.
+		 * </i>
+		 * 
+		 * @param path caminho do arquivo
+		 * <br><i>the file path</i>
+		 * @return <i>true</i> se o arquivo foi alterado desde a ltima verificao, <i>false</i> caso contrrio
+		 * <br><i>true if the file was changed since the last check, false otherwise</i>
+		 */
+		boolean refresh(Path path)
+		{
+			long newSize = -1;
+			long newLastModified = -1;
+			
+			try
+			{
+				BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+				newSize = attrs.size();
+				newLastModified = attrs.lastModifiedTime().toMillis();
+				this.exists = true;
+			}
+			catch ( IOException e )
+			{
+				// o arquivo foi removido (ou ainda nao esta acessivel)
+				this.exists = false;
+			}
+			
+			if ( (newSize == this.size) && (newLastModified == this.lastModified) )
+				return ( false );
+			
+			this.size = newSize;
+			this.lastModified = newLastModified;
+			this.stableSince = System.currentTimeMillis();
+			
+			return ( true );
+		}
+	}
+	
+	
+	/**
+	 * <p>
+	 * Estado indexado de um arquivo de classe.
+	 * <p><i>
+	 * Indexed state of a class file.
+	 * </i>
+	 */
+	private static class IndexedFile
+	{
+		// tamanho e data de modificacao do arquivo
+		private long size;
+		private long lastModified;
+		
+		// hash (SHA-256) do conteudo do arquivo (null se o conteudo ainda nao foi lido)
+		private byte[] hash;
+		
+		
+		/**
+		 * <p>
+		 * Registra o estado de um arquivo de classe.
+		 * <p><i>
+		 * Records the state of a class file.
+		 * </i>
+		 * 
+		 * @param size tamanho do arquivo
+		 * <br><i>the file size</i>
+		 * @param lastModified data de modificao do arquivo
+		 * <br><i>the file last modified time</i>
+		 * @param hash hash do contedo do arquivo, ou <i>null</i> se o contedo no foi lido
+		 * <br><i>the file content hash, or null if the content was not read</i>
+		 */
+		IndexedFile(long size, long lastModified, byte[] hash)
+		{
+			this.size = size;
+			this.lastModified = lastModified;
+			this.hash = hash;
+		}
 	}
 }
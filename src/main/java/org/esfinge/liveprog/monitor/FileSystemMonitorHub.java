@@ -0,0 +1,347 @@
+package org.esfinge.liveprog.monitor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.esfinge.liveprog.util.LiveClassUtils;
+
+/**
+ * <p>
+ * Central de monitoramento compartilhada entre vrios diretrios raiz e vrias fbricas de objetos dinmicos.
+ * <br>
+ * Cada sistema de arquivos  monitorado por uma nica thread, com um nico registro de cada diretrio,
+ * mesmo que pertena a vrios diretrios raiz. Os arquivos de classes alterados so repassados
+ * s assinaturas que monitoram o seu diretrio, e cada assinatura aplica o seu prprio filtro
+ * antes de notificar os seus observadores.
+ * <p><i>
+ * Monitoring hub shared among several root directories and several factories of 'live' objects.
+ * <br>
+ * Each file system is monitored by a single thread, with a single registration of each directory,
+ * even if it belongs to several root directories. The changed class files are forwarded
+ * to the subscriptions monitoring their directory, and each subscription applies its own filter
+ * before notifying its observers.
+ * </i>
+ * 
+ * @see org.esfinge.liveprog.monitor.FileSystemMonitor
+ */
+public class FileSystemMonitorHub implements ILiveClassFileMonitorObserver
+{
+	// central compartilhada
+	private static FileSystemMonitorHub _singleton;
+	
+	// monitores, por sistema de arquivos
+	private Map<FileSystem,FileSystemMonitor> monitors;
+	
+	// assinaturas em execucao
+	private List<Subscription> activeSubscriptions;
+	
+	// tempo, em milissegundos, que um arquivo deve permanecer inalterado para ser notificado
+	private long debounceWindow;
+	
+	
+	/**
+	 * <p>
+	 * Obtm a central de monitoramento compartilhada pela aplicao.
+	 * <p><i>
+	 * Gets the monitoring hub shared by the application.
+	 * </i>
+	 * 
+	 * @return a central de monitoramento compartilhada
+	 * <br><i>the shared monitoring hub</i>
+	 */
+	public static synchronized FileSystemMonitorHub getInstance()
+	{
+		if ( _singleton == null )
+			_singleton = new FileSystemMonitorHub(FileSystemMonitor.DEFAULT_DEBOUNCE_WINDOW);
+		
+		return ( _singleton );
+	}
+	
+	/**
+	 * <p>
+	 * Constri uma nova central de monitoramento, independente da central compartilhada.
+	 * <p><i>
+	 * Constructs a new monitoring hub, independent from the shared hub.
+	 * </i>
+	 * 
+	 * @param debounceWindow tempo, em milissegundos, que um arquivo deve permanecer inalterado para ser notificado
+	 * <br><i>the time, in milliseconds, a file must remain unchanged to be notified</i>
+	 * @see org.esfinge.liveprog.monitor.FileSystemMonitor#setDebounceWindow(long)
+	 */
+	public FileSystemMonitorHub(long debounceWindow)
+	{
+		if ( debounceWindow < 0 )
+			throw new IllegalArgumentException("Debounce window must not be negative: " + debounceWindow);
+		
+		this.debounceWindow = debounceWindow;
+		this.monitors = new HashMap<FileSystem,FileSystemMonitor>();
+		this.activeSubscriptions = new CopyOnWriteArrayList<Subscription>();
+	}
+	
+	/**
+	 * <p>
+	 * Cria uma assinatura para monitorar o diretrio informado.
+	 * O monitoramento inicia quando a assinatura  iniciada.
+	 * <p><i>
+	 * Creates a subscription for monitoring the specified directory.
+	 * The monitoring begins when the subscription is started.
+	 * </i>
+	 * 
+	 * @param dir diretrio para monitorar por arquivos de classes dinmicas atualizadas
+	 * <br><i>directory for monitoring updated LiveClass files</i>
+	 * @param includeSubdirs <i>true</i> para monitorar tambm os subdiretrios, 
+	 * <i>false</i> para monitorar somente o diretrio informado
+	 * <br><i>true to also monitor subdirectories, false to monitor the specified directory only</i>
+	 * @return o monitor da assinatura
+	 * <br><i>the subscription monitor</i>
+	 */
+	public ILiveClassFileMonitor subscribe(String dir, boolean includeSubdirs)
+	{
+		return ( this.subscribe(Collections.singletonList(dir), includeSubdirs) );
+	}
+	
+	/**
+	 * <p>
+	 * Cria uma assinatura para monitorar os diretrios informados.
+	 * O monitoramento inicia quando a assinatura  iniciada.
+	 * <p><i>
+	 * Creates a subscription for monitoring the specified directories.
+	 * The monitoring begins when the subscription is started.
+	 * </i>
+	 * 
+	 * @param dirs diretrios para monitorar por arquivos de classes dinmicas atualizadas
+	 * <br><i>directories for monitoring updated LiveClass files</i>
+	 * @param includeSubdirs <i>true</i> para monitorar tambm os subdiretrios, 
+	 * <i>false</i> para monitorar somente os diretrios informados
+	 * <br><i>true to also monitor subdirectories, false to monitor the specified directories only</i>
+	 * @return o monitor da assinatura
+	 * <br><i>the subscription monitor</i>
+	 */
+	public ILiveClassFileMonitor subscribe(Collection<String> dirs, boolean includeSubdirs)
+	{
+		return ( new Subscription(dirs, includeSubdirs) );
+	}
+	
+	@Override
+	public void liveClassFileUpdated(File liveClassFile)
+	{
+		this.liveClassFilesUpdated(Collections.singletonList(liveClassFile));
+	}
+	
+	@Override
+	public void liveClassFilesUpdated(List<File> liveClassFiles)
+	{
+		// repassa os arquivos para as assinaturas em execucao
+		for ( Subscription subscription : this.activeSubscriptions )
+			subscription.dispatch(liveClassFiles);
+	}
+	
+	/**
+	 * <p>
+	 * Registra os diretrios raiz da assinatura nos monitores dos seus sistemas de arquivos,
+	 * iniciando os monitores ainda no existentes.
+	 * <p><i>
+	 * Registers the root directories of the subscription on the monitors of their file systems,
+	 * starting the monitors not yet existing.
+	 * </i>
+	 * 
+	 * @param subscription assinatura a ser iniciada
+	 * <br><i>the subscription to be started</i>
+	 * @throws Exception caso ocorra algum erro ao criar os monitores ou registrar os diretrios
+	 * <br><i>if an error occurs when creating the monitors or registering the directories</i>
+	 */
+	private synchronized void attach(Subscription subscription) throws Exception
+	{
+		// verifica se ja em execucao
+		if ( this.activeSubscriptions.contains(subscription) )
+			return;
+		
+		List<FileSystemMonitor> newMonitors = new ArrayList<FileSystemMonitor>();
+		
+		for ( Path root : subscription.roots )
+		{
+			FileSystemMonitor monitor = this.monitors.get(root.getFileSystem());
+			
+			// cria o monitor do sistema de arquivos
+			if ( monitor == null )
+			{
+				monitor = new FileSystemMonitor(root.getFileSystem(), this.debounceWindow);
+				monitor.addObserver(this);
+				
+				this.monitors.put(root.getFileSystem(), monitor);
+				newMonitors.add(monitor);
+			}
+			
+			monitor.registerRoot(root, subscription.includeSubdirs);
+			
+			// log: diretorio registrado
+			LiveClassUtils.logInfo("Diretorio registrado no monitor compartilhado [" + root + "]");
+		}
+		
+		this.activeSubscriptions.add(subscription);
+		
+		// inicia os novos monitores, ja com os diretorios registrados
+		for ( FileSystemMonitor monitor : newMonitors )
+			monitor.start();
+	}
+	
+	/**
+	 * <p>
+	 * Remove os diretrios raiz da assinatura dos monitores, encerrando os monitores sem assinaturas.
+	 * <p><i>
+	 * Removes the root directories of the subscription from the monitors, shutting down the monitors
+	 * without subscriptions.
+	 * </i>
+	 * 
+	 * @param subscription assinatura a ser interrompida
+	 * <br><i>the subscription to be stopped</i>
+	 */
+	private synchronized void detach(Subscription subscription)
+	{
+		// verifica se em execucao
+		if (! this.activeSubscriptions.remove(subscription) )
+			return;
+		
+		for ( Path root : subscription.roots )
+		{
+			FileSystem fileSystem = root.getFileSystem();
+			FileSystemMonitor monitor = this.monitors.get(fileSystem);
+			
+			if ( monitor == null )
+				continue;
+			
+			monitor.unregisterRoot(root, subscription.includeSubdirs);
+			
+			// encerra o monitor caso nenhuma assinatura monitore o sistema de arquivos
+			if ( this.activeSubscriptions.stream().flatMap(s -> s.roots.stream()).noneMatch(r -> r.getFileSystem().equals(fileSystem)) )
+			{
+				monitor.shutdown();
+				this.monitors.remove(fileSystem);
+			}
+		}
+	}
+	
+	
+	/**
+	 * <p>
+	 * Assinatura da central de monitoramento, com os seus prprios diretrios raiz, filtro e observadores.
+	 * <p><i>
+	 * Subscription to the monitoring hub, with its own root directories, filter and observers.
+	 * </i>
+	 */
+	private class Subscription extends AbstractLiveClassFileMonitor
+	{
+		// diretorios raiz monitorados
+		private List<Path> roots;
+		
+		// indica se os subdiretorios sao monitorados
+		private boolean includeSubdirs;
+		
+		
+		/**
+		 * <p>
+		 * Cria uma assinatura para os diretrios informados.
+		 * <p><i>
+		 * Creates a subscription for the specified directories.
+		 * </i>
+		 * 
+		 * @param dirs diretrios a serem monitorados
+		 * <br><i>the directories to be monitored</i>
+		 * @param includeSubdirs <i>true</i> para monitorar tambm os subdiretrios, <i>false</i> caso contrrio
+		 * <br><i>true to also monitor subdirectories, false otherwise</i>
+		 */
+		Subscription(Collection<String> dirs, boolean includeSubdirs)
+		{
+			this.roots = new ArrayList<Path>();
+			this.includeSubdirs = includeSubdirs;
+			
+			// caminhos absolutos, comparaveis entre as assinaturas
+			for ( String dir : dirs )
+				this.roots.add(Paths.get(dir).toAbsolutePath().normalize());
+			
+			// filtros: classes java, anotados com @LiveClass
+			this.setFileFilter(new CompositeFileFilter(new ExtensionFileFilter("class"), new AnnotatedLiveClassFileFilter()));
+		}
+		
+		@Override
+		public void start()
+		{
+			try
+			{
+				FileSystemMonitorHub.this.attach(this);
+			}
+			catch ( Exception e )
+			{
+				// log: erro
+				LiveClassUtils.logError("Erro ao registrar os diretorios no monitor compartilhado: " + this.roots);
+				LiveClassUtils.logException(e);
+			}
+		}
+		
+		@Override
+		public void stop()
+		{
+			FileSystemMonitorHub.this.detach(this);
+		}
+		
+		@Override
+		public void shutdown()
+		{
+			FileSystemMonitorHub.this.detach(this);
+		}
+		
+		/**
+		 * <p>
+		 * Filtra os arquivos dos diretrios monitorados pela assinatura e notifica os observadores sobre os aceitos.
+		 * <p><i>
+		 * Filters the files of the directories monitored by the subscription and notifies the observers 
+		 * about the accepted ones.
+		 * </i>
+		 * 
+		 * @param liveClassFiles arquivos de classes alterados
+		 * <br><i>the changed class files</i>
+		 */
+		void dispatch(List<File> liveClassFiles)
+		{
+			List<File> acceptedFiles = new ArrayList<File>();
+			
+			for ( File arquivo : liveClassFiles )
+				if ( this.covers(arquivo.toPath()) && this.fileFilter.acceptFile(arquivo) )
+					acceptedFiles.add(arquivo);
+			
+			if (! acceptedFiles.isEmpty() )
+				this.notifyObservers(acceptedFiles);
+		}
+		
+		/**
+		 * <p>
+		 * Verifica se o arquivo pertence aos diretrios monitorados pela assinatura.
+		 * <p><i>
+		 * Checks if the file belongs to the directories monitored by the subscription.
+		 * </i>
+		 * 
+		 * @param path caminho do arquivo
+		 * <br><i>the file path</i>
+		 * @return <i>true</i> se o arquivo pertence a algum diretrio monitorado, <i>false</i> caso contrrio
+		 * <br><i>true if the file belongs to any monitored directory, false otherwise</i>
+		 */
+		private boolean covers(Path path)
+		{
+			for ( Path root : this.roots )
+				if ( this.includeSubdirs ? path.startsWith(root) : root.equals(path.getParent()) )
+					return ( true );
+			
+			return ( false );
+		}
+	}
+}
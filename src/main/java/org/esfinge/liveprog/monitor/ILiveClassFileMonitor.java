@@ -1,5 +1,7 @@
 package org.esfinge.liveprog.monitor;
 
+import java.io.File;
+
 /**
  * <p>
  * Interface para o monitoramento de arquivos de classes dinmicas atualizadas.
@@ -49,6 +51,50 @@ public interface ILiveClassFileMonitor
 	 */
 	public void setFileFilter(ILiveClassFileFilter filter);
 
+	/**
+	 * <p>
+	 * Informa ao monitor uma classe dinmica em uso, permitindo que o monitoramento seja restrito
+	 * aos diretrios das classes dinmicas conhecidas.
+	 * <br>
+	 * A implementao padro no faz nada.
+	 * <p><i>
+	 * Informs the monitor about a LiveClass in use, allowing the monitoring to be restricted 
+	 * to the directories of the known LiveClasses.
+	 * <br>
+	 * The default implementation does nothing.
+	 * </i>
+	 * 
+	 * @param liveClassName nome da classe dinmica
+	 * <br><i>name of the LiveClass</i>
+	 */
+	public default void watchLiveClass(String liveClassName)
+	{
+	}
+	
+	/**
+	 * <p>
+	 * Informa ao monitor que o contedo de um arquivo notificado foi aplicado pelo observador
+	 * (recarregado, ou idntico  verso atual da classe dinmica), permitindo que o monitor registre
+	 * somente as alteraes efetivamente aplicadas.
+	 * <br>
+	 * A implementao padro no faz nada.
+	 * <p><i>
+	 * Informs the monitor that the content of a notified file was applied by the observer
+	 * (reloaded, or identical to the current version of the LiveClass), allowing the monitor to record
+	 * only the changes actually applied.
+	 * <br>
+	 * The default implementation does nothing.
+	 * </i>
+	 * 
+	 * @param liveClassFile arquivo de classe notificado
+	 * <br><i>the notified class file</i>
+	 * @param bytecode contedo do arquivo aplicado pelo observador
+	 * <br><i>the file content applied by the observer</i>
+	 */
+	public default void liveClassFileApplied(File liveClassFile, byte[] bytecode)
+	{
+	}
+	
 	/**
 	 * <p>
 	 * Registra o observador para que seja notificado quando arquivos de classes dinmicas atualizadas forem encontrados.
@@ -1,6 +1,7 @@
 package org.esfinge.liveprog.monitor;
 
 import java.io.File;
+import java.util.List;
 
 /**
  * <p>
@@ -25,4 +26,24 @@ public interface ILiveClassFileMonitorObserver
 	 * <br><i>the updated LiveClass file</i>
 	 */
 	public void liveClassFileUpdated(File liveClassFile);
+	
+	/**
+	 * <p>
+	 * Recebe a notificao de que os arquivos de classes dinmicas atualizadas foram encontrados em um mesmo lote.
+	 * <br>
+	 * A implementao padro notifica os arquivos um a um, na ordem em que foram encontrados.
+	 * <p><i>
+	 * Gets notified that updated LiveClass files were found in the same batch.
+	 * <br>
+	 * The default implementation notifies the files one by one, in the order they were found.
+	 * </i>
+	 * 
+	 * @param liveClassFiles arquivos das classes dinmicas atualizadas
+	 * <br><i>the updated LiveClass files</i>
+	 * @see #liveClassFileUpdated(File)
+	 */
+	public default void liveClassFilesUpdated(List<File> liveClassFiles)
+	{
+		liveClassFiles.forEach(this::liveClassFileUpdated);
+	}
 }
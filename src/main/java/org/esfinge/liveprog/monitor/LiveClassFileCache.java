@@ -0,0 +1,176 @@
+package org.esfinge.liveprog.monitor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * Cache dos bytecodes lidos dos arquivos de classes monitorados, compartilhado entre os filtros e os observadores.
+ * Permite que um arquivo alterado seja lido uma nica vez, desde a sua verificao pelos filtros
+ * at o seu processamento pelos observadores.
+ * <br>
+ * Os bytecodes de um arquivo so reaproveitados enquanto a data de modificao e o tamanho do arquivo
+ * no forem alterados.
+ * <p><i>
+ * Cache of the bytecodes read from the monitored class files, shared between the filters and the observers.
+ * Allows a changed file to be read only once, from its checking by the filters
+ * until its processing by the observers.
+ * <br>
+ * The bytecodes of a file are reused as long as the last modified date and the size of the file
+ * are not changed.
+ * </i>
+ * 
+ * @see org.esfinge.liveprog.monitor.AnnotatedLiveClassFileFilter
+ */
+public class LiveClassFileCache
+{
+	// numero maximo de arquivos mantidos em cache
+	private static final int MAX_ENTRIES = 256;
+	
+	// bytecodes lidos, pelo caminho do arquivo (descarta os acessados ha mais tempo)
+	private static Map<String,CachedFile> _files = Collections.synchronizedMap(
+		new LinkedHashMap<String,CachedFile>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String,CachedFile> eldest)
+			{
+				return ( this.size() > MAX_ENTRIES );
+			}
+		});
+	
+	
+	/**
+	 * <p>
+	 * Obtm os bytecodes do arquivo de classe, lendo o arquivo somente se ele foi alterado desde a ltima leitura.
+	 * <p><i>
+	 * Gets the bytecodes of the class file, reading the file only if it was changed since the last read.
+	 * </i>
+	 * 
+	 * @param file arquivo de classe
+	 * <br><i>the class file</i>
+	 * @return os bytecodes do arquivo
+	 * <br><i>the bytecodes of the file</i>
+	 * @throws IOException em caso de erro na leitura do arquivo
+	 * <br><i>if an error occurs when reading the file</i>
+	 */
+	public static byte[] read(File file) throws IOException
+	{
+		String path = file.getAbsolutePath();
+		long lastModified = file.lastModified();
+		long size = file.length();
+		
+		// verifica se o arquivo nao foi alterado desde a ultima leitura
+		CachedFile cachedFile = _files.get(path);
+		
+		if ( (cachedFile != null) && cachedFile.matches(lastModified, size) )
+			return ( cachedFile.bytecode );
+		
+		byte[] bytecode = Files.readAllBytes(file.toPath());
+		
+		// somente armazena se o arquivo nao foi alterado durante a leitura
+		if ( bytecode.length == size )
+			_files.put(path, new CachedFile(lastModified, bytecode));
+		
+		return ( bytecode );
+	}
+	
+	/**
+	 * <p>
+	 * Obtm os bytecodes do arquivo de classe e os remove do cache.
+	 * Utilizado pelo ltimo consumidor do arquivo.
+	 * <p><i>
+	 * Gets the bytecodes of the class file and removes them from the cache.
+	 * Used by the last consumer of the file.
+	 * </i>
+	 * 
+	 * @param file arquivo de classe
+	 * <br><i>the class file</i>
+	 * @return os bytecodes do arquivo
+	 * <br><i>the bytecodes of the file</i>
+	 * @throws IOException em caso de erro na leitura do arquivo
+	 * <br><i>if an error occurs when reading the file</i>
+	 */
+	public static byte[] take(File file) throws IOException
+	{
+		byte[] bytecode = read(file);
+		discard(file);
+		
+		return ( bytecode );
+	}
+	
+	/**
+	 * <p>
+	 * Remove os bytecodes do arquivo de classe do cache.
+	 * <p><i>
+	 * Removes the bytecodes of the class file from the cache.
+	 * </i>
+	 * 
+	 * @param file arquivo de classe
+	 * <br><i>the class file</i>
+	 */
+	public static void discard(File file)
+	{
+		_files.remove(file.getAbsolutePath());
+	}
+	
+	
+	/**
+	 * <p>
+	 * Bytecodes lidos de um arquivo de classe.
+	 * <p><i>
+	 * Bytecodes read from a class file.
+	 * </i>
+	 */
+	private static class CachedFile
+	{
+		// data de modificacao do arquivo no momento da leitura
+		private long lastModified;
+		
+		// bytecodes lidos
+		private byte[] bytecode;
+		
+		
+		/**
+		 * <p>
+		 * Armazena os bytecodes lidos de um arquivo.
+		 * <p><i>
+		 * Stores the bytecodes read from a file.
+		 * </i>
+		 * 
+		 * @param lastModified data de modificao do arquivo
+		 * <br><i>the last modified date of the file</i>
+		 * @param bytecode bytecodes lidos
+		 * <br><i>the bytecodes read</i>
+		 */
+		CachedFile(long lastModified, byte[] bytecode)
+		{
+			this.lastModified = lastModified;
+			this.bytecode = bytecode;
+		}
+		
+		/**
+		 * <p>
+		 * Verifica se os bytecodes correspondem ao estado atual do arquivo.
+		 * <p><i>
+		 * Checks if the bytecodes match the current state of the file.
+		 * </i>
+		 * 
+		 * @param lastModified data de modificao atual do arquivo
+		 * <br><i>the current last modified date of the file</i>
+		 * @param size tamanho atual do arquivo
+		 * <br><i>the current size of the file</i>
+		 * @return <i>true</i> se o arquivo no foi alterado, <i>false</i> caso contrrio
+		 * <br><i>true if the file was not changed, false otherwise</i>
+		 */
+		boolean matches(long lastModified, long size)
+		{
+			return ( (this.lastModified == lastModified) && (this.bytecode.length == size) );
+		}
+	}
+}
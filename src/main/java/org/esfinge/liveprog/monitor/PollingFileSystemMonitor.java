@@ -0,0 +1,628 @@
+package org.esfinge.liveprog.monitor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.esfinge.liveprog.util.LiveClassUtils;
+
+/**
+ * <p>
+ * Monitora por arquivos de classes dinmicas atualizadas verificando periodicamente o sistema de arquivos,
+ * para sistemas de arquivos em que o {@link java.nio.file.WatchService} no  confivel 
+ * (<i>overlay</i>, NFS e volumes de <i>containers</i>).
+ * <br>
+ * O monitor mantm um ndice (data de modificao e tamanho) dos diretrios e arquivos de classes monitorados.
+ * Em cada verificao, os arquivos indexados so consultados em paralelo, e somente os diretrios cuja data de
+ * modificao foi alterada so listados novamente, em busca de arquivos e subdiretrios criados ou removidos.
+ * <br>
+ * Um arquivo alterado somente  notificado quando permanece inalterado entre duas verificaes. O intervalo entre as
+ * verificaes  dobrado a cada verificao sem alteraes, at o intervalo mximo, e volta ao intervalo mnimo
+ * quando alguma alterao  encontrada.
+ * <p><i>
+ * Monitors for updated LiveClass files by periodically checking the file system,
+ * for file systems where the WatchService is not reliable (overlay, NFS and container volumes).
+ * <br>
+ * The monitor keeps an index (last modified time and size) of the monitored directories and class files.
+ * On each check, the indexed files are queried in parallel, and only the directories whose last modified time
+ * changed are listed again, looking for created or removed files and subdirectories.
+ * <br>
+ * A changed file is only notified when it remains unchanged between two checks. The interval between checks
+ * is doubled on each check without changes, up to the maximum interval, and goes back to the minimum interval
+ * when any change is found.
+ * </i>
+ * 
+ * @see org.esfinge.liveprog.monitor.ILiveClassFileMonitor
+ * @see org.esfinge.liveprog.monitor.FileSystemMonitor
+ */
+public class PollingFileSystemMonitor extends AbstractLiveClassFileMonitor
+{
+	// intervalos padrao entre as verificacoes, em milissegundos
+	private static final long DEFAULT_MIN_INTERVAL = 500;
+	private static final long DEFAULT_MAX_INTERVAL = 8000;
+	
+	// janela em que alteracoes de um diretorio podem nao ter alterado a sua data de modificacao
+	// (precisao da data de modificacao em alguns sistemas de arquivos)
+	private static final long MODIFIED_TIME_PRECISION = 1000;
+	
+	// diretorio a ser monitorado
+	private Path rootDir;
+	
+	// indica se os subdiretorios sao monitorados
+	private boolean includeSubdirs;
+	
+	// intervalos entre as verificacoes, em milissegundos
+	private volatile long minInterval;
+	private volatile long maxInterval;
+	
+	// thread para execucao do monitoramento
+	private ExecutorService executorService;
+	
+	// execucao atual do monitoramento (cada execucao possui a sua propria flag de status)
+	private PollingRunnable currentRun;
+	
+	// indice dos diretorios monitorados, pelo caminho
+	private Map<Path,DirState> dirIndex;
+	
+	// indice dos arquivos de classes monitorados, pelo caminho
+	private Map<Path,FileState> fileIndex;
+	
+	// arquivos alterados aguardando a proxima verificacao, pelo caminho (estado observado)
+	private Map<Path,FileState> pendingFiles;
+	
+	
+	/**
+	 * <p>
+	 * Constri um novo monitor por verificao peridica, com os intervalos padro.
+	 * <p><i>
+	 * Constructs a new polling monitor, with the default intervals.
+	 * </i>
+	 * 
+	 * @param dir diretrio para monitorar por arquivos de classes dinmicas atualizadas
+	 * <br><i>directory for monitoring updated LiveClass files</i>
+	 * @param includeSubdirs <i>true</i> para monitorar tambm os subdiretrios, 
+	 * <i>false</i> para monitorar somente o diretrio informado
+	 * <br><i>true to also monitor subdirectories, false to monitor the specified directory only</i>
+	 */
+	public PollingFileSystemMonitor(String dir, boolean includeSubdirs)
+	{
+		this(dir, includeSubdirs, DEFAULT_MIN_INTERVAL, DEFAULT_MAX_INTERVAL);
+	}
+	
+	/**
+	 * <p>
+	 * Constri um novo monitor por verificao peridica, com os intervalos informados.
+	 * <p><i>
+	 * Constructs a new polling monitor, with the specified intervals.
+	 * </i>
+	 * 
+	 * @param dir diretrio para monitorar por arquivos de classes dinmicas atualizadas
+	 * <br><i>directory for monitoring updated LiveClass files</i>
+	 * @param includeSubdirs <i>true</i> para monitorar tambm os subdiretrios, 
+	 * <i>false</i> para monitorar somente o diretrio informado
+	 * <br><i>true to also monitor subdirectories, false to monitor the specified directory only</i>
+	 * @param minInterval intervalo mnimo entre as verificaes, em milissegundos
+	 * <br><i>the minimum interval between checks, in milliseconds</i>
+	 * @param maxInterval intervalo mximo entre as verificaes, em milissegundos
+	 * <br><i>the maximum interval between checks, in milliseconds</i>
+	 * @see #setPollingInterval(long, long)
+	 */
+	public PollingFileSystemMonitor(String dir, boolean includeSubdirs, long minInterval, long maxInterval)
+	{
+		this.setPollingInterval(minInterval, maxInterval);
+		this.rootDir = Paths.get(dir);
+		this.includeSubdirs = includeSubdirs;
+		this.executorService = Executors.newSingleThreadExecutor();
+		this.currentRun = null;
+		this.dirIndex = new HashMap<Path,DirState>();
+		this.fileIndex = new HashMap<Path,FileState>();
+		this.pendingFiles = new LinkedHashMap<Path,FileState>();
+		
+		// filtros: classes java, anotados com @LiveClass
+		this.setFileFilter(new CompositeFileFilter(new ExtensionFileFilter("class"), new AnnotatedLiveClassFileFilter()));
+	}
+	
+	/**
+	 * <p>
+	 * Especifica os intervalos entre as verificaes do sistema de arquivos.
+	 * O intervalo mnimo  utilizado enquanto houver alteraes, e o intervalo  dobrado a cada verificao 
+	 * sem alteraes, at o intervalo mximo.
+	 * <p><i>
+	 * Sets the intervals between the file system checks.
+	 * The minimum interval is used while there are changes, and the interval is doubled on each check
+	 * without changes, up to the maximum interval.
+	 * </i>
+	 * 
+	 * @param minInterval intervalo mnimo entre as verificaes, em milissegundos
+	 * <br><i>the minimum interval between checks, in milliseconds</i>
+	 * @param maxInterval intervalo mximo entre as verificaes, em milissegundos
+	 * <br><i>the maximum interval between checks, in milliseconds</i>
+	 * @throws IllegalArgumentException caso o intervalo mnimo no seja positivo ou seja maior que o mximo
+	 * <br><i>if the minimum interval is not positive or is greater than the maximum one</i>
+	 */
+	public void setPollingInterval(long minInterval, long maxInterval) throws IllegalArgumentException
+	{
+		if ( (minInterval <= 0) || (minInterval > maxInterval) )
+			throw new IllegalArgumentException("Invalid polling interval: " + minInterval + " - " + maxInterval);
+		
+		this.minInterval = minInterval;
+		this.maxInterval = maxInterval;
+	}
+	
+	@Override
+	public synchronized void start()
+	{
+		// verifica se ja em execucao
+		if ( this.currentRun == null )
+		{
+			this.currentRun = new PollingRunnable();
+			this.executorService.submit(this.currentRun);
+		}
+	}
+	
+	@Override
+	public synchronized void stop()
+	{
+		// encerra somente a execucao atual, mesmo que ela esteja aguardando o intervalo
+		// (uma nova execucao iniciada em seguida possui a sua propria flag)
+		if ( this.currentRun != null )
+		{
+			this.currentRun.finish();
+			this.currentRun = null;
+		}
+	}
+	
+	@Override
+	public void shutdown()
+	{
+		//
+		this.stop();
+		this.executorService.shutdownNow();
+	}
+	
+	
+	/**
+	 * <p>
+	 * Obtm o estado atual (data de modificao e tamanho) de um arquivo ou diretrio.
+	 * <p><i>
+	 * Gets the current state (last modified time and size) of a file or directory.
+	 * </i>
+	 * 
+	 * @param path caminho do arquivo ou diretrio
+	 * <br><i>the file or directory path</i>
+	 * @return o estado atual, ou <i>null</i> caso no exista (ou no esteja acessvel)
+	 * <br><i>the current state, or null if it does not exist (or is not accessible)</i>
+	 */
+	private static FileState stat(Path path)
+	{
+		try
+		{
+			BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+			
+			return ( new FileState(attrs.lastModifiedTime().toMillis(), attrs.size()) );
+		}
+		catch ( IOException e )
+		{
+			return ( null );
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Lista o diretrio, indexando os arquivos de classes e os subdiretrios ainda no indexados.
+	 * Os subdiretrios novos so listados recursivamente.
+	 * <p><i>
+	 * Lists the directory, indexing the class files and the subdirectories not yet indexed.
+	 * The new subdirectories are listed recursively.
+	 * </i>
+	 * 
+	 * @param dir diretrio a ser listado
+	 * <br><i>the directory to be listed</i>
+	 * @param notifyNewFiles <i>true</i> para aguardar a estabilizao dos arquivos novos e notific-los, 
+	 * <i>false</i> para somente index-los
+	 * <br><i>true to wait for the new files to become stable and notify them, false to only index them</i>
+	 * @return o nmero de arquivos e subdiretrios novos
+	 * <br><i>the number of new files and subdirectories</i>
+	 */
+	private int listDirectory(Path dir, boolean notifyNewFiles)
+	{
+		int newEntries = 0;
+		
+		// (o instante da listagem antecede a leitura da data de modificacao)
+		long listedAt = System.currentTimeMillis();
+		FileState dirState = stat(dir);
+		
+		if ( dirState == null )
+			return ( 0 );
+		
+		this.dirIndex.put(dir, new DirState(dirState.lastModified, listedAt));
+		
+		List<Path> newDirs = new ArrayList<Path>();
+		
+		try ( DirectoryStream<Path> stream = Files.newDirectoryStream(dir) )
+		{
+			for ( Path path : stream )
+			{
+				if ( Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS) )
+				{
+					if ( this.includeSubdirs && !this.dirIndex.containsKey(path) )
+						newDirs.add(path);
+				}
+				else if ( path.getFileName().toString().endsWith(".class") && !this.fileIndex.containsKey(path) )
+				{
+					FileState fileState = stat(path);
+					
+					if ( fileState == null )
+						continue;
+					
+					this.fileIndex.put(path, fileState);
+					newEntries++;
+					
+					if ( notifyNewFiles )
+						this.pendingFiles.put(path, fileState);
+				}
+			}
+		}
+		catch ( IOException e )
+		{
+			// log: erro
+			LiveClassUtils.logError("Erro ao listar o diretorio [" + dir + "]");
+			LiveClassUtils.logException(e);
+		}
+		
+		for ( Path newDir : newDirs )
+			newEntries += 1 + this.listDirectory(newDir, notifyNewFiles);
+		
+		return ( newEntries );
+	}
+	
+	/**
+	 * <p>
+	 * Remove do ndice o diretrio removido, os seus subdiretrios e os seus arquivos.
+	 * <p><i>
+	 * Removes from the index the removed directory, its subdirectories and its files.
+	 * </i>
+	 * 
+	 * @param dir diretrio removido
+	 * <br><i>the removed directory</i>
+	 */
+	private void removeDirectory(Path dir)
+	{
+		this.dirIndex.keySet().removeIf(path -> path.startsWith(dir));
+		this.fileIndex.keySet().removeIf(path -> path.startsWith(dir));
+		this.pendingFiles.keySet().removeIf(path -> path.startsWith(dir));
+	}
+	
+	
+	/**
+	 * <p>
+	 * Thread responsvel por verificar periodicamente os diretrios monitorados.
+	 * <p><i>
+	 * Thread that periodically checks the monitored directories.
+	 * </i>
+	 */
+	private class PollingRunnable implements Runnable
+	{
+		// flag de status desta execucao
+		private boolean isRunning = true;
+		
+		
+		@Override
+		public void run()
+		{
+			try
+			{
+				// log: o diretorio sendo monitorado
+				LiveClassUtils.logInfo("Monitorando diretorio [" + rootDir.toAbsolutePath() + "] por verificacao periodica");
+				
+				// indexa os diretorios e arquivos de classes ja existentes
+				listDirectory(rootDir, false);
+				
+				// log: arquivos indexados
+				LiveClassUtils.logDebug("Diretorios indexados: " + dirIndex.size() + ", arquivos de classes: " + fileIndex.size());
+				
+				long interval = minInterval;
+				
+				while ( this.await(interval) )
+				{
+					// verifica as alteracoes e notifica os arquivos que se tornaram estaveis
+					boolean changed = this.poll();
+					
+					// volta ao intervalo minimo enquanto houver alteracoes; caso contrario, dobra o intervalo
+					interval = (changed || !pendingFiles.isEmpty()) ? minInterval : Math.min(interval * 2, maxInterval);
+				}
+			}
+			catch ( InterruptedException e )
+			{
+				// monitor encerrado durante a espera (shutdown)
+			}
+			catch (Exception e)
+			{
+				// log: erro
+				LiveClassUtils.logError("Erro durante o monitoramento!");
+				LiveClassUtils.logException(e);
+			}
+			
+			finally
+			{
+				// log: encerrando monitoramento
+				LiveClassUtils.logInfo("Monitoramente encerrado!");
+				
+				// permite uma nova execucao caso esta tenha sido encerrada por erro
+				synchronized ( PollingFileSystemMonitor.this )
+				{
+					if ( currentRun == this )
+						currentRun = null;
+				}
+			}
+		}
+		
+		/**
+		 * <p>
+		 * Aguarda o intervalo at a prxima verificao, retornando antes caso a execuo seja encerrada.
+		 * <p><i>
+		 * Waits for the interval until the next check, returning earlier if the run is finished.
+		 * </i>
+		 * 
+		 * @param interval intervalo at a prxima verificao, em milissegundos
+		 * <br><i>the interval until the next check, in milliseconds</i>
+		 * @return <i>true</i> se a execuo continua, <i>false</i> caso tenha sido encerrada
+		 * <br><i>true if the run continues, false if it was finished</i>
+		 * @throws InterruptedException caso a thread seja interrompida (shutdown)
+		 * <br><i>if the thread is interrupted (shutdown)</i>
+		 */
+		private synchronized boolean await(long interval) throws InterruptedException
+		{
+			if ( this.isRunning )
+				this.wait(interval);
+			
+			return ( this.isRunning );
+		}
+		
+		/**
+		 * <p>
+		 * Encerra esta execuo, interrompendo a espera pela prxima verificao.
+		 * <p><i>
+		 * Finishes this run, interrupting the wait for the next check.
+		 * </i>
+		 */
+		synchronized void finish()
+		{
+			this.isRunning = false;
+			this.notifyAll();
+		}
+		
+		/**
+		 * <p>
+		 * Verifica os arquivos indexados e os diretrios alterados, notificando os arquivos que permaneceram 
+		 * inalterados desde a verificao anterior.
+		 * <p><i>
+		 * Checks the indexed files and the changed directories, notifying the files that remained unchanged
+		 * since the previous check.
+		 * </i>
+		 * 
+		 * @return <i>true</i> se alguma alterao foi encontrada, <i>false</i> caso contrrio
+		 * <br><i>true if any change was found, false otherwise</i>
+		 */
+		private boolean poll()
+		{
+			boolean changed = false;
+			
+			// consulta os arquivos indexados, em paralelo
+			// (os arquivos novos sao verificados somente a partir da proxima verificacao)
+			List<Path> indexedFiles = new ArrayList<Path>(fileIndex.keySet());
+			List<FileState> fileStates = new ArrayList<FileState>(indexedFiles.size());
+			indexedFiles.parallelStream().map(path -> stat(path)).forEachOrdered(fileStates::add);
+			
+			List<File> stableFiles = new ArrayList<File>();
+			
+			for ( int i = 0; i < indexedFiles.size(); i++ )
+			{
+				Path path = indexedFiles.get(i);
+				FileState fileState = fileStates.get(i);
+				
+				// arquivo removido
+				if ( fileState == null )
+				{
+					fileIndex.remove(path);
+					pendingFiles.remove(path);
+					changed = true;
+				}
+				
+				// arquivo alterado desde a verificacao anterior
+				else if (! fileState.equals(fileIndex.get(path)) )
+				{
+					fileIndex.put(path, fileState);
+					pendingFiles.put(path, fileState);
+					changed = true;
+				}
+				
+				// arquivo pendente que permaneceu inalterado
+				else if ( pendingFiles.remove(path) != null )
+					stableFiles.add(path.toFile());
+			}
+			
+			// consulta os diretorios indexados, em paralelo, e lista somente os alterados
+			List<Path> indexedDirs = new ArrayList<Path>(dirIndex.keySet());
+			List<FileState> dirStates = new ArrayList<FileState>(indexedDirs.size());
+			indexedDirs.parallelStream().map(path -> stat(path)).forEachOrdered(dirStates::add);
+			
+			for ( int i = 0; i < indexedDirs.size(); i++ )
+			{
+				Path dir = indexedDirs.get(i);
+				FileState dirState = dirStates.get(i);
+				DirState indexed = dirIndex.get(dir);
+				
+				// diretorio ja removido junto com o diretorio pai
+				if ( indexed == null )
+					continue;
+				
+				// diretorio removido
+				if ( dirState == null )
+				{
+					removeDirectory(dir);
+					changed = true;
+				}
+				
+				else if ( indexed.mayHaveChanged(dirState.lastModified) )
+					changed |= (listDirectory(dir, true) > 0);
+			}
+			
+			if (! stableFiles.isEmpty() )
+				this.dispatch(stableFiles);
+			
+			return ( changed );
+		}
+		
+		/**
+		 * <p>
+		 * Filtra os arquivos estveis e notifica os observadores sobre os aceitos, em um nico lote.
+		 * <p><i>
+		 * Filters the stable files and notifies the observers about the accepted ones, in a single batch.
+		 * </i>
+		 * 
+		 * @param stableFiles arquivos estveis
+		 * <br><i>the stable files</i>
+		 */
+		private void dispatch(List<File> stableFiles)
+		{
+			List<File> acceptedFiles = new ArrayList<File>();
+			
+			for ( File arquivo : stableFiles )
+			{
+				// verifica se o arquivo eh uma classe Java compilada
+				// e do tipo dinamica
+				if ( fileFilter.acceptFile(arquivo) )
+				{
+					// log: arquivo aceito
+					LiveClassUtils.logInfo("Novo arquivo de classe encontrado: " + arquivo.getName() );
+					
+					acceptedFiles.add(arquivo);
+				}
+			}
+			
+			// notifica os observadores
+			if (! acceptedFiles.isEmpty() )
+				PollingFileSystemMonitor.this.notifyObservers(acceptedFiles);
+		}
+	}
+	
+	
+	/**
+	 * <p>
+	 * Estado indexado de um arquivo de classe.
+	 * <p><i>
+	 * Indexed state of a class file.
+	 * </i>
+	 */
+	private static class FileState
+	{
+		// data de modificacao e tamanho do arquivo
+		private long lastModified;
+		private long size;
+		
+		
+		/**
+		 * <p>
+		 * Registra o estado de um arquivo.
+		 * <p><i>
+		 * Records the state of a file.
+		 * </i>
+		 * 
+		 * @param lastModified data de modificao do arquivo
+		 * <br><i>the file last modified time</i>
+		 * @param size tamanho do arquivo
+		 * <br><i>the file size</i>
+		 */
+		FileState(long lastModified, long size)
+		{
+			this.lastModified = lastModified;
+			this.size = size;
+		}
+		
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (! (obj instanceof FileState) )
+				return ( false );
+			
+			FileState other = (FileState) obj;
+			
+			return ( (this.lastModified == other.lastModified) && (this.size == other.size) );
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return ( Long.hashCode(this.lastModified) * 31 + Long.hashCode(this.size) );
+		}
+	}
+	
+	
+	/**
+	 * <p>
+	 * Estado indexado de um diretrio.
+	 * <p><i>
+	 * Indexed state of a directory.
+	 * </i>
+	 */
+	private static class DirState
+	{
+		// data de modificacao do diretorio quando listado
+		private long lastModified;
+		
+		// instante em que o diretorio foi listado
+		private long listedAt;
+		
+		
+		/**
+		 * <p>
+		 * Registra o estado de um diretrio listado.
+		 * <p><i>
+		 * Records the state of a listed directory.
+		 * </i>
+		 * 
+		 * @param lastModified data de modificao do diretrio
+		 * <br><i>the directory last modified time</i>
+		 * @param listedAt instante da listagem
+		 * <br><i>the listing time</i>
+		 */
+		DirState(long lastModified, long listedAt)
+		{
+			this.lastModified = lastModified;
+			this.listedAt = listedAt;
+		}
+		
+		/**
+		 * <p>
+		 * Verifica se o diretrio pode ter sido alterado desde a sua listagem: a data de modificao  diferente,
+		 * ou era prxima demais do instante da listagem para distinguir alteraes posteriores.
+		 * <p><i>
+		 * Checks if the directory may have changed since its listing: the last modified time is different,
+		 * or was too close to the listing time to distinguish later changes.
+		 * </i>
+		 * 
+		 * @param lastModified data de modificao atual do diretrio
+		 * <br><i>the current last modified time of the directory</i>
+		 * @return <i>true</i> se o diretrio deve ser listado novamente, <i>false</i> caso contrrio
+		 * <br><i>true if the directory must be listed again, false otherwise</i>
+		 */
+		boolean mayHaveChanged(long lastModified)
+		{
+			return ( (this.lastModified != lastModified) || (this.lastModified >= this.listedAt - MODIFIED_TIME_PRECISION) );
+		}
+	}
+}
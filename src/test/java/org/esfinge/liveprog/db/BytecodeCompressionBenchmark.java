@@ -0,0 +1,159 @@
+package org.esfinge.liveprog.db;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+
+/**
+ * <p>
+ * Medio da taxa de compresso e da vazo de gravao e leitura de {@link BytecodeCompression}, 
+ * utilizando os arquivos de classe de um diretrio (por padro, 'target/classes').
+ * <br>
+ * Uso: <code>mvn test-compile</code> e ento 
+ * <code>java -cp target/classes:target/test-classes org.esfinge.liveprog.db.BytecodeCompressionBenchmark [dir] [rodadas]</code>
+ * <p><i>
+ * Measures the compression ratio and the write and read throughput of {@link BytecodeCompression}, 
+ * using the class files of a directory (by default, 'target/classes').
+ * <br>
+ * Usage: <code>mvn test-compile</code> and then 
+ * <code>java -cp target/classes:target/test-classes org.esfinge.liveprog.db.BytecodeCompressionBenchmark [dir] [rounds]</code>
+ * </i>
+ */
+public class BytecodeCompressionBenchmark
+{
+	// rodadas de aquecimento da JIT
+	private static final int WARMUP_ROUNDS = 20;
+
+
+	/**
+	 * <p>
+	 * Executa a medio e exibe os resultados.
+	 * <p><i>
+	 * Runs the benchmark and prints the results.
+	 * </i>
+	 *
+	 * @param args diretrio dos arquivos de classe e nmero de rodadas (opcionais)
+	 * <br><i>the class files directory and the number of rounds (optional)</i>
+	 * @throws IOException em caso de erros ao ler os arquivos de classe
+	 * <br><i>if an error occurs when reading the class files</i>
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		Path dir = Paths.get(args.length > 0 ? args[0] : "target/classes");
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+		
+		// bytecodes dos arquivos de classe
+		List<byte[]> bytecodes = new ArrayList<byte[]>();
+		
+		try ( Stream<Path> files = Files.walk(dir) )
+		{
+			for ( Path file : files.filter(f -> f.toString().endsWith(".class")).collect(Collectors.toList()) )
+				bytecodes.add(Files.readAllBytes(file));
+		}
+		
+		if ( bytecodes.isEmpty() )
+		{
+			System.out.println("Nenhum arquivo de classe encontrado em: " + dir.toAbsolutePath());
+			return;
+		}
+		
+		long rawSize = 0;
+		long dictSize = 0;
+		long plainSize = 0;
+		List<byte[]> compressed = new ArrayList<byte[]>();
+		
+		for ( byte[] bytecode : bytecodes )
+		{
+			byte[] data = BytecodeCompression.compress(bytecode);
+			
+			// verifica a integridade da compressao
+			if (! Arrays.equals(bytecode, BytecodeCompression.decompress(data, BytecodeCompression.FORMAT_DEFLATE_DICT)) )
+				throw new IllegalStateException("Bytecode descompactado difere do original!");
+			
+			compressed.add(data);
+			rawSize += bytecode.length;
+			dictSize += data.length;
+			plainSize += deflate(bytecode).length;
+		}
+		
+		for ( int i = 0; i < WARMUP_ROUNDS; i++ )
+		{
+			compressAll(bytecodes);
+			decompressAll(compressed);
+		}
+		
+		long start = System.nanoTime();
+		for ( int i = 0; i < rounds; i++ )
+			compressAll(bytecodes);
+		long compressNanos = System.nanoTime() - start;
+		
+		start = System.nanoTime();
+		for ( int i = 0; i < rounds; i++ )
+			decompressAll(compressed);
+		long decompressNanos = System.nanoTime() - start;
+		
+		System.out.println(String.format("arquivos de classe: %d (%d bytes)", bytecodes.size(), rawSize));
+		System.out.println(String.format("tamanho com dicionario: %.1f%%", 100.0 * dictSize / rawSize));
+		System.out.println(String.format("tamanho sem dicionario: %.1f%%", 100.0 * plainSize / rawSize));
+		System.out.println(String.format("compressao: %.1f MB/s", throughput(rawSize * rounds, compressNanos)));
+		System.out.println(String.format("descompressao: %.1f MB/s", throughput(rawSize * rounds, decompressNanos)));
+	}
+	
+	// compacta todos os bytecodes
+	private static long compressAll(List<byte[]> bytecodes)
+	{
+		long size = 0;
+		for ( byte[] bytecode : bytecodes )
+			size += BytecodeCompression.compress(bytecode).length;
+		
+		return ( size );
+	}
+	
+	// descompacta todos os bytecodes
+	private static long decompressAll(List<byte[]> compressed)
+	{
+		long size = 0;
+		for ( byte[] data : compressed )
+			size += BytecodeCompression.decompress(data, BytecodeCompression.FORMAT_DEFLATE_DICT).length;
+		
+		return ( size );
+	}
+	
+	// compacta com Deflate sem dicionario, para comparacao
+	private static byte[] deflate(byte[] bytecode)
+	{
+		Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+		
+		try
+		{
+			deflater.setInput(bytecode);
+			deflater.finish();
+			
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			
+			while (! deflater.finished() )
+				out.write(buffer, 0, deflater.deflate(buffer));
+			
+			return ( out.toByteArray() );
+		}
+		finally
+		{
+			deflater.end();
+		}
+	}
+	
+	// vazao em MB/s
+	private static double throughput(long bytes, long nanos)
+	{
+		return ( (bytes / (1024.0 * 1024.0)) / (nanos / 1e9) );
+	}
+}
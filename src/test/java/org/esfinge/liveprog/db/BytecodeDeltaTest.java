@@ -0,0 +1,227 @@
+package org.esfinge.liveprog.db;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.esfinge.liveprog.instrumentation.InstrumentationHelper;
+import org.esfinge.liveprog.reflect.ClassInfo;
+import org.esfinge.liveprog.reflect.ParameterInfo;
+import org.esfinge.liveprog.util.LiveClassUtils;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * <p>
+ * Testes de ida e volta do codificador de deltas {@link BytecodeDelta} 
+ * e da cadeia de deltas persistida por {@link DefaultLiveClassPersistence}.
+ * <p><i>
+ * Round-trip tests of the {@link BytecodeDelta} codec 
+ * and of the delta chain persisted by {@link DefaultLiveClassPersistence}.
+ * </i>
+ */
+public class BytecodeDeltaTest
+{
+	// intervalo padrao entre versoes completas
+	private static final int DEFAULT_KEYFRAME_INTERVAL = 10;
+	
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+	
+	// gerador com semente fixa, para testes reproduziveis
+	private Random random = new Random(42);
+	
+	
+	@BeforeClass
+	public static void suppressLogs()
+	{
+		LiveClassUtils.suppressConsoleLogs();
+	}
+	
+	@After
+	public void restoreKeyframeInterval()
+	{
+		DefaultLiveClassPersistence.setKeyframeInterval(DEFAULT_KEYFRAME_INTERVAL);
+	}
+	
+	@Test
+	public void identicalInputs()
+	{
+		byte[] base = this.randomBytes(4096);
+		byte[] delta = this.assertRoundTrip(base, base.clone());
+		
+		// o delta de entradas identicas deve ser apenas uma copia
+		assertTrue("delta size: " + delta.length, delta.length < 16);
+	}
+	
+	@Test
+	public void emptyInputs()
+	{
+		this.assertRoundTrip(new byte[0], new byte[0]);
+		this.assertRoundTrip(new byte[0], this.randomBytes(100));
+		this.assertRoundTrip(this.randomBytes(100), new byte[0]);
+	}
+	
+	@Test
+	public void fullyDifferentInputs()
+	{
+		byte[] target = this.randomBytes(2048);
+		byte[] delta = this.assertRoundTrip(this.randomBytes(2048), target);
+		
+		// sem trechos em comum, o delta contem a versao nova inteira
+		assertTrue("delta size: " + delta.length, delta.length >= target.length);
+	}
+	
+	@Test
+	public void growingInput()
+	{
+		byte[] base = this.randomBytes(3000);
+		
+		// insercoes no inicio, no meio e no final
+		byte[] target = concat(this.randomBytes(50), Arrays.copyOfRange(base, 0, 1500), 
+							   this.randomBytes(300), Arrays.copyOfRange(base, 1500, 3000), this.randomBytes(20));
+		
+		byte[] delta = this.assertRoundTrip(base, target);
+		assertTrue("delta size: " + delta.length, delta.length < 500);
+	}
+	
+	@Test
+	public void shrinkingInput()
+	{
+		byte[] base = this.randomBytes(3000);
+		
+		// remocoes no inicio, no meio e no final
+		byte[] target = concat(Arrays.copyOfRange(base, 100, 1200), Arrays.copyOfRange(base, 1800, 2900));
+		
+		byte[] delta = this.assertRoundTrip(base, target);
+		assertTrue("delta size: " + delta.length, delta.length < 32);
+	}
+	
+	@Test
+	public void classFileVersions()
+	{
+		ClassInfo classInfo = InstrumentationHelper.inspect(ParameterInfo.class);
+		byte[] base = classInfo.getBytecode();
+		byte[] target = InstrumentationHelper.transform(classInfo, classInfo.getName(), classInfo.getName() + "_1").getBytecode();
+		
+		byte[] delta = this.assertRoundTrip(base, target);
+		assertTrue("delta size: " + delta.length, delta.length < target.length / 2);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void truncatedDelta()
+	{
+		byte[] base = this.randomBytes(1000);
+		byte[] target = concat(base, this.randomBytes(100));
+		byte[] delta = BytecodeDelta.encode(base, target);
+		
+		BytecodeDelta.apply(base, Arrays.copyOf(delta, delta.length - 10));
+	}
+	
+	@Test
+	public void keyframeBoundary() throws Exception
+	{
+		final int keyframeInterval = 3;
+		final int versions = 2 * keyframeInterval;
+		DefaultLiveClassPersistence.setKeyframeInterval(keyframeInterval);
+		
+		File dbFile = this.tempFolder.newFile("delta.db");
+		ClassInfo classInfo = InstrumentationHelper.inspect(ParameterInfo.class);
+		String className = classInfo.getName();
+		
+		// versoes da classe, persistidas e efetivadas em sequencia
+		List<byte[]> bytecodes = new ArrayList<byte[]>();
+		DefaultLiveClassPersistence db = DefaultLiveClassPersistence.newInstance(dbFile.getPath());
+		
+		try
+		{
+			for ( int i = 1; i <= versions; i++ )
+			{
+				ClassInfo version = InstrumentationHelper.transform(classInfo, className, className + "_" + i);
+				bytecodes.add(version.getBytecode());
+				
+				db.saveLiveClassInfo(className, version);
+				db.commitLiveClass(className);
+			}
+		}
+		finally
+		{
+			db.close();
+		}
+		
+		// profundidade de cada versao na cadeia de deltas
+		List<Integer> depths = new ArrayList<Integer>();
+		
+		try ( Connection conn = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getAbsolutePath());
+			  Statement stmt = conn.createStatement();
+			  ResultSet rs = stmt.executeQuery("SELECT b.depth FROM ClassVersion c, Blob b WHERE b.id = c.id_blob ORDER BY c.version") )
+		{
+			while ( rs.next() )
+				depths.add(rs.getInt(1));
+		}
+		
+		assertEquals(Arrays.asList(0, 1, 2, 0, 1, 2), depths);
+		
+		// a ultima versao e reconstruida a partir do keyframe por uma nova instancia (sem cache)
+		db = DefaultLiveClassPersistence.newInstance(dbFile.getPath());
+		
+		try
+		{
+			assertArrayEquals(bytecodes.get(versions - 1), db.getLiveClassInfo(className, false).getBytecode());
+		}
+		finally
+		{
+			db.close();
+		}
+	}
+	
+	// verifica a reconstrucao da versao nova a partir do delta, retornando o delta
+	private byte[] assertRoundTrip(byte[] base, byte[] target)
+	{
+		byte[] delta = BytecodeDelta.encode(base, target);
+		assertArrayEquals(target, BytecodeDelta.apply(base, delta));
+		
+		return ( delta );
+	}
+	
+	// bytes aleatorios
+	private byte[] randomBytes(int size)
+	{
+		byte[] bytes = new byte[size];
+		this.random.nextBytes(bytes);
+		
+		return ( bytes );
+	}
+	
+	// concatena os vetores informados
+	private static byte[] concat(byte[]... parts)
+	{
+		int size = 0;
+		for ( byte[] part : parts )
+			size += part.length;
+		
+		byte[] result = new byte[size];
+		int pos = 0;
+		
+		for ( byte[] part : parts )
+		{
+			System.arraycopy(part, 0, result, pos, part.length);
+			pos += part.length;
+		}
+		
+		return ( result );
+	}
+}
@@ -0,0 +1,331 @@
+package org.esfinge.liveprog.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.esfinge.liveprog.LiveClassFactory;
+import org.esfinge.liveprog.annotation.IgnoreOnReload;
+import org.esfinge.liveprog.annotation.InvokeOnReload;
+import org.esfinge.liveprog.annotation.LiveClass;
+import org.esfinge.liveprog.instrumentation.InstrumentationHelper;
+import org.esfinge.liveprog.monitor.FileSystemMonitor;
+import org.esfinge.liveprog.reflect.AnnotationInfo;
+import org.esfinge.liveprog.reflect.ClassInfo;
+import org.esfinge.liveprog.reflect.FieldInfo;
+import org.esfinge.liveprog.reflect.MethodInfo;
+import org.esfinge.liveprog.reflect.ParameterInfo;
+import org.esfinge.liveprog.reflect.TypeHandler;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Testes de ida e volta de {@link ClassInfoSerializer}, comparando as informaes recuperadas
+ * com as obtidas por {@link InstrumentationHelper#inspect(byte[])} para classes reais.
+ * <p><i>
+ * Round-trip tests of {@link ClassInfoSerializer}, comparing the restored information
+ * with the one produced by {@link InstrumentationHelper#inspect(byte[])} for real classes.
+ * </i>
+ */
+public class ClassInfoSerializerTest
+{
+	@Test
+	public void annotatedClass() throws Exception
+	{
+		ClassInfo classInfo = InstrumentationHelper.inspect(AnnotatedFixture.class);
+		
+		// garante que a classe de teste exercita anotacoes, campos, metodos e classes internas
+		assertFalse(classInfo.getAnnotationsInfo().isEmpty());
+		assertFalse(classInfo.getFieldsInfo().isEmpty());
+		assertFalse(classInfo.getMethodsInfo().isEmpty());
+		assertTrue(classInfo.containsInnerClasses());
+		
+		this.assertRoundTrip(classInfo);
+	}
+	
+	@Test
+	public void innerClasses() throws Exception
+	{
+		ClassInfo classInfo = InstrumentationHelper.inspect(AnnotatedFixture.class);
+		
+		for ( String innerClassName : classInfo.getInnerClassNames() )
+			this.assertRoundTrip(InstrumentationHelper.inspect(Class.forName(innerClassName)));
+	}
+	
+	@Test
+	public void libraryClasses() throws Exception
+	{
+		for ( Class<?> clazz : new Class<?>[] { LiveClassFactory.class, DefaultLiveClassPersistence.class,
+			ParameterInfo.class, LiveClass.class, FileSystemMonitor.class } )
+			this.assertRoundTrip(InstrumentationHelper.inspect(clazz));
+	}
+	
+	@Test
+	public void corruptedMetadata()
+	{
+		byte[] data = ClassInfoSerializer.serialize(InstrumentationHelper.inspect(AnnotatedFixture.class));
+		
+		// metadados truncados
+		for ( int length : new int[] { 0, 1, data.length / 2, data.length - 1 } )
+		{
+			byte[] truncated = new byte[length];
+			System.arraycopy(data, 0, truncated, 0, length);
+			
+			try
+			{
+				ClassInfoSerializer.deserialize(truncated, new ClassInfo());
+				fail("Metadados truncados aceitos: " + length + " bytes");
+			}
+			catch ( IOException e )
+			{
+				// esperado
+			}
+		}
+		
+		// formato desconhecido
+		byte[] unknown = data.clone();
+		unknown[0] = 0x7F;
+		
+		try
+		{
+			ClassInfoSerializer.deserialize(unknown, new ClassInfo());
+			fail("Formato desconhecido aceito");
+		}
+		catch ( IOException e )
+		{
+			// esperado
+		}
+	}
+	
+	// serializa, recupera e compara com as informacoes originais
+	private void assertRoundTrip(ClassInfo classInfo) throws IOException
+	{
+		ClassInfo restored = ClassInfoSerializer.deserialize(ClassInfoSerializer.serialize(classInfo), new ClassInfo());
+		
+		assertEquals(classInfo.getName(), describe(classInfo), describe(restored));
+	}
+	
+	// descricao canonica das informacoes da classe (colecoes ordenadas), exceto bytecode e classes internas
+	private static String describe(ClassInfo classInfo)
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append("class ").append(classInfo.getName())
+			.append(" version=").append(classInfo.getVersion())
+			.append(" access=").append(classInfo.getAccessFlag())
+			.append(" super=").append(classInfo.getSuperclassName())
+			.append(" enclosing=").append(classInfo.getEnclosingClassName())
+			.append(" declaring=").append(classInfo.getDeclaringClassName())
+			.append(" inner=").append(sorted(classInfo.getInnerClassNames()))
+			.append(" interfaces=").append(sorted(classInfo.getInterfaceNames()))
+			.append(" annotations=").append(describeAnnotations(classInfo.getAnnotationsInfo()))
+			.append('\n');
+		
+		List<String> fields = new ArrayList<String>();
+		for ( FieldInfo field : classInfo.getFieldsInfo() )
+			fields.add(String.format("field %s access=%d type=%s annotations=%s", field.getName(), field.getAccessFlag(),
+				describe(field.getType()), describeAnnotations(field.getAnnotationsInfo())));
+		
+		List<String> methods = new ArrayList<String>();
+		for ( MethodInfo method : classInfo.getMethodsInfo() )
+		{
+			List<String> params = new ArrayList<String>();
+			for ( ParameterInfo param : method.getParametersInfo() )
+				params.add(String.format("%d:%s:%s%s", param.getIndex(), param.getName(),
+					describe(param.getType()), describeAnnotations(param.getAnnotationsInfo())));
+			
+			methods.add(String.format("method %s access=%d returns=%s throws=%s annotations=%s params=%s", method.getName(),
+				method.getAccessFlag(), describe(method.getReturnType()), sorted(method.getThrownExceptionNames()),
+				describeAnnotations(method.getAnnotationsInfo()), sorted(params)));
+		}
+		
+		for ( String line : sorted(fields) )
+			sb.append(line).append('\n');
+		for ( String line : sorted(methods) )
+			sb.append(line).append('\n');
+		
+		return ( sb.toString() );
+	}
+	
+	// descricao canonica das anotacoes, incluindo as aninhadas e os valores dos atributos
+	private static List<String> describeAnnotations(Collection<AnnotationInfo> annotations)
+	{
+		List<String> list = new ArrayList<String>();
+		
+		for ( AnnotationInfo annotation : annotations )
+		{
+			List<String> attributes = new ArrayList<String>();
+			for ( AnnotationInfo.AttributeInfo attribute : annotation.getAttributesInfo() )
+			{
+				List<String> values = new ArrayList<String>();
+				for ( Object value : attribute.getValues() )
+				{
+					if ( value instanceof AnnotationInfo )
+						values.add(describeAnnotations(Collections.singletonList((AnnotationInfo) value)).toString());
+					else
+						values.add(value.getClass().getSimpleName() + ":" + value);
+				}
+				
+				// a ordem dos valores do atributo eh significativa
+				attributes.add(attribute.getName() + ":" + describe(attribute.getType()) + "=" + values);
+			}
+			
+			list.add("@" + annotation.getName() + describeAnnotations(annotation.getAnnotationsInfo()) + sorted(attributes));
+		}
+		
+		return ( sorted(list) );
+	}
+	
+	// descricao do tipo
+	private static String describe(TypeHandler type)
+	{
+		return ( type == null ? null : type.getDescriptor() );
+	}
+	
+	// copia ordenada da colecao
+	private static List<String> sorted(Collection<String> values)
+	{
+		List<String> list = new ArrayList<String>(values);
+		Collections.sort(list);
+		
+		return ( list );
+	}
+	
+	
+	/**
+	 * <p>
+	 * Anotao com atributos de todos os tipos de valores suportados.
+	 * <p><i>
+	 * Annotation with attributes of every supported value type.
+	 * </i>
+	 */
+	@Retention(RetentionPolicy.RUNTIME)
+	@interface Sample
+	{
+		String text() default "";
+		int number() default 0;
+		long big() default 0L;
+		boolean flag() default false;
+		byte octet() default 0;
+		char letter() default ' ';
+		short small() default 0;
+		float ratio() default 0f;
+		double precise() default 0d;
+		Class<?> type() default Object.class;
+		ElementType element() default ElementType.TYPE;
+		String[] texts() default {};
+		int[] numbers() default {};
+		Tag tag() default @Tag("none");
+		Tag[] tags() default {};
+	}
+	
+	/**
+	 * <p>
+	 * Anotao aninhada.
+	 * <p><i>
+	 * Nested annotation.
+	 * </i>
+	 */
+	@Retention(RetentionPolicy.RUNTIME)
+	@interface Tag
+	{
+		String value();
+	}
+	
+	/**
+	 * <p>
+	 * Classe inspecionada nos testes.
+	 * <p><i>
+	 * Class inspected by the tests.
+	 * </i>
+	 */
+	@LiveClass
+	@Sample(text = "fixture", number = 42, big = 1L << 40, flag = true, octet = 7, letter = 'x', small = 300,
+		ratio = 1.5f, precise = 2.25d, type = String[].class, element = ElementType.FIELD, texts = { "a", "b", "a" },
+		numbers = { 3, 1, 2 }, tag = @Tag("single"), tags = { @Tag("first"), @Tag("second") })
+	public static class AnnotatedFixture implements Serializable, Callable<String>
+	{
+		private static final long serialVersionUID = 1L;
+		
+		@IgnoreOnReload
+		@Sample(text = "field")
+		protected int counter;
+		
+		private String[][] matrix;
+		
+		public static final String CONSTANT = "constant";
+		
+		
+		public AnnotatedFixture()
+		{
+		}
+		
+		public AnnotatedFixture(int counter, String[][] matrix)
+		{
+			this.counter = counter;
+			this.matrix = matrix;
+		}
+		
+		@InvokeOnReload
+		@Sample(tag = @Tag("method"))
+		public void reload(@Sample(number = 1) int value, String text) throws IOException, IllegalStateException
+		{
+			this.counter = value + text.length();
+		}
+		
+		@Override
+		public String call() throws Exception
+		{
+			// classe interna anonima
+			return ( new Callable<String>()
+			{
+				@Override
+				public String call()
+				{
+					return ( CONSTANT + counter + matrix.length );
+				}
+			}.call() );
+		}
+		
+		
+		/**
+		 * <p>
+		 * Classe interna esttica.
+		 * <p><i>
+		 * Static inner class.
+		 * </i>
+		 */
+		@Sample(element = ElementType.METHOD)
+		static class Nested
+		{
+			List<String> values;
+			
+			
+			/**
+			 * <p>
+			 * Classe interna de segundo nvel.
+			 * <p><i>
+			 * Second level inner class.
+			 * </i>
+			 */
+			class Deeper
+			{
+				long total()
+				{
+					return ( values.size() );
+				}
+			}
+		}
+	}
+}
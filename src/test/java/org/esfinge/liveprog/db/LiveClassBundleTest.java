@@ -0,0 +1,298 @@
+package org.esfinge.liveprog.db;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.esfinge.liveprog.instrumentation.InstrumentationHelper;
+import org.esfinge.liveprog.reflect.ClassInfo;
+import org.esfinge.liveprog.reflect.ParameterInfo;
+import org.esfinge.liveprog.util.LiveClassUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * <p>
+ * Testes de exportao e importao de {@link LiveClassBundle},
+ * incluindo a rejeio de <i>bundles</i> truncados ou com o <i>checksum</i> invlido.
+ * <p><i>
+ * Export and import tests of {@link LiveClassBundle},
+ * including the rejection of truncated bundles or bundles with an invalid checksum.
+ * </i>
+ */
+public class LiveClassBundleTest
+{
+	// tamanho do cabecalho nao compactado do bundle (identificacao e formato)
+	private static final int HEADER_SIZE = 8;
+	
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+	
+	// gerenciador de origem da exportacao
+	private DefaultLiveClassPersistence source;
+	
+	// gerenciador de destino da importacao
+	private DefaultLiveClassPersistence target;
+	
+	// arquivo do bundle
+	private String bundleFile;
+	
+	
+	@BeforeClass
+	public static void suppressLogs()
+	{
+		LiveClassUtils.suppressConsoleLogs();
+	}
+	
+	@Before
+	public void openDatabases() throws Exception
+	{
+		this.source = DefaultLiveClassPersistence.newInstance(this.tempFolder.newFile("source.db").getAbsolutePath());
+		this.target = DefaultLiveClassPersistence.newInstance(this.tempFolder.newFile("target.db").getAbsolutePath());
+		this.bundleFile = this.tempFolder.getRoot().toPath().resolve("classes.bundle").toString();
+	}
+	
+	@After
+	public void closeDatabases() throws Exception
+	{
+		this.source.close();
+		this.target.close();
+	}
+	
+	@Test
+	public void exportImportRoundTrip() throws Exception
+	{
+		Map<String,ClassInfo> committed = this.populateSource();
+		
+		assertEquals(committed.size(), LiveClassBundle.exportBundle(this.source, this.bundleFile));
+		
+		Map<String,ClassInfo> imported = LiveClassBundle.importBundle(this.target, this.bundleFile);
+		assertEquals(committed.keySet(), imported.keySet());
+		
+		for ( Map.Entry<String,ClassInfo> entry : committed.entrySet() )
+		{
+			String liveClassName = entry.getKey();
+			
+			// importadas como versoes aceitas
+			ILiveClassVersionInfo versionInfo = this.target.getLiveClassVersionInfo(liveClassName);
+			assertEquals(1, versionInfo.getCurrentVersion());
+			assertEquals(1, versionInfo.getSafeModeVersion());
+			
+			// somente a versao aceita eh exportada, com as suas classes internas
+			assertSameClass(entry.getValue(), imported.get(liveClassName));
+			assertSameClass(entry.getValue(), this.target.getLiveClassInfo(liveClassName, true));
+		}
+	}
+	
+	@Test
+	public void emptyBundle() throws Exception
+	{
+		assertEquals(0, LiveClassBundle.exportBundle(this.source, this.bundleFile));
+		assertTrue(LiveClassBundle.importBundle(this.target, this.bundleFile).isEmpty());
+	}
+	
+	@Test
+	public void truncatedBundleRejected() throws Exception
+	{
+		this.populateSource();
+		LiveClassBundle.exportBundle(this.source, this.bundleFile);
+		
+		byte[] bundle = Files.readAllBytes(this.bundlePath());
+		
+		for ( int length : new int[] { 0, 4, HEADER_SIZE, HEADER_SIZE + 1, bundle.length / 2, bundle.length - 9, bundle.length - 1 } )
+		{
+			Files.write(this.bundlePath(), Arrays.copyOf(bundle, length));
+			this.assertRejected("truncated at " + length);
+		}
+	}
+	
+	@Test
+	public void corruptedChecksumRejected() throws Exception
+	{
+		this.populateSource();
+		LiveClassBundle.exportBundle(this.source, this.bundleFile);
+		
+		// altera somente o checksum, mantendo o conteudo compactado valido
+		byte[] content = this.readContent();
+		content[content.length - 1] ^= 0x01;
+		this.writeContent(content);
+		
+		this.assertRejected("corrupted checksum");
+	}
+	
+	@Test
+	public void corruptedRecordRejected() throws Exception
+	{
+		this.populateSource();
+		LiveClassBundle.exportBundle(this.source, this.bundleFile);
+		
+		// altera um byte do primeiro bytecode (apos o seu 0xCAFEBABE), preservando a estrutura dos registros
+		byte[] content = this.readContent();
+		int i = 0;
+		while ( (content[i] & 0xFF) != 0xCA || (content[i + 1] & 0xFF) != 0xFE || (content[i + 2] & 0xFF) != 0xBA || (content[i + 3] & 0xFF) != 0xBE )
+			i++;
+		
+		content[i + 16] ^= 0x01;
+		this.writeContent(content);
+		
+		this.assertRejected("corrupted record");
+	}
+	
+	@Test
+	public void invalidRecordWithValidChecksumRejected() throws Exception
+	{
+		this.populateSource();
+		LiveClassBundle.exportBundle(this.source, this.bundleFile);
+		
+		// registros truncados, com o checksum recalculado sobre os bytes restantes
+		byte[] content = this.readContent();
+		int length = (content.length - 8) / 2;
+		
+		CRC32 crc = new CRC32();
+		crc.update(content, 0, length);
+		
+		ByteBuffer truncated = ByteBuffer.allocate(length + 8);
+		truncated.put(content, 0, length).putLong(crc.getValue());
+		this.writeContent(truncated.array());
+		
+		this.assertRejected("invalid record");
+	}
+	
+	// popula o gerenciador de origem, retornando as versoes aceitas de cada classe
+	private Map<String,ClassInfo> populateSource() throws Exception
+	{
+		Map<String,ClassInfo> committed = new TreeMap<String,ClassInfo>();
+		
+		// classe sem classes internas, com uma versao de teste posterior a aceita
+		ClassInfo classInfo = InstrumentationHelper.inspect(ParameterInfo.class);
+		String liveClassName = classInfo.getName();
+		
+		this.source.saveLiveClassInfo(liveClassName, classInfo);
+		
+		ClassInfo version = InstrumentationHelper.transform(classInfo, liveClassName, liveClassName + "_2");
+		this.source.saveLiveClassInfo(liveClassName, version);
+		this.source.commitLiveClass(liveClassName);
+		committed.put(liveClassName, version);
+		
+		this.source.saveLiveClassInfo(liveClassName, InstrumentationHelper.transform(classInfo, liveClassName, liveClassName + "_3"));
+		
+		// classe com classes internas
+		classInfo = inspectWithInnerClasses(InMemoryLiveClassPersistence.class);
+		this.source.saveLiveClassInfo(classInfo.getName(), classInfo);
+		committed.put(classInfo.getName(), classInfo);
+		
+		return ( committed );
+	}
+	
+	// verifica que o bundle eh rejeitado, sem alterar o gerenciador de destino
+	private void assertRejected(String message) throws Exception
+	{
+		try
+		{
+			LiveClassBundle.importBundle(this.target, this.bundleFile);
+			fail("Bundle accepted: " + message);
+		}
+		catch ( IOException e )
+		{
+			// esperado
+		}
+		
+		assertTrue(message, this.target.getAllLiveClassesVersionInfo().isEmpty());
+	}
+	
+	// caminho do arquivo do bundle
+	private Path bundlePath()
+	{
+		return ( this.tempFolder.getRoot().toPath().resolve("classes.bundle") );
+	}
+	
+	// le o conteudo descompactado do bundle (registros e checksum)
+	private byte[] readContent() throws Exception
+	{
+		byte[] bundle = Files.readAllBytes(this.bundlePath());
+		
+		Inflater inflater = new Inflater();
+		inflater.setInput(bundle, HEADER_SIZE, bundle.length - HEADER_SIZE);
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		
+		while (! inflater.finished() )
+			out.write(buffer, 0, inflater.inflate(buffer));
+		
+		inflater.end();
+		
+		return ( out.toByteArray() );
+	}
+	
+	// grava o bundle com o cabecalho original e o conteudo informado compactado novamente
+	private void writeContent(byte[] content) throws Exception
+	{
+		byte[] bundle = Files.readAllBytes(this.bundlePath());
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(bundle, 0, HEADER_SIZE);
+		
+		Deflater deflater = new Deflater();
+		deflater.setInput(content);
+		deflater.finish();
+		
+		byte[] buffer = new byte[4096];
+		while (! deflater.finished() )
+			out.write(buffer, 0, deflater.deflate(buffer));
+		
+		deflater.end();
+		
+		Files.write(this.bundlePath(), out.toByteArray());
+	}
+	
+	// inspeciona a classe e as suas classes internas
+	private static ClassInfo inspectWithInnerClasses(Class<?> clazz)
+	{
+		ClassInfo classInfo = InstrumentationHelper.inspect(clazz);
+		
+		for ( Class<?> innerClass : clazz.getDeclaredClasses() )
+			classInfo.addInnerClassInfo(InstrumentationHelper.inspect(innerClass));
+		
+		assertTrue(classInfo.getInnerClassesInfo().size() > 0);
+		
+		return ( classInfo );
+	}
+	
+	// compara os bytecodes da classe e das suas classes internas
+	private static void assertSameClass(ClassInfo expected, ClassInfo actual)
+	{
+		assertEquals(expected.getName(), actual.getName());
+		assertArrayEquals(expected.getBytecode(), actual.getBytecode());
+		
+		Map<String,byte[]> expectedInner = new TreeMap<String,byte[]>();
+		for ( ClassInfo innerClassInfo : expected.getInnerClassesInfo() )
+			expectedInner.put(innerClassInfo.getName(), innerClassInfo.getBytecode());
+		
+		Map<String,byte[]> actualInner = new TreeMap<String,byte[]>();
+		for ( ClassInfo innerClassInfo : actual.getInnerClassesInfo() )
+			actualInner.put(innerClassInfo.getName(), innerClassInfo.getBytecode());
+		
+		assertEquals(expectedInner.keySet(), actualInner.keySet());
+		
+		for ( String innerClassName : expectedInner.keySet() )
+			assertArrayEquals(innerClassName, expectedInner.get(innerClassName), actualInner.get(innerClassName));
+	}
+}
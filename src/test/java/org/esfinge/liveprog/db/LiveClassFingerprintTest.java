@@ -0,0 +1,105 @@
+package org.esfinge.liveprog.db;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Arrays;
+
+import org.esfinge.liveprog.db.ClassInfoSerializerTest.AnnotatedFixture;
+import org.esfinge.liveprog.instrumentation.InstrumentationHelper;
+import org.esfinge.liveprog.reflect.ClassInfo;
+import org.esfinge.liveprog.util.LiveClassUtils;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * <p>
+ * Testes de {@link InstrumentationHelper#fingerprint(ClassInfo, boolean)}, verificando que a impresso digital
+ * de uma classe com classes internas aninhadas  a mesma da verso recuperada do BD, com as classes internas agrupadas.
+ * <p><i>
+ * Tests of {@link InstrumentationHelper#fingerprint(ClassInfo, boolean)}, checking that the fingerprint
+ * of a class with nested inner classes is the same as the one of the version restored from the database, with the inner classes grouped.
+ * </i>
+ */
+public class LiveClassFingerprintTest
+{
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+	
+	
+	@BeforeClass
+	public static void suppressLogs()
+	{
+		LiveClassUtils.suppressConsoleLogs();
+	}
+	
+	@Test
+	public void nestedAndFlatInnerClasses() throws Exception
+	{
+		ClassInfo nested = inspectNested(AnnotatedFixture.class);
+		ClassInfo flat = InstrumentationHelper.inspect(AnnotatedFixture.class);
+		
+		// classes internas de todos os niveis agrupadas na classe principal
+		for ( String innerClassName : Arrays.asList(AnnotatedFixture.class.getName() + "$1",
+			AnnotatedFixture.class.getName() + "$Nested", AnnotatedFixture.class.getName() + "$Nested$Deeper") )
+			flat.addInnerClassInfo(InstrumentationHelper.inspect(Class.forName(innerClassName)));
+		
+		for ( boolean ignoreDebugInfo : new boolean[] { false, true } )
+			assertArrayEquals(InstrumentationHelper.fingerprint(nested, ignoreDebugInfo), InstrumentationHelper.fingerprint(flat, ignoreDebugInfo));
+	}
+	
+	@Test
+	public void restoredVersion() throws Exception
+	{
+		ClassInfo nested = inspectNested(AnnotatedFixture.class);
+		
+		DefaultLiveClassPersistence db = DefaultLiveClassPersistence.newInstance(this.tempFolder.newFile("fingerprint.db").getAbsolutePath());
+		
+		try
+		{
+			db.saveLiveClassInfo(nested.getName(), nested);
+			ClassInfo restored = db.getLiveClassInfo(nested.getName(), false);
+			
+			assertArrayEquals(InstrumentationHelper.fingerprint(nested, false), InstrumentationHelper.fingerprint(restored, false));
+			assertArrayEquals(InstrumentationHelper.fingerprint(nested, true), InstrumentationHelper.fingerprint(restored, true));
+		}
+		finally
+		{
+			db.close();
+		}
+	}
+	
+	@Test
+	public void changedInnerClass() throws Exception
+	{
+		ClassInfo nested = inspectNested(AnnotatedFixture.class);
+		
+		// a classe interna de segundo nivel eh substituida por outra classe
+		ClassInfo changedInner = InstrumentationHelper.inspect(Class.forName(AnnotatedFixture.class.getName() + "$Nested"));
+		changedInner.addInnerClassInfo(InstrumentationHelper.inspect(ClassInfoSerializerTest.class));
+		
+		ClassInfo changed = InstrumentationHelper.inspect(AnnotatedFixture.class);
+		changed.addInnerClassInfo(InstrumentationHelper.inspect(Class.forName(AnnotatedFixture.class.getName() + "$1")), changedInner);
+		
+		assertFalse(Arrays.equals(InstrumentationHelper.fingerprint(nested, false), InstrumentationHelper.fingerprint(changed, false)));
+	}
+	
+	// inspeciona a classe e as suas classes internas, aninhadas como lidas dos arquivos
+	private static ClassInfo inspectNested(Class<?> clazz) throws Exception
+	{
+		ClassInfo classInfo = InstrumentationHelper.inspect(clazz);
+		
+		for ( String innerClassName : classInfo.getInnerClassNames() )
+		{
+			Class<?> innerClass = Class.forName(innerClassName);
+			
+			// somente as classes internas diretas
+			if ( (innerClass.getEnclosingClass() == clazz) && !innerClassName.equals(clazz.getName()) )
+				classInfo.addInnerClassInfo(inspectNested(innerClass));
+		}
+		
+		return ( classInfo );
+	}
+}
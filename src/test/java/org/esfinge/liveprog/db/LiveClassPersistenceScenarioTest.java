@@ -0,0 +1,269 @@
+package org.esfinge.liveprog.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.esfinge.liveprog.instrumentation.InstrumentationHelper;
+import org.esfinge.liveprog.reflect.ClassInfo;
+import org.esfinge.liveprog.reflect.ParameterInfo;
+import org.esfinge.liveprog.util.LiveClassUtils;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * <p>
+ * Cenrio de versionamento executado sobre {@link InMemoryLiveClassPersistence} e {@link DefaultLiveClassPersistence},
+ * verificando que ambos seguem a mesma semntica de gravao, aceite, descarte e limite do histrico de verses.
+ * <p><i>
+ * Versioning scenario run against InMemoryLiveClassPersistence and DefaultLiveClassPersistence,
+ * checking that both follow the same save, commit, rollback and version history limit semantics.
+ * </i>
+ */
+@RunWith(Parameterized.class)
+public class LiveClassPersistenceScenarioTest
+{
+	// numero de versoes mantidas no historico
+	private static final int HISTORY_SIZE = 3;
+	
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+	
+	// implementacao testada
+	private Backend backend;
+	
+	// informacoes da classe usada para gerar as versoes
+	private ClassInfo classInfo = InstrumentationHelper.inspect(ParameterInfo.class);
+	
+	// nome da classe dinamica
+	private String liveClassName = this.classInfo.getName();
+	
+	
+	@Parameters(name = "{0}")
+	public static Collection<Object[]> backends()
+	{
+		return ( Arrays.asList(new Object[][] { { "InMemory", new InMemoryBackend() }, { "Default", new DefaultBackend() } }) );
+	}
+	
+	public LiveClassPersistenceScenarioTest(String name, Backend backend)
+	{
+		this.backend = backend;
+	}
+	
+	@BeforeClass
+	public static void suppressLogs()
+	{
+		LiveClassUtils.suppressConsoleLogs();
+	}
+	
+	@After
+	public void closeBackend() throws Exception
+	{
+		this.backend.close();
+	}
+	
+	@Test
+	public void saveCommitSaveRollback() throws Exception
+	{
+		ILiveClassPersistence db = this.backend.open(this.tempFolder, HISTORY_SIZE);
+		
+		// classe desconhecida
+		assertNull(db.getLiveClassInfo(this.liveClassName, false));
+		this.assertVersions(db, -1, -1);
+		
+		// primeira versao, ja aceita
+		db.saveLiveClassInfo(this.liveClassName, this.version(1));
+		this.assertVersions(db, 1, 1);
+		this.assertLoaded(db, 1, 1);
+		
+		// versao de teste
+		db.saveLiveClassInfo(this.liveClassName, this.version(2));
+		this.assertVersions(db, 2, 1);
+		this.assertLoaded(db, 2, 1);
+		
+		// aceite
+		assertTrue(db.commitLiveClass(this.liveClassName));
+		this.assertVersions(db, 2, 2);
+		this.assertLoaded(db, 2, 2);
+		
+		// nova versao de teste, substituida por outra antes do aceite
+		db.saveLiveClassInfo(this.liveClassName, this.version(3));
+		db.saveLiveClassInfo(this.liveClassName, this.version(4));
+		this.assertVersions(db, 3, 2);
+		this.assertLoaded(db, 4, 2);
+		assertEquals(Arrays.asList(1, 2, 3), db.getLiveClassVersionHistory(this.liveClassName));
+		
+		// descarte da versao de teste
+		assertTrue(db.rollbackLiveClass(this.liveClassName));
+		this.assertVersions(db, 2, 2);
+		this.assertLoaded(db, 2, 2);
+		assertEquals(Arrays.asList(1, 2), db.getLiveClassVersionHistory(this.liveClassName));
+		
+		// descarte da versao aceita, retrocedendo tambem o modo seguro
+		assertTrue(db.rollbackLiveClass(this.liveClassName));
+		this.assertVersions(db, 1, 1);
+		this.assertLoaded(db, 1, 1);
+		assertEquals(Arrays.asList(1), db.getLiveClassVersionHistory(this.liveClassName));
+		
+		// nao ha versao anterior a primeira
+		assertTrue(db.rollbackLiveClass(this.liveClassName));
+		this.assertVersions(db, 1, 1);
+	}
+	
+	@Test
+	public void historyEviction() throws Exception
+	{
+		ILiveClassPersistence db = this.backend.open(this.tempFolder, HISTORY_SIZE);
+		
+		db.saveLiveClassInfo(this.liveClassName, this.version(1));
+		for ( int i = 2; i <= 6; i++ )
+		{
+			db.saveLiveClassInfo(this.liveClassName, this.version(i));
+			db.commitLiveClass(this.liveClassName);
+		}
+		
+		// somente as versoes mais recentes sao mantidas
+		this.backend.evict();
+		assertEquals(Arrays.asList(4, 5, 6), db.getLiveClassVersionHistory(this.liveClassName));
+		this.assertVersions(db, 6, 6);
+		this.assertLoaded(db, 6, 6);
+		
+		// o descarte retrocede para a versao anterior mantida
+		assertTrue(db.rollbackLiveClass(this.liveClassName));
+		this.assertVersions(db, 5, 5);
+		this.assertLoaded(db, 5, 5);
+		
+		// a nova versao recebe o numero seguinte ao do modo seguro
+		db.saveLiveClassInfo(this.liveClassName, this.version(7));
+		this.backend.evict();
+		this.assertVersions(db, 6, 5);
+		this.assertLoaded(db, 7, 5);
+		assertEquals(Arrays.asList(4, 5, 6), db.getLiveClassVersionHistory(this.liveClassName));
+	}
+	
+	// verifica as versoes atual e do modo seguro
+	private void assertVersions(ILiveClassPersistence db, int currentVersion, int safeModeVersion) throws Exception
+	{
+		ILiveClassVersionInfo versionInfo = db.getLiveClassVersionInfo(this.liveClassName);
+		
+		assertEquals("current version", currentVersion, versionInfo.getCurrentVersion());
+		assertEquals("safe mode version", safeModeVersion, versionInfo.getSafeModeVersion());
+	}
+	
+	// verifica as versoes gravadas retornadas nos modos padrao e seguro
+	private void assertLoaded(ILiveClassPersistence db, int current, int safeMode) throws Exception
+	{
+		assertEquals(this.versionName(current), db.getLiveClassInfo(this.liveClassName, false).getName());
+		assertEquals(this.versionName(safeMode), db.getLiveClassInfo(this.liveClassName, true).getName());
+	}
+	
+	// gera uma versao da classe, identificada pelo nome
+	private ClassInfo version(int i)
+	{
+		return ( InstrumentationHelper.transform(this.classInfo, this.liveClassName, this.versionName(i)) );
+	}
+	
+	// nome da versao gerada
+	private String versionName(int i)
+	{
+		return ( this.liveClassName + "_" + i );
+	}
+	
+	
+	/**
+	 * <p>
+	 * Implementao de persistncia testada no cenrio.
+	 * <p><i>
+	 * Persistence implementation tested by the scenario.
+	 * </i>
+	 */
+	interface Backend
+	{
+		// cria o gerenciador de persistencia, limitado ao tamanho de historico informado
+		ILiveClassPersistence open(TemporaryFolder folder, int historySize) throws Exception;
+		
+		// aplica o limite do historico de versoes
+		void evict() throws Exception;
+		
+		// libera os recursos do gerenciador
+		void close() throws Exception;
+	}
+	
+	/**
+	 * <p>
+	 * Persistncia em memria, que limita o histrico ao gravar cada verso.
+	 * <p><i>
+	 * In-memory persistence, which bounds the history when saving each version.
+	 * </i>
+	 */
+	static class InMemoryBackend implements Backend
+	{
+		@Override
+		public ILiveClassPersistence open(TemporaryFolder folder, int historySize)
+		{
+			return ( new InMemoryLiveClassPersistence(historySize) );
+		}
+		
+		@Override
+		public void evict()
+		{
+		}
+		
+		@Override
+		public void close()
+		{
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Persistncia em BD, que limita o histrico pela poltica de reteno aplicada na manuteno.
+	 * <p><i>
+	 * Database persistence, which bounds the history by the retention policy applied by the maintenance.
+	 * </i>
+	 */
+	static class DefaultBackend implements Backend
+	{
+		// gerenciador aberto pelo teste
+		private DefaultLiveClassPersistence db;
+		
+		
+		@Override
+		public ILiveClassPersistence open(TemporaryFolder folder, int historySize) throws Exception
+		{
+			DefaultLiveClassPersistence.setRetentionPolicy(historySize, 0);
+			this.db = DefaultLiveClassPersistence.newInstance(folder.newFile("scenario.db").getAbsolutePath());
+			
+			return ( this.db );
+		}
+		
+		@Override
+		public void evict() throws Exception
+		{
+			// a idade das versoes eh medida em milissegundos
+			Thread.sleep(5);
+			this.db.runMaintenance();
+		}
+		
+		@Override
+		public void close() throws Exception
+		{
+			// desabilita a politica de retencao para os demais testes
+			DefaultLiveClassPersistence.setRetentionPolicy(Integer.MAX_VALUE, 0);
+			
+			if ( this.db != null )
+				this.db.close();
+			
+			this.db = null;
+		}
+	}
+}
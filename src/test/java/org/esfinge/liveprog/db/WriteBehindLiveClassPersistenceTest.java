@@ -0,0 +1,165 @@
+package org.esfinge.liveprog.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.esfinge.liveprog.instrumentation.InstrumentationHelper;
+import org.esfinge.liveprog.reflect.ClassInfo;
+import org.esfinge.liveprog.reflect.FieldInfo;
+import org.esfinge.liveprog.reflect.ParameterInfo;
+import org.esfinge.liveprog.util.LiveClassUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * <p>
+ * Testes de {@link WriteBehindLiveClassPersistence}, verificando que as verses salvas em lote
+ * so enfileiradas sem aguardar o gerenciador decorado e persistidas em uma nica chamada.
+ * <p><i>
+ * Tests of {@link WriteBehindLiveClassPersistence}, checking that the versions saved in batch
+ * are enqueued without waiting for the decorated manager and persisted in a single call.
+ * </i>
+ */
+public class WriteBehindLiveClassPersistenceTest
+{
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+	
+	// gerenciador decorado, bloqueado ate a liberacao pelo teste
+	private SlowPersistence delegate;
+	
+	// gerenciador testado
+	private WriteBehindLiveClassPersistence db;
+	
+	
+	@BeforeClass
+	public static void suppressLogs()
+	{
+		LiveClassUtils.suppressConsoleLogs();
+	}
+	
+	@Before
+	public void openDatabase() throws Exception
+	{
+		this.delegate = new SlowPersistence();
+		this.db = new WriteBehindLiveClassPersistence(this.delegate, this.tempFolder.getRoot().toPath().resolve("versions.journal").toString());
+	}
+	
+	@After
+	public void closeDatabase() throws Exception
+	{
+		this.delegate.release.countDown();
+		this.db.close();
+	}
+	
+	@Test(timeout = 10000)
+	public void batchDoesNotWaitForDelegate() throws Exception
+	{
+		// primeiras versoes das classes
+		Map<String,ClassInfo> originals = new LinkedHashMap<String,ClassInfo>();
+		for ( Class<?> clazz : Arrays.asList(ParameterInfo.class, FieldInfo.class) )
+			originals.put(clazz.getName(), InstrumentationHelper.inspect(clazz));
+		
+		// novas versoes das classes
+		Map<String,ClassInfo> versions = new LinkedHashMap<String,ClassInfo>();
+		for ( Map.Entry<String,ClassInfo> entry : originals.entrySet() )
+			versions.put(entry.getKey(), InstrumentationHelper.transform(entry.getValue(), entry.getKey(), entry.getKey() + "_2"));
+		
+		// os lotes retornam enquanto o gerenciador decorado esta bloqueado
+		this.db.saveLiveClassInfos(originals, false);
+		this.db.saveLiveClassInfos(versions, false);
+		
+		assertTrue(this.delegate.started.await(5, TimeUnit.SECONDS));
+		assertEquals(4, this.db.getPendingCount());
+		
+		// o versionamento e as versoes pendentes sao obtidos da fila
+		for ( String liveClassName : originals.keySet() )
+		{
+			ILiveClassVersionInfo versionInfo = this.db.getLiveClassVersionInfo(liveClassName);
+			assertEquals(2, versionInfo.getCurrentVersion());
+			assertEquals(1, versionInfo.getSafeModeVersion());
+			
+			assertEquals(liveClassName + "_2", this.db.getLiveClassInfo(liveClassName, false).getName());
+			assertEquals(liveClassName, this.db.getLiveClassInfo(liveClassName, true).getName());
+		}
+		
+		// libera o gerenciador decorado
+		this.delegate.release.countDown();
+		this.db.awaitDurability();
+		
+		assertEquals(0, this.db.getPendingCount());
+		
+		// cada lote eh persistido em uma unica chamada
+		assertEquals(2, this.delegate.batchCount.get());
+		assertEquals(0, this.delegate.singleCount.get());
+		
+		for ( String liveClassName : originals.keySet() )
+		{
+			ILiveClassVersionInfo versionInfo = this.delegate.getLiveClassVersionInfo(liveClassName);
+			assertEquals(2, versionInfo.getCurrentVersion());
+			assertEquals(1, versionInfo.getSafeModeVersion());
+			
+			assertEquals(liveClassName + "_2", this.delegate.getLiveClassInfo(liveClassName, false).getName());
+		}
+	}
+	
+	
+	/**
+	 * <p>
+	 * Persistncia em memria que bloqueia as gravaes at ser liberada, contando as chamadas recebidas.
+	 * <p><i>
+	 * In-memory persistence that blocks the writes until released, counting the calls received.
+	 * </i>
+	 */
+	static class SlowPersistence extends InMemoryLiveClassPersistence
+	{
+		// liberacao das gravacoes
+		private CountDownLatch release = new CountDownLatch(1);
+		
+		// inicio da primeira gravacao
+		private CountDownLatch started = new CountDownLatch(1);
+		
+		// chamadas de gravacao individual e em lote
+		private AtomicInteger singleCount = new AtomicInteger();
+		private AtomicInteger batchCount = new AtomicInteger();
+		
+		
+		@Override
+		public void saveLiveClassInfo(String liveClassName, ClassInfo liveClassInfo) throws Exception
+		{
+			this.singleCount.incrementAndGet();
+			this.await();
+			
+			super.saveLiveClassInfo(liveClassName, liveClassInfo);
+		}
+		
+		@Override
+		public void saveLiveClassInfos(Map<String,ClassInfo> liveClassInfos, boolean commit) throws Exception
+		{
+			this.batchCount.incrementAndGet();
+			this.await();
+			
+			// a implementacao padrao grava as versoes individualmente
+			for ( Map.Entry<String,ClassInfo> entry : liveClassInfos.entrySet() )
+				super.saveLiveClassInfo(entry.getKey(), entry.getValue());
+		}
+		
+		// aguarda a liberacao das gravacoes
+		private void await() throws InterruptedException
+		{
+			this.started.countDown();
+			this.release.await();
+		}
+	}
+}